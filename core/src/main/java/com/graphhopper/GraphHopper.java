@@ -20,6 +20,7 @@ package com.graphhopper;
 import com.bedatadriven.jackson.datatype.jts.JtsModule;
 import com.carrotsearch.hppc.BitSet;
 import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.IntDoubleMap;
 import com.carrotsearch.hppc.LongArrayList;
 import com.carrotsearch.hppc.sorting.IndirectSort;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -31,7 +32,9 @@ import com.graphhopper.reader.dem.*;
 import com.graphhopper.reader.osm.OSMReader;
 import com.graphhopper.reader.osm.RestrictionTagParser;
 import com.graphhopper.routing.*;
+import com.graphhopper.routing.ch.CCHCustomizer;
 import com.graphhopper.routing.ch.CHPreparationHandler;
+import com.graphhopper.routing.ch.PrepareCCH;
 import com.graphhopper.routing.ch.PrepareContractionHierarchies;
 import com.graphhopper.routing.ev.*;
 import com.graphhopper.routing.lm.LMConfig;
@@ -46,6 +49,7 @@ import com.graphhopper.routing.util.parsers.OSMBikeNetworkTagParser;
 import com.graphhopper.routing.util.parsers.OSMFootNetworkTagParser;
 import com.graphhopper.routing.util.parsers.OSMMtbNetworkTagParser;
 import com.graphhopper.routing.util.parsers.TagParser;
+import com.graphhopper.routing.weighting.TrafficWeighting;
 import com.graphhopper.routing.weighting.Weighting;
 import com.graphhopper.routing.weighting.custom.CustomModelParser;
 import com.graphhopper.routing.weighting.custom.CustomWeighting;
@@ -60,6 +64,7 @@ import com.graphhopper.util.details.PathDetailsBuilderFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.xml.stream.XMLStreamException;
 import java.io.*;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.DirectoryStream;
@@ -105,6 +110,9 @@ public class GraphHopper {
     private DAType dataAccessDefaultType = DAType.RAM_STORE;
     private final LinkedHashMap<String, String> dataAccessConfig = new LinkedHashMap<>();
     private boolean sortGraph = true;
+    private boolean compactStorage = false;
+    private boolean csrAdjacency = false;
+    private boolean kvDictionary = false;
     private boolean elevation = false;
     private LockFactory lockFactory = new NativeFSLockFactory();
     private boolean allowWrites = true;
@@ -129,8 +137,18 @@ public class GraphHopper {
     // preparation handlers
     private final LMPreparationHandler lmPreparationHandler = new LMPreparationHandler();
     private final CHPreparationHandler chPreparationHandler = new CHPreparationHandler();
-    private Map<String, RoutingCHGraph> chGraphs = Collections.emptyMap();
-    private Map<String, LandmarkStorage> landmarks = Collections.emptyMap();
+    // the maps are replaced and never modified, so they can be updated while requests are running
+    private volatile Map<String, RoutingCHGraph> chGraphs = Collections.emptyMap();
+    private volatile Map<String, LandmarkStorage> landmarks = Collections.emptyMap();
+    private boolean cchEnabled = false;
+    private int cchCacheSize = 10;
+    private int cchMaxConcurrentCustomizations = 2;
+    private CCHCustomizer cchCustomizer;
+    private boolean trafficEnabled = false;
+    private TrafficOverlay trafficOverlay;
+    // the CCH graphs customized for the current traffic speed factors or the weights after applying OSM changes, they
+    // replace the CH graphs of the same profiles
+    private volatile Map<String, RoutingCHGraph> customizedCHGraphs = Collections.emptyMap();
 
     // for data reader
     private String osmFile;
@@ -366,6 +384,53 @@ public class GraphHopper {
         return this;
     }
 
+    /**
+     * Rewrites the way geometries and key-values in the order of the (sorted) edges after the import, which reduces
+     * random disk access when fetching them, e.g. for MMAP.
+     */
+    public GraphHopper setCompactStorage(boolean compactStorage) {
+        this.compactStorage = compactStorage;
+        return this;
+    }
+
+    /**
+     * Builds a read-only adjacency array when the graph is frozen, so that the edge explorer reads the edges of a
+     * node from one contiguous block. This speeds up routing without CH at the cost of additional memory.
+     */
+    public GraphHopper setCSRAdjacency(boolean csrAdjacency) {
+        this.csrAdjacency = csrAdjacency;
+        return this;
+    }
+
+    /**
+     * Stores every distinct String value of the edge key-values, like street names, only once and lets the edges
+     * refer to it. This makes the key-value storage a lot smaller. Only has an effect for a new import.
+     */
+    public GraphHopper setKVDictionary(boolean kvDictionary) {
+        this.kvDictionary = kvDictionary;
+        return this;
+    }
+
+    /**
+     * Enables the preparation of a customizable contraction hierarchy (CCH) that is used for requests with a custom
+     * model and profiles without turn costs.
+     */
+    public GraphHopper setCCHEnabled(boolean cchEnabled) {
+        ensureNotLoaded();
+        this.cchEnabled = cchEnabled;
+        return this;
+    }
+
+    /**
+     * Enables live traffic for all CH profiles without turn costs, see {@link #setTrafficSpeedFactors}. This requires
+     * the CCH preparation.
+     */
+    public GraphHopper setTrafficEnabled(boolean trafficEnabled) {
+        ensureNotLoaded();
+        this.trafficEnabled = trafficEnabled;
+        return this;
+    }
+
     /**
      * The underlying graph used in algorithms.
      *
@@ -389,10 +454,20 @@ public class GraphHopper {
 
     /**
      * @return a mapping between profile names and according CH preparations. The map will be empty before loading
-     * or import.
+     * or import. When live traffic is enabled or OSM changes were applied, the CH graphs of the node-based profiles
+     * are CCH customizations that include the current speed factors and edge weights, so all CH queries (routing,
+     * matrix, PHAST) should use this map.
      */
     public Map<String, RoutingCHGraph> getCHGraphs() {
-        return chGraphs;
+        // chGraphs has to be read first, because applyOSMChanges adds the customized graph before it removes the
+        // contracted one
+        Map<String, RoutingCHGraph> currentCHGraphs = chGraphs;
+        Map<String, RoutingCHGraph> currentCustomizedCHGraphs = customizedCHGraphs;
+        if (currentCustomizedCHGraphs.isEmpty())
+            return currentCHGraphs;
+        Map<String, RoutingCHGraph> result = new LinkedHashMap<>(currentCHGraphs);
+        result.putAll(currentCustomizedCHGraphs);
+        return result;
     }
 
     /**
@@ -515,6 +590,9 @@ public class GraphHopper {
         }
 
         sortGraph = ghConfig.getBool("graph.sort", sortGraph);
+        compactStorage = ghConfig.getBool("graph.compact_storage", compactStorage);
+        csrAdjacency = ghConfig.getBool("graph.csr_adjacency", csrAdjacency);
+        kvDictionary = ghConfig.getBool("graph.kv_dictionary", kvDictionary);
         if (ghConfig.getBool("max_speed_calculator.enabled", false))
             maxSpeedCalculator = new MaxSpeedCalculator(MaxSpeedCalculator.createLegalDefaultSpeeds());
 
@@ -553,6 +631,7 @@ public class GraphHopper {
         osmReaderConfig.setSmoothElevationAverageWindowSize(ghConfig.getDouble("graph.elevation.edge_smoothing.moving_average.window_size", osmReaderConfig.getSmoothElevationAverageWindowSize()));
         osmReaderConfig.setElevationSmoothingRamerMax(ghConfig.getInt("graph.elevation.edge_smoothing.ramer.max_elevation", osmReaderConfig.getElevationSmoothingRamerMax()));
         osmReaderConfig.setLongEdgeSamplingDistance(ghConfig.getDouble("graph.elevation.long_edge_sampling_distance", osmReaderConfig.getLongEdgeSamplingDistance()));
+        osmReaderConfig.setElevationThreads(ghConfig.getInt("graph.elevation.threads", osmReaderConfig.getElevationThreads()));
         osmReaderConfig.setElevationMaxWayPointDistance(ghConfig.getDouble("graph.elevation.way_point_max_distance", osmReaderConfig.getElevationMaxWayPointDistance()));
         routerConfig.setElevationWayPointMaxDistance(ghConfig.getDouble("graph.elevation.way_point_max_distance", routerConfig.getElevationWayPointMaxDistance()));
         ElevationProvider elevationProvider = createElevationProvider(ghConfig);
@@ -568,6 +647,10 @@ public class GraphHopper {
         // prepare CH&LM
         chPreparationHandler.init(ghConfig);
         lmPreparationHandler.init(ghConfig);
+        cchEnabled = ghConfig.getBool("prepare.cch.enabled", cchEnabled);
+        cchCacheSize = ghConfig.getInt("routing.cch.cache_size", cchCacheSize);
+        cchMaxConcurrentCustomizations = ghConfig.getInt("routing.cch.max_concurrent_customizations", cchMaxConcurrentCustomizations);
+        trafficEnabled = ghConfig.getBool("routing.traffic.enabled", trafficEnabled);
 
         // osm import
         // We do a few checks for import.osm.ignored_highways to prevent configuration errors when migrating from an older
@@ -586,6 +669,7 @@ public class GraphHopper {
         osmReaderConfig.setPreferredLanguage(ghConfig.getString("datareader.preferred_language", osmReaderConfig.getPreferredLanguage()));
         osmReaderConfig.setMaxWayPointDistance(ghConfig.getDouble(Routing.INIT_WAY_POINT_MAX_DISTANCE, osmReaderConfig.getMaxWayPointDistance()));
         osmReaderConfig.setWorkerThreads(ghConfig.getInt("datareader.worker_threads", osmReaderConfig.getWorkerThreads()));
+        osmReaderConfig.setTagParserThreads(ghConfig.getInt("datareader.tag_parser_threads", osmReaderConfig.getTagParserThreads()));
 
         // index
         preciseIndexResolution = ghConfig.getInt("index.high_resolution", preciseIndexResolution);
@@ -754,7 +838,8 @@ public class GraphHopper {
             provider
                     .setAutoRemoveTemporaryFiles(removeTempElevationFiles)
                     .setInterpolate(interpolate)
-                    .setDAType(elevationDAType);
+                    .setDAType(elevationDAType)
+                    .setCacheSize(ghConfig.getInt("graph.elevation.cache_size", 1000));
             if (!baseURL.isEmpty())
                 provider.setBaseURL(baseURL);
         }
@@ -828,6 +913,8 @@ public class GraphHopper {
                 .set3D(hasElevation())
                 .withTurnCosts(encodingManager.needsTurnCostsSupport())
                 .setSegmentSize(defaultSegmentSize)
+                .withCSRAdjacency(csrAdjacency)
+                .withKVDictionary(kvDictionary)
                 .build();
         properties = new StorableProperties(directory);
         checkProfilesConsistency();
@@ -926,6 +1013,12 @@ public class GraphHopper {
 
         if (sortGraph)
             sortGraphAlongHilbertCurve(baseGraph);
+
+        if (compactStorage) {
+            StopWatch sw = StopWatch.started();
+            baseGraph.compactGeometryAndKeyValues();
+            logger.info("compacting way geometry and key-values took: " + sw.stop().getTimeString() + ", " + baseGraph.toDetailsString());
+        }
     }
 
     protected void importOSM() {
@@ -933,21 +1026,22 @@ public class GraphHopper {
             throw new IllegalStateException("Couldn't load from existing folder: " + ghLocation
                     + " but also cannot use file for DataReader as it wasn't specified!");
 
-        List<CustomArea> customAreas = readCountries();
-        if (isEmpty(customAreasDirectory)) {
-            logger.info("No custom areas are used, custom_areas.directory not given");
-        } else {
-            logger.info("Creating custom area index, reading custom areas from: '" + customAreasDirectory + "'");
-            customAreas.addAll(readCustomAreas());
-        }
-
-        AreaIndex<CustomArea> areaIndex = new AreaIndex<>(customAreas);
+        AreaIndex<CustomArea> areaIndex = createAreaIndex();
         if (countryRuleFactory == null || countryRuleFactory.getCountryToRuleMap().isEmpty()) {
             logger.info("No country rules available");
         } else {
             logger.info("Applying rules for the following countries: {}", countryRuleFactory.getCountryToRuleMap().keySet());
         }
 
+        if (maxSpeedCalculator != null && osmReaderConfig.getTagParserThreads() > 1)
+            // the DefaultMaxSpeedParser writes into a separate storage using the edge id, which does not exist yet when
+            // the tags are parsed concurrently
+            throw new IllegalArgumentException("max_speed_calculator.enabled cannot be used with datareader.tag_parser_threads > 1");
+
+        if (osmReaderConfig.getElevationThreads() > 1 && !eleProvider.isThreadSafe())
+            throw new IllegalArgumentException("graph.elevation.threads > 1 cannot be used with the elevation provider "
+                    + eleProvider.getClass().getSimpleName() + " because it is not thread-safe");
+
         logger.info("start creating graph from " + osmFile);
         OSMReader reader = new OSMReader(baseGraph.getBaseGraph(), osmParsers, osmReaderConfig).setFile(_getOSMFile()).
                 setAreaIndex(areaIndex).
@@ -968,6 +1062,17 @@ public class GraphHopper {
             properties.put("datareader.data.date", f.format(reader.getDataDate()));
     }
 
+    private AreaIndex<CustomArea> createAreaIndex() {
+        List<CustomArea> customAreas = readCountries();
+        if (isEmpty(customAreasDirectory)) {
+            logger.info("No custom areas are used, custom_areas.directory not given");
+        } else {
+            logger.info("Creating custom area index, reading custom areas from: '" + customAreasDirectory + "'");
+            customAreas.addAll(readCustomAreas());
+        }
+        return new AreaIndex<>(customAreas);
+    }
+
     protected void createBaseGraphAndProperties() {
         baseGraph.getDirectory().create();
         baseGraph.create(100);
@@ -1150,6 +1255,8 @@ public class GraphHopper {
                     .set3D(hasElevation())
                     .withTurnCosts(encodingManager.needsTurnCostsSupport())
                     .setSegmentSize(defaultSegmentSize)
+                    .withCSRAdjacency(csrAdjacency)
+                    .withKVDictionary(kvDictionary)
                     .build();
             checkProfilesConsistency();
             baseGraph.loadExisting();
@@ -1239,11 +1346,8 @@ public class GraphHopper {
         List<CHConfig> chConfigs = new ArrayList<>();
         for (CHProfile chProfile : chProfiles) {
             Profile profile = profilesByName.get(chProfile.getProfile());
-            if (profile.hasTurnCosts()) {
-                chConfigs.add(CHConfig.edgeBased(profile.getName(), createWeighting(profile, new PMap())));
-            } else {
-                chConfigs.add(CHConfig.nodeBased(profile.getName(), createWeighting(profile, new PMap())));
-            }
+            chConfigs.add(new CHConfig(profile.getName(), createWeighting(profile, new PMap()), profile.hasTurnCosts(),
+                    getFileName("ch", profile.getName())));
         }
         return chConfigs;
     }
@@ -1264,7 +1368,7 @@ public class GraphHopper {
             // Running the preparation without turn costs is also useful to allow e.g. changing the u_turn_costs per
             // request (we have to use the minimum weight settings (= no turn costs) for the preparation)
             Weighting weighting = createWeighting(profile, new PMap(), true);
-            lmConfigs.add(new LMConfig(profile.getName(), weighting));
+            lmConfigs.add(new LMConfig(profile.getName(), weighting, getFileName("lm", profile.getName())));
         }
         return lmConfigs;
     }
@@ -1296,6 +1400,12 @@ public class GraphHopper {
 
         if (chPreparationHandler.isEnabled())
             loadOrPrepareCH(closeEarly);
+
+        if (cchEnabled)
+            loadOrPrepareCCH();
+
+        if (trafficEnabled)
+            initTraffic();
     }
 
     protected void importPublicTransit() {
@@ -1343,14 +1453,14 @@ public class GraphHopper {
             throw new IllegalStateException("Location index not initialized");
 
         return doCreateRouter(baseGraph, encodingManager, locationIndex, profilesByName, pathBuilderFactory,
-                trMap, routerConfig, createWeightingFactory(), chGraphs, landmarks);
+                trMap, routerConfig, createWeightingFactory(), getCHGraphs(), landmarks);
     }
 
     protected Router doCreateRouter(BaseGraph baseGraph, EncodingManager encodingManager, LocationIndex locationIndex, Map<String, Profile> profilesByName,
                                     PathDetailsBuilderFactory pathBuilderFactory, TranslationMap trMap, RouterConfig routerConfig,
                                     WeightingFactory weightingFactory, Map<String, RoutingCHGraph> chGraphs, Map<String, LandmarkStorage> landmarks) {
         return new Router(baseGraph, encodingManager, locationIndex, profilesByName, pathBuilderFactory,
-                trMap, routerConfig, weightingFactory, chGraphs, landmarks
+                trMap, routerConfig, weightingFactory, chGraphs, landmarks, cchCustomizer
         );
     }
 
@@ -1415,6 +1525,32 @@ public class GraphHopper {
         properties.put("graph.profiles.ch." + profile + ".version", version);
     }
 
+    /**
+     * @return the file name of the CH or LM data of the given profile. After applying OSM changes the updated data is
+     * stored with a different file name, see {@link #nextFileName}.
+     */
+    private String getFileName(String type, String profile) {
+        String fileName = properties.get("graph.profiles." + type + "." + profile + ".file");
+        return fileName.isEmpty() ? profile : fileName;
+    }
+
+    private void setFileName(String type, String profile, String fileName) {
+        properties.put("graph.profiles." + type + "." + profile + ".file", fileName);
+    }
+
+    private static String nextFileName(String profile, String fileName) {
+        // profile names cannot contain a dot, so the file names cannot collide with those of another profile
+        return fileName.equals(profile) ? profile + ".1" : profile;
+    }
+
+    /**
+     * @return true if the CH graph of the given profile is not contracted, but customized via the CCH, because its
+     * weights changed after the contraction, see {@link #applyOSMChanges}
+     */
+    private boolean isCHCustomized(String profile) {
+        return properties.get("graph.profiles.ch." + profile + ".customized").equals("true");
+    }
+
     private String getLMProfileVersion(String profile) {
         return properties.get("graph.profiles.lm." + profile + ".version");
     }
@@ -1431,6 +1567,14 @@ public class GraphHopper {
 
         // we load ch graphs that already exist and prepare the other ones
         List<CHConfig> chConfigs = createCHConfigs(chPreparationHandler.getCHProfiles());
+        for (CHConfig config : chConfigs)
+            if (isCHCustomized(config.getName()) && !cchEnabled) {
+                // the CH graph was removed when it was customized via the CCH, so we need to contract it again
+                ensureWriteAccess();
+                properties.remove("graph.profiles.ch." + config.getName() + ".customized");
+            }
+        // the CH graphs that are customized are created in loadOrPrepareCCH
+        chConfigs = chConfigs.stream().filter(c -> !isCHCustomized(c.getName())).collect(Collectors.toList());
         Map<String, RoutingCHGraph> loaded = chPreparationHandler.load(baseGraph.getBaseGraph(), chConfigs);
         List<CHConfig> configsToPrepare = chConfigs.stream().filter(c -> !loaded.containsKey(c.getName())).collect(Collectors.toList());
         Map<String, PrepareContractionHierarchies.Result> prepared = prepareCH(closeEarly, configsToPrepare);
@@ -1438,6 +1582,8 @@ public class GraphHopper {
         // we map all profile names for which there is CH support to the according CH graphs
         chGraphs = new LinkedHashMap<>();
         for (CHProfile profile : chPreparationHandler.getCHProfiles()) {
+            if (isCHCustomized(profile.getProfile()))
+                continue;
             if (loaded.containsKey(profile.getProfile()) && prepared.containsKey(profile.getProfile()))
                 throw new IllegalStateException("CH graph should be either loaded or prepared, but not both: " + profile.getProfile());
             else if (prepared.containsKey(profile.getProfile())) {
@@ -1451,6 +1597,263 @@ public class GraphHopper {
         }
     }
 
+    protected void loadOrPrepareCCH() {
+        if (!baseGraph.isFrozen())
+            baseGraph.freeze();
+        PrepareCCH prepare = PrepareCCH.fromGraph(baseGraph.getBaseGraph());
+        if (!prepare.loadExisting()) {
+            ensureWriteAccess();
+            prepare.doWork();
+            prepare.getCHStorage().flush();
+        }
+        cchCustomizer = new CCHCustomizer(baseGraph.getBaseGraph(), prepare.getCHStorage(), cchCacheSize, cchMaxConcurrentCustomizations);
+        // with live traffic all node-based CH profiles are customized in initTraffic anyway
+        if (!trafficEnabled) {
+            Map<String, RoutingCHGraph> graphs = new LinkedHashMap<>();
+            for (CHProfile chProfile : chPreparationHandler.getCHProfiles())
+                if (isCHCustomized(chProfile.getProfile()))
+                    graphs.put(chProfile.getProfile(), cchCustomizer.customize(createWeighting(profilesByName.get(chProfile.getProfile()), new PMap())));
+            customizedCHGraphs = graphs;
+        }
+    }
+
+    protected void initTraffic() {
+        if (cchCustomizer == null)
+            throw new IllegalArgumentException("Live traffic requires the CCH preparation, set prepare.cch.enabled: true");
+        trafficOverlay = new TrafficOverlay(baseGraph.getEdges());
+        Map<String, RoutingCHGraph> graphs = new LinkedHashMap<>();
+        for (CHProfile chProfile : chPreparationHandler.getCHProfiles()) {
+            Profile profile = profilesByName.get(chProfile.getProfile());
+            if (profile.hasTurnCosts())
+                continue;
+            graphs.put(profile.getName(), cchCustomizer.customize(createCustomizationWeighting(profile)));
+        }
+        customizedCHGraphs = graphs;
+    }
+
+    /**
+     * Replaces the live traffic speed factors of all edges, edges that are not contained in the given map get the
+     * speed factor 1. The routing graphs of the affected profiles are updated incrementally and replaced atomically,
+     * so requests that are already running are not affected. The CH graphs alternate between two storages, so a
+     * request must not run longer than the time between two updates.
+     *
+     * @return the number of edges whose speed factor changed
+     */
+    public synchronized int setTrafficSpeedFactors(IntDoubleMap speedFactors) {
+        if (trafficOverlay == null)
+            throw new IllegalStateException("Live traffic is not enabled, see routing.traffic.enabled");
+        StopWatch sw = new StopWatch().start();
+        IntArrayList changedEdges = trafficOverlay.setSpeedFactors(speedFactors);
+        if (changedEdges.isEmpty())
+            return 0;
+        TrafficOverlay.Snapshot snapshot = trafficOverlay.getSnapshot();
+        Map<String, RoutingCHGraph> graphs = new LinkedHashMap<>();
+        for (Map.Entry<String, RoutingCHGraph> entry : customizedCHGraphs.entrySet()) {
+            Weighting weighting = new TrafficWeighting(createWeighting(profilesByName.get(entry.getKey()), new PMap()), snapshot);
+            graphs.put(entry.getKey(), cchCustomizer.recustomize(entry.getValue(), weighting, changedEdges));
+        }
+        customizedCHGraphs = graphs;
+        logger.info("Updated traffic speed factors of " + changedEdges.size() + " edges for profiles " + graphs.keySet()
+                + " in " + sw.stop().getSeconds() + "s");
+        return changedEdges.size();
+    }
+
+    public TrafficOverlay getTrafficOverlay() {
+        return trafficOverlay;
+    }
+
+    private Weighting createCustomizationWeighting(Profile profile) {
+        Weighting weighting = createWeighting(profile, new PMap());
+        return trafficOverlay == null ? weighting : new TrafficWeighting(weighting, trafficOverlay.getSnapshot());
+    }
+
+    /**
+     * Applies the tag changes of an OSM change file (.osc or .osc.gz) to the existing graph without a full re-import.
+     * The ways of the change file are matched to the existing edges via the osm_way_id encoded value, which therefore
+     * has to be enabled in graph.encoded_values. The edge flags and key-values of the changed ways are parsed again and
+     * the preparations of the profiles whose weights changed are updated:
+     * <ul>
+     * <li>the subnetwork flags are calculated again, edges that are connected again lose their flag</li>
+     * <li>node-based CH profiles are customized via the CCH instead of being contracted again, if prepare.cch.enabled.
+     * Existing customizations only update the shortcuts that depend on the changed edges. Edge-based CH profiles and
+     * all CH profiles without CCH are contracted again.</li>
+     * <li>the landmark weights are copied and only the landmarks whose weights are no longer valid lower bounds are
+     * explored again, unless the changed edges connect different subnetworks</li>
+     * </ul>
+     * The new CH and LM data is stored with new file names and replaces the old data atomically. The old data is not
+     * closed but released by the garbage collector, so routing requests can keep running during the update. However,
+     * they might see the new edge flags before the preparations are replaced and return suboptimal routes then.
+     * <p>
+     * Only tag changes of existing ways are considered, new ways, geometry changes, node tags and turn restrictions
+     * still require a full import, see {@link OSMReader#readChanges}.
+     *
+     * @return the number of changed edges
+     */
+    public synchronized int applyOSMChanges(File oscFile) {
+        if (!fullyLoaded)
+            throw new IllegalStateException("Do a successful call to load or importOrLoad before applying changes");
+        if (!encodingManager.hasEncodedValue(OSMWayID.KEY))
+            throw new IllegalArgumentException("Applying OSM changes requires the encoded value " + OSMWayID.KEY
+                    + ", add it to graph.encoded_values and re-import the graph");
+        if (maxSpeedCalculator != null)
+            throw new IllegalArgumentException("Applying OSM changes is not supported with max_speed_calculator.enabled");
+        ensureWriteAccess();
+        StopWatch sw = StopWatch.started();
+
+        if (osmParsers == null) {
+            // the graph was loaded from disk, so we need to create the parsers for the stored encoded values
+            Map<String, ImportUnit> activeImportUnits = new LinkedHashMap<>();
+            for (EncodedValue ev : encodingManager.getEncodedValues()) {
+                ImportUnit importUnit = importRegistry.createImportUnit(ev.getName());
+                if (importUnit != null)
+                    activeImportUnits.put(ev.getName(), importUnit);
+            }
+            osmParsers = buildOSMParsers(parseEncodedValueString(encodedValuesString), activeImportUnits,
+                    getRestrictionVehicleTypesByProfile(profilesByName.values()), osmReaderConfig.getIgnoredHighways());
+        }
+        OSMReader reader = new OSMReader(baseGraph.getBaseGraph(), osmParsers, osmReaderConfig).
+                setAreaIndex(createAreaIndex()).
+                setCountryRuleFactory(countryRuleFactory);
+        OSMReader.EdgeChanges changes;
+        try {
+            changes = reader.readChanges(oscFile, encodingManager.getIntEncodedValue(OSMWayID.KEY));
+        } catch (IOException | XMLStreamException ex) {
+            throw new RuntimeException("Cannot read change file " + oscFile, ex);
+        }
+        if (changes.size() == 0)
+            return 0;
+
+        // the encoded values that are calculated after the import are not touched by the tag parsers, so we keep them
+        List<EncodedValue> keptEncodedValues = new ArrayList<>();
+        for (EncodedValue ev : encodingManager.getEncodedValues())
+            if (ev.getName().endsWith(Subnetwork.key("")) || ev.getName().equals(UrbanDensity.KEY))
+                keptEncodedValues.add(ev);
+        List<Weighting> weightings = profilesByName.values().stream().map(profile -> createWeighting(profile, new PMap())).toList();
+        double[] oldWeights = new double[2 * changes.size() * weightings.size()];
+        for (int i = 0; i < changes.size(); i++) {
+            EdgeIteratorState edge = baseGraph.getEdgeIteratorState(changes.getEdge(i), Integer.MIN_VALUE);
+            copyEncodedValues(keptEncodedValues, edge.getFlags(), changes.getFlags(i));
+            for (int w = 0; w < weightings.size(); w++) {
+                oldWeights[2 * (i * weightings.size() + w)] = weightings.get(w).calcEdgeWeight(edge, false);
+                oldWeights[2 * (i * weightings.size() + w) + 1] = weightings.get(w).calcEdgeWeight(edge, true);
+            }
+        }
+        reader.applyChanges(changes);
+
+        Set<String> affectedProfiles = new LinkedHashSet<>();
+        List<Profile> profiles = new ArrayList<>(profilesByName.values());
+        for (int i = 0; i < changes.size(); i++) {
+            EdgeIteratorState edge = baseGraph.getEdgeIteratorState(changes.getEdge(i), Integer.MIN_VALUE);
+            for (int w = 0; w < weightings.size(); w++) {
+                if (Double.compare(oldWeights[2 * (i * weightings.size() + w)], weightings.get(w).calcEdgeWeight(edge, false)) != 0
+                        || Double.compare(oldWeights[2 * (i * weightings.size() + w) + 1], weightings.get(w).calcEdgeWeight(edge, true)) != 0)
+                    affectedProfiles.add(profiles.get(w).getName());
+            }
+        }
+        if (!affectedProfiles.isEmpty())
+            updatePreparations(affectedProfiles, changes.getEdges());
+        flush();
+        logger.info("Applied " + changes.size() + " edge changes from " + oscFile + ", re-prepared profiles: "
+                + affectedProfiles + ", took: " + sw.stop().getSeconds() + "s");
+        return changes.size();
+    }
+
+    private static void copyEncodedValues(List<EncodedValue> encodedValues, IntsRef from, IntsRef to) {
+        IntsRefEdgeIntAccess fromAccess = new IntsRefEdgeIntAccess(from);
+        IntsRefEdgeIntAccess toAccess = new IntsRefEdgeIntAccess(to);
+        for (EncodedValue ev : encodedValues) {
+            for (boolean reverse : ev.isStoreTwoDirections() ? new boolean[]{false, true} : new boolean[]{false}) {
+                if (ev instanceof BooleanEncodedValue enc)
+                    enc.setBool(reverse, 0, toAccess, enc.getBool(reverse, 0, fromAccess));
+                else if (ev instanceof IntEncodedValue enc)
+                    enc.setInt(reverse, 0, toAccess, enc.getInt(reverse, 0, fromAccess));
+            }
+        }
+    }
+
+    private void updatePreparations(Set<String> affectedProfiles, IntArrayList changedEdges) {
+        List<Profile> profiles = affectedProfiles.stream().map(profilesByName::get).toList();
+        PrepareRoutingSubnetworks preparation = new PrepareRoutingSubnetworks(baseGraph.getBaseGraph(), buildSubnetworkRemovalJobs(profiles));
+        preparation.setMinNetworkSize(minNetworkSize);
+        preparation.setThreads(subnetworksThreads);
+        preparation.doWork();
+        Map<String, IntArrayList> subnetworkChanges = new HashMap<>();
+        for (int i = 0; i < profiles.size(); i++)
+            subnetworkChanges.put(profiles.get(i).getName(), preparation.getChangedEdges().get(i));
+
+        // the storages of the replaced CH and LM data, they are detached from the directory after the swap
+        List<String> replacedStorages = new ArrayList<>();
+        Map<String, RoutingCHGraph> newCHGraphs = new LinkedHashMap<>(chGraphs);
+        Map<String, RoutingCHGraph> newCustomizedCHGraphs = new LinkedHashMap<>(customizedCHGraphs);
+        List<CHConfig> configsToContract = new ArrayList<>();
+        for (CHConfig config : createCHConfigs(chPreparationHandler.getCHProfiles())) {
+            String name = config.getName();
+            if (!affectedProfiles.contains(name))
+                continue;
+            if (cchCustomizer != null && !config.isEdgeBased()) {
+                Weighting weighting = createCustomizationWeighting(profilesByName.get(name));
+                RoutingCHGraph customized = customizedCHGraphs.get(name);
+                newCustomizedCHGraphs.put(name, customized == null
+                        ? cchCustomizer.customize(weighting)
+                        : cchCustomizer.recustomize(customized, weighting, changedEdges));
+                if (newCHGraphs.remove(name) != null) {
+                    replacedStorages.add("nodes_ch_" + config.toFileName());
+                    replacedStorages.add("shortcuts_" + config.toFileName());
+                }
+                properties.put("graph.profiles.ch." + name + ".customized", true);
+            } else {
+                configsToContract.add(new CHConfig(name, config.getWeighting(), config.isEdgeBased(), nextFileName(name, config.toFileName())));
+                replacedStorages.add("nodes_ch_" + config.toFileName());
+                replacedStorages.add("shortcuts_" + config.toFileName());
+            }
+        }
+        if (!configsToContract.isEmpty()) {
+            Map<String, PrepareContractionHierarchies.Result> prepared = prepareCH(false, configsToContract);
+            for (CHConfig config : configsToContract) {
+                PrepareContractionHierarchies.Result res = prepared.get(config.getName());
+                newCHGraphs.put(config.getName(), RoutingCHGraphImpl.fromGraph(baseGraph.getBaseGraph(), res.getCHStorage(), res.getCHConfig()));
+                setFileName("ch", config.getName(), config.toFileName());
+            }
+        }
+
+        Map<String, LandmarkStorage> updatedLandmarks = new HashMap<>();
+        List<LMConfig> configsToPrepare = new ArrayList<>();
+        for (LMConfig config : createLMConfigs(lmPreparationHandler.getLMProfiles())) {
+            String name = config.getName();
+            if (!affectedProfiles.contains(name))
+                continue;
+            LMConfig newConfig = new LMConfig(name, config.getWeighting(), nextFileName(name, config.toFileName()));
+            // edges that are no longer marked as subnetwork edges are accessible for the landmarks again
+            IntArrayList edges = new IntArrayList(changedEdges);
+            edges.addAll(subnetworkChanges.get(name));
+            LandmarkStorage updated = lmPreparationHandler.update(landmarks.get(name), newConfig, baseGraph.getBaseGraph(), encodingManager, edges);
+            if (updated == null)
+                configsToPrepare.add(newConfig);
+            else
+                updatedLandmarks.put(name, updated);
+            replacedStorages.add("landmarks_" + config.toFileName());
+            replacedStorages.add("landmarks_subnetwork_" + config.toFileName());
+        }
+        for (PrepareLandmarks prepared : prepareLM(false, configsToPrepare))
+            updatedLandmarks.put(prepared.getLMConfig().getName(), prepared.getLandmarkStorage());
+        Map<String, LandmarkStorage> newLandmarks = new LinkedHashMap<>(landmarks);
+        for (LMProfile lmp : lmPreparationHandler.getLMProfiles()) {
+            String prepProfile = lmp.usesOtherPreparation() ? lmp.getPreparationProfile() : lmp.getProfile();
+            if (updatedLandmarks.containsKey(prepProfile))
+                newLandmarks.put(lmp.getProfile(), updatedLandmarks.get(prepProfile));
+        }
+        updatedLandmarks.forEach((name, lms) -> setFileName("lm", name, lms.getLMConfig().toFileName()));
+
+        // the customized graphs have to be replaced first, see getCHGraphs
+        if (cchCustomizer != null)
+            cchCustomizer.clearCache();
+        customizedCHGraphs = newCustomizedCHGraphs;
+        chGraphs = newCHGraphs;
+        landmarks = newLandmarks;
+        // requests that are still running might use the old data, so we must not close it
+        replacedStorages.forEach(baseGraph.getDirectory()::detach);
+    }
+
     protected Map<String, PrepareContractionHierarchies.Result> prepareCH(boolean closeEarly, List<CHConfig> configsToPrepare) {
         if (!configsToPrepare.isEmpty())
             ensureWriteAccess();
@@ -1504,16 +1907,16 @@ public class GraphHopper {
      * Internal method to clean up the graph.
      */
     protected void cleanUp() {
-        PrepareRoutingSubnetworks preparation = new PrepareRoutingSubnetworks(baseGraph.getBaseGraph(), buildSubnetworkRemovalJobs());
+        PrepareRoutingSubnetworks preparation = new PrepareRoutingSubnetworks(baseGraph.getBaseGraph(), buildSubnetworkRemovalJobs(profilesByName.values()));
         preparation.setMinNetworkSize(minNetworkSize);
         preparation.setThreads(subnetworksThreads);
         preparation.doWork();
         logger.info("nodes: " + Helper.nf(baseGraph.getNodes()) + ", edges: " + Helper.nf(baseGraph.getEdges()));
     }
 
-    private List<PrepareJob> buildSubnetworkRemovalJobs() {
+    private List<PrepareJob> buildSubnetworkRemovalJobs(Collection<Profile> profiles) {
         List<PrepareJob> jobs = new ArrayList<>();
-        for (Profile profile : profilesByName.values()) {
+        for (Profile profile : profiles) {
             // if turn costs are enabled use u-turn costs of zero as we only want to make sure the graph is fully connected assuming finite u-turn costs
             Weighting weighting = createWeighting(profile, new PMap().putObject(Parameters.Routing.U_TURN_COSTS, 0));
             jobs.add(new PrepareJob(encodingManager.getBooleanEncodedValue(Subnetwork.key(profile.getName())), weighting));
@@ -1542,6 +1945,8 @@ public class GraphHopper {
 
         chGraphs.values().forEach(RoutingCHGraph::close);
         landmarks.values().forEach(LandmarkStorage::close);
+        if (cchCustomizer != null)
+            cchCustomizer.close();
 
         if (locationIndex != null)
             locationIndex.close();
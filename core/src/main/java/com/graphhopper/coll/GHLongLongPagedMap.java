@@ -0,0 +1,268 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.coll;
+
+import com.carrotsearch.hppc.LongArrayList;
+import com.graphhopper.storage.DataAccess;
+import com.graphhopper.storage.Directory;
+import com.graphhopper.util.Helper;
+
+import java.util.Arrays;
+
+/**
+ * A map from long keys to values with 1-8 bytes that is optimized for dense keys like OSM node ids. The
+ * key range is divided into pages of 512 consecutive keys. Every page that contains at least one key is stored in a
+ * {@link DataAccess} as a bitmap of the contained keys followed by the values of these keys in ascending key order, so
+ * there is no per-entry overhead apart from one bit for every possible key of a page. A page grows by doubling its
+ * capacity and freed pages are re-used for other pages of the same capacity.
+ * <p>
+ * Because the data is kept in a DataAccess it can be stored off-heap or spill to disk e.g. via MMAP, and since keys that
+ * are close to each other are stored close to each other accessing the keys in sorted order, as it is the case when
+ * reading the nodes of a PBF file, is very cache and page friendly. Only the page index is kept on the heap, which needs
+ * 8 bytes per page. The rare negative keys and keys above 2^40 are stored separately in a {@link GHLongLongBTree}.
+ * Delete is not supported.
+ */
+public class GHLongLongPagedMap implements LongLongMap {
+    private static final int PAGE_BITS = 9;
+    private static final int PAGE_KEYS = 1 << PAGE_BITS;
+    private static final int BITMAP_INTS = PAGE_KEYS / 32;
+    // capacity | bitmap | values
+    private static final int BITMAP_OFFSET = 4;
+    private static final int VALUES_OFFSET = BITMAP_OFFSET + BITMAP_INTS * 4;
+    private static final int MIN_CAPACITY = 8;
+    private static final int CAPACITY_CLASSES = Integer.numberOfTrailingZeros(PAGE_KEYS / MIN_CAPACITY) + 1;
+    // number of page pointers per chunk of the page index
+    private static final int CHUNK_BITS = 15;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    // larger keys are stored in a b-tree to limit the size of the page index
+    private static final long MAX_PAGED_KEY = (1L << 40) - 1;
+
+    private final Directory dir;
+    private final String name;
+    private final int bytesPerValue;
+    private final long emptyValue;
+    private final long maxValue;
+    private final byte[] valueBytes = new byte[8];
+    private final byte[] moveBuffer;
+    private final LongArrayList[] freePages = new LongArrayList[CAPACITY_CLASSES];
+    private final GHLongLongBTree otherKeys;
+    private DataAccess da;
+    private long[][] pageIndex;
+    private long bytePointer;
+    private long size;
+
+    /**
+     * @param name the name of the DataAccess that is created in the given directory
+     */
+    public GHLongLongPagedMap(Directory dir, String name, int bytesPerValue, long emptyValue) {
+        if (bytesPerValue < 1 || bytesPerValue > 8)
+            throw new IllegalArgumentException("Values can have 1-8 bytes but requested was " + bytesPerValue);
+        this.dir = dir;
+        this.name = name;
+        this.bytesPerValue = bytesPerValue;
+        this.emptyValue = emptyValue;
+        // reserve one bit for negative values
+        this.maxValue = (1L << (bytesPerValue * 8 - 1)) - 1;
+        this.moveBuffer = new byte[PAGE_KEYS * bytesPerValue];
+        // always use 8 bytes here as the b-tree does not restore the sign of 1 byte values
+        this.otherKeys = new GHLongLongBTree(200, 8, emptyValue);
+        clear();
+    }
+
+    @Override
+    public long put(long key, long value) {
+        if (value > maxValue || value < -maxValue - 1)
+            throw new IllegalArgumentException("Value " + value + " exceeds allowed range " + maxValue
+                    + ". Increase bytesPerValue (" + bytesPerValue + ")");
+        if (value == emptyValue)
+            throw new IllegalArgumentException("Value cannot be the 'empty value' " + emptyValue);
+        if (key < 0 || key > MAX_PAGED_KEY)
+            return otherKeys.put(key, value);
+
+        long page = key >>> PAGE_BITS;
+        int slot = (int) (key & (PAGE_KEYS - 1));
+        long pointer = getPagePointer(page);
+        if (pointer == 0) {
+            pointer = allocatePage(MIN_CAPACITY);
+            setPagePointer(page, pointer);
+        }
+        long bitmapPointer = pointer + BITMAP_OFFSET + 4L * (slot >>> 5);
+        int word = da.getInt(bitmapPointer);
+        int bit = 1 << (slot & 31);
+        int rank = rank(pointer, slot, word);
+        if ((word & bit) != 0) {
+            long valuePointer = pointer + VALUES_OFFSET + (long) rank * bytesPerValue;
+            long oldValue = readValue(valuePointer);
+            writeValue(valuePointer, value);
+            return oldValue;
+        }
+
+        int count = rank;
+        for (int i = (slot >>> 5); i < BITMAP_INTS; i++)
+            count += Integer.bitCount(da.getInt(pointer + BITMAP_OFFSET + 4L * i) & (i == (slot >>> 5) ? ~(bit - 1) : -1));
+        int capacity = da.getInt(pointer);
+        if (count == capacity) {
+            pointer = growPage(pointer, capacity, count);
+            setPagePointer(page, pointer);
+            bitmapPointer = pointer + BITMAP_OFFSET + 4L * (slot >>> 5);
+        }
+        long valuePointer = pointer + VALUES_OFFSET + (long) rank * bytesPerValue;
+        moveBytes(valuePointer, valuePointer + bytesPerValue, (count - rank) * bytesPerValue);
+        writeValue(valuePointer, value);
+        da.setInt(bitmapPointer, word | bit);
+        size++;
+        return emptyValue;
+    }
+
+    @Override
+    public long get(long key) {
+        if (key < 0 || key > MAX_PAGED_KEY)
+            return otherKeys.get(key);
+
+        long pointer = getPagePointer(key >>> PAGE_BITS);
+        if (pointer == 0)
+            return emptyValue;
+        int slot = (int) (key & (PAGE_KEYS - 1));
+        int word = da.getInt(pointer + BITMAP_OFFSET + 4L * (slot >>> 5));
+        if ((word & (1 << (slot & 31))) == 0)
+            return emptyValue;
+        return readValue(pointer + VALUES_OFFSET + (long) rank(pointer, slot, word) * bytesPerValue);
+    }
+
+    /**
+     * @return the number of keys in the page that are smaller than the given slot
+     */
+    private int rank(long pointer, int slot, int word) {
+        int wordIndex = slot >>> 5;
+        int rank = Integer.bitCount(word & ((1 << (slot & 31)) - 1));
+        for (int i = 0; i < wordIndex; i++)
+            rank += Integer.bitCount(da.getInt(pointer + BITMAP_OFFSET + 4L * i));
+        return rank;
+    }
+
+    private long getPagePointer(long page) {
+        long chunk = page >>> CHUNK_BITS;
+        if (chunk >= pageIndex.length || pageIndex[(int) chunk] == null)
+            return 0;
+        return pageIndex[(int) chunk][(int) (page & (CHUNK_SIZE - 1))];
+    }
+
+    private void setPagePointer(long page, long pointer) {
+        int chunk = Math.toIntExact(page >>> CHUNK_BITS);
+        if (chunk >= pageIndex.length)
+            pageIndex = Arrays.copyOf(pageIndex, Math.max(chunk + 1, pageIndex.length * 3 / 2));
+        if (pageIndex[chunk] == null)
+            pageIndex[chunk] = new long[CHUNK_SIZE];
+        pageIndex[chunk][(int) (page & (CHUNK_SIZE - 1))] = pointer;
+    }
+
+    private long allocatePage(int capacity) {
+        LongArrayList free = freePages[capacityClass(capacity)];
+        long pointer;
+        if (free.isEmpty()) {
+            if (da == null)
+                da = dir.create(name).create(1000);
+            pointer = bytePointer;
+            bytePointer += VALUES_OFFSET + (long) capacity * bytesPerValue;
+            da.ensureCapacity(bytePointer);
+        } else {
+            pointer = free.remove(free.size() - 1);
+        }
+        da.setInt(pointer, capacity);
+        for (int i = 0; i < BITMAP_INTS; i++)
+            da.setInt(pointer + BITMAP_OFFSET + 4L * i, 0);
+        return pointer;
+    }
+
+    private long growPage(long pointer, int capacity, int count) {
+        long newPointer = allocatePage(capacity * 2);
+        for (int i = 0; i < BITMAP_INTS; i++)
+            da.setInt(newPointer + BITMAP_OFFSET + 4L * i, da.getInt(pointer + BITMAP_OFFSET + 4L * i));
+        moveBytes(pointer + VALUES_OFFSET, newPointer + VALUES_OFFSET, count * bytesPerValue);
+        freePages[capacityClass(capacity)].add(pointer);
+        return newPointer;
+    }
+
+    private static int capacityClass(int capacity) {
+        return Integer.numberOfTrailingZeros(capacity / MIN_CAPACITY);
+    }
+
+    private void moveBytes(long from, long to, int length) {
+        if (length == 0)
+            return;
+        da.getBytes(from, moveBuffer, length);
+        da.setBytes(to, moveBuffer, length);
+    }
+
+    private long readValue(long pointer) {
+        da.getBytes(pointer, valueBytes, bytesPerValue);
+        long value = 0;
+        for (int i = bytesPerValue - 1; i >= 0; i--)
+            value = (value << 8) | (valueBytes[i] & 0xFF);
+        // sign extension
+        int shift = 64 - 8 * bytesPerValue;
+        return value << shift >> shift;
+    }
+
+    private void writeValue(long pointer, long value) {
+        for (int i = 0; i < bytesPerValue; i++)
+            valueBytes[i] = (byte) (value >>> (8 * i));
+        da.setBytes(pointer, valueBytes, bytesPerValue);
+    }
+
+    @Override
+    public long getSize() {
+        return size + otherKeys.getSize();
+    }
+
+    @Override
+    public long getMaxValue() {
+        return maxValue;
+    }
+
+    @Override
+    public void optimize() {
+    }
+
+    @Override
+    public int getMemoryUsage() {
+        long pageIndexBytes = 0;
+        for (long[] chunk : pageIndex)
+            if (chunk != null)
+                pageIndexBytes += 8L * CHUNK_SIZE;
+        long daBytes = da == null ? 0 : da.getCapacity();
+        return Math.round((daBytes + pageIndexBytes) / Helper.MB) + otherKeys.getMemoryUsage();
+    }
+
+    /**
+     * Removes all entries and releases the underlying DataAccess. It is created again when needed.
+     */
+    @Override
+    public void clear() {
+        if (da != null)
+            dir.remove(name);
+        da = null;
+        pageIndex = new long[0][];
+        for (int i = 0; i < freePages.length; i++)
+            freePages[i] = new LongArrayList();
+        // zero is used for missing pages
+        bytePointer = 4;
+        size = 0;
+        otherKeys.clear();
+    }
+}
@@ -33,12 +33,14 @@ import java.util.Arrays;
  * <p>
  * This class is very similar to {@link IntFloatBinaryHeap}, but compared to this has an efficient update operation.
  * In turn it is (much) less memory-efficient when the heap is used for a small number of elements from a large range.
+ * <p>
+ * The values are stored as doubles, because some users compare sums of many small values, e.g. the map matching.
  */
 public class MinHeapWithUpdate {
     private static final int NOT_PRESENT = -1;
     private final int[] tree;
     private final int[] positions;
-    private final float[] vals;
+    private final double[] vals;
     private final int max;
     private int size;
 
@@ -52,8 +54,8 @@ public class MinHeapWithUpdate {
         tree = new int[elements + 1];
         positions = new int[elements + 1];
         Arrays.fill(positions, NOT_PRESENT);
-        vals = new float[elements + 1];
-        vals[0] = Float.NEGATIVE_INFINITY;
+        vals = new double[elements + 1];
+        vals[0] = Double.NEGATIVE_INFINITY;
         this.max = elements;
     }
 
@@ -70,7 +72,7 @@ public class MinHeapWithUpdate {
      * to push the same id twice (unless it was polled/removed before). To update the value of an id contained in the
      * heap use the {@link #update} method.
      */
-    public void push(int id, float value) {
+    public void push(int id, double value) {
         checkIdInRange(id);
         if (size == max)
             throw new IllegalStateException("Cannot push anymore, the heap is already full. size: " + size);
@@ -96,12 +98,12 @@ public class MinHeapWithUpdate {
      * Its illegal to update elements that are not contained in the heap. Use {@link #contains} to check the existence
      * of an id.
      */
-    public void update(int id, float value) {
+    public void update(int id, double value) {
         checkIdInRange(id);
         int index = positions[id];
         if (index < 0)
             throw new IllegalStateException("The heap does not contain: " + id + ". Use the contains method to check this before calling update");
-        float prev = vals[index];
+        double prev = vals[index];
         vals[index] = value;
         if (value > prev)
             percolateDown(index);
@@ -119,7 +121,7 @@ public class MinHeapWithUpdate {
     /**
      * @return the value of the next element to be polled
      */
-    public float peekValue() {
+    public double peekValue() {
         return vals[1];
     }
 
@@ -148,7 +150,7 @@ public class MinHeapWithUpdate {
         if (index == 1)
             return;
         final int el = tree[index];
-        final float val = vals[index];
+        final double val = vals[index];
         // the finish condition (index==0) is covered here automatically because we set vals[0]=-inf
         while (val < vals[index >> 1]) {
             int parent = index >> 1;
@@ -168,7 +170,7 @@ public class MinHeapWithUpdate {
         assert index > 0;
         assert index <= size;
         final int el = tree[index];
-        final float val = vals[index];
+        final double val = vals[index];
         while (index << 1 <= size) {
             int child = index << 1;
             if (child != size && vals[child + 1] < vals[child])
@@ -0,0 +1,323 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.isochrone.algorithm;
+
+import com.carrotsearch.hppc.BitSet;
+import com.carrotsearch.hppc.DoubleArrayList;
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.IntIntHashMap;
+import com.carrotsearch.hppc.LongArrayList;
+import com.graphhopper.apache.commons.collections.IntFloatBinaryHeap;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.util.EdgeExplorer;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.GHUtility;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+import static com.graphhopper.isochrone.algorithm.ShortestPathTree.ExploreType.*;
+
+/**
+ * Computes the shortest path trees of many origins, like {@link ShortestPathTree} does for a single one. The origins
+ * are processed concurrently on a {@link ForkJoinPool}. A {@link Tree} stores the search state in lists that only
+ * grow with the number of visited entries, and maps the nodes (or edge keys for edge-based traversal) to their index
+ * in these lists. The workers re-use the trees for their next origin, so a batch never allocates more trees than there
+ * are threads.
+ * <p>
+ * Compared to {@link ShortestPathTree} entries exceeding the limit are not expanded any further, which yields the
+ * same set of reachable entries without the need for a second queue.
+ */
+public class ShortestPathTreeBatch {
+
+    public interface TreeConsumer {
+        /**
+         * Called once per origin after its search finished. This method is called concurrently from different threads
+         * and the given tree is re-used for the next origin of the same thread, so it must not be accessed after this
+         * method returned.
+         */
+        void accept(int originIndex, Tree tree);
+    }
+
+    private final Graph graph;
+    private final Weighting weighting;
+    private final TraversalMode traversalMode;
+    private final boolean reverseFlow;
+    private ShortestPathTree.ExploreType exploreType = TIME;
+    private double limit = -1;
+    private int threads = 1;
+    private ForkJoinPool pool;
+
+    public ShortestPathTreeBatch(Graph graph, Weighting weighting, boolean reverseFlow, TraversalMode traversalMode) {
+        if (weighting.hasTurnCosts() && !traversalMode.isEdgeBased())
+            throw new IllegalStateException("Weightings supporting turn costs cannot be used with node-based traversal mode");
+        this.graph = graph;
+        this.weighting = weighting;
+        this.reverseFlow = reverseFlow;
+        this.traversalMode = traversalMode;
+    }
+
+    /**
+     * Time limit in milliseconds
+     */
+    public ShortestPathTreeBatch setTimeLimit(double limit) {
+        exploreType = TIME;
+        this.limit = limit;
+        return this;
+    }
+
+    /**
+     * Distance limit in meter
+     */
+    public ShortestPathTreeBatch setDistanceLimit(double limit) {
+        exploreType = DISTANCE;
+        this.limit = limit;
+        return this;
+    }
+
+    public ShortestPathTreeBatch setWeightLimit(double limit) {
+        exploreType = WEIGHT;
+        this.limit = limit;
+        return this;
+    }
+
+    public ShortestPathTreeBatch setThreads(int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("threads must be positive, but was: " + threads);
+        this.threads = threads;
+        return this;
+    }
+
+    /**
+     * Runs the searches on the given pool instead of a new pool with the specified number of threads. The pool is not
+     * shut down afterwards, so different batches can share the same threads.
+     */
+    public ShortestPathTreeBatch setPool(ForkJoinPool pool) {
+        this.pool = pool;
+        return this;
+    }
+
+    /**
+     * Runs one search per origin and passes the resulting trees to the given consumer. Negative origins are skipped.
+     */
+    public void search(int[] origins, TreeConsumer consumer) {
+        if ((pool == null && threads == 1) || origins.length < 2) {
+            Tree tree = new Tree();
+            for (int i = 0; i < origins.length; i++) {
+                if (origins[i] < 0)
+                    continue;
+                tree.search(origins[i]);
+                consumer.accept(i, tree);
+            }
+            return;
+        }
+        // a worker takes a tree out of this queue for every origin and puts it back afterwards. unlike a ThreadLocal
+        // this does not keep the trees alive on the threads of a shared pool after the batch is done.
+        Queue<Tree> trees = new ConcurrentLinkedQueue<>();
+        ForkJoinPool pool = this.pool == null ? new ForkJoinPool(threads) : this.pool;
+        try {
+            pool.submit(() -> IntStream.range(0, origins.length).parallel().forEach(i -> {
+                if (origins[i] < 0)
+                    return;
+                Tree tree = trees.poll();
+                if (tree == null)
+                    tree = new Tree();
+                tree.search(origins[i]);
+                consumer.accept(i, tree);
+                trees.add(tree);
+            })).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new RuntimeException(e.getCause());
+        } finally {
+            if (pool != this.pool)
+                pool.shutdown();
+        }
+    }
+
+    /**
+     * The shortest path tree of a single origin. The entries are stored in settle order and can be accessed via their
+     * index in [0, size()). The first entry is the origin itself.
+     */
+    public final class Tree {
+        private static final int NO_PARENT = -1;
+        // for edge-based traversal the origin has no edge key, so it gets this id
+        private static final int ROOT_ID = -1;
+        private final EdgeExplorer explorer;
+        private final IntFloatBinaryHeap heap = new IntFloatBinaryHeap(1000);
+        // the search state is stored in lists that grow with the number of visited entries instead of arrays of the
+        // graph size, so a tree only needs memory for the part of the graph within the limit
+        private final IntIntHashMap indexById = new IntIntHashMap();
+        private final DoubleArrayList weights = new DoubleArrayList();
+        private final LongArrayList times = new LongArrayList();
+        private final DoubleArrayList distances = new DoubleArrayList();
+        private final IntArrayList nodes = new IntArrayList();
+        private final IntArrayList edges = new IntArrayList();
+        private final IntArrayList parents = new IntArrayList();
+        private final BitSet settled = new BitSet();
+        private final IntArrayList settledIndices = new IntArrayList();
+        private int visitedNodes;
+
+        private Tree() {
+            explorer = graph.createEdgeExplorer();
+        }
+
+        private void search(int from) {
+            reset();
+            update(traversalMode.isEdgeBased() ? ROOT_ID : from, from, EdgeIterator.NO_EDGE, NO_PARENT, 0, 0, 0);
+            while (!heap.isEmpty()) {
+                int curr = heap.poll();
+                if (settled.get(curr))
+                    continue;
+                settled.set(curr);
+                visitedNodes++;
+                if (getExploreValue(curr) >= limit)
+                    // like in ShortestPathTree an entry that reaches the limit is excluded, and all entries we could
+                    // reach from here would exceed the limit as well
+                    continue;
+                settledIndices.add(curr);
+                int currEdge = edges.get(curr);
+                EdgeIterator iter = explorer.setBaseNode(nodes.get(curr));
+                while (iter.next()) {
+                    if (!traversalMode.isEdgeBased() && iter.getEdge() == currEdge)
+                        continue;
+                    double nextWeight = GHUtility.calcWeightWithTurnWeight(weighting, iter, reverseFlow, currEdge) + weights.get(curr);
+                    if (Double.isInfinite(nextWeight))
+                        continue;
+                    int nextId = traversalMode.createTraversalId(iter, reverseFlow);
+                    int next = indexById.getOrDefault(nextId, -1);
+                    if (next >= 0 && (settled.get(next) || weights.get(next) <= nextWeight))
+                        continue;
+                    long nextTime = GHUtility.calcMillisWithTurnMillis(weighting, iter, reverseFlow, currEdge) + times.get(curr);
+                    update(nextId, iter.getAdjNode(), iter.getEdge(), curr, nextWeight, nextTime, iter.getDistance() + distances.get(curr));
+                }
+            }
+        }
+
+        private void update(int id, int node, int edge, int parent, double weight, long time, double distance) {
+            int index = indexById.getOrDefault(id, -1);
+            if (index < 0) {
+                index = weights.size();
+                indexById.put(id, index);
+                weights.add(weight);
+                times.add(time);
+                distances.add(distance);
+                nodes.add(node);
+                edges.add(edge);
+                parents.add(parent);
+            } else {
+                weights.set(index, weight);
+                times.set(index, time);
+                distances.set(index, distance);
+                nodes.set(index, node);
+                edges.set(index, edge);
+                parents.set(index, parent);
+            }
+            // we do not update the heap, but insert the entry again and skip it when it was settled already
+            heap.insert(weight, index);
+        }
+
+        private void reset() {
+            indexById.clear();
+            weights.elementsCount = 0;
+            times.elementsCount = 0;
+            distances.elementsCount = 0;
+            nodes.elementsCount = 0;
+            edges.elementsCount = 0;
+            parents.elementsCount = 0;
+            settled.clear();
+            settledIndices.elementsCount = 0;
+            heap.clear();
+            visitedNodes = 0;
+        }
+
+        private double getExploreValue(int index) {
+            if (exploreType == TIME)
+                return times.get(index);
+            if (exploreType == WEIGHT)
+                return weights.get(index);
+            return distances.get(index);
+        }
+
+        /**
+         * @return the number of entries within the limit
+         */
+        public int size() {
+            return settledIndices.size();
+        }
+
+        public int getNode(int index) {
+            return nodes.get(settledIndices.get(index));
+        }
+
+        /**
+         * @return the edge leading to the node of this entry or {@link EdgeIterator#NO_EDGE} for the origin
+         */
+        public int getEdge(int index) {
+            return edges.get(settledIndices.get(index));
+        }
+
+        public double getWeight(int index) {
+            return weights.get(settledIndices.get(index));
+        }
+
+        public long getTime(int index) {
+            return times.get(settledIndices.get(index));
+        }
+
+        public double getDistance(int index) {
+            return distances.get(settledIndices.get(index));
+        }
+
+        /**
+         * @return the node of the parent entry or -1 for the origin
+         */
+        public int getParentNode(int index) {
+            int parent = parents.get(settledIndices.get(index));
+            return parent == NO_PARENT ? -1 : nodes.get(parent);
+        }
+
+        public int getParentEdge(int index) {
+            int parent = parents.get(settledIndices.get(index));
+            return parent == NO_PARENT ? EdgeIterator.NO_EDGE : edges.get(parent);
+        }
+
+        public long getParentTime(int index) {
+            int parent = parents.get(settledIndices.get(index));
+            return parent == NO_PARENT ? 0 : times.get(parent);
+        }
+
+        public double getParentDistance(int index) {
+            int parent = parents.get(settledIndices.get(index));
+            return parent == NO_PARENT ? 0 : distances.get(parent);
+        }
+
+        public int getVisitedNodes() {
+            return visitedNodes;
+        }
+    }
+}
@@ -18,6 +18,7 @@
 package com.graphhopper.reader;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
@@ -40,10 +41,11 @@ public abstract class ReaderElement {
 
     private final long id;
     private final Type type;
-    private final Map<String, Object> properties;
+    private Map<String, Object> properties;
 
     protected ReaderElement(long id, Type type) {
-        this(id, type, new LinkedHashMap<>(4));
+        // most elements, e.g. the majority of the nodes, have no tags, so the map is created when the first tag is set
+        this(id, type, Collections.emptyMap());
     }
 
     protected ReaderElement(long id, Type type, Map<String, Object> properties) {
@@ -73,8 +75,12 @@ public abstract class ReaderElement {
         return tagTxt.toString();
     }
 
+    /**
+     * @return the tags of this element. The map is only created when it is requested or the first tag is set, so use
+     * {@link #hasTags()} to check if there are any tags.
+     */
     public Map<String, Object> getTags() {
-        return properties;
+        return ensureTagsCreated();
     }
 
     public void setTags(Map<String, Object> newTags) {
@@ -102,7 +108,13 @@ public abstract class ReaderElement {
     }
 
     public void setTag(String name, Object value) {
-        properties.put(name, value);
+        ensureTagsCreated().put(name, value);
+    }
+
+    private Map<String, Object> ensureTagsCreated() {
+        if (properties == Collections.<String, Object>emptyMap())
+            properties = new LinkedHashMap<>(4);
+        return properties;
     }
 
     /**
@@ -43,6 +43,8 @@ public class HeightTile {
     private final double latHigherBound;
     private DataAccess heights;
     private boolean interpolate;
+    // used by the tile cache of the elevation provider
+    long lastAccess;
     private final double MIN_ELEVATION_METERS = -12_000;
     private final double MAX_ELEVATION_METERS = 9_000;
 
@@ -78,6 +80,10 @@ public class HeightTile {
         this.heights = da;
     }
 
+    DataAccess getHeights() {
+        return heights;
+    }
+
     private short getHeightSample(int x, int y) {
         // always keep in mind factor 2 because of short value
         return heights.getShort(2L * ((long) y * width + x));
@@ -26,6 +26,16 @@ import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Supplier;
+
+import static com.graphhopper.util.Helper.removeDir;
 
 /**
  * Provides basic methods that are usually used in an ElevationProvider using tiles from files.
@@ -42,6 +52,14 @@ public abstract class TileBasedElevationProvider implements ElevationProvider {
     boolean interpolate = false;
     boolean autoRemoveTemporary = true;
     long sleep = 2000;
+    int cacheSize = 1000;
+    // the tiles are read concurrently and only loaded or evicted under the write lock
+    private final ReadWriteLock tilesLock = new ReentrantReadWriteLock();
+    private final Map<Object, HeightTile> tiles = new HashMap<>();
+    // the tiles that were removed from the cache, their files still exist
+    private final Set<String> evictedTiles = new HashSet<>();
+    // updated without synchronization, so the least recently used order is only approximate
+    private long accessCounter;
 
     protected TileBasedElevationProvider(String cacheDirString) {
         File cacheDir = new File(cacheDirString);
@@ -103,11 +121,103 @@ public abstract class TileBasedElevationProvider implements ElevationProvider {
         return this;
     }
 
+    /**
+     * Specifies the maximum number of height tiles that are kept open. The least recently used tile is closed if this
+     * number is exceeded, its DataAccess file is kept in the cache directory and is loaded again when needed. Default
+     * is 1000.
+     */
+    public TileBasedElevationProvider setCacheSize(int cacheSize) {
+        if (cacheSize < 1)
+            throw new IllegalArgumentException("cache size must be positive but was " + cacheSize);
+        this.cacheSize = cacheSize;
+        return this;
+    }
+
     public TileBasedElevationProvider setDownloader(Downloader downloader) {
         this.downloader = downloader;
         return this;
     }
 
+    @Override
+    public boolean isThreadSafe() {
+        return true;
+    }
+
+    /**
+     * Returns the elevation at the given coordinates from the tile with the given key. If the tile is not cached yet
+     * it is created via the tileLoader while no other thread reads from the tiles. If there are more than cacheSize
+     * tiles the least recently used tile is closed, its DataAccess file is kept and is loaded again when needed.
+     *
+     * @param tileLoader creates the tile or returns null if there is no data for the tile
+     */
+    double getEle(Object key, double lat, double lon, Supplier<HeightTile> tileLoader) {
+        Lock readLock = tilesLock.readLock();
+        readLock.lock();
+        try {
+            HeightTile tile = tiles.get(key);
+            if (tile != null)
+                return getHeight(tile, lat, lon);
+        } finally {
+            readLock.unlock();
+        }
+
+        Lock writeLock = tilesLock.writeLock();
+        writeLock.lock();
+        try {
+            HeightTile tile = tiles.get(key);
+            if (tile == null) {
+                tile = tileLoader.get();
+                if (tile == null)
+                    return 0;
+                if (tiles.size() >= cacheSize)
+                    evictLeastRecentlyUsedTile();
+                tiles.put(key, tile);
+            }
+            return getHeight(tile, lat, lon);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private double getHeight(HeightTile tile, double lat, double lon) {
+        tile.lastAccess = ++accessCounter;
+        if (tile.isSeaLevel())
+            return 0;
+        return tile.getHeight(lat, lon);
+    }
+
+    private void evictLeastRecentlyUsedTile() {
+        Map.Entry<Object, HeightTile> eldest = null;
+        for (Map.Entry<Object, HeightTile> entry : tiles.entrySet())
+            if (eldest == null || entry.getValue().lastAccess < eldest.getValue().lastAccess)
+                eldest = entry;
+        String name = eldest.getValue().getHeights().getName();
+        tiles.remove(eldest.getKey());
+        getDirectory().close(name);
+        evictedTiles.add(name);
+    }
+
+    @Override
+    public void release() {
+        tilesLock.writeLock().lock();
+        try {
+            tiles.clear();
+            if (dir != null) {
+                // for memory mapped type we remove temporary files
+                if (autoRemoveTemporary) {
+                    dir.clear();
+                    for (String name : evictedTiles)
+                        removeDir(new File(cacheDir, name));
+                } else {
+                    dir.close();
+                }
+            }
+            evictedTiles.clear();
+        } finally {
+            tilesLock.writeLock().unlock();
+        }
+    }
+
     protected File getCacheDir() {
         return cacheDir;
     }
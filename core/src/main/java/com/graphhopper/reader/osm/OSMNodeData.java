@@ -21,6 +21,7 @@ package com.graphhopper.reader.osm;
 import com.carrotsearch.hppc.LongScatterSet;
 import com.carrotsearch.hppc.LongSet;
 import com.graphhopper.coll.GHLongLongBTree;
+import com.graphhopper.coll.GHLongLongPagedMap;
 import com.graphhopper.coll.LongLongMap;
 import com.graphhopper.reader.ReaderNode;
 import com.graphhopper.search.KVStorage;
@@ -80,10 +81,10 @@ class OSMNodeData {
     private long nextArtificialOSMNodeId = -Long.MAX_VALUE;
 
     public OSMNodeData(PointAccess nodeAccess, Directory directory) {
-        // We use a b-tree that can store as many entries as there are longs. A tree is also more
-        // memory efficient, because there is no waste for empty entries, and it also avoids
-        // allocating big arrays when growing the size.
-        idsByOsmNodeIds = new GHLongLongBTree(200, 5, EMPTY_NODE);
+        // OSM node ids are dense and the nodes are sorted by id, so we store the ids in pages of consecutive OSM node
+        // ids. The pages are stored in a DataAccess, so for big imports they can be kept off-heap or on disk via the
+        // type configured for tmp_osm_node_ids. Only the tags of a few nodes are stored, so we use a b-tree for them.
+        idsByOsmNodeIds = new GHLongLongPagedMap(directory, "tmp_osm_node_ids", 5, EMPTY_NODE);
         towerNodes = nodeAccess;
         pillarNodes = new PillarInfo(towerNodes.is3D(), directory);
 
@@ -163,6 +164,18 @@ class OSMNodeData {
         return nodeType;
     }
 
+    /**
+     * Sets the elevation of a tower or pillar node whose coordinates were added before
+     */
+    public void setElevation(long id, double lat, double lon, double ele) {
+        if (isTowerNode(id))
+            towerNodes.setNode(idToTowerNode(id), lat, lon, ele);
+        else if (isPillarNode(id))
+            pillarNodes.setNode(idToPillarNode(id), lat, lon, ele);
+        else
+            throw new IllegalArgumentException("Not a tower or pillar node id: " + id);
+    }
+
     private long addTowerNode(long osmId, double lat, double lon, double ele) {
         towerNodes.setNode(nextTowerId, lat, lon, ele);
         long id = towerNodeToId(nextTowerId);
@@ -18,7 +18,12 @@
 package com.graphhopper.reader.osm;
 
 import com.carrotsearch.hppc.BitSet;
+import com.carrotsearch.hppc.IntArrayList;
 import com.carrotsearch.hppc.LongArrayList;
+import com.carrotsearch.hppc.LongObjectHashMap;
+import com.carrotsearch.hppc.LongObjectMap;
+import com.carrotsearch.hppc.cursors.IntCursor;
+import com.carrotsearch.hppc.cursors.LongObjectCursor;
 import com.graphhopper.coll.GHLongLongHashMap;
 import com.graphhopper.reader.ReaderElement;
 import com.graphhopper.reader.ReaderNode;
@@ -31,7 +36,10 @@ import com.graphhopper.reader.dem.ElevationProvider;
 import com.graphhopper.routing.OSMReaderConfig;
 import com.graphhopper.routing.ev.Country;
 import com.graphhopper.routing.ev.EdgeIntAccess;
+import com.graphhopper.routing.ev.IntEncodedValue;
+import com.graphhopper.routing.ev.IntsRefEdgeIntAccess;
 import com.graphhopper.routing.ev.State;
+import com.graphhopper.routing.util.AllEdgesIterator;
 import com.graphhopper.routing.util.AreaIndex;
 import com.graphhopper.routing.util.CustomArea;
 import com.graphhopper.routing.util.FerrySpeedCalculator;
@@ -50,11 +58,17 @@ import com.graphhopper.util.shapes.GHPoint3D;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.File;
-import java.io.IOException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.*;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.LongToIntFunction;
 import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
 import java.util.stream.Collectors;
 
 import static com.graphhopper.search.KVStorage.KValue;
@@ -62,6 +76,7 @@ import static com.graphhopper.util.GHUtility.OSM_WARNING_LOGGER;
 import static com.graphhopper.util.Helper.nf;
 import static com.graphhopper.util.Parameters.Details.*;
 import static java.util.Collections.emptyList;
+import static java.util.Collections.emptyMap;
 
 /**
  * Parses an OSM file (xml, zipped xml or pbf) and creates a graph from it. The OSM file is actually read twice.
@@ -90,10 +105,10 @@ public class OSMReader {
     private CountryRuleFactory countryRuleFactory = null;
     private File osmFile;
     private final RamerDouglasPeucker simplifyAlgo = new RamerDouglasPeucker();
-    private int bugCounter = 0;
+    private final AtomicInteger bugCounter = new AtomicInteger();
     private final IntsRef tempRelFlags;
     private Date osmDataDate;
-    private long zeroCounter = 0;
+    private final AtomicLong zeroCounter = new AtomicLong();
 
     private GHLongLongHashMap osmWayIdToRelationFlagsMap = new GHLongLongHashMap(200, .5f);
     private WayToEdgesMap restrictedWaysToEdgesMap = new WayToEdgesMap();
@@ -162,7 +177,7 @@ public class OSMReader {
         if (!baseGraph.isInitialized())
             throw new IllegalStateException("BaseGraph must be initialize before we can read OSM");
 
-        WaySegmentParser waySegmentParser = new WaySegmentParser.Builder(baseGraph.getNodeAccess(), baseGraph.getDirectory())
+        WaySegmentParser.Builder builder = new WaySegmentParser.Builder(baseGraph.getNodeAccess(), baseGraph.getDirectory())
                 .setElevationProvider(this::getElevation)
                 .setWayFilter(this::acceptWay)
                 .setSplitNodeFilter(this::isBarrierNode)
@@ -171,7 +186,20 @@ public class OSMReader {
                 .setRelationProcessor(this::processRelation)
                 .setEdgeHandler(this::addEdge)
                 .setWorkerThreads(config.getWorkerThreads())
-                .build();
+                .setElevationThreads(config.getElevationThreads());
+        if (config.getTagParserThreads() > 1)
+            builder.setConcurrentEdgeHandler(new WaySegmentParser.ConcurrentEdgeHandler<PreparedEdge>() {
+                @Override
+                public PreparedEdge prepareEdge(int from, int to, PointList pointList, ReaderWay way, List<Map<String, Object>> nodeTags) {
+                    return prepareEdgeWithFlags(from, to, pointList, way, nodeTags);
+                }
+
+                @Override
+                public void handleEdge(PreparedEdge preparedEdge) {
+                    addPreparedEdge(preparedEdge);
+                }
+            }, config.getTagParserThreads());
+        WaySegmentParser waySegmentParser = builder.build();
         waySegmentParser.readOSM(osmFile);
         osmDataDate = waySegmentParser.getTimestamp();
         if (baseGraph.getNodes() == 0)
@@ -180,7 +208,7 @@ public class OSMReader {
         addRestrictionsToGraph();
         releaseRestrictionData();
         LOGGER.info("Finished reading OSM file: {}, nodes: {}, edges: {}, zero distance edges: {}",
-                osmFile.getAbsolutePath(), nf(baseGraph.getNodes()), nf(baseGraph.getEdges()), nf(zeroCounter));
+                osmFile.getAbsolutePath(), nf(baseGraph.getNodes()), nf(baseGraph.getEdges()), nf(zeroCounter.get()));
     }
 
     /**
@@ -190,6 +218,140 @@ public class OSMReader {
         return osmDataDate;
     }
 
+    /**
+     * Reads an OSM change file (.osc or .osc.gz) and calculates the new flags and key-values of all existing edges that
+     * belong to the created, modified or deleted OSM ways in this file. The graph is not modified, call
+     * {@link #applyChanges} to write the changes into the graph.
+     * <p>
+     * Only tag changes of existing ways can be applied this way. The edges of deleted ways and of ways that are no longer
+     * accepted become inaccessible. New ways, geometry changes, changed node tags and turn restrictions are ignored and
+     * require a full import. Route relations are only considered for the ways in the change file if the relation is also
+     * contained in it, so for example the bike network of a modified way is lost otherwise. Barrier edges are not
+     * updated, because the tags of their barrier nodes are not known anymore.
+     *
+     * @param osmWayIdEnc the encoded value that stores the OSM way ID of each edge
+     */
+    public EdgeChanges readChanges(File oscFile, IntEncodedValue osmWayIdEnc) throws IOException, XMLStreamException {
+        StopWatch sw = StopWatch.started();
+        LongObjectMap<ReaderWay> changedWays = new LongObjectHashMap<>();
+        int changedNodes = 0;
+        try (InputStream in = openChangeFile(oscFile)) {
+            XMLStreamReader parser = XMLInputFactory.newInstance().createXMLStreamReader(in, "UTF-8");
+            boolean delete = false;
+            while (parser.hasNext()) {
+                if (parser.next() != XMLStreamConstants.START_ELEMENT)
+                    continue;
+                String name = parser.getLocalName();
+                switch (name) {
+                    case "create":
+                    case "modify":
+                        delete = false;
+                        break;
+                    case "delete":
+                        delete = true;
+                        break;
+                    case "node":
+                        changedNodes++;
+                        break;
+                    case "way": {
+                        long id = Long.parseLong(parser.getAttributeValue(null, "id"));
+                        ReaderWay way = OSMXMLHelper.createWay(id, parser);
+                        // the last change of a way wins
+                        changedWays.put(id, delete ? new ReaderWay(id) : way);
+                        break;
+                    }
+                    case "relation": {
+                        long id = Long.parseLong(parser.getAttributeValue(null, "id"));
+                        ReaderRelation relation = OSMXMLHelper.createRelation(id, parser);
+                        if (!delete)
+                            preprocessRelations(relation);
+                        break;
+                    }
+                }
+            }
+            parser.close();
+        }
+
+        LongObjectMap<IntArrayList> edgesByWay = new LongObjectHashMap<>();
+        AllEdgesIterator iter = baseGraph.getAllEdges();
+        while (iter.next()) {
+            long wayId = iter.get(osmWayIdEnc);
+            if (changedWays.containsKey(wayId)) {
+                IntArrayList edges = edgesByWay.get(wayId);
+                if (edges == null)
+                    edgesByWay.put(wayId, edges = new IntArrayList());
+                edges.add(iter.getEdge());
+            }
+        }
+
+        EdgeChanges changes = new EdgeChanges();
+        int unknownWays = 0, barrierEdges = 0;
+        for (LongObjectCursor<ReaderWay> cursor : changedWays) {
+            ReaderWay way = cursor.value;
+            IntArrayList edges = edgesByWay.get(cursor.key);
+            if (edges == null) {
+                if (acceptWay(way))
+                    unknownWays++;
+                continue;
+            }
+            if (!acceptWay(way))
+                // the edges of deleted or no longer accepted ways keep only the OSM way ID
+                way = new ReaderWay(way.getId());
+            setKeyValuesTag(way, osmNodeId -> emptyMap());
+            if (isCalculateWayDistance(way)) {
+                double wayDistance = 0;
+                for (IntCursor edge : edges)
+                    wayDistance += baseGraph.getEdgeIteratorState(edge.value, Integer.MIN_VALUE).getDistance();
+                setWayDistanceTags(way, wayDistance);
+            }
+            IntsRef relationFlags = getRelFlagsMap(way.getId());
+            for (IntCursor c : edges) {
+                EdgeIteratorState edge = baseGraph.getEdgeIteratorState(c.value, Integer.MIN_VALUE);
+                PointList pointList = edge.fetchWayGeometry(FetchMode.ALL);
+                if (pointList.size() == 2 && pointList.get(0).equals(pointList.get(1))) {
+                    barrierEdges++;
+                    continue;
+                }
+                List<Map<String, Object>> nodeTags = new ArrayList<>(pointList.size());
+                for (int i = 0; i < pointList.size(); i++)
+                    nodeTags.add(emptyMap());
+                setArtificialWayTags(pointList, way, edge.getDistance(), nodeTags);
+
+                IntsRef flags = baseGraph.createEdgeFlags();
+                IntsRefEdgeIntAccess flagsAccess = new IntsRefEdgeIntAccess(flags);
+                osmParsers.handleWayTags(0, flagsAccess, way, relationFlags);
+                osmWayIdEnc.setInt(false, 0, flagsAccess, (int) way.getId());
+                Map<String, KValue> keyValues = new LinkedHashMap<>(way.getTag("key_values", Collections.<String, KValue>emptyMap()));
+                // we do not know the node tags anymore, so we keep the name of the motorway junction
+                Map<String, KValue> oldKeyValues = edge.getKeyValues();
+                if (oldKeyValues.containsKey(MOTORWAY_JUNCTION) && (way.hasTag("highway", "motorway") || way.hasTag("highway", "motorway_link")))
+                    keyValues.put(MOTORWAY_JUNCTION, oldKeyValues.get(MOTORWAY_JUNCTION));
+                if (!Arrays.equals(flags.ints, edge.getFlags().ints) || !keyValues.equals(oldKeyValues))
+                    changes.add(c.value, flags, keyValues);
+            }
+        }
+        LOGGER.info("Read OSM changes from {}, changed ways: {}, changed edges: {}, ignored changed nodes: {}, ignored new ways: {}, ignored barrier edges: {}, took: {}",
+                oscFile, nf(changedWays.size()), nf(changes.size()), nf(changedNodes), nf(unknownWays), nf(barrierEdges), sw.stop().getTimeString());
+        return changes;
+    }
+
+    private static InputStream openChangeFile(File oscFile) throws IOException {
+        InputStream in = new BufferedInputStream(new FileInputStream(oscFile), 50_000);
+        return oscFile.getName().endsWith(".gz") ? new GZIPInputStream(in, 50_000) : in;
+    }
+
+    /**
+     * Writes the flags and key-values that were calculated by {@link #readChanges} into the graph.
+     */
+    public void applyChanges(EdgeChanges changes) {
+        for (int i = 0; i < changes.size(); i++) {
+            EdgeIteratorState edge = baseGraph.getEdgeIteratorState(changes.getEdge(i), Integer.MIN_VALUE);
+            edge.setFlags(changes.getFlags(i));
+            if (!changes.getKeyValues(i).equals(edge.getKeyValues()))
+                edge.setKeyValues(changes.getKeyValues(i));
+        }
+    }
+
     protected double getElevation(ReaderNode node) {
         double ele = eleProvider.getEle(node);
         return Double.isNaN(ele) ? config.getDefaultElevation() : ele;
@@ -316,6 +478,34 @@ public class OSMReader {
      * @param nodeTags  node tags of this segment. there is one map of tags for each point.
      */
     protected void addEdge(int fromIndex, int toIndex, PointList pointList, ReaderWay way, List<Map<String, Object>> nodeTags) {
+        PreparedEdge preparedEdge = prepareEdge(fromIndex, toIndex, pointList, way, nodeTags);
+        IntsRef relationFlags = getRelFlagsMap(way.getId());
+        EdgeIteratorState edge = baseGraph.edge(fromIndex, toIndex).setDistance(preparedEdge.distance);
+        osmParsers.handleWayTags(edge.getEdge(), edgeIntAccess, way, relationFlags);
+        finishEdge(edge, preparedEdge);
+    }
+
+    /**
+     * Same as {@link #addEdge} but the tag parsers write the edge flags into a separate {@link IntsRef} that is
+     * copied into the graph later by {@link #addPreparedEdge}. This method is thread-safe for different ways, so the
+     * tag parsers can run concurrently.
+     */
+    protected PreparedEdge prepareEdgeWithFlags(int fromIndex, int toIndex, PointList pointList, ReaderWay way, List<Map<String, Object>> nodeTags) {
+        PreparedEdge preparedEdge = prepareEdge(fromIndex, toIndex, pointList, way, nodeTags);
+        IntsRef relationFlags = getRelFlagsMap(way.getId(), osmParsers.createRelationFlags());
+        preparedEdge.edgeFlags = baseGraph.createEdgeFlags();
+        // the edge does not exist yet, but the edge id is ignored by IntsRefEdgeIntAccess anyway
+        osmParsers.handleWayTags(0, new IntsRefEdgeIntAccess(preparedEdge.edgeFlags), way, relationFlags);
+        return preparedEdge;
+    }
+
+    protected void addPreparedEdge(PreparedEdge preparedEdge) {
+        EdgeIteratorState edge = baseGraph.edge(preparedEdge.fromIndex, preparedEdge.toIndex).setDistance(preparedEdge.distance);
+        edge.setFlags(preparedEdge.edgeFlags);
+        finishEdge(edge, preparedEdge);
+    }
+
+    private PreparedEdge prepareEdge(int fromIndex, int toIndex, PointList pointList, ReaderWay way, List<Map<String, Object>> nodeTags) {
         // sanity checks
         if (fromIndex < 0 || toIndex < 0)
             throw new AssertionError("to or from index is invalid for this edge " + fromIndex + "->" + toIndex + ", points:" + pointList);
@@ -332,7 +522,13 @@ public class OSMReader {
         if (pointList.is3D()) {
             // sample points along long edges
             if (config.getLongEdgeSamplingDistance() < Double.MAX_VALUE)
-                pointList = EdgeSampling.sample(pointList, config.getLongEdgeSamplingDistance(), distCalc, eleProvider);
+                if (eleProvider.isThreadSafe()) {
+                    pointList = EdgeSampling.sample(pointList, config.getLongEdgeSamplingDistance(), distCalc, eleProvider);
+                } else {
+                    synchronized (eleProvider) {
+                        pointList = EdgeSampling.sample(pointList, config.getLongEdgeSamplingDistance(), distCalc, eleProvider);
+                    }
+                }
 
             // smooth the elevation before calculating the distance because the distance will be incorrect if calculated afterwards
             if (config.getElevationSmoothing().equals("ramer"))
@@ -351,13 +547,13 @@ public class OSMReader {
         if (distance < 0.001) {
             // As investigation shows often two paths should have crossed via one identical point
             // but end up in two very close points.
-            zeroCounter++;
+            zeroCounter.incrementAndGet();
             distance = 0.001;
         }
 
         double maxDistance = (Integer.MAX_VALUE - 1) / 1000d;
         if (Double.isNaN(distance)) {
-            LOGGER.warn("Bug in OSM or GraphHopper (" + bugCounter++ + "). Illegal tower node distance " + distance + " reset to 1m, osm way " + way.getId());
+            LOGGER.warn("Bug in OSM or GraphHopper (" + bugCounter.getAndIncrement() + "). Illegal tower node distance " + distance + " reset to 1m, osm way " + way.getId());
             distance = 1;
         }
 
@@ -365,32 +561,34 @@ public class OSMReader {
             // Too large is very rare and often the wrong tagging. See #435
             // so we can avoid the complexity of splitting the way for now (new towernodes would be required, splitting up geometry etc)
             // For example this happens here: https://www.openstreetmap.org/way/672506453 (Cape Town - Tristan da Cunha ferry)
-            LOGGER.warn("Bug in OSM or GraphHopper (" + bugCounter++ + "). Too big tower node distance " + distance + " reset to large value, osm way " + way.getId());
+            LOGGER.warn("Bug in OSM or GraphHopper (" + bugCounter.getAndIncrement() + "). Too big tower node distance " + distance + " reset to large value, osm way " + way.getId());
             distance = maxDistance;
         }
 
-        if (bugCounter > 30)
-            throw new IllegalStateException("Too many bugs in OSM or GraphHopper encountered " + bugCounter);
+        if (bugCounter.get() > 30)
+            throw new IllegalStateException("Too many bugs in OSM or GraphHopper encountered " + bugCounter.get());
 
         setArtificialWayTags(pointList, way, distance, nodeTags);
-        IntsRef relationFlags = getRelFlagsMap(way.getId());
-        EdgeIteratorState edge = baseGraph.edge(fromIndex, toIndex).setDistance(distance);
-        osmParsers.handleWayTags(edge.getEdge(), edgeIntAccess, way, relationFlags);
-        Map<String, KValue> map = way.getTag("key_values", Collections.emptyMap());
+        return new PreparedEdge(fromIndex, toIndex, pointList, distance, way);
+    }
+
+    private void finishEdge(EdgeIteratorState edge, PreparedEdge preparedEdge) {
+        Map<String, KValue> map = preparedEdge.way.getTag("key_values", Collections.emptyMap());
         if (!map.isEmpty())
             edge.setKeyValues(map);
 
         // If the entire way is just the first and last point, do not waste space storing an empty way geometry
+        PointList pointList = preparedEdge.pointList;
         if (pointList.size() > 2) {
             // the geometry consists only of pillar nodes, but we check that the first and last points of the pointList
             // are equal to the tower node coordinates
-            checkCoordinates(fromIndex, pointList.get(0));
-            checkCoordinates(toIndex, pointList.get(pointList.size() - 1));
+            checkCoordinates(preparedEdge.fromIndex, pointList.get(0));
+            checkCoordinates(preparedEdge.toIndex, pointList.get(pointList.size() - 1));
             edge.setWayGeometry(pointList.shallowCopy(1, pointList.size() - 1, false));
         }
 
         checkDistance(edge);
-        restrictedWaysToEdgesMap.putIfReserved(way.getId(), edge.getEdge());
+        restrictedWaysToEdgesMap.putIfReserved(preparedEdge.way.getId(), edge.getEdge());
     }
 
     private void checkCoordinates(int nodeIndex, GHPoint point) {
@@ -420,6 +618,22 @@ public class OSMReader {
      */
     protected void preprocessWay(ReaderWay way, WaySegmentParser.CoordinateSupplier coordinateSupplier,
                                  WaySegmentParser.NodeTagSupplier nodeTagSupplier) {
+        setKeyValuesTag(way, nodeTagSupplier);
+
+        if (!isCalculateWayDistance(way))
+            return;
+
+        double distance = calcDistance(way, coordinateSupplier);
+        if (Double.isNaN(distance)) {
+            // Some nodes were missing, and we cannot determine the distance. This can happen when ways are only
+            // included partially in an OSM extract. In this case we cannot calculate the speed either, so we return.
+            LOGGER.warn("Could not determine distance for OSM way: " + way.getId());
+            return;
+        }
+        setWayDistanceTags(way, distance);
+    }
+
+    private void setKeyValuesTag(ReaderWay way, WaySegmentParser.NodeTagSupplier nodeTagSupplier) {
         Map<String, KValue> map = new LinkedHashMap<>();
         if (config.isParseWayNames()) {
             // http://wiki.openstreetmap.org/wiki/Key:name
@@ -485,17 +699,9 @@ public class OSMReader {
             }
 
         way.setTag("key_values", map);
+    }
 
-        if (!isCalculateWayDistance(way))
-            return;
-
-        double distance = calcDistance(way, coordinateSupplier);
-        if (Double.isNaN(distance)) {
-            // Some nodes were missing, and we cannot determine the distance. This can happen when ways are only
-            // included partially in an OSM extract. In this case we cannot calculate the speed either, so we return.
-            LOGGER.warn("Could not determine distance for OSM way: " + way.getId());
-            return;
-        }
+    private void setWayDistanceTags(ReaderWay way, double distance) {
         way.setTag("way_distance", distance);
 
         // For ways with a duration tag we determine the average speed. This is needed for e.g. ferry routes, because
@@ -674,10 +880,14 @@ public class OSMReader {
     }
 
     IntsRef getRelFlagsMap(long osmId) {
+        return getRelFlagsMap(osmId, tempRelFlags);
+    }
+
+    private IntsRef getRelFlagsMap(long osmId, IntsRef relFlags) {
         long relFlagsAsLong = osmWayIdToRelationFlagsMap.get(osmId);
-        tempRelFlags.ints[0] = (int) relFlagsAsLong;
-        tempRelFlags.ints[1] = (int) (relFlagsAsLong >> 32);
-        return tempRelFlags;
+        relFlags.ints[0] = (int) relFlagsAsLong;
+        relFlags.ints[1] = (int) (relFlagsAsLong >> 32);
+        return relFlags;
     }
 
     void putRelFlagsMap(long osmId, IntsRef relFlags) {
@@ -690,4 +900,59 @@ public class OSMReader {
         return getClass().getSimpleName();
     }
 
+    /**
+     * The new flags and key-values of existing edges, see {@link #readChanges}
+     */
+    public static class EdgeChanges {
+        private final IntArrayList edges = new IntArrayList();
+        private final List<IntsRef> flags = new ArrayList<>();
+        private final List<Map<String, KValue>> keyValues = new ArrayList<>();
+
+        void add(int edge, IntsRef edgeFlags, Map<String, KValue> edgeKeyValues) {
+            edges.add(edge);
+            flags.add(edgeFlags);
+            keyValues.add(edgeKeyValues);
+        }
+
+        public int size() {
+            return edges.size();
+        }
+
+        public int getEdge(int index) {
+            return edges.get(index);
+        }
+
+        /**
+         * @return the new flags of the edge, they can still be modified before the changes are applied
+         */
+        public IntsRef getFlags(int index) {
+            return flags.get(index);
+        }
+
+        public Map<String, KValue> getKeyValues(int index) {
+            return keyValues.get(index);
+        }
+
+        public IntArrayList getEdges() {
+            return edges;
+        }
+    }
+
+    protected static class PreparedEdge {
+        final int fromIndex;
+        final int toIndex;
+        final PointList pointList;
+        final double distance;
+        final ReaderWay way;
+        IntsRef edgeFlags;
+
+        PreparedEdge(int fromIndex, int toIndex, PointList pointList, double distance, ReaderWay way) {
+            this.fromIndex = fromIndex;
+            this.toIndex = toIndex;
+            this.pointList = pointList;
+            this.distance = distance;
+            this.way = way;
+        }
+    }
+
 }
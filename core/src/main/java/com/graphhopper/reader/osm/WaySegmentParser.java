@@ -18,7 +18,9 @@
 
 package com.graphhopper.reader.osm;
 
+import com.carrotsearch.hppc.LongArrayList;
 import com.carrotsearch.hppc.cursors.LongCursor;
+import com.carrotsearch.hppc.sorting.IndirectSort;
 import com.graphhopper.reader.ReaderElement;
 import com.graphhopper.reader.ReaderNode;
 import com.graphhopper.reader.ReaderRelation;
@@ -27,6 +29,7 @@ import com.graphhopper.storage.Directory;
 import com.graphhopper.util.Helper;
 import com.graphhopper.util.PointAccess;
 import com.graphhopper.util.PointList;
+import com.graphhopper.util.GHUtility;
 import com.graphhopper.util.StopWatch;
 import com.graphhopper.util.shapes.GHPoint3D;
 import org.slf4j.Logger;
@@ -38,6 +41,7 @@ import java.io.IOException;
 import java.text.ParseException;
 import java.util.*;
 import java.util.function.*;
+import java.util.stream.IntStream;
 
 import static com.graphhopper.reader.osm.OSMNodeData.*;
 import static com.graphhopper.util.Helper.nf;
@@ -54,6 +58,10 @@ import static com.graphhopper.util.Helper.nf;
  * <p>
  * We assume a strict order of the OSM file: nodes, ways, then relations.
  * <p>
+ * The segments are passed to the {@link EdgeHandler} one after another. Alternatively a {@link ConcurrentEdgeHandler}
+ * can be used: then the ways are collected in batches and the segments of different ways are prepared concurrently
+ * before they are handled sequentially in the order of the OSM file.
+ * <p>
  * The main difficulty is that the OSM ID range is very large (64bit integers) and to be able to provide the full
  * node information for each segment we have to efficiently store the node data temporarily. This is addressed by
  * {@link OSMNodeData}.
@@ -61,6 +69,8 @@ import static com.graphhopper.util.Helper.nf;
 public class WaySegmentParser {
     private static final Logger LOGGER = LoggerFactory.getLogger(WaySegmentParser.class);
     private static final Set<String> INCLUDE_IF_NODE_TAGS = new HashSet<>(Arrays.asList("barrier", "highway", "railway", "crossing", "ford"));
+    private static final int WAY_BATCH_SIZE = 10_000;
+    private static final int ELEVATION_BATCH_SIZE = 100_000;
 
     private ToDoubleFunction<ReaderNode> elevationProvider = node -> 0d;
     private Predicate<ReaderWay> wayFilter = way -> true;
@@ -73,6 +83,9 @@ public class WaySegmentParser {
     };
     private EdgeHandler edgeHandler = (from, to, pointList, way, nodeTags) ->
             System.out.println("edge " + from + "->" + to + " (" + pointList.size() + " points)");
+    private ConcurrentEdgeHandler<?> concurrentEdgeHandler;
+    private int edgeHandlerThreads = 1;
+    private int elevationThreads = 1;
     private int workerThreads = 2;
 
     private final OSMNodeData nodeData;
@@ -187,6 +200,11 @@ public class WaySegmentParser {
         private long acceptedNodes = 0;
         private long ignoredSplitNodes = 0;
         private long wayCounter = 0;
+        // only used with a concurrent edge handler
+        private final WayBatch<?> wayBatch = concurrentEdgeHandler == null ? null : new WayBatch<>(concurrentEdgeHandler, edgeHandlerThreads);
+        // only used with multiple elevation threads
+        private final ElevationBatch elevationBatch = elevationThreads > 1 ? new ElevationBatch(elevationProvider, elevationThreads) : null;
+        private List<Segment> waySegments;
 
         @Override
         public void handleNode(ReaderNode node) {
@@ -203,11 +221,19 @@ public class WaySegmentParser {
                 LOGGER.info("pass2 - processed nodes: " + nf(nodeCounter) + ", accepted nodes: " + nf(acceptedNodes) +
                         ", " + Helper.getMemInfo());
 
-            long nodeType = nodeData.addCoordinatesIfMapped(node.getId(), node.getLat(), node.getLon(), () -> elevationProvider.applyAsDouble(node));
+            long nodeType = elevationBatch == null
+                    ? nodeData.addCoordinatesIfMapped(node.getId(), node.getLat(), node.getLon(), () -> elevationProvider.applyAsDouble(node))
+                    // the elevation is set later when the batch is flushed
+                    : nodeData.addCoordinatesIfMapped(node.getId(), node.getLat(), node.getLon(), () -> 0);
             if (nodeType == EMPTY_NODE)
                 return;
 
             acceptedNodes++;
+            if (elevationBatch != null) {
+                elevationBatch.add(node, nodeData.getId(node.getId()));
+                if (elevationBatch.size() >= ELEVATION_BATCH_SIZE)
+                    elevationBatch.flush(nodeData);
+            }
 
             // remember which nodes we want to split
             if (splitNodeFilter.test(node)) {
@@ -220,14 +246,16 @@ public class WaySegmentParser {
             }
 
             // store node tags if at least one important tag is included and make this available for the edge handler
-            for (Map.Entry<String, Object> e : node.getTags().entrySet()) {
-                if (INCLUDE_IF_NODE_TAGS.contains(e.getKey())) {
-                    node.removeTag("created_by");
-                    node.removeTag("source");
-                    node.removeTag("note");
-                    node.removeTag("fixme");
-                    nodeData.setTags(node);
-                    break;
+            if (node.hasTags()) {
+                for (Map.Entry<String, Object> e : node.getTags().entrySet()) {
+                    if (INCLUDE_IF_NODE_TAGS.contains(e.getKey())) {
+                        node.removeTag("created_by");
+                        node.removeTag("source");
+                        node.removeTag("note");
+                        node.removeTag("fixme");
+                        nodeData.setTags(node);
+                        break;
+                    }
                 }
             }
         }
@@ -235,6 +263,9 @@ public class WaySegmentParser {
         @Override
         public void handleWay(ReaderWay way) {
             if (!handledWays) {
+                // all nodes must have their elevation before we create the edges
+                if (elevationBatch != null)
+                    elevationBatch.flush(nodeData);
                 LOGGER.info("pass2 - start reading OSM ways");
                 handledWays = true;
             }
@@ -250,7 +281,18 @@ public class WaySegmentParser {
             for (LongCursor node : way.getNodes())
                 segment.add(new SegmentNode(node.value, nodeData.getId(node.value), nodeData.getTags(node.value)));
             wayPreprocessor.preprocessWay(way, osmNodeId -> nodeData.getCoordinates(nodeData.getId(osmNodeId)), osmNodeId -> nodeData.getTags(osmNodeId));
+            if (wayBatch == null) {
+                splitWayAtJunctionsAndEmptySections(segment, way);
+                return;
+            }
+            waySegments = new ArrayList<>();
             splitWayAtJunctionsAndEmptySections(segment, way);
+            if (!waySegments.isEmpty()) {
+                wayBatch.add(way, waySegments);
+                if (wayBatch.size() >= WAY_BATCH_SIZE)
+                    wayBatch.flush();
+            }
+            waySegments = null;
         }
 
         private void splitWayAtJunctionsAndEmptySections(List<SegmentNode> fullSegment, ReaderWay way) {
@@ -364,12 +406,20 @@ public class WaySegmentParser {
             }
             if (from < 0 || to < 0)
                 throw new IllegalStateException("The first and last nodes of a segment must be tower nodes, way: " + way.getId());
-            edgeHandler.handleEdge(from, to, pointList, way, nodeTags);
+            if (waySegments != null)
+                waySegments.add(new Segment(from, to, pointList, nodeTags, way.hasTag("gh:barrier_edge")));
+            else
+                edgeHandler.handleEdge(from, to, pointList, way, nodeTags);
         }
 
         @Override
         public void handleRelation(ReaderRelation relation) {
             if (!handledRelations) {
+                if (elevationBatch != null)
+                    elevationBatch.flush(nodeData);
+                // all edges must exist before we process the relations
+                if (wayBatch != null)
+                    wayBatch.flush();
                 LOGGER.info("pass2 - start reading OSM relations");
                 handledRelations = true;
             }
@@ -379,6 +429,10 @@ public class WaySegmentParser {
 
         @Override
         public void onFinish() {
+            if (elevationBatch != null)
+                elevationBatch.flush(nodeData);
+            if (wayBatch != null)
+                wayBatch.flush();
             LOGGER.info("pass2 - finished, processed ways: {}, way nodes: {}, nodes with tags: {}, node tag capacity: {}, ignored barriers at junctions: {}",
                     nf(wayCounter), nf(acceptedNodes), nf(nodeData.getTaggedNodeCount()), nf(nodeData.getNodeTagCapacity()), nf(ignoredSplitNodes));
         }
@@ -391,6 +445,115 @@ public class WaySegmentParser {
         }
     }
 
+    private static class Segment {
+        final int from;
+        final int to;
+        final PointList pointList;
+        final List<Map<String, Object>> nodeTags;
+        final boolean barrierEdge;
+
+        Segment(int from, int to, PointList pointList, List<Map<String, Object>> nodeTags, boolean barrierEdge) {
+            this.from = from;
+            this.to = to;
+            this.pointList = pointList;
+            this.nodeTags = nodeTags;
+            this.barrierEdge = barrierEdge;
+        }
+    }
+
+    /**
+     * Collects the segments of multiple ways. On flush the segments are prepared concurrently, but the segments of the
+     * same way are always prepared by the same thread and in order, because the edge handler may modify the way.
+     */
+    private static class WayBatch<T> {
+        private final ConcurrentEdgeHandler<T> handler;
+        private final int threads;
+        private final List<ReaderWay> ways = new ArrayList<>();
+        private final List<List<Segment>> segments = new ArrayList<>();
+
+        WayBatch(ConcurrentEdgeHandler<T> handler, int threads) {
+            this.handler = handler;
+            this.threads = threads;
+        }
+
+        void add(ReaderWay way, List<Segment> waySegments) {
+            ways.add(way);
+            segments.add(waySegments);
+        }
+
+        int size() {
+            return ways.size();
+        }
+
+        void flush() {
+            if (ways.isEmpty())
+                return;
+            List<List<T>> prepared = new ArrayList<>(Collections.nCopies(ways.size(), null));
+            GHUtility.runConcurrently(IntStream.range(0, ways.size()).mapToObj(i -> () -> {
+                ReaderWay way = ways.get(i);
+                List<T> preparedEdges = new ArrayList<>(segments.get(i).size());
+                for (Segment segment : segments.get(i)) {
+                    if (segment.barrierEdge)
+                        way.setTag("gh:barrier_edge", true);
+                    preparedEdges.add(handler.prepareEdge(segment.from, segment.to, segment.pointList, way, segment.nodeTags));
+                    way.removeTag("gh:barrier_edge");
+                }
+                prepared.set(i, preparedEdges);
+            }), threads);
+            for (List<T> preparedEdges : prepared)
+                for (T preparedEdge : preparedEdges)
+                    handler.handleEdge(preparedEdge);
+            ways.clear();
+            segments.clear();
+        }
+    }
+
+    /**
+     * Collects the nodes of the second pass to look up their elevation concurrently. The nodes of a batch are sorted by
+     * their 1x1 degree cell before they are split among the threads, so each thread mostly reads the same elevation
+     * tiles.
+     */
+    private static class ElevationBatch {
+        private final ToDoubleFunction<ReaderNode> elevationProvider;
+        private final int threads;
+        private final List<ReaderNode> nodes = new ArrayList<>();
+        private final LongArrayList ids = new LongArrayList();
+
+        ElevationBatch(ToDoubleFunction<ReaderNode> elevationProvider, int threads) {
+            this.elevationProvider = elevationProvider;
+            this.threads = threads;
+        }
+
+        void add(ReaderNode node, long id) {
+            nodes.add(node);
+            ids.add(id);
+        }
+
+        int size() {
+            return nodes.size();
+        }
+
+        void flush(OSMNodeData nodeData) {
+            if (nodes.isEmpty())
+                return;
+            int[] order = IndirectSort.mergesort(0, nodes.size(), (a, b) -> Integer.compare(getCell(nodes.get(a)), getCell(nodes.get(b))));
+            double[] elevations = new double[nodes.size()];
+            int chunkSize = (nodes.size() + threads - 1) / threads;
+            GHUtility.runConcurrently(IntStream.range(0, threads).mapToObj(t -> () -> {
+                for (int i = t * chunkSize; i < Math.min(nodes.size(), (t + 1) * chunkSize); i++)
+                    elevations[order[i]] = elevationProvider.applyAsDouble(nodes.get(order[i]));
+            }), threads);
+            for (int i = 0; i < nodes.size(); i++)
+                nodeData.setElevation(ids.get(i), nodes.get(i).getLat(), nodes.get(i).getLon(), elevations[i]);
+            nodes.clear();
+            ids.clear();
+        }
+
+        private static int getCell(ReaderNode node) {
+            return (int) Math.floor(node.getLat() + 90) * 360 + (int) Math.floor(node.getLon() + 180);
+        }
+    }
+
     private void readOSM(File file, ReaderElementHandler handler, SkipOptions skipOptions) {
         try (OSMInput osmInput = openOsmInputFile(file, skipOptions)) {
             ReaderElement elem;
@@ -475,6 +638,30 @@ public class WaySegmentParser {
             return this;
         }
 
+        /**
+         * @param concurrentEdgeHandler callback functions that are called for each edge (way segment) instead of the
+         *                              edge handler
+         * @param threads               the number of threads used to prepare the edges of different ways concurrently
+         */
+        public <T> Builder setConcurrentEdgeHandler(ConcurrentEdgeHandler<T> concurrentEdgeHandler, int threads) {
+            if (threads < 1)
+                throw new IllegalArgumentException("threads must be positive, but was: " + threads);
+            waySegmentParser.concurrentEdgeHandler = concurrentEdgeHandler;
+            waySegmentParser.edgeHandlerThreads = threads;
+            return this;
+        }
+
+        /**
+         * @param threads the number of threads used to look up the elevation of the OSM nodes. If this is larger than
+         *                one the elevation provider must be thread-safe.
+         */
+        public Builder setElevationThreads(int threads) {
+            if (threads < 1)
+                throw new IllegalArgumentException("threads must be positive, but was: " + threads);
+            waySegmentParser.elevationThreads = threads;
+            return this;
+        }
+
         /**
          * @param workerThreads the number of threads used for the low level reading of the OSM file
          */
@@ -528,6 +715,19 @@ public class WaySegmentParser {
         void handleEdge(int from, int to, PointList pointList, ReaderWay way, List<Map<String, Object>> nodeTags);
     }
 
+    public interface ConcurrentEdgeHandler<T> {
+        /**
+         * Called concurrently for the segments of different ways, but in order and from the same thread for the
+         * segments of one way. Implementations must not modify any shared state.
+         */
+        T prepareEdge(int from, int to, PointList pointList, ReaderWay way, List<Map<String, Object>> nodeTags);
+
+        /**
+         * Called sequentially for every prepared edge in the order of the OSM file.
+         */
+        void handleEdge(T preparedEdge);
+    }
+
     public interface RelationProcessor {
         void processRelation(ReaderRelation relation, LongToIntFunction getNodeIdForOSMNodeId);
     }
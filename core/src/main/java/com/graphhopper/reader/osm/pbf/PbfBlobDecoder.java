@@ -1,8 +1,10 @@
 // This software is released into the Public Domain.  See copying.txt for details.
 package com.graphhopper.reader.osm.pbf;
 
-import com.carrotsearch.hppc.LongIndexedContainer;
+import com.carrotsearch.hppc.LongArrayList;
+import com.google.protobuf.CodedInputStream;
 import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.WireFormat;
 import com.graphhopper.reader.ReaderElement;
 import com.graphhopper.reader.ReaderNode;
 import com.graphhopper.reader.ReaderRelation;
@@ -29,6 +31,8 @@ import java.util.zip.Inflater;
  */
 public class PbfBlobDecoder implements Runnable {
     private static final Logger log = LoggerFactory.getLogger(PbfBlobDecoder.class);
+    // the decoders run in a fixed thread pool, so we can re-use the inflater and the buffer for the inflated block
+    private static final ThreadLocal<DecodeBuffers> BUFFERS = ThreadLocal.withInitial(DecodeBuffers::new);
     private final boolean checkData = false;
     private final String blobType;
     private final byte[] rawBlob;
@@ -51,34 +55,84 @@ public class PbfBlobDecoder implements Runnable {
         this.skipOptions = skipOptions;
     }
 
-    private byte[] readBlobContent() throws IOException {
-        Fileformat.Blob blob = Fileformat.Blob.parseFrom(rawBlob);
-        byte[] blobData;
-
+    /**
+     * Reads the content of the blob into the buffer of the current thread.
+     *
+     * @return the number of bytes of the content
+     */
+    private int readBlobContent(Fileformat.Blob blob, DecodeBuffers buffers) {
         if (blob.hasRaw()) {
-            blobData = blob.getRaw().toByteArray();
+            buffers.ensureCapacity(blob.getRaw().size());
+            blob.getRaw().copyTo(buffers.blobData, 0);
+            return blob.getRaw().size();
         } else if (blob.hasZlibData()) {
-            Inflater inflater = new Inflater();
-            inflater.setInput(blob.getZlibData().toByteArray());
-            blobData = new byte[blob.getRawSize()];
+            int rawSize = blob.getRawSize();
+            buffers.ensureCapacity(rawSize);
+            Inflater inflater = buffers.inflater;
+            inflater.reset();
+            // the read-only buffer avoids copying the compressed data
+            inflater.setInput(blob.getZlibData().asReadOnlyByteBuffer());
+            int size = 0;
             try {
-                inflater.inflate(blobData);
+                while (size < rawSize && !inflater.finished()) {
+                    int inflated = inflater.inflate(buffers.blobData, size, rawSize - size);
+                    if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary()))
+                        break;
+                    size += inflated;
+                }
             } catch (DataFormatException e) {
                 throw new RuntimeException("Unable to decompress PBF blob.", e);
             }
             if (!inflater.finished()) {
                 throw new RuntimeException("PBF blob contains incomplete compressed data.");
             }
-            inflater.end();
+            return size;
         } else {
             throw new RuntimeException("PBF blob uses unsupported compression, only raw or zlib may be used.");
         }
+    }
+
+    /**
+     * Checks whether all elements of the block would be skipped anyway. In this case we do not need to parse the block,
+     * which is much more expensive than just inflating it. We only look at the first field of every primitive group,
+     * because a group contains elements of a single type only.
+     */
+    private boolean isSkippedBlock(byte[] data, int size) throws IOException {
+        if (!skipOptions.isSkipNodes() && !skipOptions.isSkipWays() && !skipOptions.isSkipRelations())
+            return false;
+
+        CodedInputStream block = CodedInputStream.newInstance(data, 0, size);
+        int tag;
+        while ((tag = block.readTag()) != 0) {
+            if (WireFormat.getTagFieldNumber(tag) != Osmformat.PrimitiveBlock.PRIMITIVEGROUP_FIELD_NUMBER) {
+                block.skipField(tag);
+                continue;
+            }
+            int oldLimit = block.pushLimit(block.readRawVarint32());
+            if (!block.isAtEnd() && !isSkippedGroup(WireFormat.getTagFieldNumber(block.readTag())))
+                return false;
+            block.skipRawBytes(block.getBytesUntilLimit());
+            block.popLimit(oldLimit);
+        }
+        return true;
+    }
 
-        return blobData;
+    private boolean isSkippedGroup(int firstField) {
+        switch (firstField) {
+            case Osmformat.PrimitiveGroup.NODES_FIELD_NUMBER:
+            case Osmformat.PrimitiveGroup.DENSE_FIELD_NUMBER:
+                return skipOptions.isSkipNodes();
+            case Osmformat.PrimitiveGroup.WAYS_FIELD_NUMBER:
+                return skipOptions.isSkipWays();
+            case Osmformat.PrimitiveGroup.RELATIONS_FIELD_NUMBER:
+                return skipOptions.isSkipRelations();
+            default:
+                return false;
+        }
     }
 
-    private void processOsmHeader(byte[] data) throws InvalidProtocolBufferException {
-        Osmformat.HeaderBlock header = Osmformat.HeaderBlock.parseFrom(data);
+    private void processOsmHeader(byte[] data, int size) throws InvalidProtocolBufferException {
+        Osmformat.HeaderBlock header = Osmformat.HeaderBlock.parser().parseFrom(data, 0, size);
 
         // Build the list of active and unsupported features in the file.
         List<String> supportedFeatures = Arrays.asList("OsmSchema-V0.6", "DenseNodes");
@@ -119,37 +173,17 @@ public class PbfBlobDecoder implements Runnable {
          */
     }
 
-    private Map<String, Object> buildTags(List<Integer> keys, List<Integer> values, PbfFieldDecoder fieldDecoder) {
-
-        // Ensure parallel lists are of equal size.
-        if (checkData) {
-            if (keys.size() != values.size()) {
-                throw new RuntimeException("Number of tag keys (" + keys.size() + ") and tag values ("
-                        + values.size() + ") don't match");
-            }
-        }
-
-        Iterator<Integer> keyIterator = keys.iterator();
-        Iterator<Integer> valueIterator = values.iterator();
-        if (keyIterator.hasNext()) {
-            Map<String, Object> tags = new HashMap<>(keys.size());
-            while (keyIterator.hasNext()) {
-                String key = fieldDecoder.decodeString(keyIterator.next());
-                String value = fieldDecoder.decodeString(valueIterator.next());
-                tags.put(key, value);
-            }
-            return tags;
-        }
-        return null;
-    }
-
     private void processNodes(List<Osmformat.Node> nodes, PbfFieldDecoder fieldDecoder) {
         for (Osmformat.Node node : nodes) {
-            Map<String, Object> tags = buildTags(node.getKeysList(), node.getValsList(), fieldDecoder);
-
             ReaderNode osmNode = new ReaderNode(node.getId(), fieldDecoder.decodeLatitude(node
                     .getLat()), fieldDecoder.decodeLatitude(node.getLon()));
-            osmNode.setTags(tags);
+            // Ensure parallel lists are of equal size.
+            if (checkData && node.getKeysCount() != node.getValsCount())
+                throw new RuntimeException("Number of tag keys (" + node.getKeysCount() + ") and tag values ("
+                        + node.getValsCount() + ") don't match");
+            // the tags are set directly and the strings are shared via the string table of the block
+            for (int i = 0; i < node.getKeysCount(); i++)
+                osmNode.setTag(fieldDecoder.decodeString(node.getKeys(i)), fieldDecoder.decodeString(node.getVals(i)));
 
             // Add the bound object to the results.
             decodedEntities.add(osmNode);
@@ -157,19 +191,19 @@ public class PbfBlobDecoder implements Runnable {
     }
 
     private void processNodes(Osmformat.DenseNodes nodes, PbfFieldDecoder fieldDecoder) {
-        List<Long> idList = nodes.getIdList();
-        List<Long> latList = nodes.getLatList();
-        List<Long> lonList = nodes.getLonList();
+        // use the indexed getters as the lists box every element
+        int nodeCount = nodes.getIdCount();
 
         // Ensure parallel lists are of equal size.
         if (checkData) {
-            if ((idList.size() != latList.size()) || (idList.size() != lonList.size())) {
-                throw new RuntimeException("Number of ids (" + idList.size() + "), latitudes (" + latList.size()
-                        + "), and longitudes (" + lonList.size() + ") don't match");
+            if ((nodeCount != nodes.getLatCount()) || (nodeCount != nodes.getLonCount())) {
+                throw new RuntimeException("Number of ids (" + nodeCount + "), latitudes (" + nodes.getLatCount()
+                        + "), and longitudes (" + nodes.getLonCount() + ") don't match");
             }
         }
 
-        Iterator<Integer> keysValuesIterator = nodes.getKeysValsList().iterator();
+        int keysValuesIndex = 0;
+        int keysValuesCount = nodes.getKeysValsCount();
 
         /*
          Osmformat.DenseInfo denseInfo;
@@ -186,11 +220,11 @@ public class PbfBlobDecoder implements Runnable {
 //		int userSid = 0;
 //		long timestamp = 0;
 //		long changesetId = 0;
-        for (int i = 0; i < idList.size(); i++) {
+        for (int i = 0; i < nodeCount; i++) {
             // Delta decode node fields.
-            nodeId += idList.get(i);
-            latitude += latList.get(i);
-            longitude += lonList.get(i);
+            nodeId += nodes.getId(i);
+            latitude += nodes.getLat(i);
+            longitude += nodes.getLon(i);
 
             /*
              if (denseInfo != null) {
@@ -218,31 +252,22 @@ public class PbfBlobDecoder implements Runnable {
             // Build the tags. The key and value string indexes are sequential
             // in the same PBF array. Each set of tags is delimited by an index
             // with a value of 0.
-            Map<String, Object> tags = null;
-            while (keysValuesIterator.hasNext()) {
-                int keyIndex = keysValuesIterator.next();
+            ReaderNode node = new ReaderNode(nodeId, fieldDecoder.decodeLatitude(latitude), fieldDecoder.decodeLongitude(longitude));
+            while (keysValuesIndex < keysValuesCount) {
+                int keyIndex = nodes.getKeysVals(keysValuesIndex++);
                 if (keyIndex == 0) {
                     break;
                 }
                 if (checkData) {
-                    if (!keysValuesIterator.hasNext()) {
+                    if (keysValuesIndex == keysValuesCount) {
                         throw new RuntimeException(
                                 "The PBF DenseInfo keys/values list contains a key with no corresponding value.");
                     }
                 }
-                int valueIndex = keysValuesIterator.next();
-
-                if (tags == null) {
-                    // divide by 2 as key&value, multiple by 2 because of the better approximation
-                    tags = new HashMap<>(Math.max(3, 2 * (nodes.getKeysValsList().size() / 2) / idList.size()));
-                }
-
-                tags.put(fieldDecoder.decodeString(keyIndex), fieldDecoder.decodeString(valueIndex));
+                int valueIndex = nodes.getKeysVals(keysValuesIndex++);
+                node.setTag(fieldDecoder.decodeString(keyIndex), fieldDecoder.decodeString(valueIndex));
             }
 
-            ReaderNode node = new ReaderNode(nodeId, fieldDecoder.decodeLatitude(latitude), fieldDecoder.decodeLongitude(longitude));
-            node.setTags(tags);
-
             // Add the bound object to the results.
             decodedEntities.add(node);
         }
@@ -250,17 +275,23 @@ public class PbfBlobDecoder implements Runnable {
 
     private void processWays(List<Osmformat.Way> ways, PbfFieldDecoder fieldDecoder) {
         for (Osmformat.Way way : ways) {
-            Map<String, Object> tags = buildTags(way.getKeysList(), way.getValsList(), fieldDecoder);
             ReaderWay osmWay = new ReaderWay(way.getId());
-            osmWay.setTags(tags);
+            if (checkData && way.getKeysCount() != way.getValsCount())
+                throw new RuntimeException("Number of tag keys (" + way.getKeysCount() + ") and tag values ("
+                        + way.getValsCount() + ") don't match");
+            // the tags are set directly and the strings are shared via the string table of the block
+            for (int i = 0; i < way.getKeysCount(); i++)
+                osmWay.setTag(fieldDecoder.decodeString(way.getKeys(i)), fieldDecoder.decodeString(way.getVals(i)));
 
             // Build up the list of way nodes for the way. The node ids are
             // delta encoded meaning that each id is stored as a delta against
             // the previous one.
             long nodeId = 0;
-            LongIndexedContainer wayNodes = osmWay.getNodes();
-            for (long nodeIdOffset : way.getRefsList()) {
-                nodeId += nodeIdOffset;
+            int refCount = way.getRefsCount();
+            LongArrayList wayNodes = osmWay.getNodes();
+            wayNodes.ensureCapacity(refCount);
+            for (int i = 0; i < refCount; i++) {
+                nodeId += way.getRefs(i);
                 wayNodes.add(nodeId);
             }
 
@@ -268,29 +299,24 @@ public class PbfBlobDecoder implements Runnable {
         }
     }
 
-    private void buildRelationMembers(ReaderRelation relation,
-                                      List<Long> memberIds, List<Integer> memberRoles, List<Osmformat.Relation.MemberType> memberTypes,
-                                      PbfFieldDecoder fieldDecoder) {
+    private void buildRelationMembers(ReaderRelation relation, Osmformat.Relation pbfRelation, PbfFieldDecoder fieldDecoder) {
+        int memberCount = pbfRelation.getMemidsCount();
 
         // Ensure parallel lists are of equal size.
         if (checkData) {
-            if ((memberIds.size() != memberRoles.size()) || (memberIds.size() != memberTypes.size())) {
-                throw new RuntimeException("Number of member ids (" + memberIds.size() + "), member roles ("
-                        + memberRoles.size() + "), and member types (" + memberTypes.size() + ") don't match");
+            if ((memberCount != pbfRelation.getRolesSidCount()) || (memberCount != pbfRelation.getTypesCount())) {
+                throw new RuntimeException("Number of member ids (" + memberCount + "), member roles ("
+                        + pbfRelation.getRolesSidCount() + "), and member types (" + pbfRelation.getTypesCount() + ") don't match");
             }
         }
 
-        Iterator<Long> memberIdIterator = memberIds.iterator();
-        Iterator<Integer> memberRoleIterator = memberRoles.iterator();
-        Iterator<Osmformat.Relation.MemberType> memberTypeIterator = memberTypes.iterator();
-
         // Build up the list of relation members for the way. The member ids are
         // delta encoded meaning that each id is stored as a delta against
         // the previous one.
         long refId = 0;
-        while (memberIdIterator.hasNext()) {
-            Osmformat.Relation.MemberType memberType = memberTypeIterator.next();
-            refId += memberIdIterator.next();
+        for (int i = 0; i < memberCount; i++) {
+            Osmformat.Relation.MemberType memberType = pbfRelation.getTypes(i);
+            refId += pbfRelation.getMemids(i);
 
             ReaderElement.Type entityType = ReaderElement.Type.NODE;
             if (memberType == Osmformat.Relation.MemberType.WAY) {
@@ -304,28 +330,30 @@ public class PbfBlobDecoder implements Runnable {
                 }
             }
 
-            ReaderRelation.Member member = new ReaderRelation.Member(entityType, refId, fieldDecoder.decodeString(memberRoleIterator.next()));
+            ReaderRelation.Member member = new ReaderRelation.Member(entityType, refId, fieldDecoder.decodeString(pbfRelation.getRolesSid(i)));
             relation.add(member);
         }
     }
 
     private void processRelations(List<Osmformat.Relation> relations, PbfFieldDecoder fieldDecoder) {
         for (Osmformat.Relation relation : relations) {
-            Map<String, Object> tags = buildTags(relation.getKeysList(), relation.getValsList(), fieldDecoder);
-
             ReaderRelation osmRelation = new ReaderRelation(relation.getId());
-            osmRelation.setTags(tags);
+            if (checkData && relation.getKeysCount() != relation.getValsCount())
+                throw new RuntimeException("Number of tag keys (" + relation.getKeysCount() + ") and tag values ("
+                        + relation.getValsCount() + ") don't match");
+            // the tags are set directly and the strings are shared via the string table of the block
+            for (int i = 0; i < relation.getKeysCount(); i++)
+                osmRelation.setTag(fieldDecoder.decodeString(relation.getKeys(i)), fieldDecoder.decodeString(relation.getVals(i)));
 
-            buildRelationMembers(osmRelation, relation.getMemidsList(), relation.getRolesSidList(),
-                    relation.getTypesList(), fieldDecoder);
+            buildRelationMembers(osmRelation, relation, fieldDecoder);
 
             // Add the bound object to the results.
             decodedEntities.add(osmRelation);
         }
     }
 
-    private void processOsmPrimitives(byte[] data) throws InvalidProtocolBufferException {
-        Osmformat.PrimitiveBlock block = Osmformat.PrimitiveBlock.parseFrom(data);
+    private void processOsmPrimitives(byte[] data, int size) throws InvalidProtocolBufferException {
+        Osmformat.PrimitiveBlock block = Osmformat.PrimitiveBlock.parser().parseFrom(data, 0, size);
         PbfFieldDecoder fieldDecoder = new PbfFieldDecoder(block);
 
         for (Osmformat.PrimitiveGroup primitiveGroup : block.getPrimitivegroupList()) {
@@ -343,11 +371,15 @@ public class PbfBlobDecoder implements Runnable {
     private void runAndTrapExceptions() {
         try {
             decodedEntities = new ArrayList<>();
+            DecodeBuffers buffers = BUFFERS.get();
             if ("OSMHeader".equals(blobType)) {
-                processOsmHeader(readBlobContent());
+                int size = readBlobContent(Fileformat.Blob.parseFrom(rawBlob), buffers);
+                processOsmHeader(buffers.blobData, size);
 
             } else if ("OSMData".equals(blobType)) {
-                processOsmPrimitives(readBlobContent());
+                int size = readBlobContent(Fileformat.Blob.parseFrom(rawBlob), buffers);
+                if (!isSkippedBlock(buffers.blobData, size))
+                    processOsmPrimitives(buffers.blobData, size);
 
             } else if (log.isDebugEnabled())
                 log.debug("Skipping unrecognised blob type " + blobType);
@@ -367,4 +399,14 @@ public class PbfBlobDecoder implements Runnable {
             listener.error(e);
         }
     }
+
+    private static class DecodeBuffers {
+        final Inflater inflater = new Inflater();
+        byte[] blobData = new byte[0];
+
+        void ensureCapacity(int size) {
+            if (blobData.length < size)
+                blobData = new byte[size];
+        }
+    }
 }
@@ -19,6 +19,7 @@ package com.graphhopper.routing;
 
 import com.graphhopper.routing.ev.*;
 import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.EdgeKVCache;
 import com.graphhopper.storage.Graph;
 import com.graphhopper.storage.NodeAccess;
 import com.graphhopper.util.*;
@@ -47,6 +48,9 @@ public class InstructionsFromEdges implements Path.EdgeVisitor {
     private final EnumEncodedValue<RoadEnvironment> roadEnvEnc;
     private final IntEncodedValue lanesEnc;
     private final DecimalEncodedValue maxSpeedEnc;
+    // the key-values are read via this cache in the order of these keys
+    private final EdgeKVCache kvCache = new EdgeKVCache(STREET_NAME, STREET_REF, STREET_DESTINATION,
+            STREET_DESTINATION_REF, MOTORWAY_JUNCTION);
 
     /*
      * We need three points to make directions
@@ -148,11 +152,11 @@ public class InstructionsFromEdges implements Path.EdgeVisitor {
             assert Double.compare(prevLon, nodeAccess.getLon(baseNode)) == 0;
         }
 
-        final String name = (String) edge.getValue(STREET_NAME);
-        final String ref = (String) edge.getValue(STREET_REF);
-        final String destination = (String) edge.getValue(STREET_DESTINATION); // getValue is fast if it does not exist in edge
-        final String destinationRef = (String) edge.getValue(STREET_DESTINATION_REF);
-        final String motorwayJunction = (String) edge.getValue(MOTORWAY_JUNCTION);
+        final String name = (String) kvCache.getValue(edge, 0);
+        final String ref = (String) kvCache.getValue(edge, 1);
+        final String destination = (String) kvCache.getValue(edge, 2);
+        final String destinationRef = (String) kvCache.getValue(edge, 3);
+        final String motorwayJunction = (String) kvCache.getValue(edge, 4);
         final RoadEnvironment roadEnv = edge.get(roadEnvEnc);
 
         if ((prevInstruction == null) && (!isRoundabout)) // very first instruction (if not in Roundabout)
@@ -33,6 +33,8 @@ public class OSMReaderConfig {
     private int ramerElevationSmoothingMax = 5;
     private double longEdgeSamplingDistance = Double.MAX_VALUE;
     private int workerThreads = 2;
+    private int tagParserThreads = 1;
+    private int elevationThreads = 1;
     private double defaultElevation = 0;
 
     public List<String> getIgnoredHighways() {
@@ -157,6 +159,38 @@ public class OSMReaderConfig {
         return this;
     }
 
+    public int getTagParserThreads() {
+        return tagParserThreads;
+    }
+
+    /**
+     * Sets the number of threads used to run the tag parsers for the OSM ways. With more than one thread the ways are
+     * collected in batches and their tags are parsed concurrently, while the edges are still added to the graph
+     * sequentially.
+     */
+    public OSMReaderConfig setTagParserThreads(int tagParserThreads) {
+        if (tagParserThreads < 1)
+            throw new IllegalArgumentException("tag parser threads must be positive, but was: " + tagParserThreads);
+        this.tagParserThreads = tagParserThreads;
+        return this;
+    }
+
+    public int getElevationThreads() {
+        return elevationThreads;
+    }
+
+    /**
+     * Sets the number of threads used to look up the elevation of the OSM nodes. With more than one thread the nodes
+     * are collected in batches and their elevation is read concurrently, which requires a thread-safe elevation
+     * provider.
+     */
+    public OSMReaderConfig setElevationThreads(int elevationThreads) {
+        if (elevationThreads < 1)
+            throw new IllegalArgumentException("elevation threads must be positive, but was: " + elevationThreads);
+        this.elevationThreads = elevationThreads;
+        return this;
+    }
+
     public double getDefaultElevation() {
         return defaultElevation;
     }
@@ -23,6 +23,7 @@ import com.graphhopper.GHRequest;
 import com.graphhopper.GHResponse;
 import com.graphhopper.ResponsePath;
 import com.graphhopper.config.Profile;
+import com.graphhopper.routing.ch.CCHCustomizer;
 import com.graphhopper.routing.ch.CHRoutingAlgorithmFactory;
 import com.graphhopper.routing.ev.BooleanEncodedValue;
 import com.graphhopper.routing.ev.EncodedValueLookup;
@@ -66,6 +67,7 @@ public class Router {
     protected final WeightingFactory weightingFactory;
     protected final Map<String, RoutingCHGraph> chGraphs;
     protected final Map<String, LandmarkStorage> landmarks;
+    protected final CCHCustomizer cchCustomizer;
     protected final boolean chEnabled;
     protected final boolean lmEnabled;
 
@@ -73,6 +75,17 @@ public class Router {
                   Map<String, Profile> profilesByName, PathDetailsBuilderFactory pathDetailsBuilderFactory,
                   TranslationMap translationMap, RouterConfig routerConfig, WeightingFactory weightingFactory,
                   Map<String, RoutingCHGraph> chGraphs, Map<String, LandmarkStorage> landmarks) {
+        this(graph, encodingManager, locationIndex, profilesByName, pathDetailsBuilderFactory, translationMap, routerConfig,
+                weightingFactory, chGraphs, landmarks, null);
+    }
+
+    /**
+     * @param cchCustomizer used for requests with a custom model, can be null if there is no CCH topology
+     */
+    public Router(BaseGraph graph, EncodingManager encodingManager, LocationIndex locationIndex,
+                  Map<String, Profile> profilesByName, PathDetailsBuilderFactory pathDetailsBuilderFactory,
+                  TranslationMap translationMap, RouterConfig routerConfig, WeightingFactory weightingFactory,
+                  Map<String, RoutingCHGraph> chGraphs, Map<String, LandmarkStorage> landmarks, CCHCustomizer cchCustomizer) {
         this.graph = graph;
         this.encodingManager = encodingManager;
         this.locationIndex = locationIndex;
@@ -83,6 +96,7 @@ public class Router {
         this.weightingFactory = weightingFactory;
         this.chGraphs = chGraphs;
         this.landmarks = landmarks;
+        this.cchCustomizer = cchCustomizer;
         // note that his is not the same as !ghStorage.getCHConfigs().isEmpty(), because the GHStorage might have some
         // CHGraphs that were not built yet (and possibly no CH profiles were configured).
         this.chEnabled = !chGraphs.isEmpty();
@@ -190,7 +204,17 @@ public class Router {
     protected Solver createSolver(GHRequest request) {
         final boolean disableCH = getDisableCH(request.getHints());
         final boolean disableLM = getDisableLM(request.getHints());
-        if (chEnabled && !disableCH) {
+        if (isCCHApplicable(request) && !disableCH) {
+            // used if the custom model is customized for another request right now or if too many customizations are
+            // running, so we do not wait for them
+            Solver fallbackSolver = lmEnabled && !disableLM && landmarks.containsKey(request.getProfile())
+                    ? createLMSolver(request, profilesByName, routerConfig, encodingManager, weightingFactory, graph, locationIndex, landmarks)
+                    : createFlexSolver(request, profilesByName, routerConfig, encodingManager, weightingFactory, graph, locationIndex);
+            // the CCH does not support these parameters, just like CH, but the fallback does
+            if (!request.getHeadings().isEmpty() || getPassThrough(request.getHints()) || ROUND_TRIP.equalsIgnoreCase(request.getAlgorithm()))
+                return fallbackSolver;
+            return createCCHSolver(request, profilesByName, routerConfig, encodingManager, weightingFactory, cchCustomizer, fallbackSolver);
+        } else if (chEnabled && !disableCH) {
             return createCHSolver(request, profilesByName, routerConfig, encodingManager, chGraphs);
         } else if (lmEnabled && !disableLM) {
             return createLMSolver(request, profilesByName, routerConfig, encodingManager, weightingFactory, graph, locationIndex, landmarks);
@@ -199,6 +223,23 @@ public class Router {
         }
     }
 
+    /**
+     * Requests with a custom model cannot use the CH preparations, but if there is a CCH topology we can customize it
+     * for the custom model of the request, as long as the profile does not use turn costs.
+     */
+    private boolean isCCHApplicable(GHRequest request) {
+        if (cchCustomizer == null || request.getCustomModel() == null)
+            return false;
+        Profile profile = profilesByName.get(request.getProfile());
+        return profile != null && !profile.hasTurnCosts();
+    }
+
+    protected Solver createCCHSolver(GHRequest request, Map<String, Profile> profilesByName, RouterConfig routerConfig,
+                                     EncodingManager encodingManager, WeightingFactory weightingFactory, CCHCustomizer cchCustomizer,
+                                     Solver fallbackSolver) {
+        return new CCHSolver(request, profilesByName, routerConfig, encodingManager, weightingFactory, cchCustomizer, fallbackSolver);
+    }
+
     protected Solver createCHSolver(GHRequest request, Map<String, Profile> profilesByName, RouterConfig routerConfig,
                                     EncodingManager encodingManager, Map<String, RoutingCHGraph> chGraphs) {
         return new CHSolver(request, profilesByName, routerConfig, encodingManager, chGraphs);
@@ -499,6 +540,43 @@ public class Router {
         }
     }
 
+    private static class CCHSolver extends Solver {
+        private final WeightingFactory weightingFactory;
+        private final CCHCustomizer cchCustomizer;
+        private final Solver fallbackSolver;
+
+        CCHSolver(GHRequest request, Map<String, Profile> profilesByName, RouterConfig routerConfig, EncodedValueLookup lookup,
+                  WeightingFactory weightingFactory, CCHCustomizer cchCustomizer, Solver fallbackSolver) {
+            super(request, profilesByName, routerConfig, lookup);
+            this.weightingFactory = weightingFactory;
+            this.cchCustomizer = cchCustomizer;
+            this.fallbackSolver = fallbackSolver;
+        }
+
+        @Override
+        protected Weighting createWeighting() {
+            PMap requestHints = new PMap(request.getHints());
+            requestHints.putObject(CustomModel.KEY, request.getCustomModel());
+            return weightingFactory.createWeighting(profile, requestHints, false);
+        }
+
+        @Override
+        protected PathCalculator createPathCalculator(QueryGraph queryGraph) {
+            PMap opts = new PMap(request.getHints());
+            opts.putObject(ALGORITHM, request.getAlgorithm());
+            opts.putObject(MAX_VISITED_NODES, getMaxVisitedNodes(request.getHints()));
+            opts.putObject(TIMEOUT_MS, getTimeoutMillis(request.getHints()));
+            // the custom model of the profile does not change, so the one of the request identifies the weighting
+            RoutingCHGraph chGraph = cchCustomizer.tryCustomize(profile.getName() + "|" + request.getCustomModel(), weighting);
+            if (chGraph == null) {
+                fallbackSolver.checkRequest();
+                fallbackSolver.init();
+                return fallbackSolver.createPathCalculator(queryGraph);
+            }
+            return new CHPathCalculator(new CHRoutingAlgorithmFactory(chGraph, queryGraph), opts);
+        }
+    }
+
     public static class FlexSolver extends Solver {
         protected final RouterConfig routerConfig;
         private final WeightingFactory weightingFactory;
@@ -0,0 +1,521 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.ch;
+
+import com.carrotsearch.hppc.DoubleArrayList;
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.IntCollection;
+import com.carrotsearch.hppc.IntHashSet;
+import com.carrotsearch.hppc.IntIntHashMap;
+import com.carrotsearch.hppc.LongIntHashMap;
+import com.carrotsearch.hppc.cursors.IntCursor;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.*;
+import com.graphhopper.util.EdgeExplorer;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.EdgeIteratorState;
+
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.function.IntToDoubleFunction;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Calculates the shortcut weights of a customizable contraction hierarchy (CCH) for a given weighting. The shortcut
+ * topology created by {@link PrepareCCH} does not depend on the weighting, so this customization is all that is needed
+ * to obtain a {@link RoutingCHGraph} that can be used with the usual CH algorithms. It runs in time linear in the
+ * number of lower triangles of the topology, which is much faster than a full CH preparation.
+ * <p>
+ * The customized graphs are kept in a small least-recently-used cache, so e.g. subsequent requests using the same
+ * custom model do not have to repeat the customization. Every customization allocates the shortcut weights for the
+ * whole graph, so the same key is only customized once even for concurrent requests, and the number of customizations
+ * running at the same time can be limited.
+ * <p>
+ * When only the weights of a few edges change, e.g. due to live traffic, {@link #recustomize} can be used to update
+ * only the shortcuts that are affected by these edges. The updates are double-buffered: the shortcuts are written in
+ * place into a second storage, which is then used by the returned graph, and the storage of the given graph becomes
+ * the second storage of the next update.
+ */
+public class CCHCustomizer {
+    private final BaseGraph graph;
+    private final CHStorage topology;
+    // maps the (lower level node, higher level node) pairs to the forward shortcut, the backward shortcut is the next one
+    private final LongIntHashMap shortcutsByNodePair;
+    private final int[] nodesByLevel;
+    // the lower level neighbors of every node (sorted by node id), i.e. lowerNeighbors[lowerNeighborsStart[node]] to
+    // lowerNeighbors[lowerNeighborsStart[node + 1] - 1]. the common lower neighbors of two nodes form the lower
+    // triangles of their shortcut
+    private final int[] lowerNeighborsStart;
+    private final int[] lowerNeighbors;
+    // the customizations that are still running are in the cache as well, so other threads do not start them again
+    private final Map<String, CompletableFuture<RoutingCHGraph>> cache;
+    private final Semaphore customizations;
+    // the second storage of every graph returned by recustomize, together with the shortcuts that were updated in the
+    // storage of the graph, but not in the second storage yet
+    private final Map<RoutingCHGraph, Buffer> buffers = Collections.synchronizedMap(new WeakHashMap<>());
+
+    public CCHCustomizer(BaseGraph graph, CHStorage topology, int cacheSize) {
+        this(graph, topology, cacheSize, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param maxConcurrentCustomizations the maximum number of customizations of {@link #customize(String, Weighting)}
+     *                                    and {@link #tryCustomize(String, Weighting)} that run at the same time
+     */
+    public CCHCustomizer(BaseGraph graph, CHStorage topology, int cacheSize, int maxConcurrentCustomizations) {
+        if (topology.isEdgeBased())
+            throw new IllegalArgumentException("CCH is only supported for node-based CH storages");
+        if (topology.getNodes() != graph.getNodes())
+            throw new IllegalArgumentException("The CCH topology does not match the graph, nodes: " + topology.getNodes() + " vs. " + graph.getNodes());
+        this.graph = graph;
+        this.topology = topology;
+        shortcutsByNodePair = new LongIntHashMap(topology.getShortcuts() / 2);
+        for (int sc = 0; sc < topology.getShortcuts(); sc += 2) {
+            long pointer = topology.toShortcutPointer(sc);
+            shortcutsByNodePair.put(nodePairKey(topology.getNodeA(pointer), topology.getNodeB(pointer)), sc);
+        }
+        nodesByLevel = new int[topology.getNodes()];
+        for (int node = 0; node < topology.getNodes(); node++)
+            nodesByLevel[getLevel(node)] = node;
+        lowerNeighborsStart = new int[topology.getNodes() + 1];
+        EdgeExplorer explorer = graph.createEdgeExplorer();
+        IntArrayList upperNeighbors = new IntArrayList();
+        for (int node = 0; node < topology.getNodes(); node++)
+            for (IntCursor c : findUpperNeighbors(node, explorer, upperNeighbors))
+                lowerNeighborsStart[c.value + 1]++;
+        for (int node = 0; node < topology.getNodes(); node++)
+            lowerNeighborsStart[node + 1] += lowerNeighborsStart[node];
+        lowerNeighbors = new int[lowerNeighborsStart[topology.getNodes()]];
+        int[] next = Arrays.copyOf(lowerNeighborsStart, topology.getNodes());
+        // we add the nodes in ascending order, so the lower neighbor lists are sorted
+        for (int node = 0; node < topology.getNodes(); node++)
+            for (IntCursor c : findUpperNeighbors(node, explorer, upperNeighbors))
+                lowerNeighbors[next[c.value]++] = node;
+        cache = Collections.synchronizedMap(new LinkedHashMap<String, CompletableFuture<RoutingCHGraph>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CompletableFuture<RoutingCHGraph>> eldest) {
+                return size() > cacheSize;
+            }
+        });
+        if (maxConcurrentCustomizations < 1)
+            throw new IllegalArgumentException("maxConcurrentCustomizations must be positive, but was: " + maxConcurrentCustomizations);
+        customizations = new Semaphore(maxConcurrentCustomizations);
+    }
+
+    /**
+     * Returns the customized graph for the given key from the cache or customizes the topology for the given weighting
+     * and puts the result into the cache. The key must uniquely identify the weighting, e.g. it could be created from
+     * the profile name and the custom model. If another thread is customizing the same key already this method waits
+     * for its result.
+     */
+    public RoutingCHGraph customize(String cacheKey, Weighting weighting) {
+        return customize(cacheKey, weighting, true);
+    }
+
+    /**
+     * Like {@link #customize(String, Weighting)}, but returns null instead of waiting when another thread is
+     * customizing the same key or when the maximum number of concurrent customizations is reached. This way the caller
+     * can use a slower algorithm that does not need the customization instead.
+     */
+    public RoutingCHGraph tryCustomize(String cacheKey, Weighting weighting) {
+        return customize(cacheKey, weighting, false);
+    }
+
+    private RoutingCHGraph customize(String cacheKey, Weighting weighting, boolean wait) {
+        while (true) {
+            CompletableFuture<RoutingCHGraph> existing = cache.get(cacheKey);
+            if (existing != null) {
+                if (!wait && !existing.isDone())
+                    return null;
+                try {
+                    return existing.join();
+                } catch (CompletionException ex) {
+                    // the thread running the customization removed the failed entry from the cache already
+                    throw ex.getCause() instanceof RuntimeException ? (RuntimeException) ex.getCause() : ex;
+                }
+            }
+            if (wait)
+                customizations.acquireUninterruptibly();
+            else if (!customizations.tryAcquire())
+                return null;
+            try {
+                CompletableFuture<RoutingCHGraph> future = new CompletableFuture<>();
+                if (cache.putIfAbsent(cacheKey, future) != null)
+                    // another thread started the same customization in the meantime
+                    continue;
+                try {
+                    RoutingCHGraph chGraph = customize(weighting);
+                    future.complete(chGraph);
+                    return chGraph;
+                } catch (RuntimeException ex) {
+                    cache.remove(cacheKey, future);
+                    future.completeExceptionally(ex);
+                    throw ex;
+                }
+            } finally {
+                customizations.release();
+            }
+        }
+    }
+
+    public RoutingCHGraph customize(Weighting weighting) {
+        if (weighting.hasTurnCosts())
+            throw new IllegalArgumentException("CCH does not support weightings with turn costs");
+        int shortcuts = topology.getShortcuts();
+        double[] weights = new double[shortcuts];
+        int[] skippedEdges1 = new int[shortcuts];
+        int[] skippedEdges2 = new int[shortcuts];
+        Arrays.fill(weights, Double.POSITIVE_INFINITY);
+        Arrays.fill(skippedEdges1, EdgeIterator.NO_EDGE);
+        Arrays.fill(skippedEdges2, EdgeIterator.NO_EDGE);
+
+        EdgeExplorer explorer = graph.createEdgeExplorer();
+        IntIntHashMap indexByNeighbor = new IntIntHashMap();
+        IntArrayList neighbors = new IntArrayList();
+        DoubleArrayList inWeights = new DoubleArrayList();
+        DoubleArrayList outWeights = new DoubleArrayList();
+        IntArrayList inEdges = new IntArrayList();
+        IntArrayList outEdges = new IntArrayList();
+        // the shortcut weights are final once all lower triangles were considered. all nodes of these triangles have a
+        // lower level than the two nodes of the shortcut, so we can simply process the nodes in ascending level order
+        for (int node : nodesByLevel) {
+            int level = getLevel(node);
+            indexByNeighbor.clear();
+            neighbors.clear();
+            inWeights.clear();
+            outWeights.clear();
+            inEdges.clear();
+            outEdges.clear();
+            // find the best edge or shortcut from/to every higher level neighbor
+            EdgeIterator iter = explorer.setBaseNode(node);
+            while (iter.next()) {
+                if (getLevel(iter.getAdjNode()) <= level)
+                    continue;
+                int index = getNeighborIndex(iter.getAdjNode(), indexByNeighbor, neighbors, inWeights, outWeights, inEdges, outEdges);
+                double outWeight = weighting.calcEdgeWeight(iter, false);
+                if (outWeight < outWeights.get(index)) {
+                    outWeights.set(index, outWeight);
+                    outEdges.set(index, iter.getEdge());
+                }
+                double inWeight = weighting.calcEdgeWeight(iter, true);
+                if (inWeight < inWeights.get(index)) {
+                    inWeights.set(index, inWeight);
+                    inEdges.set(index, iter.getEdge());
+                }
+            }
+            for (int sc = topology.getLastShortcut(topology.toNodePointer(node)); sc >= 0; sc--) {
+                long pointer = topology.toShortcutPointer(sc);
+                if (topology.getNodeA(pointer) != node)
+                    break;
+                int index = getNeighborIndex(topology.getNodeB(pointer), indexByNeighbor, neighbors, inWeights, outWeights, inEdges, outEdges);
+                if (topology.getFwdAccess(pointer) && weights[sc] < outWeights.get(index)) {
+                    outWeights.set(index, weights[sc]);
+                    outEdges.set(index, graph.getEdges() + sc);
+                }
+                if (topology.getBwdAccess(pointer) && weights[sc] < inWeights.get(index)) {
+                    inWeights.set(index, weights[sc]);
+                    inEdges.set(index, graph.getEdges() + sc);
+                }
+            }
+            // relax the shortcuts between all pairs of higher level neighbors via the current node
+            for (int i = 0; i < neighbors.size(); i++) {
+                for (int j = i + 1; j < neighbors.size(); j++) {
+                    boolean iIsLower = getLevel(neighbors.get(i)) < getLevel(neighbors.get(j));
+                    int lower = iIsLower ? i : j;
+                    int higher = iIsLower ? j : i;
+                    int sc = shortcutsByNodePair.getOrDefault(nodePairKey(neighbors.get(lower), neighbors.get(higher)), -1);
+                    if (sc < 0)
+                        throw new IllegalStateException("The CCH topology is missing a shortcut between nodes " + neighbors.get(lower) + " and " + neighbors.get(higher));
+                    double fwdWeight = inWeights.get(lower) + outWeights.get(higher);
+                    if (fwdWeight < weights[sc]) {
+                        weights[sc] = fwdWeight;
+                        skippedEdges1[sc] = inEdges.get(lower);
+                        skippedEdges2[sc] = outEdges.get(higher);
+                    }
+                    double bwdWeight = inWeights.get(higher) + outWeights.get(lower);
+                    if (bwdWeight < weights[sc + 1]) {
+                        weights[sc + 1] = bwdWeight;
+                        skippedEdges1[sc + 1] = inEdges.get(higher);
+                        skippedEdges2[sc + 1] = outEdges.get(lower);
+                    }
+                }
+            }
+        }
+
+        return new RoutingCHGraphImpl(graph, createCHStorage(sc -> weights[sc], sc -> skippedEdges1[sc], sc -> skippedEdges2[sc]), weighting);
+    }
+
+    /**
+     * Updates the shortcut weights of a graph that was customized before, after the weights of some edges changed,
+     * e.g. because of live traffic. Only the shortcuts that have one of the changed edges or another updated shortcut
+     * in one of their lower triangles are recalculated, which is usually a small fraction of all shortcuts.
+     * <p>
+     * The given graph is not modified, so it can still be used by running queries while the update takes place. But
+     * the storage of the graph returned by the previous call for the given graph is reused and modified, so it must no
+     * longer be in use. Only the first update of a graph copies its storage.
+     *
+     * @param chGraph      a graph created by {@link #customize(Weighting)} or this method. graphs from the cache must
+     *                     not be used, because their storage would be modified by the next update
+     * @param weighting    the new weighting. it must only differ from the weighting of the given graph for the
+     *                     changed edges
+     * @param changedEdges the edges whose weights changed
+     */
+    public RoutingCHGraph recustomize(RoutingCHGraph chGraph, Weighting weighting, IntCollection changedEdges) {
+        if (weighting.hasTurnCosts())
+            throw new IllegalArgumentException("CCH does not support weightings with turn costs");
+        if (!(chGraph instanceof RoutingCHGraphImpl) || chGraph.getShortcuts() != topology.getShortcuts())
+            throw new IllegalArgumentException("The given graph was not created by this customizer");
+        CHStorage previous = ((RoutingCHGraphImpl) chGraph).getCHStorage();
+        // removing the buffer makes sure that two concurrent updates of the same graph do not use the same storage
+        Buffer buffer = buffers.remove(chGraph);
+        CHStorage chStore;
+        if (buffer == null) {
+            chStore = createCHStorage(sc -> previous.getWeight(previous.toShortcutPointer(sc)),
+                    sc -> previous.getSkippedEdge1(previous.toShortcutPointer(sc)),
+                    sc -> previous.getSkippedEdge2(previous.toShortcutPointer(sc)));
+        } else {
+            // the buffer only lacks the shortcuts of the update that created the given graph
+            chStore = buffer.chStore;
+            for (IntCursor c : buffer.outdatedShortcuts) {
+                copyShortcut(previous, chStore, c.value);
+                copyShortcut(previous, chStore, c.value + 1);
+            }
+        }
+        IntArrayList updatedShortcuts = new IntArrayList();
+
+        EdgeExplorer explorer = graph.createEdgeExplorer();
+        IntArrayList upperNeighbors = new IntArrayList();
+        // the shortcuts that need to be recalculated, ordered by the level of their lower level node, such that all
+        // shortcuts in their lower triangles are final when they are polled
+        PriorityQueue<Long> queue = new PriorityQueue<>();
+        IntHashSet queued = new IntHashSet();
+        for (IntCursor c : changedEdges) {
+            EdgeIteratorState edge = graph.getEdgeIteratorState(c.value, Integer.MIN_VALUE);
+            if (edge.getBaseNode() == edge.getAdjNode())
+                continue;
+            boolean baseIsLower = getLevel(edge.getBaseNode()) < getLevel(edge.getAdjNode());
+            enqueueUpperTriangles(baseIsLower ? edge.getBaseNode() : edge.getAdjNode(), baseIsLower ? edge.getAdjNode() : edge.getBaseNode(),
+                    explorer, upperNeighbors, queue, queued);
+        }
+
+        Arc lowerArc = new Arc();
+        Arc higherArc = new Arc();
+        while (!queue.isEmpty()) {
+            int sc = 2 * (int) (queue.poll() & 0xFFFFFFFFL);
+            updatedShortcuts.add(sc);
+            long fwdPointer = chStore.toShortcutPointer(sc);
+            long bwdPointer = chStore.toShortcutPointer(sc + 1);
+            int lower = chStore.getNodeA(fwdPointer);
+            int higher = chStore.getNodeB(fwdPointer);
+            double fwdWeight = Double.POSITIVE_INFINITY;
+            double bwdWeight = Double.POSITIVE_INFINITY;
+            int fwdSkip1 = EdgeIterator.NO_EDGE, fwdSkip2 = EdgeIterator.NO_EDGE;
+            int bwdSkip1 = EdgeIterator.NO_EDGE, bwdSkip2 = EdgeIterator.NO_EDGE;
+            // iterate the lower triangles, i.e. the common lower neighbors of the two nodes
+            int i = lowerNeighborsStart[lower], j = lowerNeighborsStart[higher];
+            while (i < lowerNeighborsStart[lower + 1] && j < lowerNeighborsStart[higher + 1]) {
+                if (lowerNeighbors[i] < lowerNeighbors[j]) {
+                    i++;
+                } else if (lowerNeighbors[i] > lowerNeighbors[j]) {
+                    j++;
+                } else {
+                    int node = lowerNeighbors[i];
+                    findBestArc(node, lower, chStore, explorer, weighting, lowerArc);
+                    findBestArc(node, higher, chStore, explorer, weighting, higherArc);
+                    if (lowerArc.inWeight + higherArc.outWeight < fwdWeight) {
+                        fwdWeight = lowerArc.inWeight + higherArc.outWeight;
+                        fwdSkip1 = lowerArc.inEdge;
+                        fwdSkip2 = higherArc.outEdge;
+                    }
+                    if (higherArc.inWeight + lowerArc.outWeight < bwdWeight) {
+                        bwdWeight = higherArc.inWeight + lowerArc.outWeight;
+                        bwdSkip1 = higherArc.inEdge;
+                        bwdSkip2 = lowerArc.outEdge;
+                    }
+                    i++;
+                    j++;
+                }
+            }
+            double oldFwdWeight = chStore.getWeight(fwdPointer);
+            double oldBwdWeight = chStore.getWeight(bwdPointer);
+            chStore.setWeight(fwdPointer, fwdWeight);
+            chStore.setSkippedEdges(fwdPointer, fwdSkip1, fwdSkip2);
+            chStore.setWeight(bwdPointer, bwdWeight);
+            chStore.setSkippedEdges(bwdPointer, bwdSkip1, bwdSkip2);
+            // only if the weight changed the shortcuts that have this shortcut in their lower triangles are affected
+            if (chStore.getWeight(fwdPointer) != oldFwdWeight || chStore.getWeight(bwdPointer) != oldBwdWeight)
+                enqueueUpperTriangles(lower, higher, explorer, upperNeighbors, queue, queued);
+        }
+        RoutingCHGraph result = new RoutingCHGraphImpl(graph, chStore, weighting);
+        buffers.put(result, new Buffer(previous, updatedShortcuts));
+        return result;
+    }
+
+    private static void copyShortcut(CHStorage from, CHStorage to, int sc) {
+        long fromPointer = from.toShortcutPointer(sc);
+        long toPointer = to.toShortcutPointer(sc);
+        to.setWeight(toPointer, from.getWeight(fromPointer));
+        to.setSkippedEdges(toPointer, from.getSkippedEdge1(fromPointer), from.getSkippedEdge2(fromPointer));
+    }
+
+    /**
+     * Enqueues all shortcuts that have the edge or shortcut between the given nodes in one of their lower triangles
+     */
+    private void enqueueUpperTriangles(int lower, int higher, EdgeExplorer explorer, IntArrayList upperNeighbors,
+                                       PriorityQueue<Long> queue, IntHashSet queued) {
+        for (IntCursor c : findUpperNeighbors(lower, explorer, upperNeighbors)) {
+            if (c.value == higher)
+                continue;
+            boolean higherIsLower = getLevel(higher) < getLevel(c.value);
+            int nodeA = higherIsLower ? higher : c.value;
+            int nodeB = higherIsLower ? c.value : higher;
+            int sc = shortcutsByNodePair.getOrDefault(nodePairKey(nodeA, nodeB), -1);
+            if (sc < 0)
+                throw new IllegalStateException("The CCH topology is missing a shortcut between nodes " + nodeA + " and " + nodeB);
+            if (queued.add(sc))
+                queue.add(((long) getLevel(nodeA) << 32) | (sc / 2));
+        }
+    }
+
+    /**
+     * Finds the best edge or shortcut from the given upper node to the given node (in) and in the opposite direction (out)
+     */
+    private void findBestArc(int node, int upperNode, CHStorage chStore, EdgeExplorer explorer, Weighting weighting, Arc arc) {
+        arc.inWeight = arc.outWeight = Double.POSITIVE_INFINITY;
+        arc.inEdge = arc.outEdge = EdgeIterator.NO_EDGE;
+        EdgeIterator iter = explorer.setBaseNode(node);
+        while (iter.next()) {
+            if (iter.getAdjNode() != upperNode)
+                continue;
+            double outWeight = weighting.calcEdgeWeight(iter, false);
+            if (outWeight < arc.outWeight) {
+                arc.outWeight = outWeight;
+                arc.outEdge = iter.getEdge();
+            }
+            double inWeight = weighting.calcEdgeWeight(iter, true);
+            if (inWeight < arc.inWeight) {
+                arc.inWeight = inWeight;
+                arc.inEdge = iter.getEdge();
+            }
+        }
+        int sc = shortcutsByNodePair.getOrDefault(nodePairKey(node, upperNode), -1);
+        if (sc < 0)
+            return;
+        double outWeight = chStore.getWeight(chStore.toShortcutPointer(sc));
+        if (outWeight < arc.outWeight) {
+            arc.outWeight = outWeight;
+            arc.outEdge = graph.getEdges() + sc;
+        }
+        double inWeight = chStore.getWeight(chStore.toShortcutPointer(sc + 1));
+        if (inWeight < arc.inWeight) {
+            arc.inWeight = inWeight;
+            arc.inEdge = graph.getEdges() + sc + 1;
+        }
+    }
+
+    private IntArrayList findUpperNeighbors(int node, EdgeExplorer explorer, IntArrayList upperNeighbors) {
+        upperNeighbors.clear();
+        int level = getLevel(node);
+        EdgeIterator iter = explorer.setBaseNode(node);
+        while (iter.next())
+            if (getLevel(iter.getAdjNode()) > level && !upperNeighbors.contains(iter.getAdjNode()))
+                upperNeighbors.add(iter.getAdjNode());
+        for (int sc = topology.getLastShortcut(topology.toNodePointer(node)); sc >= 0; sc--) {
+            long pointer = topology.toShortcutPointer(sc);
+            if (topology.getNodeA(pointer) != node)
+                break;
+            if (!upperNeighbors.contains(topology.getNodeB(pointer)))
+                upperNeighbors.add(topology.getNodeB(pointer));
+        }
+        return upperNeighbors;
+    }
+
+    private CHStorage createCHStorage(IntToDoubleFunction weights, IntUnaryOperator skippedEdges1, IntUnaryOperator skippedEdges2) {
+        CHStorage chStore = new CHStorage(new RAMDirectory(), PrepareCCH.NAME, graph.getSegmentSize(), false);
+        chStore.create(graph.getNodes(), topology.getShortcuts());
+        CHStorageBuilder builder = new CHStorageBuilder(chStore);
+        for (int node = 0; node < graph.getNodes(); node++)
+            builder.setLevel(node, getLevel(node));
+        for (int sc = 0; sc < topology.getShortcuts(); sc++) {
+            long pointer = topology.toShortcutPointer(sc);
+            int accessFlags = topology.getFwdAccess(pointer) ? PrepareEncoder.getScFwdDir() : PrepareEncoder.getScBwdDir();
+            builder.addShortcutNodeBased(topology.getNodeA(pointer), topology.getNodeB(pointer), accessFlags,
+                    weights.applyAsDouble(sc), skippedEdges1.applyAsInt(sc), skippedEdges2.applyAsInt(sc));
+        }
+        return chStore;
+    }
+
+    private static int getNeighborIndex(int neighbor, IntIntHashMap indexByNeighbor, IntArrayList neighbors,
+                                        DoubleArrayList inWeights, DoubleArrayList outWeights, IntArrayList inEdges, IntArrayList outEdges) {
+        int index = indexByNeighbor.getOrDefault(neighbor, -1);
+        if (index >= 0)
+            return index;
+        index = neighbors.size();
+        indexByNeighbor.put(neighbor, index);
+        neighbors.add(neighbor);
+        inWeights.add(Double.POSITIVE_INFINITY);
+        outWeights.add(Double.POSITIVE_INFINITY);
+        inEdges.add(EdgeIterator.NO_EDGE);
+        outEdges.add(EdgeIterator.NO_EDGE);
+        return index;
+    }
+
+    private static class Buffer {
+        final CHStorage chStore;
+        // the forward shortcuts, the backward shortcut is the next one
+        final IntArrayList outdatedShortcuts;
+
+        Buffer(CHStorage chStore, IntArrayList outdatedShortcuts) {
+            this.chStore = chStore;
+            this.outdatedShortcuts = outdatedShortcuts;
+        }
+    }
+
+    private static class Arc {
+        double inWeight, outWeight;
+        int inEdge, outEdge;
+    }
+
+    private int getLevel(int node) {
+        return topology.getLevel(topology.toNodePointer(node));
+    }
+
+    private static long nodePairKey(int lowerNode, int higherNode) {
+        return ((long) lowerNode << 32) | higherNode;
+    }
+
+    public int getShortcuts() {
+        return topology.getShortcuts();
+    }
+
+    /**
+     * Removes all customized graphs from the cache, which is necessary when the edge flags of the base graph changed.
+     */
+    public void clearCache() {
+        cache.clear();
+        buffers.clear();
+    }
+
+    public void close() {
+        cache.clear();
+        buffers.clear();
+        topology.close();
+    }
+}
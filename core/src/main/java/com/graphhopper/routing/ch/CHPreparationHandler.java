@@ -99,13 +99,13 @@ public class CHPreparationHandler {
         Map<String, RoutingCHGraph> loaded = Collections.synchronizedMap(new LinkedHashMap<>());
         Stream<Runnable> runnables = chConfigs.stream()
                 .map(c -> () -> {
-                    CHStorage chStorage = new CHStorage(graph.getDirectory(), c.getName(), graph.getSegmentSize(), c.isEdgeBased());
+                    CHStorage chStorage = new CHStorage(graph.getDirectory(), c.toFileName(), graph.getSegmentSize(), c.isEdgeBased());
                     if (chStorage.loadExisting())
                         loaded.put(c.getName(), RoutingCHGraphImpl.fromGraph(graph, chStorage, c));
                     else {
                         // todo: this is ugly, see comments in LMPreparationHandler
-                        graph.getDirectory().remove("nodes_ch_" + c.getName());
-                        graph.getDirectory().remove("shortcuts_" + c.getName());
+                        graph.getDirectory().remove("nodes_ch_" + c.toFileName());
+                        graph.getDirectory().remove("shortcuts_" + c.toFileName());
                     }
                 });
         GHUtility.runConcurrently(runnables, preparationThreads);
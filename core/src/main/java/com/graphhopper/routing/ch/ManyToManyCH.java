@@ -0,0 +1,295 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.ch;
+
+import com.carrotsearch.hppc.*;
+import com.graphhopper.coll.GHIntObjectHashMap;
+import com.graphhopper.routing.SPTEntry;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.RoutingCHEdgeExplorer;
+import com.graphhopper.storage.RoutingCHEdgeIterator;
+import com.graphhopper.storage.RoutingCHEdgeIteratorState;
+import com.graphhopper.storage.RoutingCHGraph;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.GHUtility;
+
+import java.util.Arrays;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+
+/**
+ * Calculates a full weight, distance and time matrix between many sources and many targets on a
+ * {@link RoutingCHGraph} using the bucket-based approach by Knopp et al.: For every target we run a single backward
+ * upward search and store the settled entries in buckets at the visited nodes. Then for every source we run a single
+ * forward upward search and scan the buckets at every settled node. This requires |sources| + |targets| one-directional
+ * searches instead of |sources| * |targets| point-to-point queries.
+ * <p>
+ * Works with node- and edge-based CH graphs. Distances and times are accumulated during the searches, the values of
+ * shortcuts are calculated by unpacking them once and are then cached for the lifetime of this object.
+ */
+public class ManyToManyCH {
+    private final RoutingCHGraph graph;
+    private final Weighting weighting;
+    private final TraversalMode traversalMode;
+    private final RoutingCHEdgeExplorer inEdgeExplorer;
+    private final RoutingCHEdgeExplorer outEdgeExplorer;
+    private final int maxNodes;
+    private final ShortcutUnpacker shortcutUnpacker;
+    private final LongDoubleHashMap shortcutDistances = new LongDoubleHashMap();
+    private final LongLongHashMap shortcutTimes = new LongLongHashMap();
+    private final IntObjectMap<MatrixEntry> bestEntries = new GHIntObjectHashMap<>(1000);
+    private final PriorityQueue<MatrixEntry> queue = new PriorityQueue<>(1000);
+    // the buckets: for every node the indices of the bucket entries that belong to it
+    private final IntObjectMap<IntArrayList> buckets = new GHIntObjectHashMap<>();
+    private final IntArrayList bucketTargets = new IntArrayList();
+    private final IntArrayList bucketIncEdges = new IntArrayList();
+    private final DoubleArrayList bucketWeights = new DoubleArrayList();
+    private final DoubleArrayList bucketDistances = new DoubleArrayList();
+    private final LongArrayList bucketTimes = new LongArrayList();
+    private double tmpDistance;
+    private long tmpTime;
+    private int visitedNodes;
+
+    private double[][] weights;
+    private double[][] distances;
+    private long[][] times;
+
+    public ManyToManyCH(RoutingCHGraph graph) {
+        this.graph = graph;
+        // we need the wrapped weighting, otherwise turn times involving virtual edges will be wrong
+        this.weighting = graph.getBaseGraph().wrapWeighting(graph.getWeighting());
+        this.traversalMode = graph.isEdgeBased() ? TraversalMode.EDGE_BASED : TraversalMode.NODE_BASED;
+        this.inEdgeExplorer = graph.createInEdgeExplorer();
+        this.outEdgeExplorer = graph.createOutEdgeExplorer();
+        this.maxNodes = graph.getBaseGraph().getBaseGraph().getNodes();
+        this.shortcutUnpacker = new ShortcutUnpacker(graph, (edge, reverse, prevOrNextEdgeId) -> {
+            tmpDistance += edge.getDistance();
+            tmpTime += GHUtility.calcMillisWithTurnMillis(weighting, edge, reverse, prevOrNextEdgeId);
+        }, graph.isEdgeBased());
+    }
+
+    /**
+     * Calculates the matrix between the given nodes. Negative node ids are allowed and mark sources or targets that
+     * shall be ignored (e.g. because they could not be snapped). The results can be retrieved via
+     * {@link #getWeights()}, {@link #getDistances()} and {@link #getTimes()}, unreachable entries have an infinite
+     * weight and distance and a time of {@link Long#MAX_VALUE}.
+     */
+    public ManyToManyCH calcMatrix(int[] sources, int[] targets) {
+        weights = new double[sources.length][targets.length];
+        distances = new double[sources.length][targets.length];
+        times = new long[sources.length][targets.length];
+        for (int i = 0; i < sources.length; i++) {
+            Arrays.fill(weights[i], Double.POSITIVE_INFINITY);
+            Arrays.fill(distances[i], Double.POSITIVE_INFINITY);
+            Arrays.fill(times[i], Long.MAX_VALUE);
+        }
+        clearBuckets();
+        for (int target = 0; target < targets.length; target++) {
+            if (targets[target] < 0)
+                continue;
+            final int targetIndex = target;
+            search(targets[target], true, entry -> addToBucket(entry, targetIndex));
+        }
+        for (int source = 0; source < sources.length; source++) {
+            if (sources[source] < 0)
+                continue;
+            final int sourceIndex = source;
+            search(sources[source], false, entry -> scanBucket(entry, sourceIndex));
+        }
+        clearBuckets();
+        return this;
+    }
+
+    public double[][] getWeights() {
+        return weights;
+    }
+
+    public double[][] getDistances() {
+        return distances;
+    }
+
+    public long[][] getTimes() {
+        return times;
+    }
+
+    public int getVisitedNodes() {
+        return visitedNodes;
+    }
+
+    private void search(int node, boolean reverse, Consumer<MatrixEntry> settledConsumer) {
+        bestEntries.clear();
+        queue.clear();
+        MatrixEntry root = new MatrixEntry(EdgeIterator.NO_EDGE, EdgeIterator.NO_EDGE, node, 0, null, 0, 0);
+        if (!traversalMode.isEdgeBased())
+            bestEntries.put(node, root);
+        queue.add(root);
+        RoutingCHEdgeExplorer explorer = reverse ? inEdgeExplorer : outEdgeExplorer;
+        while (!queue.isEmpty()) {
+            MatrixEntry curr = queue.poll();
+            if (curr.isDeleted())
+                continue;
+            visitedNodes++;
+            settledConsumer.accept(curr);
+            RoutingCHEdgeIterator iter = explorer.setBaseNode(curr.adjNode);
+            while (iter.next()) {
+                if (!accept(iter, curr))
+                    continue;
+                double weight = iter.getWeight(reverse);
+                final int prevOrNextEdge = curr.incEdge;
+                final int edgeAtBase = GHUtility.getEdgeFromEdgeKey(reverse ? iter.getOrigEdgeKeyLast() : iter.getOrigEdgeKeyFirst());
+                if (traversalMode.isEdgeBased() && EdgeIterator.Edge.isValid(prevOrNextEdge))
+                    weight += reverse
+                            ? graph.getTurnWeight(edgeAtBase, iter.getBaseNode(), prevOrNextEdge)
+                            : graph.getTurnWeight(prevOrNextEdge, iter.getBaseNode(), edgeAtBase);
+                if (Double.isInfinite(weight))
+                    continue;
+                weight += curr.weight;
+                final int traversalId = traversalMode.createTraversalId(iter, reverse);
+                MatrixEntry entry = bestEntries.get(traversalId);
+                if (entry != null) {
+                    if (entry.weight <= weight)
+                        continue;
+                    // flagging this entry, so it will be ignored when it is polled the next time
+                    entry.setDeleted();
+                }
+                calcEdgeCosts(iter, reverse);
+                long time = curr.time + tmpTime;
+                if (traversalMode.isEdgeBased() && EdgeIterator.Edge.isValid(prevOrNextEdge))
+                    time += reverse
+                            ? weighting.calcTurnMillis(edgeAtBase, iter.getBaseNode(), prevOrNextEdge)
+                            : weighting.calcTurnMillis(prevOrNextEdge, iter.getBaseNode(), edgeAtBase);
+                final int incEdge = GHUtility.getEdgeFromEdgeKey(reverse ? iter.getOrigEdgeKeyFirst() : iter.getOrigEdgeKeyLast());
+                entry = new MatrixEntry(iter.getEdge(), incEdge, iter.getAdjNode(), weight, curr, curr.distance + tmpDistance, time);
+                bestEntries.put(traversalId, entry);
+                queue.add(entry);
+            }
+        }
+    }
+
+    private boolean accept(RoutingCHEdgeIteratorState edge, MatrixEntry curr) {
+        if (traversalMode.isEdgeBased()) {
+            // for edge-based CH the first step of the search has to consider all edges, just like in
+            // AbstractBidirectionEdgeCHNoSOD
+            if (curr.parent == null)
+                return true;
+        } else if (edge.getEdge() == curr.edge) {
+            return false;
+        }
+        int base = edge.getBaseNode();
+        int adj = edge.getAdjNode();
+        // always accept virtual edges, see #288
+        if (base >= maxNodes || adj >= maxNodes)
+            return true;
+        return graph.getLevel(base) <= graph.getLevel(adj);
+    }
+
+    /**
+     * Sets tmpDistance and tmpTime to the distance and time of the given edge or shortcut, not including the turn
+     * time at its base node.
+     */
+    private void calcEdgeCosts(RoutingCHEdgeIteratorState edge, boolean reverse) {
+        if (!edge.isShortcut()) {
+            tmpDistance = 0;
+            tmpTime = 0;
+            unpack(edge, reverse);
+            return;
+        }
+        // within an upward search shortcuts are always traversed towards the higher level node, so the direction is
+        // determined by the edge and the search direction
+        long key = ((long) edge.getEdge() << 1) | (reverse ? 1 : 0);
+        int index = shortcutDistances.indexOf(key);
+        if (index >= 0) {
+            tmpDistance = shortcutDistances.indexGet(index);
+            tmpTime = shortcutTimes.get(key);
+            return;
+        }
+        tmpDistance = 0;
+        tmpTime = 0;
+        unpack(edge, reverse);
+        shortcutDistances.put(key, tmpDistance);
+        shortcutTimes.put(key, tmpTime);
+    }
+
+    private void unpack(RoutingCHEdgeIteratorState edge, boolean reverse) {
+        if (reverse)
+            shortcutUnpacker.visitOriginalEdgesBwd(edge.getEdge(), edge.getAdjNode(), false, EdgeIterator.NO_EDGE);
+        else
+            shortcutUnpacker.visitOriginalEdgesFwd(edge.getEdge(), edge.getAdjNode(), false, EdgeIterator.NO_EDGE);
+    }
+
+    private void addToBucket(MatrixEntry entry, int target) {
+        IntArrayList bucket = buckets.get(entry.adjNode);
+        if (bucket == null) {
+            bucket = new IntArrayList(4);
+            buckets.put(entry.adjNode, bucket);
+        }
+        bucket.add(bucketTargets.size());
+        bucketTargets.add(target);
+        bucketIncEdges.add(entry.incEdge);
+        bucketWeights.add(entry.weight);
+        bucketDistances.add(entry.distance);
+        bucketTimes.add(entry.time);
+    }
+
+    private void scanBucket(MatrixEntry entry, int source) {
+        IntArrayList bucket = buckets.get(entry.adjNode);
+        if (bucket == null)
+            return;
+        double[] weightRow = weights[source];
+        for (int i = 0; i < bucket.size(); i++) {
+            int index = bucket.get(i);
+            int target = bucketTargets.get(index);
+            int outEdge = bucketIncEdges.get(index);
+            double turnWeight = 0;
+            long turnTime = 0;
+            if (traversalMode.isEdgeBased() && EdgeIterator.Edge.isValid(entry.incEdge) && EdgeIterator.Edge.isValid(outEdge)) {
+                turnWeight = graph.getTurnWeight(entry.incEdge, entry.adjNode, outEdge);
+                if (Double.isInfinite(turnWeight))
+                    continue;
+                turnTime = weighting.calcTurnMillis(entry.incEdge, entry.adjNode, outEdge);
+            }
+            double weight = entry.weight + bucketWeights.get(index) + turnWeight;
+            if (weight < weightRow[target]) {
+                weightRow[target] = weight;
+                distances[source][target] = entry.distance + bucketDistances.get(index);
+                times[source][target] = entry.time + bucketTimes.get(index) + turnTime;
+            }
+        }
+    }
+
+    private void clearBuckets() {
+        buckets.clear();
+        bucketTargets.clear();
+        bucketIncEdges.clear();
+        bucketWeights.clear();
+        bucketDistances.clear();
+        bucketTimes.clear();
+    }
+
+    private static class MatrixEntry extends CHEntry {
+        final double distance;
+        final long time;
+
+        MatrixEntry(int edge, int incEdge, int adjNode, double weight, SPTEntry parent, double distance, long time) {
+            super(edge, incEdge, adjNode, weight, parent);
+            this.distance = distance;
+            this.time = time;
+        }
+    }
+}
@@ -17,6 +17,8 @@
  */
 package com.graphhopper.routing.ch;
 
+import com.carrotsearch.hppc.DoubleArrayList;
+import com.carrotsearch.hppc.IntArrayList;
 import com.carrotsearch.hppc.IntContainer;
 import com.graphhopper.storage.CHStorageBuilder;
 import com.graphhopper.util.PMap;
@@ -38,16 +40,13 @@ class NodeBasedNodeContractor implements NodeContractor {
     private PrepareGraphEdgeExplorer inEdgeExplorer;
     private PrepareGraphEdgeExplorer outEdgeExplorer;
     private PrepareGraphEdgeExplorer existingShortcutExplorer;
-    private NodeBasedWitnessPathSearcher witnessPathSearcher;
+    // the worker used for the sequential contraction, for the parallel contraction every thread uses its own worker
+    private Worker worker;
+    private List<Worker> workers = new ArrayList<>();
     private int addedShortcutsCount;
-    private long dijkstraCount;
-    private final StopWatch dijkstraSW = new StopWatch();
     // meanDegree is the number of edges / number of nodes ratio of the graph, not really the average degree, because
     // each edge can exist in both directions
     private double meanDegree;
-    // temporary counters used for priority calculation
-    private int originalEdgesCount;
-    private int shortcutsCount;
 
     NodeBasedNodeContractor(CHPreparationGraph prepareGraph, CHStorageBuilder chBuilder, PMap pMap) {
         this.prepareGraph = prepareGraph;
@@ -67,7 +66,7 @@ class NodeBasedNodeContractor implements NodeContractor {
         inEdgeExplorer = prepareGraph.createInEdgeExplorer();
         outEdgeExplorer = prepareGraph.createOutEdgeExplorer();
         existingShortcutExplorer = prepareGraph.createOutEdgeExplorer();
-        witnessPathSearcher = new NodeBasedWitnessPathSearcher(prepareGraph);
+        worker = createWorker();
         meanDegree = prepareGraph.getOriginalEdges() * 1.0 / prepareGraph.getNodes();
     }
 
@@ -79,7 +78,19 @@ class NodeBasedNodeContractor implements NodeContractor {
         inEdgeExplorer = null;
         outEdgeExplorer = null;
         existingShortcutExplorer = null;
-        witnessPathSearcher = null;
+        worker = null;
+        workers = null;
+    }
+
+    /**
+     * Creates the per-thread state needed to search for shortcuts. Every thread that calls
+     * {@link #calculatePriority(int, Worker)} or {@link #findShortcuts(int, boolean[], Worker)} concurrently needs its own
+     * worker. Note that every worker allocates a witness path searcher with an array that has the size of the graph.
+     */
+    Worker createWorker() {
+        Worker w = new Worker(prepareGraph);
+        workers.add(w);
+        return w;
     }
 
     /**
@@ -89,15 +100,23 @@ class NodeBasedNodeContractor implements NodeContractor {
      */
     @Override
     public float calculatePriority(int node) {
+        return calculatePriority(node, worker);
+    }
+
+    /**
+     * Same as {@link #calculatePriority(int)}, but this method does not change the state of this contractor, so it can
+     * be called concurrently as long as the graph is not changed and every thread uses its own worker.
+     */
+    float calculatePriority(int node, Worker w) {
         // # huge influence: the bigger the less shortcuts gets created and the faster is the preparation
         //
         // every adjNode has an 'original edge' number associated. initially it is r=1
         // when a new shortcut is introduced then r of the associated edges is summed up:
         // r(u,w)=r(u,v)+r(v,w) now we can define
         // originalEdgesCount = σ(v) := sum_{ (u,w) ∈ shortcuts(v) } of r(u, w)
-        shortcutsCount = 0;
-        originalEdgesCount = 0;
-        findAndHandleShortcuts(node, this::countShortcuts, (int) (meanDegree * params.maxPollFactorHeuristic));
+        w.shortcutsCount = 0;
+        w.originalEdgesCount = 0;
+        findAndHandleShortcuts(node, null, w, w::countShortcuts, (int) (meanDegree * params.maxPollFactorHeuristic));
 
         // from shortcuts we can compute the edgeDifference
         // # low influence: with it the shortcut creation is slightly faster
@@ -105,24 +124,66 @@ class NodeBasedNodeContractor implements NodeContractor {
         // |shortcuts(v)| − |{(u, v) | v uncontracted}| − |{(v, w) | v uncontracted}|
         // meanDegree is used instead of outDegree+inDegree as if one adjNode is in both directions
         // only one bucket memory is used. Additionally one shortcut could also stand for two directions.
-        int edgeDifference = shortcutsCount - prepareGraph.getDegree(node);
+        int edgeDifference = w.shortcutsCount - prepareGraph.getDegree(node);
 
         // according to the paper do a simple linear combination of the properties to get the priority.
         return params.edgeDifferenceWeight * edgeDifference +
-                params.originalEdgesCountWeight * originalEdgesCount;
+                params.originalEdgesCountWeight * w.originalEdgesCount;
         // todo: maybe use contracted-neighbors heuristic (contract nodes with lots of contracted neighbors later) as in GH 1.0 again?
         //       maybe use hierarchy-depths heuristic as in edge-based?
     }
 
     @Override
     public IntContainer contractNode(int node) {
-        long degree = findAndHandleShortcuts(node, this::addOrUpdateShortcut, (int) (meanDegree * params.maxPollFactorContraction));
+        long degree = findAndHandleShortcuts(node, null, worker, this::addOrUpdateShortcut, (int) (meanDegree * params.maxPollFactorContraction));
+        return finishContractNode(node, degree);
+    }
+
+    /**
+     * Searches the shortcuts that are required to contract the given node, but does not change the graph. Just like
+     * {@link #calculatePriority(int, Worker)} this can be called concurrently for different nodes. The shortcuts
+     * are added to the graph by {@link #contractNode(int, PendingShortcuts)}.
+     *
+     * @param ignoredNodes flags the nodes the witness paths must not use, because they are contracted at the same time
+     */
+    PendingShortcuts findShortcuts(int node, boolean[] ignoredNodes, Worker w) {
+        PendingShortcuts pendingShortcuts = new PendingShortcuts();
+        pendingShortcuts.degree = findAndHandleShortcuts(node, ignoredNodes, w, pendingShortcuts::add, (int) (meanDegree * params.maxPollFactorContraction));
+        return pendingShortcuts;
+    }
+
+    /**
+     * Contracts the given node using shortcuts that were found by {@link #findShortcuts(int, boolean[], Worker)}
+     * before. Unlike {@link #contractNode(int)} the witness searches for this node could neither use the shortcuts
+     * that were added for the same node already nor the ignored nodes, so this might add slightly more shortcuts.
+     */
+    IntContainer contractNode(int node, PendingShortcuts pendingShortcuts) {
+        for (int i = 0; i < pendingShortcuts.size(); i++)
+            addOrUpdateShortcut(pendingShortcuts.fromNodes.get(i), pendingShortcuts.toNodes.get(i), pendingShortcuts.weights.get(i),
+                    pendingShortcuts.outgoingEdges.get(i), pendingShortcuts.outOrigEdgeCounts.get(i),
+                    pendingShortcuts.incomingEdges.get(i), pendingShortcuts.inOrigEdgeCounts.get(i));
+        return finishContractNode(node, pendingShortcuts.degree);
+    }
+
+    private IntContainer finishContractNode(int node, long degree) {
         insertShortcuts(node);
         // put weight factor on meanDegree instead of taking the average => meanDegree is more stable
         meanDegree = (meanDegree * 2 + degree) / 3;
         return prepareGraph.disconnect(node);
     }
 
+    /**
+     * Adds the nodes that are adjacent to the given node to the given list. Nodes might be added more than once.
+     */
+    void addNeighbors(int node, IntArrayList neighbors) {
+        PrepareGraphEdgeIterator iter = outEdgeExplorer.setBaseNode(node);
+        while (iter.next())
+            neighbors.add(iter.getAdjNode());
+        iter = inEdgeExplorer.setBaseNode(node);
+        while (iter.next())
+            neighbors.add(iter.getAdjNode());
+    }
+
     /**
      * Calls the shortcut handler for all edges and shortcuts adjacent to the given node. After this method is called
      * these edges and shortcuts will be removed from the prepare graph, so this method offers the last chance to deal
@@ -196,8 +257,11 @@ class NodeBasedNodeContractor implements NodeContractor {
 
     @Override
     public String getStatisticsString() {
-        return String.format(Locale.ROOT, "meanDegree: %.2f, dijkstras: %10s, mem: %10s",
-                meanDegree, nf(dijkstraCount), witnessPathSearcher.getMemoryUsageAsString());
+        long dijkstraCount = 0;
+        for (Worker w : workers)
+            dijkstraCount += w.dijkstraCount;
+        return String.format(Locale.ROOT, "meanDegree: %.2f, dijkstras: %10s, mem: %10s, workers: %d",
+                meanDegree, nf(dijkstraCount), worker.witnessPathSearcher.getMemoryUsageAsString(), workers.size());
     }
 
     /**
@@ -206,9 +270,9 @@ class NodeBasedNodeContractor implements NodeContractor {
      * Returns the 'degree' of the given node (disregarding edges from/to already contracted nodes).
      * Note that here the degree is not the total number of adjacent edges, but only the number of incoming edges
      */
-    private long findAndHandleShortcuts(int node, PrepareShortcutHandler handler, int maxVisitedNodes) {
+    private long findAndHandleShortcuts(int node, boolean[] ignoredNodes, Worker w, PrepareShortcutHandler handler, int maxVisitedNodes) {
         long degree = 0;
-        PrepareGraphEdgeIterator incomingEdges = inEdgeExplorer.setBaseNode(node);
+        PrepareGraphEdgeIterator incomingEdges = w.inEdgeExplorer.setBaseNode(node);
         // collect outgoing nodes (goal-nodes) only once
         while (incomingEdges.next()) {
             int fromNode = incomingEdges.getAdjNode();
@@ -221,8 +285,8 @@ class NodeBasedNodeContractor implements NodeContractor {
                 continue;
             }
             // collect outgoing nodes (goal-nodes) only once
-            PrepareGraphEdgeIterator outgoingEdges = outEdgeExplorer.setBaseNode(node);
-            witnessPathSearcher.init(fromNode, node);
+            PrepareGraphEdgeIterator outgoingEdges = w.outEdgeExplorer.setBaseNode(node);
+            w.witnessPathSearcher.init(fromNode, node, ignoredNodes);
             degree++;
             while (outgoingEdges.next()) {
                 int toNode = outgoingEdges.getAdjNode();
@@ -237,10 +301,10 @@ class NodeBasedNodeContractor implements NodeContractor {
                 if (Double.isInfinite(existingDirectWeight))
                     continue;
 
-                dijkstraSW.start();
-                dijkstraCount++;
-                double maxWeight = witnessPathSearcher.findUpperBound(toNode, existingDirectWeight, maxVisitedNodes);
-                dijkstraSW.stop();
+                w.dijkstraSW.start();
+                w.dijkstraCount++;
+                double maxWeight = w.witnessPathSearcher.findUpperBound(toNode, existingDirectWeight, maxVisitedNodes);
+                w.dijkstraSW.stop();
 
                 if (maxWeight <= existingDirectWeight)
                     // FOUND witness path, so do not add shortcut
@@ -254,13 +318,6 @@ class NodeBasedNodeContractor implements NodeContractor {
         return degree;
     }
 
-    private void countShortcuts(int fromNode, int toNode, double existingDirectWeight,
-                                int outgoingEdge, int outOrigEdgeCount,
-                                int incomingEdge, int inOrigEdgeCount) {
-        shortcutsCount++;
-        originalEdgesCount += inOrigEdgeCount + outOrigEdgeCount;
-    }
-
     private void addOrUpdateShortcut(int fromNode, int toNode, double weight,
                                      int outgoingEdge, int outOrigEdgeCount,
                                      int incomingEdge, int inOrigEdgeCount) {
@@ -289,7 +346,11 @@ class NodeBasedNodeContractor implements NodeContractor {
 
     @Override
     public float getDijkstraSeconds() {
-        return dijkstraSW.getCurrentSeconds();
+        // for the parallel contraction this is the sum over all threads
+        float seconds = 0;
+        for (Worker w : workers)
+            seconds += w.dijkstraSW.getCurrentSeconds();
+        return seconds;
     }
 
     @FunctionalInterface
@@ -299,6 +360,60 @@ class NodeBasedNodeContractor implements NodeContractor {
                             int incomingEdge, int inOrigEdgeCount);
     }
 
+    static class Worker {
+        private final PrepareGraphEdgeExplorer inEdgeExplorer;
+        private final PrepareGraphEdgeExplorer outEdgeExplorer;
+        private final NodeBasedWitnessPathSearcher witnessPathSearcher;
+        private final StopWatch dijkstraSW = new StopWatch();
+        private long dijkstraCount;
+        // temporary counters used for priority calculation
+        private int originalEdgesCount;
+        private int shortcutsCount;
+
+        private Worker(CHPreparationGraph prepareGraph) {
+            inEdgeExplorer = prepareGraph.createInEdgeExplorer();
+            outEdgeExplorer = prepareGraph.createOutEdgeExplorer();
+            witnessPathSearcher = new NodeBasedWitnessPathSearcher(prepareGraph);
+        }
+
+        private void countShortcuts(int fromNode, int toNode, double existingDirectWeight,
+                                    int outgoingEdge, int outOrigEdgeCount,
+                                    int incomingEdge, int inOrigEdgeCount) {
+            shortcutsCount++;
+            originalEdgesCount += inOrigEdgeCount + outOrigEdgeCount;
+        }
+    }
+
+    /**
+     * The shortcuts found for a single node that have not been added to the graph yet.
+     */
+    static class PendingShortcuts {
+        private final IntArrayList fromNodes = new IntArrayList();
+        private final IntArrayList toNodes = new IntArrayList();
+        private final DoubleArrayList weights = new DoubleArrayList();
+        private final IntArrayList outgoingEdges = new IntArrayList();
+        private final IntArrayList outOrigEdgeCounts = new IntArrayList();
+        private final IntArrayList incomingEdges = new IntArrayList();
+        private final IntArrayList inOrigEdgeCounts = new IntArrayList();
+        private long degree;
+
+        private void add(int fromNode, int toNode, double weight,
+                         int outgoingEdge, int outOrigEdgeCount,
+                         int incomingEdge, int inOrigEdgeCount) {
+            fromNodes.add(fromNode);
+            toNodes.add(toNode);
+            weights.add(weight);
+            outgoingEdges.add(outgoingEdge);
+            outOrigEdgeCounts.add(outOrigEdgeCount);
+            incomingEdges.add(incomingEdge);
+            inOrigEdgeCounts.add(inOrigEdgeCount);
+        }
+
+        int size() {
+            return fromNodes.size();
+        }
+    }
+
     public static class Params {
         // default values were optimized for Unterfranken
         private float edgeDifferenceWeight = 10;
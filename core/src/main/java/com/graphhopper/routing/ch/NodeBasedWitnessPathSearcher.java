@@ -34,6 +34,7 @@ public class NodeBasedWitnessPathSearcher {
     private final IntArrayList changedNodes;
     private final IntFloatBinaryHeap heap;
     private int ignoreNode = -1;
+    private boolean[] ignoredNodes;
     private int settledNodes = 0;
 
     public NodeBasedWitnessPathSearcher(CHPreparationGraph graph) {
@@ -49,8 +50,17 @@ public class NodeBasedWitnessPathSearcher {
      * target nodes until this method is called again.
      */
     public void init(int startNode, int ignoreNode) {
+        init(startNode, ignoreNode, null);
+    }
+
+    /**
+     * Same as {@link #init(int, int)}, but the search also ignores all nodes that are flagged in the given array, e.g.
+     * the nodes that are contracted at the same time. The array must not be changed while searching.
+     */
+    public void init(int startNode, int ignoreNode, boolean[] ignoredNodes) {
         reset();
         this.ignoreNode = ignoreNode;
+        this.ignoredNodes = ignoredNodes;
         weights[startNode] = 0;
         changedNodes.add(startNode);
         heap.insert(0, startNode);
@@ -85,7 +95,7 @@ public class NodeBasedWitnessPathSearcher {
             PrepareGraphEdgeIterator iter = outEdgeExplorer.setBaseNode(node);
             while (iter.next()) {
                 int adjNode = iter.getAdjNode();
-                if (adjNode == ignoreNode)
+                if (adjNode == ignoreNode || (ignoredNodes != null && ignoredNodes[adjNode]))
                     continue;
                 double weight = weights[node] + iter.getWeight();
                 if (Double.isInfinite(weight))
@@ -119,6 +129,7 @@ public class NodeBasedWitnessPathSearcher {
         changedNodes.elementsCount = 0;
         heap.clear();
         ignoreNode = -1;
+        ignoredNodes = null;
         settledNodes = 0;
     }
 
@@ -0,0 +1,283 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.ch;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.LongDoubleHashMap;
+import com.carrotsearch.hppc.LongIntHashMap;
+import com.carrotsearch.hppc.LongLongHashMap;
+import com.graphhopper.apache.commons.collections.IntFloatBinaryHeap;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.RoutingCHEdgeExplorer;
+import com.graphhopper.storage.RoutingCHEdgeIterator;
+import com.graphhopper.storage.RoutingCHEdgeIteratorState;
+import com.graphhopper.storage.RoutingCHGraph;
+import com.graphhopper.util.EdgeIterator;
+
+import java.util.Arrays;
+
+/**
+ * Calculates the shortest path weights from one node to all other nodes of a {@link RoutingCHGraph} using PHAST
+ * (Delling et al., "PHAST: Hardware-Accelerated Shortest Path Trees"): A forward upward search from the origin is
+ * followed by a linear scan over all nodes in descending level order, where every node pulls its weight from its
+ * neighbors with a higher level. The scan does not need a priority queue and visits the nodes in an order that is
+ * fixed for the whole graph, which makes it much faster than a Dijkstra search over the base graph.
+ * <p>
+ * Only node-based CH graphs are supported. Virtual nodes of a query graph are handled by pushing the weight of every
+ * scanned node to its virtual neighbors, so they are settled before their lower level neighbors pull from them.
+ * Distances and times are accumulated along the way, the values of shortcuts are calculated by unpacking them once
+ * and are then cached for the lifetime of this object.
+ */
+public class PhastCH {
+    private final RoutingCHGraph graph;
+    private final Weighting weighting;
+    private final boolean reverseFlow;
+    private final RoutingCHEdgeExplorer upExplorer;
+    private final RoutingCHEdgeExplorer downExplorer;
+    private final int maxNodes;
+    // all non-virtual nodes sorted by descending level
+    private final int[] nodesByLevel;
+    private final ShortcutUnpacker shortcutUnpacker;
+    private final LongDoubleHashMap shortcutDistances = new LongDoubleHashMap();
+    private final LongLongHashMap shortcutTimes = new LongLongHashMap();
+    private final LongIntHashMap shortcutLastEdges = new LongIntHashMap();
+    private final IntFloatBinaryHeap heap = new IntFloatBinaryHeap(1000);
+    private final IntArrayList virtualStack = new IntArrayList();
+    private final double[] weights;
+    private final double[] distances;
+    private final long[] times;
+    private final int[] edges;
+    private final boolean[] settled;
+    private double tmpDistance;
+    private long tmpTime;
+    private int tmpLastEdge;
+    private int visitedNodes;
+
+    public PhastCH(RoutingCHGraph graph, boolean reverseFlow) {
+        if (graph.isEdgeBased())
+            throw new IllegalArgumentException("PHAST is not supported for edge-based CH graphs");
+        this.graph = graph;
+        // we need the wrapped weighting, otherwise the times of virtual edges will be wrong
+        this.weighting = graph.getBaseGraph().wrapWeighting(graph.getWeighting());
+        this.reverseFlow = reverseFlow;
+        // for the reverse flow we search backwards from the origin and pull the weights along the outgoing edges
+        this.upExplorer = reverseFlow ? graph.createInEdgeExplorer() : graph.createOutEdgeExplorer();
+        this.downExplorer = reverseFlow ? graph.createOutEdgeExplorer() : graph.createInEdgeExplorer();
+        this.maxNodes = graph.getBaseGraph().getBaseGraph().getNodes();
+        this.nodesByLevel = sortNodesByLevel(graph, maxNodes);
+        this.shortcutUnpacker = new ShortcutUnpacker(graph, (edge, reverse, prevOrNextEdgeId) -> {
+            tmpDistance += edge.getDistance();
+            tmpTime += weighting.calcEdgeMillis(edge, reverse);
+            tmpLastEdge = edge.getEdge();
+        }, false);
+        int nodes = graph.getNodes();
+        weights = new double[nodes];
+        distances = new double[nodes];
+        times = new long[nodes];
+        edges = new int[nodes];
+        settled = new boolean[nodes];
+    }
+
+    /**
+     * Sorts the nodes by descending level using counting sort. Nodes that were not contracted all share the highest
+     * level, their order among each other does not matter, because the upward search already settles them.
+     */
+    private static int[] sortNodesByLevel(RoutingCHGraph graph, int nodes) {
+        int[] levels = new int[nodes];
+        int maxLevel = 0;
+        for (int node = 0; node < nodes; node++) {
+            levels[node] = graph.getLevel(node);
+            maxLevel = Math.max(maxLevel, levels[node]);
+        }
+        int[] offsets = new int[maxLevel + 2];
+        for (int node = 0; node < nodes; node++)
+            offsets[maxLevel - levels[node] + 1]++;
+        for (int i = 1; i < offsets.length; i++)
+            offsets[i] += offsets[i - 1];
+        int[] result = new int[nodes];
+        for (int node = 0; node < nodes; node++)
+            result[offsets[maxLevel - levels[node]]++] = node;
+        return result;
+    }
+
+    /**
+     * Calculates the weights, distances and times from (or to, for the reverse flow) the given node to all other
+     * nodes. The results can be retrieved via {@link #getWeight(int)} etc. and are valid until the next call.
+     */
+    public PhastCH calcOneToAll(int origin) {
+        Arrays.fill(weights, Double.POSITIVE_INFINITY);
+        Arrays.fill(settled, false);
+        visitedNodes = 0;
+        weights[origin] = 0;
+        distances[origin] = 0;
+        times[origin] = 0;
+        edges[origin] = EdgeIterator.NO_EDGE;
+        searchUpward(origin);
+        boolean hasVirtualNodes = weights.length > maxNodes;
+        for (int node : nodesByLevel) {
+            visitedNodes++;
+            pullFromHigherLevelNodes(node);
+            if (hasVirtualNodes && Double.isFinite(weights[node]))
+                pushToVirtualNodes(node);
+        }
+        return this;
+    }
+
+    private void searchUpward(int origin) {
+        heap.clear();
+        heap.insert(0, origin);
+        while (!heap.isEmpty()) {
+            int curr = heap.poll();
+            // we do not update the heap, but insert the node again and skip it when it was settled already
+            if (settled[curr])
+                continue;
+            settled[curr] = true;
+            visitedNodes++;
+            RoutingCHEdgeIterator iter = upExplorer.setBaseNode(curr);
+            while (iter.next()) {
+                int adj = iter.getAdjNode();
+                if (curr < maxNodes && adj < maxNodes && graph.getLevel(curr) > graph.getLevel(adj))
+                    continue;
+                if (relaxUp(iter))
+                    heap.insert(weights[adj], adj);
+            }
+        }
+    }
+
+    private void pullFromHigherLevelNodes(int node) {
+        RoutingCHEdgeIterator iter = downExplorer.setBaseNode(node);
+        int level = graph.getLevel(node);
+        while (iter.next()) {
+            int adj = iter.getAdjNode();
+            if (Double.isInfinite(weights[adj]) || (adj < maxNodes && graph.getLevel(adj) <= level))
+                continue;
+            double weight = weights[adj] + iter.getWeight(!reverseFlow);
+            if (weight >= weights[node])
+                continue;
+            calcEdgeCosts(iter, !reverseFlow);
+            weights[node] = weight;
+            distances[node] = distances[adj] + tmpDistance;
+            times[node] = times[adj] + tmpTime;
+            edges[node] = tmpLastEdge;
+        }
+    }
+
+    private void pushToVirtualNodes(int node) {
+        virtualStack.add(node);
+        while (!virtualStack.isEmpty()) {
+            int curr = virtualStack.get(virtualStack.size() - 1);
+            virtualStack.elementsCount--;
+            RoutingCHEdgeIterator iter = upExplorer.setBaseNode(curr);
+            while (iter.next()) {
+                if (iter.getAdjNode() >= maxNodes && relaxUp(iter))
+                    virtualStack.add(iter.getAdjNode());
+            }
+        }
+    }
+
+    /**
+     * Relaxes the given edge from its base node towards its adjacent node.
+     *
+     * @return true if the weight of the adjacent node was improved
+     */
+    private boolean relaxUp(RoutingCHEdgeIteratorState iter) {
+        int base = iter.getBaseNode();
+        int adj = iter.getAdjNode();
+        double weight = weights[base] + iter.getWeight(reverseFlow);
+        if (Double.isInfinite(weight) || weight >= weights[adj])
+            return false;
+        calcEdgeCosts(iter, reverseFlow);
+        weights[adj] = weight;
+        distances[adj] = distances[base] + tmpDistance;
+        times[adj] = times[base] + tmpTime;
+        edges[adj] = tmpLastEdge;
+        return true;
+    }
+
+    /**
+     * Sets tmpDistance, tmpTime and tmpLastEdge for the given edge or shortcut. The last edge is the original edge
+     * that is adjacent to the node whose weight is updated, i.e. the adjacent node for the upward search and the base
+     * node for the downward scan.
+     */
+    private void calcEdgeCosts(RoutingCHEdgeIteratorState edge, boolean reverse) {
+        long key = ((long) edge.getEdge() << 1) | (reverse ? 1 : 0);
+        if (edge.isShortcut()) {
+            int index = shortcutDistances.indexOf(key);
+            if (index >= 0) {
+                tmpDistance = shortcutDistances.indexGet(index);
+                tmpTime = shortcutTimes.get(key);
+                tmpLastEdge = shortcutLastEdges.get(key);
+                return;
+            }
+        }
+        tmpDistance = 0;
+        tmpTime = 0;
+        // for the downward scan the edges are traversed towards the base node, so we visit them in reverse order to
+        // make sure the edge adjacent to the base node is visited last
+        boolean downward = reverse != reverseFlow;
+        if (reverse)
+            shortcutUnpacker.visitOriginalEdgesBwd(edge.getEdge(), edge.getAdjNode(), downward, EdgeIterator.NO_EDGE);
+        else
+            shortcutUnpacker.visitOriginalEdgesFwd(edge.getEdge(), edge.getAdjNode(), downward, EdgeIterator.NO_EDGE);
+        if (edge.isShortcut()) {
+            shortcutDistances.put(key, tmpDistance);
+            shortcutTimes.put(key, tmpTime);
+            shortcutLastEdges.put(key, tmpLastEdge);
+        }
+    }
+
+    /**
+     * @return the weight of the shortest path to the given node or infinity if it cannot be reached
+     */
+    public double getWeight(int node) {
+        return weights[node];
+    }
+
+    public double getDistance(int node) {
+        return distances[node];
+    }
+
+    public long getTime(int node) {
+        return times[node];
+    }
+
+    /**
+     * @return the original edge of the shortest path that is adjacent to the given node, or
+     * {@link EdgeIterator#NO_EDGE} for the origin
+     */
+    public int getEdge(int node) {
+        return edges[node];
+    }
+
+    /**
+     * @return the node preceding the given node on its shortest path, or -1 for the origin and unreachable nodes
+     */
+    public int getParentNode(int node) {
+        if (edges[node] == EdgeIterator.NO_EDGE || Double.isInfinite(weights[node]))
+            return -1;
+        return graph.getBaseGraph().getOtherNode(edges[node], node);
+    }
+
+    public int getNodes() {
+        return weights.length;
+    }
+
+    public int getVisitedNodes() {
+        return visitedNodes;
+    }
+}
@@ -0,0 +1,342 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.ch;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.CHStorage;
+import com.graphhopper.storage.CHStorageBuilder;
+import com.graphhopper.storage.NodeAccess;
+import com.graphhopper.util.EdgeExplorer;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.Helper;
+import com.graphhopper.util.StopWatch;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+
+import static com.graphhopper.util.Helper.getMemInfo;
+import static com.graphhopper.util.Helper.nf;
+
+/**
+ * Prepares the metric-independent part of a customizable contraction hierarchy (CCH): The nodes are contracted in an
+ * order that does not depend on any weighting and every pair of (higher level) neighbors of a contracted node gets
+ * connected by a shortcut, no matter if there is a witness path or not. Therefore, the resulting shortcut topology is
+ * valid for every node-based weighting and only the shortcut weights need to be calculated for a specific weighting,
+ * see {@link CCHCustomizer}.
+ * <p>
+ * The nodes with at most two neighbors, i.e. dead ends and chains, are contracted first. The order of the remaining
+ * nodes is determined by geometric nested dissection: the nodes are split at the median of their coordinates, a
+ * separator covering all edges between the two halves is contracted after both halves and the halves are split
+ * recursively. The shortcuts are then found using the elimination tree: the upper neighbors of a
+ * contracted node form a clique, so it is sufficient to pass them on to the lowest of them, its parent. This way only
+ * plain arrays are needed, even if the number of shortcuts is large. Every shortcut is stored twice, first as a forward
+ * and then as a backward shortcut, because the weights of the two directions are independent of each other.
+ */
+public class PrepareCCH {
+    private static final Logger LOGGER = LoggerFactory.getLogger(PrepareCCH.class);
+    public static final String NAME = "cch";
+    private final BaseGraph graph;
+    private final CHStorage chStore;
+    private boolean prepared = false;
+
+    public static PrepareCCH fromGraph(BaseGraph graph) {
+        return new PrepareCCH(graph);
+    }
+
+    private PrepareCCH(BaseGraph graph) {
+        if (!graph.isFrozen())
+            throw new IllegalStateException("BaseGraph must be frozen before creating the CCH topology");
+        this.graph = graph;
+        this.chStore = new CHStorage(graph.getDirectory(), NAME, graph.getSegmentSize(), false);
+    }
+
+    public boolean loadExisting() {
+        if (prepared || !chStore.loadExisting())
+            return false;
+        prepared = true;
+        return true;
+    }
+
+    public CHStorage getCHStorage() {
+        return chStore;
+    }
+
+    public CHStorage doWork() {
+        if (prepared)
+            throw new IllegalStateException("Call doWork only once!");
+        prepared = true;
+        StopWatch sw = new StopWatch().start();
+        int nodes = graph.getNodes();
+        chStore.create(nodes, graph.getEdges());
+        EdgeExplorer explorer = graph.createEdgeExplorer();
+        int[] nodesByLevel = calcContractionOrder(explorer);
+        int[] levels = new int[nodes];
+        for (int level = 0; level < nodes; level++) {
+            levels[nodesByLevel[level]] = level;
+            chStore.setLevel(chStore.toNodePointer(nodesByLevel[level]), level);
+        }
+
+        // the higher level neighbors of the nodes that were not passed on to their parent yet. if the pair of a node
+        // and one of its upper neighbors needs a shortcut the neighbor is stored as ~neighbor
+        int[][] upperNeighbors = new int[nodes][];
+        // the children of every node in the elimination tree as linked list
+        int[] firstChild = new int[nodes];
+        int[] nextSibling = new int[nodes];
+        Arrays.fill(firstChild, -1);
+        // the position of an upper neighbor in the current list, only valid if seen[neighbor] is the current node
+        int[] seen = new int[nodes];
+        int[] positions = new int[nodes];
+        Arrays.fill(seen, -1);
+        IntArrayList upper = new IntArrayList();
+        CHStorageBuilder builder = new CHStorageBuilder(chStore);
+        for (int node : nodesByLevel) {
+            upper.clear();
+            EdgeIterator iter = explorer.setBaseNode(node);
+            while (iter.next()) {
+                int adj = iter.getAdjNode();
+                if (levels[adj] > levels[node] && seen[adj] != node) {
+                    seen[adj] = node;
+                    positions[adj] = upper.size();
+                    upper.add(adj);
+                }
+            }
+            for (int child = firstChild[node]; child >= 0; child = nextSibling[child]) {
+                for (int entry : upperNeighbors[child]) {
+                    int adj = entry < 0 ? ~entry : entry;
+                    if (adj == node)
+                        continue;
+                    // two upper neighbors of the child are connected by a shortcut
+                    if (seen[adj] == node) {
+                        upper.set(positions[adj], ~adj);
+                    } else {
+                        seen[adj] = node;
+                        positions[adj] = upper.size();
+                        upper.add(~adj);
+                    }
+                }
+                upperNeighbors[child] = null;
+            }
+            int parent = -1;
+            for (int i = 0; i < upper.size(); i++) {
+                int entry = upper.get(i);
+                int adj = entry < 0 ? ~entry : entry;
+                if (entry < 0) {
+                    builder.addShortcutNodeBased(node, adj, PrepareEncoder.getScFwdDir(), Double.POSITIVE_INFINITY, -1, -1);
+                    builder.addShortcutNodeBased(node, adj, PrepareEncoder.getScBwdDir(), Double.POSITIVE_INFINITY, -1, -1);
+                }
+                if (parent < 0 || levels[adj] < levels[parent])
+                    parent = adj;
+            }
+            if (parent >= 0) {
+                upperNeighbors[node] = upper.toArray();
+                nextSibling[node] = firstChild[parent];
+                firstChild[parent] = node;
+            }
+        }
+        LOGGER.info("Created CCH topology with " + nf(chStore.getShortcuts()) + " shortcuts for " + nf(nodes) + " nodes in "
+                + sw.stop().getSeconds() + "s, " + getMemInfo());
+        return chStore;
+    }
+
+    /**
+     * @return the nodes sorted by their level, i.e. the contraction order
+     */
+    private int[] calcContractionOrder(EdgeExplorer explorer) {
+        int nodes = graph.getNodes();
+        // the undirected graph without loops and duplicate edges as adjacency arrays
+        int[] firstAdj = new int[nodes + 1];
+        int[] adjNodes = new int[2 * graph.getEdges()];
+        int[] seen = new int[nodes];
+        Arrays.fill(seen, -1);
+        for (int node = 0; node < nodes; node++) {
+            firstAdj[node + 1] = firstAdj[node];
+            EdgeIterator iter = explorer.setBaseNode(node);
+            while (iter.next()) {
+                int adj = iter.getAdjNode();
+                if (adj != node && seen[adj] != node) {
+                    seen[adj] = node;
+                    adjNodes[firstAdj[node + 1]++] = adj;
+                }
+            }
+        }
+        int[] nodesByLevel = new int[nodes];
+        boolean[] contracted = new boolean[nodes];
+        int level = peelLowDegreeNodes(firstAdj, adjNodes, nodesByLevel, contracted);
+        calcNestedDissectionOrder(firstAdj, adjNodes, nodesByLevel, contracted, level);
+        return nodesByLevel;
+    }
+
+    /**
+     * Assigns the lowest levels to the nodes with at most two neighbors, repeatedly. Contracting such a node requires
+     * at most one shortcut and does not increase the degree of its neighbors, so the shortcut can replace the node in
+     * the adjacency arrays of its two neighbors.
+     *
+     * @return the number of contracted nodes
+     */
+    private static int peelLowDegreeNodes(int[] firstAdj, int[] adjNodes, int[] nodesByLevel, boolean[] contracted) {
+        int nodes = contracted.length;
+        int[] degrees = new int[nodes];
+        IntArrayList queue = new IntArrayList();
+        for (int node = 0; node < nodes; node++) {
+            degrees[node] = firstAdj[node + 1] - firstAdj[node];
+            if (degrees[node] <= 2)
+                queue.add(node);
+        }
+        int level = 0;
+        while (!queue.isEmpty()) {
+            int node = queue.remove(queue.size() - 1);
+            if (contracted[node] || degrees[node] > 2)
+                continue;
+            contracted[node] = true;
+            nodesByLevel[level++] = node;
+            int adjA = -1, adjB = -1;
+            for (int i = firstAdj[node]; i < firstAdj[node + 1]; i++) {
+                if (adjNodes[i] < 0 || contracted[adjNodes[i]])
+                    continue;
+                if (adjA < 0)
+                    adjA = adjNodes[i];
+                else
+                    adjB = adjNodes[i];
+            }
+            if (adjB < 0) {
+                if (adjA >= 0 && --degrees[adjA] <= 2)
+                    queue.add(adjA);
+            } else if (replaceAdjNode(firstAdj, adjNodes, contracted, adjA, node, adjB) | replaceAdjNode(firstAdj, adjNodes, contracted, adjB, node, adjA)) {
+                // the two neighbors were connected already
+                if (--degrees[adjA] <= 2)
+                    queue.add(adjA);
+                if (--degrees[adjB] <= 2)
+                    queue.add(adjB);
+            }
+        }
+        return level;
+    }
+
+    /**
+     * Replaces the neighbor oldAdj of the given node with newAdj, or removes it if newAdj is a neighbor already.
+     *
+     * @return true if oldAdj was removed
+     */
+    private static boolean replaceAdjNode(int[] firstAdj, int[] adjNodes, boolean[] contracted, int node, int oldAdj, int newAdj) {
+        int oldIndex = -1;
+        boolean connected = false;
+        for (int i = firstAdj[node]; i < firstAdj[node + 1]; i++) {
+            if (adjNodes[i] == oldAdj)
+                oldIndex = i;
+            else if (adjNodes[i] == newAdj)
+                connected = true;
+        }
+        adjNodes[oldIndex] = connected ? -1 : newAdj;
+        return connected;
+    }
+
+    /**
+     * Assigns the levels from firstLevel to the remaining nodes using geometric nested dissection.
+     */
+    private void calcNestedDissectionOrder(int[] firstAdj, int[] adjNodes, int[] nodesByLevel, boolean[] contracted, int firstLevel) {
+        int nodes = contracted.length;
+        NodeAccess na = graph.getNodeAccess();
+        int[] order = new int[nodes - firstLevel];
+        for (int node = 0, i = 0; node < nodes; node++)
+            if (!contracted[node])
+                order[i++] = node;
+        int nextLevel = nodes - 1;
+        // the sort keys of the current range: the coordinate in the upper and the node in the lower bits
+        long[] keys = new long[order.length];
+        // the part of every node in the latest split of its range
+        int[] parts = new int[nodes];
+        Arrays.fill(parts, -1);
+        int nextPart = 0;
+        boolean[] separator = new boolean[nodes];
+        // the ranges of the order that still need to be split, as pairs of start and end
+        IntArrayList ranges = IntArrayList.from(0, order.length);
+        while (!ranges.isEmpty()) {
+            int from = ranges.get(ranges.size() - 2), to = ranges.get(ranges.size() - 1);
+            ranges.removeRange(ranges.size() - 2, ranges.size());
+            if (to - from <= 2) {
+                for (int i = from; i < to; i++)
+                    nodesByLevel[nextLevel--] = order[i];
+                continue;
+            }
+            // we split along the larger extent of the bounding box of the range
+            double minLat = Double.POSITIVE_INFINITY, maxLat = Double.NEGATIVE_INFINITY, minLon = Double.POSITIVE_INFINITY, maxLon = Double.NEGATIVE_INFINITY;
+            for (int i = from; i < to; i++) {
+                double lat = na.getLat(order[i]), lon = na.getLon(order[i]);
+                minLat = Math.min(minLat, lat);
+                maxLat = Math.max(maxLat, lat);
+                minLon = Math.min(minLon, lon);
+                maxLon = Math.max(maxLon, lon);
+            }
+            boolean byLat = maxLat - minLat >= (maxLon - minLon) * Math.cos(Math.toRadians((minLat + maxLat) / 2));
+            for (int i = from; i < to; i++) {
+                int coordinate = Helper.degreeToInt(byLat ? na.getLat(order[i]) : na.getLon(order[i]));
+                keys[i] = ((long) coordinate << 32) | order[i];
+            }
+            Arrays.sort(keys, from, to);
+            int mid = (from + to) >>> 1;
+            int lowerPart = nextPart++, upperPart = nextPart++;
+            for (int i = from; i < to; i++) {
+                order[i] = (int) keys[i];
+                parts[order[i]] = i < mid ? lowerPart : upperPart;
+            }
+            // the separator has to cover all edges between the two halves. we greedily add the nodes with the most
+            // uncovered edges first
+            int boundary = 0;
+            for (int i = from; i < to; i++) {
+                int otherPart = i < mid ? upperPart : lowerPart;
+                int cutEdges = 0;
+                for (int j = firstAdj[order[i]]; j < firstAdj[order[i] + 1]; j++)
+                    if (adjNodes[j] >= 0 && parts[adjNodes[j]] == otherPart)
+                        cutEdges++;
+                if (cutEdges > 0)
+                    keys[from + boundary++] = ((long) -cutEdges << 32) | order[i];
+            }
+            Arrays.sort(keys, from, from + boundary);
+            for (int i = from; i < from + boundary; i++) {
+                int node = (int) keys[i];
+                int otherPart = parts[node] == lowerPart ? upperPart : lowerPart;
+                for (int j = firstAdj[node]; j < firstAdj[node + 1]; j++) {
+                    if (adjNodes[j] >= 0 && parts[adjNodes[j]] == otherPart && !separator[adjNodes[j]]) {
+                        separator[node] = true;
+                        break;
+                    }
+                }
+            }
+
+            // the separator nodes get the highest levels of the range, the remaining nodes of both halves are moved
+            // to the front of the range
+            int separatorEnd = nextLevel;
+            for (int i = from; i < to; i++)
+                if (separator[order[i]])
+                    nodesByLevel[nextLevel--] = order[i];
+            int lowerEnd = from;
+            for (int i = from; i < mid; i++)
+                if (!separator[order[i]])
+                    order[lowerEnd++] = order[i];
+            int upperEnd = lowerEnd;
+            for (int i = mid; i < to; i++)
+                if (!separator[order[i]])
+                    order[upperEnd++] = order[i];
+            for (int level = nextLevel + 1; level <= separatorEnd; level++)
+                separator[nodesByLevel[level]] = false;
+            ranges.add(from, lowerEnd, lowerEnd, upperEnd);
+        }
+    }
+}
@@ -17,6 +17,8 @@
  */
 package com.graphhopper.routing.ch;
 
+import com.carrotsearch.hppc.FloatArrayList;
+import com.carrotsearch.hppc.IntArrayList;
 import com.carrotsearch.hppc.IntContainer;
 import com.carrotsearch.hppc.cursors.IntCursor;
 import com.graphhopper.coll.MinHeapWithUpdate;
@@ -28,8 +30,15 @@ import com.graphhopper.util.StopWatch;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Locale;
 import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static com.graphhopper.routing.ch.CHParameters.*;
 import static com.graphhopper.util.Helper.getMemInfo;
@@ -68,6 +77,7 @@ public class PrepareContractionHierarchies {
     // nodes with highest priority come last
     private MinHeapWithUpdate sortedNodes;
     private PMap pMap = new PMap();
+    private int contractionThreads = 1;
     private int checkCounter;
     private boolean prepared = false;
 
@@ -100,6 +110,9 @@ public class PrepareContractionHierarchies {
         params.setMaxNeighborUpdates(pMap.getInt(NEIGHBOR_UPDATES_MAX, params.getMaxNeighborUpdates()));
         params.setNodesContractedPercentage(pMap.getInt(CONTRACTED_NODES, params.getNodesContractedPercentage()));
         params.setLogMessagesPercentage(pMap.getInt(LOG_MESSAGES, params.getLogMessagesPercentage()));
+        contractionThreads = pMap.getInt(CONTRACTION_THREADS, contractionThreads);
+        if (contractionThreads < 1)
+            throw new IllegalArgumentException(CONTRACTION_THREADS + " has to be positive, but was: " + contractionThreads);
         return this;
     }
 
@@ -159,7 +172,11 @@ public class PrepareContractionHierarchies {
         setMaxLevelOnAllNodes();
         if (nodeOrderingProvider != null) {
             contractNodesUsingFixedNodeOrdering();
+        } else if (contractionThreads > 1 && !isEdgeBased()) {
+            contractNodesConcurrentlyUsingIndependentNodeSets();
         } else {
+            if (contractionThreads > 1)
+                logger.warn("{} is only supported for node-based CH, contracting the nodes sequentially", CONTRACTION_THREADS);
             contractNodesUsingHeuristicNodeOrdering();
         }
     }
@@ -316,6 +333,233 @@ public class PrepareContractionHierarchies {
         _close();
     }
 
+    /**
+     * Same as {@link #contractNodesUsingHeuristicNodeOrdering()}, but uses multiple threads. In every round we poll the
+     * nodes with the lowest priorities and select those that are neither adjacent to nor share a neighbor with a node
+     * selected before. The witness searches for such an independent set of nodes skip all selected nodes, so they do
+     * not depend on each other and do not change the graph. They run concurrently, each thread using its own witness
+     * path searcher. Afterwards the
+     * found shortcuts are inserted one node after another. The priority updates are calculated concurrently as well.
+     */
+    private void contractNodesConcurrentlyUsingIndependentNodeSets() {
+        NodeBasedNodeContractor contractor = (NodeBasedNodeContractor) nodeContractor;
+        NodeBasedNodeContractor.Worker[] workers = new NodeBasedNodeContractor.Worker[contractionThreads];
+        for (int i = 0; i < workers.length; i++)
+            workers[i] = contractor.createWorker();
+        ExecutorService executor = Executors.newFixedThreadPool(contractionThreads);
+        try {
+            StopWatch sw = new StopWatch().start();
+            logger.info("Building initial queue of nodes to be contracted: {} nodes, {} threads, {}", nodes, contractionThreads, getMemInfo());
+            updatePrioritiesOfRemainingNodesConcurrently(executor, workers);
+            logger.info("Finished building queue, took: {}s, {}", sw.stop().getSeconds(), getMemInfo());
+            final int initSize = sortedNodes.size();
+            int level = 0;
+            checkCounter = 0;
+            final long logSize = params.getLogMessagesPercentage() == 0
+                    ? Long.MAX_VALUE
+                    : Math.round(Math.max(10, initSize * (params.getLogMessagesPercentage() / 100d)));
+            final long periodicUpdatesCount = params.getPeriodicUpdatesPercentage() == 0
+                    ? Long.MAX_VALUE
+                    : Math.round(Math.max(10, initSize * (params.getPeriodicUpdatesPercentage() / 100d)));
+            long nextLog = 0;
+            long nextPeriodicUpdate = periodicUpdatesCount;
+            int updateCounter = 0;
+            final long lastNodesLazyUpdates = Math.round(initSize * (params.getLastNodesLazyUpdatePercentage() / 100d));
+            final long nodesToAvoidContract = Math.round(initSize * ((100 - params.getNodesContractedPercentage()) / 100d));
+            final boolean neighborUpdate = (params.getNeighborUpdatePercentage() != 0);
+            // the more candidates we poll per round the more work we can do concurrently, but the more we deviate
+            // from the order given by the node priorities
+            final int maxCandidates = 16 * contractionThreads;
+
+            // marks the selected nodes and their neighbors during the selection of an independent set
+            boolean[] blocked = new boolean[nodes];
+            IntArrayList blockedNodes = new IntArrayList();
+            IntArrayList neighbors = new IntArrayList();
+            IntArrayList selected = new IntArrayList();
+            IntArrayList rejected = new IntArrayList();
+            FloatArrayList rejectedPriorities = new FloatArrayList();
+            IntArrayList neighborsToUpdate = new IntArrayList();
+            while (!sortedNodes.isEmpty()) {
+                stopIfInterrupted();
+                if (checkCounter >= nextPeriodicUpdate) {
+                    updatePrioritiesOfRemainingNodesConcurrently(executor, workers);
+                    updateCounter++;
+                    nextPeriodicUpdate += periodicUpdatesCount;
+                }
+                if (checkCounter >= nextLog) {
+                    logHeuristicStats(updateCounter);
+                    nextLog += logSize;
+                }
+
+                selected.clear();
+                rejected.clear();
+                rejectedPriorities.clear();
+                for (int polled = 0; polled < maxCandidates && !sortedNodes.isEmpty(); polled++) {
+                    float priority = (float) sortedNodes.peekValue();
+                    int node = sortedNodes.poll();
+                    neighbors.clear();
+                    contractor.addNeighbors(node, neighbors);
+                    if (isIndependent(node, neighbors, blocked)) {
+                        selected.add(node);
+                        block(node, blocked, blockedNodes);
+                        for (int i = 0; i < neighbors.size(); i++)
+                            block(neighbors.get(i), blocked, blockedNodes);
+                    } else {
+                        rejected.add(node);
+                        rejectedPriorities.add(priority);
+                    }
+                }
+                for (int i = 0; i < blockedNodes.size(); i++)
+                    blocked[blockedNodes.get(i)] = false;
+                blockedNodes.clear();
+                for (int i = 0; i < rejected.size(); i++)
+                    sortedNodes.push(rejected.get(i), rejectedPriorities.get(i));
+
+                if (!sortedNodes.isEmpty() && sortedNodes.size() < lastNodesLazyUpdates) {
+                    lazyUpdateSW.start();
+                    float[] priorities = calculatePrioritiesConcurrently(executor, workers, selected);
+                    float minRemainingPriority = (float) sortedNodes.peekValue();
+                    int kept = 0;
+                    for (int i = 0; i < selected.size(); i++) {
+                        if (priorities[i] > minRemainingPriority)
+                            // current node got more important => insert as new value and contract it later
+                            sortedNodes.push(selected.get(i), priorities[i]);
+                        else
+                            selected.set(kept++, selected.get(i));
+                    }
+                    selected.elementsCount = kept;
+                    lazyUpdateSW.stop();
+                }
+
+                // the witness paths must not use any of the selected nodes, because they are all contracted now
+                for (int i = 0; i < selected.size(); i++)
+                    block(selected.get(i), blocked, blockedNodes);
+                contractionSW.start();
+                NodeBasedNodeContractor.PendingShortcuts[] pendingShortcuts = new NodeBasedNodeContractor.PendingShortcuts[selected.size()];
+                runConcurrently(executor, workers, selected.size(), (i, w) -> pendingShortcuts[i] = contractor.findShortcuts(selected.get(i), blocked, w));
+                contractionSW.stop();
+                for (int i = 0; i < blockedNodes.size(); i++)
+                    blocked[blockedNodes.get(i)] = false;
+                blockedNodes.clear();
+                checkCounter += selected.size();
+                neighborsToUpdate.clear();
+                for (int i = 0; i < selected.size(); i++) {
+                    int node = selected.get(i);
+                    if (isContracted(node))
+                        throw new IllegalArgumentException("Node " + node + " was contracted already");
+                    contractionSW.start();
+                    chBuilder.setLevel(node, level);
+                    IntContainer contractedNeighbors = contractor.contractNode(node, pendingShortcuts[i]);
+                    contractionSW.stop();
+                    level++;
+                    int neighborCount = 0;
+                    for (IntCursor neighbor : contractedNeighbors) {
+                        if (neighborUpdate && (params.getMaxNeighborUpdates() < 0 || neighborCount < params.getMaxNeighborUpdates()) && rand.nextInt(100) < params.getNeighborUpdatePercentage()) {
+                            neighborCount++;
+                            // we use the blocked flags to make sure every neighbor is updated only once
+                            block(neighbor.value, blocked, neighborsToUpdate);
+                        }
+                    }
+                }
+                for (int i = 0; i < neighborsToUpdate.size(); i++)
+                    blocked[neighborsToUpdate.get(i)] = false;
+
+                if (sortedNodes.size() < nodesToAvoidContract)
+                    // skipped nodes are already set to maxLevel
+                    break;
+
+                neighborUpdateSW.start();
+                float[] priorities = calculatePrioritiesConcurrently(executor, workers, neighborsToUpdate);
+                for (int i = 0; i < neighborsToUpdate.size(); i++)
+                    sortedNodes.update(neighborsToUpdate.get(i), priorities[i]);
+                neighborUpdateSW.stop();
+            }
+            logHeuristicStats(updateCounter);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        nodeContractor.finishContraction();
+
+        logger.info("new shortcuts: " + nf(nodeContractor.getAddedShortcutsCount())
+                + ", threads: " + contractionThreads
+                + ", " + chConfig.getWeighting()
+                + ", " + getTimesAsString()
+                + ", " + Helper.getMemInfo());
+        _close();
+    }
+
+    private static boolean isIndependent(int node, IntArrayList neighbors, boolean[] blocked) {
+        if (blocked[node])
+            return false;
+        for (int i = 0; i < neighbors.size(); i++)
+            if (blocked[neighbors.get(i)])
+                return false;
+        return true;
+    }
+
+    private static void block(int node, boolean[] blocked, IntArrayList blockedNodes) {
+        if (blocked[node])
+            return;
+        blocked[node] = true;
+        blockedNodes.add(node);
+    }
+
+    private void updatePrioritiesOfRemainingNodesConcurrently(ExecutorService executor, NodeBasedNodeContractor.Worker[] workers) {
+        periodicUpdateSW.start();
+        IntArrayList remainingNodes = new IntArrayList();
+        for (int node = 0; node < nodes; node++)
+            if (!isContracted(node))
+                remainingNodes.add(node);
+        float[] priorities = calculatePrioritiesConcurrently(executor, workers, remainingNodes);
+        sortedNodes.clear();
+        for (int i = 0; i < remainingNodes.size(); i++)
+            sortedNodes.push(remainingNodes.get(i), priorities[i]);
+        periodicUpdateSW.stop();
+    }
+
+    private float[] calculatePrioritiesConcurrently(ExecutorService executor, NodeBasedNodeContractor.Worker[] workers, IntArrayList nodes) {
+        NodeBasedNodeContractor contractor = (NodeBasedNodeContractor) nodeContractor;
+        float[] priorities = new float[nodes.size()];
+        runConcurrently(executor, workers, nodes.size(), (i, w) -> priorities[i] = contractor.calculatePriority(nodes.get(i), w));
+        return priorities;
+    }
+
+    /**
+     * Runs the given task for all indices in [0, size), every worker is used by a single thread only.
+     */
+    private static void runConcurrently(ExecutorService executor, NodeBasedNodeContractor.Worker[] workers, int size, WorkerTask task) {
+        if (size == 0)
+            return;
+        if (size == 1) {
+            task.run(0, workers[0]);
+            return;
+        }
+        AtomicInteger next = new AtomicInteger();
+        List<Future<?>> futures = new ArrayList<>(workers.length);
+        for (NodeBasedNodeContractor.Worker worker : workers)
+            futures.add(executor.submit(() -> {
+                for (int i = next.getAndIncrement(); i < size; i = next.getAndIncrement())
+                    task.run(i, worker);
+            }));
+        try {
+            for (Future<?> future : futures)
+                future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Thread was interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    @FunctionalInterface
+    private interface WorkerTask {
+        void run(int index, NodeBasedNodeContractor.Worker worker);
+    }
+
     private void contractNodesUsingFixedNodeOrdering() {
         final int nodesToContract = nodeOrderingProvider.getNumNodes();
         final int logSize = Math.max(10, (int) (params.getLogMessagesPercentage() / 100.0 * nodesToContract));
@@ -26,11 +26,20 @@ import static com.graphhopper.config.Profile.validateProfileName;
 
 public class LMConfig {
     private final String profileName;
+    private final String fileName;
     private final Weighting weighting;
 
     public LMConfig(String profileName, Weighting weighting) {
+        this(profileName, weighting, profileName);
+    }
+
+    /**
+     * @param fileName is used to store the landmark data on disk, usually the same as the profile name
+     */
+    public LMConfig(String profileName, Weighting weighting, String fileName) {
         validateProfileName(profileName);
         this.profileName = profileName;
+        this.fileName = fileName;
         this.weighting = weighting;
     }
 
@@ -38,6 +47,10 @@ public class LMConfig {
         return profileName;
     }
 
+    public String toFileName() {
+        return fileName;
+    }
+
     public Weighting getWeighting() {
         return weighting;
     }
@@ -18,6 +18,7 @@
 package com.graphhopper.routing.lm;
 
 import com.bedatadriven.jackson.datatype.jts.JtsModule;
+import com.carrotsearch.hppc.IntArrayList;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.graphhopper.GraphHopperConfig;
 import com.graphhopper.config.LMProfile;
@@ -58,6 +59,7 @@ public class LMPreparationHandler {
     private int minNodes = -1;
     private final List<String> lmSuggestionsLocations = new ArrayList<>(5);
     private int preparationThreads;
+    private int landmarkThreads = 1;
     private boolean logDetails = false;
     private AreaIndex<SplitArea> areaIndex;
 
@@ -72,6 +74,7 @@ public class LMPreparationHandler {
         }
 
         setPreparationThreads(ghConfig.getInt(Parameters.Landmark.PREPARE + "threads", getPreparationThreads()));
+        setLandmarkThreads(ghConfig.getInt(Parameters.Landmark.PREPARE + "landmark_threads", getLandmarkThreads()));
         setLMProfiles(ghConfig.getLMProfiles());
 
         landmarkCount = ghConfig.getInt(Parameters.Landmark.COUNT, landmarkCount);
@@ -116,6 +119,18 @@ public class LMPreparationHandler {
         this.preparationThreads = preparationThreads;
     }
 
+    public int getLandmarkThreads() {
+        return landmarkThreads;
+    }
+
+    /**
+     * This method changes the number of threads used to calculate the landmark weights of a single profile. The
+     * total number of threads is this number multiplied with the preparation threads. Default is 1.
+     */
+    public void setLandmarkThreads(int landmarkThreads) {
+        this.landmarkThreads = landmarkThreads;
+    }
+
     public LMPreparationHandler setLMProfiles(LMProfile... lmProfiles) {
         return setLMProfiles(Arrays.asList(lmProfiles));
     }
@@ -160,14 +175,36 @@ public class LMPreparationHandler {
                         //       we need to remove the DAs from the directory. This is because otherwise we cannot
                         //       create these DataAccess again when we actually prepare the landmarks that don't exist
                         //       yet.
-                        baseGraph.getDirectory().remove("landmarks_" + lmConfig.getName());
-                        baseGraph.getDirectory().remove("landmarks_subnetwork_" + lmConfig.getName());
+                        baseGraph.getDirectory().remove("landmarks_" + lmConfig.toFileName());
+                        baseGraph.getDirectory().remove("landmarks_subnetwork_" + lmConfig.toFileName());
                     }
                 });
         GHUtility.runConcurrently(loadingRunnables, preparationThreads);
         return loaded;
     }
 
+    /**
+     * Creates the landmark data for the given config from the landmark data that was prepared before the weights of
+     * the given edges changed, see {@link LandmarkStorage#updateLandmarks}. The config should use a different file
+     * name than the previous landmark storage, so the latter can still be used while the update is running.
+     *
+     * @return the updated landmark storage or null if the landmarks have to be prepared from scratch
+     */
+    public LandmarkStorage update(LandmarkStorage previous, LMConfig lmConfig, BaseGraph baseGraph, EncodedValueLookup encodedValueLookup, IntArrayList changedEdges) {
+        LandmarkStorage lms = new LandmarkStorage(baseGraph, encodedValueLookup, baseGraph.getDirectory(), lmConfig, landmarkCount).
+                setLandmarkThreads(landmarkThreads);
+        lms.setLogDetails(logDetails);
+        if (areaIndex != null)
+            lms.setAreaIndex(areaIndex);
+        if (lms.updateLandmarks(previous, changedEdges)) {
+            lms.flush();
+            return lms;
+        }
+        baseGraph.getDirectory().remove("landmarks_" + lmConfig.toFileName());
+        baseGraph.getDirectory().remove("landmarks_subnetwork_" + lmConfig.toFileName());
+        return null;
+    }
+
     /**
      * Prepares the landmark data for all given configs
      */
@@ -224,6 +261,7 @@ public class LMPreparationHandler {
                     lmConfig, landmarkCount).
                     setLandmarkSuggestions(lmSuggestions).
                     setMaximumWeight(maximumWeight).
+                    setLandmarkThreads(landmarkThreads).
                     setLogDetails(logDetails);
             if (minNodes > 1)
                 prepareLandmarks.setMinimumNodes(minNodes);
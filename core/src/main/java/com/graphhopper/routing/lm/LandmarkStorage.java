@@ -18,6 +18,7 @@
 package com.graphhopper.routing.lm;
 
 import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.cursors.IntCursor;
 import com.carrotsearch.hppc.IntHashSet;
 import com.carrotsearch.hppc.IntObjectMap;
 import com.carrotsearch.hppc.predicates.IntObjectPredicate;
@@ -50,6 +51,7 @@ import org.slf4j.LoggerFactory;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
 
 /**
  * This class stores the landmark nodes and the weights from and to all other nodes in every
@@ -94,6 +96,7 @@ public class LandmarkStorage {
     private List<LandmarkSuggestion> landmarkSuggestions = Collections.emptyList();
     private AreaIndex<SplitArea> areaIndex;
     private boolean logDetails = false;
+    private int landmarkThreads = 1;
     /**
      * 'to' and 'from' fit into 32 bit => 16 bit for each of them => 65536
      */
@@ -132,7 +135,7 @@ public class LandmarkStorage {
         // use the node based traversal as this is a smaller weight approximation and will still produce correct results
         // In this sense its even 'better' to use node-based.
         this.traversalMode = TraversalMode.NODE_BASED;
-        this.landmarkWeightDA = dir.create("landmarks_" + lmConfig.getName());
+        this.landmarkWeightDA = dir.create("landmarks_" + lmConfig.toFileName());
 
         this.landmarks = landmarks;
         // one short per landmark and two directions => 2*2 byte
@@ -140,7 +143,7 @@ public class LandmarkStorage {
         this.FROM_OFFSET = 0;
         this.TO_OFFSET = 2;
         this.landmarkIDs = new ArrayList<>();
-        this.subnetworkStorage = new SubnetworkStorage(dir.create("landmarks_subnetwork_" + lmConfig.getName()));
+        this.subnetworkStorage = new SubnetworkStorage(dir.create("landmarks_subnetwork_" + lmConfig.toFileName()));
     }
 
     /**
@@ -162,6 +165,18 @@ public class LandmarkStorage {
         return this;
     }
 
+    /**
+     * This method sets the number of threads used to calculate the landmark weights within one subnetwork. The
+     * explorations of different landmarks are independent, but every thread needs memory for its own exploration.
+     * Default is 1.
+     */
+    public LandmarkStorage setLandmarkThreads(int landmarkThreads) {
+        if (landmarkThreads < 1)
+            throw new IllegalArgumentException("landmark threads must be at least 1, was: " + landmarkThreads);
+        this.landmarkThreads = landmarkThreads;
+        return this;
+    }
+
     /**
      * By default do not log many details.
      */
@@ -351,6 +366,111 @@ public class LandmarkStorage {
         initialized = true;
     }
 
+    /**
+     * This method initializes this storage with a copy of the given storage that was created before the weights of the
+     * given edges changed. The landmark weights are lower bounds as long as they fulfill the triangle inequality
+     * for every edge, which still holds for all edges whose weight increased. Therefore only the landmarks whose
+     * weights can be improved via one of the changed edges are explored again, all other weights are just copied.
+     *
+     * @return false if a changed edge connects different subnetworks. Then the landmarks have to be created from
+     * scratch using {@link #createLandmarks()}, and this storage is not initialized.
+     */
+    public boolean updateLandmarks(LandmarkStorage previous, IntArrayList changedEdges) {
+        if (isInitialized())
+            throw new IllegalStateException("Initialize the landmark storage only once!");
+        if (!previous.isInitialized())
+            throw new IllegalArgumentException("The previous landmark storage must be initialized");
+
+        final BooleanEncodedValue edgeInSubnetworkEnc = encodedValueLookup.getBooleanEncodedValue(Subnetwork.key(lmConfig.getName()));
+        int subnetworkCount = previous.landmarkIDs.size();
+        int landmarks = previous.landmarks;
+        // for every subnetwork and landmark we mark the 'from' and 'to' weights that need to be calculated again
+        BitSet outdated = new BitSet(subnetworkCount * landmarks * 2);
+        for (IntCursor c : changedEdges) {
+            EdgeIteratorState edge = graph.getEdgeIteratorState(c.value, Integer.MIN_VALUE);
+            if (edge.get(edgeInSubnetworkEnc) || areaIndex != null && isBorderEdge(areaIndex, edge.getBaseNode(), edge.getAdjNode()))
+                continue;
+            for (boolean reverse : new boolean[]{false, true}) {
+                double weight = weighting.calcEdgeWeight(edge, reverse);
+                if (!Double.isFinite(weight))
+                    continue;
+                int from = reverse ? edge.getAdjNode() : edge.getBaseNode();
+                int to = reverse ? edge.getBaseNode() : edge.getAdjNode();
+                int subnetwork = previous.subnetworkStorage.getSubnetwork(from);
+                if (subnetwork != previous.subnetworkStorage.getSubnetwork(to))
+                    return false;
+                if (subnetwork <= UNCLEAR_SUBNETWORK)
+                    continue;
+
+                // the stored weights are rounded down, so a freshly calculated storage fulfills the triangle
+                // inequality in the form fromWeight(to) <= fromWeight(from) + ceil(weight / factor)
+                int edgeWeight = (int) Math.min(SHORT_INFINITY, Math.ceil(weight / previous.factor));
+                for (int lmIdx = 0; lmIdx < landmarks; lmIdx++) {
+                    int index = (subnetwork * landmarks + lmIdx) * 2;
+                    if (previous.getRawWeight(to, lmIdx, FROM_OFFSET) > previous.getRawWeight(from, lmIdx, FROM_OFFSET) + edgeWeight)
+                        outdated.set(index);
+                    if (previous.getRawWeight(from, lmIdx, TO_OFFSET) > previous.getRawWeight(to, lmIdx, TO_OFFSET) + edgeWeight)
+                        outdated.set(index + 1);
+                }
+            }
+        }
+
+        // copy the weights, the landmark node IDs and the header
+        this.landmarks = landmarks;
+        this.LM_ROW_LENGTH = previous.LM_ROW_LENGTH;
+        this.factor = previous.factor;
+        long bytes = previous.landmarkWeightDA.getCapacity();
+        landmarkWeightDA.create(2000);
+        landmarkWeightDA.ensureCapacity(bytes);
+        for (long pointer = 0; pointer < bytes; pointer += 4)
+            landmarkWeightDA.setInt(pointer, previous.landmarkWeightDA.getInt(pointer));
+        for (int i = 0; i < 4; i++)
+            landmarkWeightDA.setHeader(i * 4, previous.landmarkWeightDA.getHeader(i * 4));
+        for (int[] landmarkNodeIds : previous.landmarkIDs)
+            landmarkIDs.add(landmarkNodeIds.clone());
+        subnetworkStorage.create(graph.getNodes());
+        for (int node = 0; node < graph.getNodes(); node++)
+            subnetworkStorage.setSubnetwork(node, previous.subnetworkStorage.getSubnetwork(node));
+        initialized = true;
+        if (outdated.isEmpty())
+            return true;
+
+        // nodes that are no longer reachable from the landmark must not keep their old weight
+        for (int node = 0; node < graph.getNodes(); node++) {
+            int subnetwork = subnetworkStorage.getSubnetwork(node);
+            if (subnetwork <= UNCLEAR_SUBNETWORK)
+                continue;
+            for (int lmIdx = 0; lmIdx < landmarks; lmIdx++) {
+                int index = (subnetwork * landmarks + lmIdx) * 2;
+                if (outdated.get(index))
+                    landmarkWeightDA.setShort(node * LM_ROW_LENGTH + lmIdx * 4L + FROM_OFFSET, (short) SHORT_INFINITY);
+                if (outdated.get(index + 1))
+                    landmarkWeightDA.setShort(node * LM_ROW_LENGTH + lmIdx * 4L + TO_OFFSET, (short) SHORT_INFINITY);
+            }
+        }
+
+        final IntHashSet blockedEdges = areaIndex == null ? new IntHashSet() : findBorderEdgeIds(areaIndex);
+        EdgeFilter accessFilter = edge -> !edge.get(edgeInSubnetworkEnc) && !blockedEdges.contains(edge.getEdge());
+        GHUtility.runConcurrently(outdated.stream().mapToObj(index -> () -> {
+            int subnetwork = index / 2 / landmarks;
+            int lmIdx = index / 2 % landmarks;
+            boolean reverse = index % 2 == 1;
+            int lmNodeId = landmarkIDs.get(subnetwork)[lmIdx];
+            LandmarkExplorer explorer = new LandmarkExplorer(graph, this, weighting, traversalMode, accessFilter, reverse);
+            explorer.setStartNode(lmNodeId);
+            explorer.runAlgo();
+            explorer.initLandmarkWeights(lmIdx, lmNodeId, LM_ROW_LENGTH, reverse ? TO_OFFSET : FROM_OFFSET);
+        }), landmarkThreads);
+        if (logDetails)
+            LOGGER.info("Updated " + outdated.cardinality() + " of " + (subnetworkCount - 1) * landmarks * 2 + " landmark explorations after "
+                    + changedEdges.size() + " edges changed");
+        return true;
+    }
+
+    private int getRawWeight(int node, int landmarkIndex, int offset) {
+        return (int) landmarkWeightDA.getShort((long) node * LM_ROW_LENGTH + landmarkIndex * 4L + offset) & 0x0000FFFF;
+    }
+
     /**
      * This method returns the maximum weight for the graph starting from the landmarks
      */
@@ -445,35 +565,28 @@ public class LandmarkStorage {
         }
 
         // 2) calculate weights for all landmarks -> 'from' and 'to' weight
-        for (int lmIdx = 0; lmIdx < tmpLandmarkNodeIds.length; lmIdx++) {
-            if (Thread.currentThread().isInterrupted()) {
-                throw new RuntimeException("Thread was interrupted for landmark " + lmIdx);
-            }
-            int lmNodeId = tmpLandmarkNodeIds[lmIdx];
-            LandmarkExplorer explorer = new LandmarkExplorer(graph, this, weighting, traversalMode, accessFilter, false);
-            explorer.setStartNode(lmNodeId);
-            explorer.runAlgo();
-            explorer.initLandmarkWeights(lmIdx, lmNodeId, LM_ROW_LENGTH, FROM_OFFSET);
-
-            // set subnetwork id to all explored nodes, but do this only for the first landmark
-            if (lmIdx == 0) {
-                if (explorer.setSubnetworks(subnetworks, subnetworkId))
-                    return false;
-            }
+        // The explorations of the first landmark also set the subnetwork ids, so they always run first and on their own.
+        if (calcLandmarkWeights(0, tmpLandmarkNodeIds[0], accessFilter, subnetworks, subnetworkId))
+            return false;
 
-            explorer = new LandmarkExplorer(graph, this, weighting, traversalMode, accessFilter, true);
-            explorer.setStartNode(lmNodeId);
-            explorer.runAlgo();
-            explorer.initLandmarkWeights(lmIdx, lmNodeId, LM_ROW_LENGTH, TO_OFFSET);
+        if (landmarkThreads > 1) {
+            // all further landmarks only write into their own columns of the landmark weight storage
+            AtomicInteger finished = new AtomicInteger(1);
+            GHUtility.runConcurrently(IntStream.range(1, tmpLandmarkNodeIds.length).mapToObj(lmIdx -> () -> {
+                calcLandmarkWeights(lmIdx, tmpLandmarkNodeIds[lmIdx], accessFilter, subnetworks, subnetworkId);
+                int count = finished.incrementAndGet();
+                if (logDetails && count % logOffset == 0)
+                    LOGGER.info("Set landmarks weights [" + weighting + "]. "
+                            + "Progress " + (int) (100.0 * count / tmpLandmarkNodeIds.length) + "%");
+            }), landmarkThreads);
+        } else {
+            for (int lmIdx = 1; lmIdx < tmpLandmarkNodeIds.length; lmIdx++) {
+                calcLandmarkWeights(lmIdx, tmpLandmarkNodeIds[lmIdx], accessFilter, subnetworks, subnetworkId);
 
-            if (lmIdx == 0) {
-                if (explorer.setSubnetworks(subnetworks, subnetworkId))
-                    return false;
+                if (logDetails && lmIdx % logOffset == 0)
+                    LOGGER.info("Set landmarks weights [" + weighting + "]. "
+                            + "Progress " + (int) (100.0 * lmIdx / tmpLandmarkNodeIds.length) + "%");
             }
-
-            if (logDetails && lmIdx % logOffset == 0)
-                LOGGER.info("Set landmarks weights [" + weighting + "]. "
-                        + "Progress " + (int) (100.0 * lmIdx / tmpLandmarkNodeIds.length) + "%");
         }
 
         // TODO set weight to SHORT_MAX if entry has either no 'from' or no 'to' entry
@@ -481,6 +594,38 @@ public class LandmarkStorage {
         return true;
     }
 
+    /**
+     * Runs the 'from' and 'to' explorations for the specified landmark and stores the resulting weights. Only the first
+     * landmark sets the subnetwork ids of the explored nodes, all other calls are independent of each other and can
+     * run concurrently.
+     *
+     * @return true if the subnetwork ids could not be set and the subnetwork has to be skipped
+     */
+    private boolean calcLandmarkWeights(int lmIdx, int lmNodeId, EdgeFilter accessFilter, byte[] subnetworks, int subnetworkId) {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new RuntimeException("Thread was interrupted for landmark " + lmIdx);
+        }
+        LandmarkExplorer explorer = new LandmarkExplorer(graph, this, weighting, traversalMode, accessFilter, false);
+        explorer.setStartNode(lmNodeId);
+        explorer.runAlgo();
+        explorer.initLandmarkWeights(lmIdx, lmNodeId, LM_ROW_LENGTH, FROM_OFFSET);
+
+        // set subnetwork id to all explored nodes, but do this only for the first landmark
+        if (lmIdx == 0) {
+            if (explorer.setSubnetworks(subnetworks, subnetworkId))
+                return true;
+        }
+
+        explorer = new LandmarkExplorer(graph, this, weighting, traversalMode, accessFilter, true);
+        explorer.setStartNode(lmNodeId);
+        explorer.runAlgo();
+        explorer.initLandmarkWeights(lmIdx, lmNodeId, LM_ROW_LENGTH, TO_OFFSET);
+
+        if (lmIdx == 0)
+            return explorer.setSubnetworks(subnetworks, subnetworkId);
+        return false;
+    }
+
     /**
      * This method specifies the polygons which should be used to split the world wide area to improve performance and
      * quality in this scenario.
@@ -497,20 +642,22 @@ public class LandmarkStorage {
         AllEdgesIterator allEdgesIterator = graph.getAllEdges();
         IntHashSet inaccessible = new IntHashSet();
         while (allEdgesIterator.next()) {
-            int adjNode = allEdgesIterator.getAdjNode();
-            List<SplitArea> areas = areaIndex.query(na.getLat(adjNode), na.getLon(adjNode));
-            SplitArea areaAdj = areas.isEmpty() ? null : areas.get(0);
-
-            int baseNode = allEdgesIterator.getBaseNode();
-            areas = areaIndex.query(na.getLat(baseNode), na.getLon(baseNode));
-            SplitArea areaBase = areas.isEmpty() ? null : areas.get(0);
-            if (areaAdj != areaBase) {
+            if (isBorderEdge(areaIndex, allEdgesIterator.getBaseNode(), allEdgesIterator.getAdjNode())) {
                 inaccessible.add(allEdgesIterator.getEdge());
             }
         }
         return inaccessible;
     }
 
+    private boolean isBorderEdge(AreaIndex<SplitArea> areaIndex, int baseNode, int adjNode) {
+        List<SplitArea> areas = areaIndex.query(na.getLat(adjNode), na.getLon(adjNode));
+        SplitArea areaAdj = areas.isEmpty() ? null : areas.get(0);
+
+        areas = areaIndex.query(na.getLat(baseNode), na.getLon(baseNode));
+        SplitArea areaBase = areas.isEmpty() ? null : areas.get(0);
+        return areaAdj != areaBase;
+    }
+
     /**
      * The factor is used to convert double values into more compact int values.
      */
@@ -68,6 +68,7 @@ public class PrepareRoutingSubnetworks {
     private final List<PrepareJob> prepareJobs;
     private int minNetworkSize = 200;
     private int threads = 1;
+    private List<IntArrayList> changedEdges;
 
     public PrepareRoutingSubnetworks(BaseGraph graph, List<PrepareJob> prepareJobs) {
         this.graph = graph;
@@ -94,6 +95,7 @@ public class PrepareRoutingSubnetworks {
      * @return the total number of marked edges
      */
     public int doWork() {
+        changedEdges = Stream.generate(IntArrayList::new).limit(prepareJobs.size()).collect(Collectors.toList());
         if (minNetworkSize <= 0) {
             logger.info("Skipping subnetwork search: prepare.min_network_size: " + minNetworkSize);
             return 0;
@@ -108,17 +110,29 @@ public class PrepareRoutingSubnetworks {
             total.addAndGet(setSubnetworks(job.weighting, job.subnetworkEnc.getName().replaceAll("_subnetwork", ""), flags.get(i)));
         });
         GHUtility.runConcurrently(runnables, threads);
+        // all flags are written, so edges that no longer belong to a subnetwork lose their flag
         AllEdgesIterator iter = graph.getAllEdges();
         while (iter.next()) {
             for (int i = 0; i < prepareJobs.size(); i++) {
                 PrepareJob prepareJob = prepareJobs.get(i);
-                iter.set(prepareJob.subnetworkEnc, flags.get(i).get(iter.getEdge()));
+                boolean subnetwork = flags.get(i).get(iter.getEdge());
+                if (iter.get(prepareJob.subnetworkEnc) != subnetwork) {
+                    iter.set(prepareJob.subnetworkEnc, subnetwork);
+                    changedEdges.get(i).add(iter.getEdge());
+                }
             }
         }
         logger.info("Finished finding and marking subnetworks for " + prepareJobs.size() + " jobs, took: " + sw.stop().getSeconds() + "s, " + Helper.getMemInfo());
         return total.get();
     }
 
+    /**
+     * @return the edges whose subnetwork flag was changed by the last call of {@link #doWork()}, one list per job
+     */
+    public List<IntArrayList> getChangedEdges() {
+        return changedEdges;
+    }
+
     private int setSubnetworks(Weighting weighting, String jobName, BitSet subnetworkFlags) {
         // partition graph into strongly connected components using Tarjan's algorithm
         StopWatch sw = new StopWatch().start();
@@ -0,0 +1,84 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.weighting;
+
+import com.graphhopper.routing.querygraph.VirtualEdgeIteratorState;
+import com.graphhopper.storage.TrafficOverlay;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.GHUtility;
+
+/**
+ * Divides the time of every edge by the speed factor of a {@link TrafficOverlay} snapshot and changes the weight by
+ * the same number of seconds, so parts of the weight that do not depend on the time are not scaled. The
+ * snapshot is fixed for the lifetime of this weighting, so all weights are consistent even when the overlay is
+ * updated concurrently.
+ */
+public class TrafficWeighting extends AbstractAdjustedWeighting {
+    private final TrafficOverlay.Snapshot speedFactors;
+
+    public TrafficWeighting(Weighting superWeighting, TrafficOverlay.Snapshot speedFactors) {
+        super(superWeighting);
+        this.speedFactors = speedFactors;
+    }
+
+    @Override
+    public double calcMinWeightPerDistance() {
+        return superWeighting.calcMinWeightPerDistance() / speedFactors.getMaxSpeedFactor();
+    }
+
+    @Override
+    public double calcEdgeWeight(EdgeIteratorState edgeState, boolean reverse) {
+        double weight = superWeighting.calcEdgeWeight(edgeState, reverse);
+        double speedFactor = getSpeedFactor(edgeState);
+        if (speedFactor == 1 || Double.isInfinite(weight))
+            return weight;
+        if (speedFactor == 0)
+            return Double.POSITIVE_INFINITY;
+        // only the travel time changes with the traffic speed, e.g. the distance influence of a custom model stays the
+        // same
+        double seconds = superWeighting.calcEdgeMillis(edgeState, reverse) / 1000.0;
+        double trafficWeight = weight + seconds * (1 / speedFactor - 1);
+        // a faster edge never gets cheaper than its scaled weight, which keeps calcMinWeightPerDistance a lower bound
+        return speedFactor > 1 ? Math.max(trafficWeight, weight / speedFactor) : trafficWeight;
+    }
+
+    @Override
+    public long calcEdgeMillis(EdgeIteratorState edgeState, boolean reverse) {
+        long millis = superWeighting.calcEdgeMillis(edgeState, reverse);
+        double speedFactor = getSpeedFactor(edgeState);
+        if (speedFactor == 1)
+            return millis;
+        return speedFactor == 0 ? Long.MAX_VALUE : Math.round(millis / speedFactor);
+    }
+
+    private double getSpeedFactor(EdgeIteratorState edgeState) {
+        int edge = edgeState instanceof VirtualEdgeIteratorState
+                ? GHUtility.getEdgeFromEdgeKey(((VirtualEdgeIteratorState) edgeState).getOriginalEdgeKey())
+                : edgeState.getEdge();
+        return speedFactors.getSpeedFactor(edge);
+    }
+
+    public TrafficOverlay.Snapshot getSpeedFactors() {
+        return speedFactors;
+    }
+
+    @Override
+    public String getName() {
+        return "traffic";
+    }
+}
@@ -17,6 +17,7 @@
  */
 package com.graphhopper.search;
 
+import com.carrotsearch.hppc.BitSet;
 import com.graphhopper.storage.DataAccess;
 import com.graphhopper.storage.Directory;
 import com.graphhopper.util.BitUtil;
@@ -74,7 +75,18 @@ public class KVStorage {
     // 2. Every key can store values only of the same type
     // 3. We need to loop through X entries to get the start val_x.
     // 4. The key index (14 bits) is stored along with the availability (2 bits), i.e. whether they KeyValue is available in forward and/or backward directions
-    private final DataAccess vals;
+    // 5. With a dictionary every String value is stored only once in the dictionary DataAccess (length in 1 byte and the
+    //    bytes) and the vals DataAccess contains the id of the String as varint instead. The id 0 is the empty String.
+    //    The pointer of every String into the dictionary is stored in the dictionary_index DataAccess (8 bytes per id).
+    private DataAccess vals;
+    private final String name;
+    private boolean withDictionary;
+    private DataAccess dictionary;
+    private DataAccess dictionaryIndex;
+    private long dictionaryBytePointer;
+    private int dictionarySize;
+    // only needed to add values, so it is created when the first value is added after loadExisting
+    private Map<String, Integer> stringToId;
     private final Map<String, Integer> keyToIndex = new HashMap<>();
     private final List<Class<?>> indexToClass = new ArrayList<>();
     private final List<String> indexToKey = new ArrayList<>();
@@ -83,18 +95,22 @@ public class KVStorage {
     private long lastEntryPointer = -1;
     private Map<String, KValue> lastEntries;
 
+    public KVStorage(Directory dir, boolean edge) {
+        this(dir, edge, false);
+    }
+
     /**
-     * Specify a larger cacheSize to reduce disk usage. Note that this increases the memory usage of this object.
+     * @param withDictionary if true every distinct String value is stored only once and the entries refer to it via
+     *                       its id, which makes the storage a lot smaller if the same values are used for many entries,
+     *                       like street names. The Strings are kept in memory while adding entries. This setting is
+     *                       only relevant for create, loadExisting uses the setting of the stored data.
      */
-    public KVStorage(Directory dir, boolean edge) {
+    public KVStorage(Directory dir, boolean edge, boolean withDictionary) {
         this.dir = dir;
-        if (edge) {
-            this.keys = dir.create("edgekv_keys", 10 * 1024);
-            this.vals = dir.create("edgekv_vals");
-        } else {
-            this.keys = dir.create("nodekv_keys", 10 * 1024);
-            this.vals = dir.create("nodekv_vals");
-        }
+        this.name = edge ? "edgekv" : "nodekv";
+        this.withDictionary = withDictionary;
+        this.keys = dir.create(name + "_keys", 10 * 1024);
+        this.vals = dir.create(name + "_vals");
     }
 
     public KVStorage create(long initBytes) {
@@ -104,9 +120,21 @@ public class KVStorage {
         keyToIndex.put("", 0);
         indexToKey.add("");
         indexToClass.add(String.class);
+        if (withDictionary) {
+            createDictionary();
+            dictionary.create(initBytes);
+            dictionaryIndex.create(initBytes);
+            stringToId = new HashMap<>();
+            getStringId("");
+        }
         return this;
     }
 
+    private void createDictionary() {
+        dictionary = dir.create(name + "_dictionary");
+        dictionaryIndex = dir.create(name + "_dictionary_index");
+    }
+
     public boolean loadExisting() {
         if (vals.loadExisting()) {
             if (!keys.loadExisting())
@@ -114,6 +142,14 @@ public class KVStorage {
             bytePointer = bitUtil.toLong(vals.getHeader(0), vals.getHeader(4));
             GHUtility.checkDAVersion(vals.getName(), Constants.VERSION_KV_STORAGE, vals.getHeader(8));
             GHUtility.checkDAVersion(keys.getName(), Constants.VERSION_KV_STORAGE, keys.getHeader(0));
+            withDictionary = vals.getHeader(12) == 1;
+            if (withDictionary) {
+                createDictionary();
+                if (!dictionary.loadExisting() || !dictionaryIndex.loadExisting())
+                    throw new IllegalStateException("Loaded values but cannot load dictionary");
+                dictionarySize = dictionary.getHeader(0);
+                dictionaryBytePointer = bitUtil.toLong(dictionary.getHeader(4), dictionary.getHeader(8));
+            }
 
             // load keys into memory
             int count = keys.getShort(0);
@@ -183,6 +219,20 @@ public class KVStorage {
                 throw new IllegalArgumentException("Class of value for key " + key + " must be " + clazz.getSimpleName() + " but was " + value.getClass().getSimpleName());
         }
 
+        if (withDictionary && clazz.equals(String.class)) {
+            int id = getStringId((String) value);
+            vals.ensureCapacity(currentPointer + 2 + 5);
+            vals.setShort(currentPointer, (short) (keyIndex << 2 | (fwd ? 2 : 0) | (bwd ? 1 : 0)));
+            currentPointer += 2;
+            // varint: 7 bits per byte and the highest bit marks that more bytes follow
+            while ((id & ~0x7F) != 0) {
+                vals.setByte(currentPointer++, (byte) (id & 0x7F | 0x80));
+                id >>>= 7;
+            }
+            vals.setByte(currentPointer, (byte) id);
+            return currentPointer + 1;
+        }
+
         boolean hasDynLength = hasDynLength(clazz);
         if (hasDynLength) {
             // optimization for empty string or empty byte array
@@ -208,6 +258,37 @@ public class KVStorage {
         return currentPointer + valueBytes.length;
     }
 
+    private int getStringId(String value) {
+        if (stringToId == null) {
+            stringToId = new HashMap<>(dictionarySize);
+            for (int id = 0; id < dictionarySize; id++)
+                stringToId.put(getString(id), id);
+        }
+        Integer id = stringToId.get(value);
+        if (id != null)
+            return id;
+
+        byte[] bytes = getBytesForValue(String.class, value);
+        id = dictionarySize++;
+        dictionaryIndex.ensureCapacity(8L * dictionarySize);
+        dictionaryIndex.setInt(8L * id, bitUtil.getIntLow(dictionaryBytePointer));
+        dictionaryIndex.setInt(8L * id + 4, bitUtil.getIntHigh(dictionaryBytePointer));
+        dictionary.ensureCapacity(dictionaryBytePointer + 1 + bytes.length);
+        dictionary.setByte(dictionaryBytePointer, (byte) bytes.length);
+        dictionary.setBytes(dictionaryBytePointer + 1, bytes, bytes.length);
+        dictionaryBytePointer += 1 + bytes.length;
+        stringToId.put(value, id);
+        return id;
+    }
+
+    private String getString(int id) {
+        long pointer = bitUtil.toLong(dictionaryIndex.getInt(8L * id), dictionaryIndex.getInt(8L * id + 4));
+        int length = dictionary.getByte(pointer) & 0xFF;
+        byte[] bytes = new byte[length];
+        dictionary.getBytes(pointer + 1, bytes, length);
+        return new String(bytes, Helper.UTF_CS);
+    }
+
     /**
      * This method writes the specified entryMap (key-value pairs) into the storage. Please note that null keys or null
      * values are rejected. The Class of a value can be only: byte[], String, int, long, float or double
@@ -256,6 +337,92 @@ public class KVStorage {
         return lastEntryPointer;
     }
 
+    /**
+     * Starts rewriting the stored entries in the order in which they are passed to {@link Compaction#move}. Entries
+     * that are referenced multiple times are copied only once and entries that are never moved are dropped. Until
+     * {@link Compaction#finish} is called no other method of this storage must be used.
+     */
+    public Compaction startCompaction() {
+        return new Compaction();
+    }
+
+    public class Compaction {
+        private final DataAccess compacted;
+        // marks the old entries that were already moved, their first four bytes are replaced with the new pointer
+        private final BitSet moved;
+        private long compactedPointer = START_POINTER;
+
+        private Compaction() {
+            compacted = dir.create(vals.getName() + "_compacted", vals.getSegmentSize());
+            compacted.create(Math.min(bytePointer, vals.getSegmentSize()));
+            moved = new BitSet(bytePointer);
+        }
+
+        /**
+         * Appends the entry at the given pointer to the compacted storage, unless it was moved before.
+         *
+         * @return the pointer of the entry in the compacted storage
+         */
+        public long move(long entryPointer) {
+            if (entryPointer == EMPTY_POINTER)
+                return EMPTY_POINTER;
+            if (moved.get(entryPointer))
+                return Integer.toUnsignedLong(vals.getInt(entryPointer));
+            int length = getEntryLength(entryPointer);
+            byte[] bytes = new byte[length];
+            vals.getBytes(entryPointer, bytes, length);
+            compacted.ensureCapacity(compactedPointer + length);
+            compacted.setBytes(compactedPointer, bytes, length);
+            // every entry has at least four bytes (count, key index and value), so we can use them to store the new pointer
+            vals.setInt(entryPointer, BitUtil.toSignedInt(compactedPointer));
+            moved.set(entryPointer);
+            long newPointer = compactedPointer;
+            compactedPointer += length;
+            return newPointer;
+        }
+
+        /**
+         * Replaces the stored entries with the compacted ones. Afterwards only the pointers returned by
+         * {@link #move} are valid.
+         */
+        public void finish() {
+            String name = vals.getName();
+            int segmentSize = vals.getSegmentSize();
+            dir.remove(name);
+            vals = dir.create(name, segmentSize);
+            vals.create(compactedPointer);
+            GHUtility.copyBytes(compacted, vals, compactedPointer);
+            dir.remove(compacted.getName());
+            bytePointer = compactedPointer;
+            lastEntries = null;
+            lastEntryPointer = -1;
+        }
+    }
+
+    private int getEntryLength(long entryPointer) {
+        int keyCount = vals.getByte(entryPointer) & 0xFF;
+        long tmpPointer = entryPointer + 1;
+        for (int i = 0; i < keyCount; i++) {
+            int currentKeyIndex = vals.getShort(tmpPointer) >>> 2;
+            tmpPointer += 2;
+            tmpPointer += getValueLength(tmpPointer, indexToClass.get(currentKeyIndex));
+        }
+        return (int) (tmpPointer - entryPointer);
+    }
+
+    /**
+     * @return the number of bytes of the value at the specified pointer
+     */
+    private int getValueLength(long pointer, Class<?> clazz) {
+        if (withDictionary && clazz.equals(String.class)) {
+            int length = 1;
+            while ((vals.getByte(pointer + length - 1) & 0x80) != 0)
+                length++;
+            return length;
+        }
+        return hasDynLength(clazz) ? 1 + (vals.getByte(pointer) & 0xFF) : getFixLength(clazz);
+    }
+
     public Map<String, KValue> getAll(final long entryPointer) {
         if (entryPointer < 0)
             throw new IllegalStateException("Pointer to access KVStorage cannot be negative:" + entryPointer);
@@ -377,7 +544,19 @@ public class KVStorage {
      * This method creates an Object (type Class) which is located at the specified pointer
      */
     private Object deserializeObj(AtomicInteger sizeOfObject, long pointer, Class<?> clazz) {
-        if (hasDynLength(clazz)) {
+        if (withDictionary && clazz.equals(String.class)) {
+            int id = 0;
+            int length = 0;
+            byte b;
+            do {
+                b = vals.getByte(pointer + length);
+                id |= (b & 0x7F) << (7 * length);
+                length++;
+            } while ((b & 0x80) != 0);
+            if (sizeOfObject != null)
+                sizeOfObject.set(length);
+            return getString(id);
+        } else if (hasDynLength(clazz)) {
             int valueLength = vals.getByte(pointer) & 0xFF;
             pointer++;
             byte[] valueBytes = new byte[valueLength];
@@ -434,15 +613,59 @@ public class KVStorage {
             }
 
             // skip to next entry of same edge via skipping the real value
-            Class<?> clazz = indexToClass.get(currentKeyIndex);
-            int valueLength = hasDynLength(clazz) ? 1 + vals.getByte(tmpPointer) & 0xFF : getFixLength(clazz);
-            tmpPointer += valueLength;
+            tmpPointer += getValueLength(tmpPointer, indexToClass.get(currentKeyIndex));
         }
 
         // value for specified key does not exist for the specified pointer
         return null;
     }
 
+    /**
+     * @return the index of the specified key or -1 if no value was stored for this key
+     */
+    public int getKeyIndex(String key) {
+        Integer keyIndex = keyToIndex.get(key);
+        return keyIndex == null ? -1 : keyIndex;
+    }
+
+    /**
+     * Reads the values of several keys from the entry at the specified pointer in one pass, while
+     * {@link #get(long, String, boolean)} has to loop through the entry for every key.
+     *
+     * @param keyIndices the indices of the keys as returned by {@link #getKeyIndex(String)}
+     * @param fwdValues  receives the value of every key for the forward direction or null if there is none
+     * @param bwdValues  receives the value of every key for the backward direction or null if there is none
+     */
+    public void getValues(final long entryPointer, int[] keyIndices, Object[] fwdValues, Object[] bwdValues) {
+        if (entryPointer < 0)
+            throw new IllegalStateException("Pointer to access KVStorage cannot be negative:" + entryPointer);
+
+        Arrays.fill(fwdValues, null);
+        Arrays.fill(bwdValues, null);
+        if (entryPointer == EMPTY_POINTER) return;
+
+        int keyCount = vals.getByte(entryPointer) & 0xFF;
+        long tmpPointer = entryPointer + 1;
+        for (int i = 0; i < keyCount; i++) {
+            int currentKeyIndexRaw = vals.getShort(tmpPointer);
+            boolean bwd = (currentKeyIndexRaw & 1) == 1;
+            boolean fwd = (currentKeyIndexRaw & 2) == 2;
+            int currentKeyIndex = currentKeyIndexRaw >>> 2;
+            tmpPointer += 2;
+
+            Class<?> clazz = indexToClass.get(currentKeyIndex);
+            for (int k = 0; k < keyIndices.length; k++) {
+                if (keyIndices[k] != currentKeyIndex || (!fwd || fwdValues[k] != null) && (!bwd || bwdValues[k] != null))
+                    continue;
+                Object value = deserializeObj(null, tmpPointer, clazz);
+                // like in get the first value for a direction wins
+                if (fwd && fwdValues[k] == null) fwdValues[k] = value;
+                if (bwd && bwdValues[k] == null) bwdValues[k] = value;
+            }
+            tmpPointer += getValueLength(tmpPointer, clazz);
+        }
+    }
+
     public void flush() {
         keys.ensureCapacity(2);
         keys.setShort(0, (short) keyToIndex.size());
@@ -471,17 +694,34 @@ public class KVStorage {
         vals.setHeader(0, bitUtil.getIntLow(bytePointer));
         vals.setHeader(4, bitUtil.getIntHigh(bytePointer));
         vals.setHeader(8, Constants.VERSION_KV_STORAGE);
+        vals.setHeader(12, withDictionary ? 1 : 0);
         vals.flush();
+
+        if (withDictionary) {
+            dictionary.setHeader(0, dictionarySize);
+            dictionary.setHeader(4, bitUtil.getIntLow(dictionaryBytePointer));
+            dictionary.setHeader(8, bitUtil.getIntHigh(dictionaryBytePointer));
+            dictionary.flush();
+            dictionaryIndex.flush();
+        }
     }
 
     public void clear() {
         dir.remove(keys.getName());
         dir.remove(vals.getName());
+        if (dictionary != null) {
+            dir.remove(dictionary.getName());
+            dir.remove(dictionaryIndex.getName());
+        }
     }
 
     public void close() {
         keys.close();
         vals.close();
+        if (dictionary != null) {
+            dictionary.close();
+            dictionaryIndex.close();
+        }
     }
 
     public boolean isClosed() {
@@ -489,7 +729,10 @@ public class KVStorage {
     }
 
     public long getCapacity() {
-        return vals.getCapacity() + keys.getCapacity();
+        long capacity = vals.getCapacity() + keys.getCapacity();
+        if (dictionary != null)
+            capacity += dictionary.getCapacity() + dictionaryIndex.getCapacity();
+        return capacity;
     }
 
     public static class KValue {
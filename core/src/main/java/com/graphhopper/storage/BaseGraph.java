@@ -55,19 +55,29 @@ public class BaseGraph implements Graph, Closeable {
     final TurnCostStorage turnCostStorage;
     final BitUtil bitUtil;
     // length | nodeA | nextNode | ... | nodeB
-    private final DataAccess wayGeometry;
+    private DataAccess wayGeometry;
     private final Directory dir;
     private final int segmentSize;
     private boolean initialized = false;
     private long minGeoRef;
     private long maxGeoRef;
     private final int eleBytesPerCoord;
+    private final boolean withCSRAdjacency;
+    // offsets | (edge key, adjacent node) pairs, only available for a frozen graph and if enabled, see buildCSRAdjacency
+    private DataAccess csrAdjacency;
+    private long csrEntriesStart;
 
     public BaseGraph(Directory dir, boolean withElevation, boolean withTurnCosts, int segmentSize, int bytesForFlags) {
+        this(dir, withElevation, withTurnCosts, segmentSize, bytesForFlags, false, false);
+    }
+
+    public BaseGraph(Directory dir, boolean withElevation, boolean withTurnCosts, int segmentSize, int bytesForFlags,
+                     boolean withCSRAdjacency, boolean withKVDictionary) {
         this.dir = dir;
+        this.withCSRAdjacency = withCSRAdjacency;
         this.bitUtil = BitUtil.LITTLE;
         this.wayGeometry = dir.create("geometry", segmentSize);
-        this.edgeKVStorage = new KVStorage(dir, true);
+        this.edgeKVStorage = new KVStorage(dir, true, withKVDictionary);
         this.store = new BaseGraphNodesAndEdges(dir, withElevation, withTurnCosts, segmentSize, bytesForFlags);
         this.nodeAccess = new GHNodeAccess(store);
         this.segmentSize = segmentSize;
@@ -166,6 +176,8 @@ public class BaseGraph implements Graph, Closeable {
         if (isFrozen())
             throw new IllegalStateException("base graph already frozen");
         store.setFrozen(true);
+        if (withCSRAdjacency)
+            buildCSRAdjacency();
     }
 
     public synchronized boolean isFrozen() {
@@ -234,6 +246,10 @@ public class BaseGraph implements Graph, Closeable {
         if (supportsTurnCosts()) {
             turnCostStorage.close();
         }
+        if (csrAdjacency != null) {
+            dir.remove(csrAdjacency.getName());
+            csrAdjacency = null;
+        }
     }
 
     public long getCapacity() {
@@ -262,9 +278,49 @@ public class BaseGraph implements Graph, Closeable {
 
         setInitialized();
         loadWayGeometryHeader();
+        if (withCSRAdjacency && isFrozen())
+            buildCSRAdjacency();
         return true;
     }
 
+    /**
+     * Copies the edges of every node into a contiguous block ordered by node (compressed sparse row). After the graph
+     * is frozen the adjacency does no longer change, so the edge explorer can read the edges of a node sequentially
+     * instead of following the linked list of E_LINKA/E_LINKB references from one edge to the next. Every entry
+     * stores the edge key, i.e. the edge id and the direction, and the adjacent node, so the explorer does not need
+     * to read the nodes of the edge. The order of the edges is the same as in the linked list. The array is kept in
+     * memory only and rebuilt on load.
+     */
+    private void buildCSRAdjacency() {
+        int nodes = store.getNodes();
+        DataAccess csr = dir.create("csr_adjacency", DAType.RAM_INT, segmentSize);
+        csr.create(4L * (nodes + 1) + 8L * 2 * store.getEdges());
+        long entriesStart = 4L * (nodes + 1);
+        long entries = 0;
+        for (int node = 0; node < nodes; node++) {
+            csr.setInt(4L * node, (int) entries);
+            int edge = store.getEdgeRef(store.toNodePointer(node));
+            while (EdgeIterator.Edge.isValid(edge)) {
+                long pointer = store.toEdgePointer(edge);
+                int nodeA = store.getNodeA(pointer);
+                boolean baseNodeIsNodeA = nodeA == node;
+                csr.setInt(entriesStart + 8 * entries, GHUtility.createEdgeKey(edge, !baseNodeIsNodeA));
+                csr.setInt(entriesStart + 8 * entries + 4, baseNodeIsNodeA ? store.getNodeB(pointer) : nodeA);
+                entries++;
+                edge = baseNodeIsNodeA ? store.getLinkA(pointer) : store.getLinkB(pointer);
+            }
+            if (entries > Integer.MAX_VALUE)
+                throw new IllegalStateException("Too many edges for CSR adjacency: " + entries);
+        }
+        csr.setInt(4L * nodes, (int) entries);
+        csrEntriesStart = entriesStart;
+        csrAdjacency = csr;
+    }
+
+    boolean hasCSRAdjacency() {
+        return csrAdjacency != null;
+    }
+
     /**
      * This method copies the properties of one {@link EdgeIteratorState} to another.
      *
@@ -382,6 +438,57 @@ public class BaseGraph implements Graph, Closeable {
             turnCostStorage.sortEdges(getNewEdgeForOldEdge);
     }
 
+    /**
+     * Rewrites the way geometries and the key-value pairs so they are stored in the order of the edge IDs and removes
+     * the unused space between them. When the edges were sorted before, e.g. along a Hilbert curve, this improves the
+     * locality of the geometry and key-value accesses. Copies of an edge still share their geometry afterwards.
+     */
+    public void compactGeometryAndKeyValues() {
+        if (isFrozen())
+            throw new IllegalStateException("Cannot compact the geometry and key-values if graph is already frozen");
+        DataAccess compacted = dir.create(wayGeometry.getName() + "_compacted", segmentSize);
+        compacted.create(Math.min(maxGeoRef, wayGeometry.getSegmentSize()));
+        KVStorage.Compaction kvCompaction = edgeKVStorage.startCompaction();
+        long compactedGeoRef = 1;
+        for (int edge = 0; edge < getEdges(); edge++) {
+            long edgePointer = store.toEdgePointer(edge);
+            long kvRef = Integer.toUnsignedLong(store.getKeyValuesRef(edgePointer));
+            store.setKeyValuesRef(edgePointer, BitUtil.toSignedInt(kvCompaction.move(kvRef)));
+
+            long geoRef = store.getGeoRef(edgePointer);
+            // zero and negative geo refs do not point to a geometry
+            if (geoRef <= 0)
+                continue;
+            int count = getPillarCount(geoRef);
+            if (count == 0) {
+                // this geometry was already moved for a copy of this edge
+                store.setGeoRef(edgePointer, bitUtil.toLong(wayGeometry.getInt(geoRef + 3), wayGeometry.getInt(geoRef + 7)));
+                continue;
+            }
+            int length = 3 + count * (8 + eleBytesPerCoord);
+            byte[] bytes = new byte[length];
+            wayGeometry.getBytes(geoRef, bytes, length);
+            compacted.ensureCapacity(compactedGeoRef + length);
+            compacted.setBytes(compactedGeoRef, bytes, length);
+            // every geometry has at least one point, so there is enough space to mark it as moved and store the new geo ref
+            wayGeometry.setShort(geoRef, (short) 0);
+            wayGeometry.setByte(geoRef + 2, (byte) 0);
+            wayGeometry.setInt(geoRef + 3, bitUtil.getIntLow(compactedGeoRef));
+            wayGeometry.setInt(geoRef + 7, bitUtil.getIntHigh(compactedGeoRef));
+            store.setGeoRef(edgePointer, compactedGeoRef);
+            compactedGeoRef += length;
+        }
+        kvCompaction.finish();
+
+        String name = wayGeometry.getName();
+        dir.remove(name);
+        wayGeometry = dir.create(name, segmentSize);
+        wayGeometry.create(compactedGeoRef);
+        GHUtility.copyBytes(compacted, wayGeometry, compactedGeoRef);
+        dir.remove(compacted.getName());
+        maxGeoRef = compactedGeoRef;
+    }
+
     public void relabelNodes(IntUnaryOperator getNewNodeForOldNode) {
         if (isFrozen())
             throw new IllegalStateException("Cannot relabel nodes if graph is already frozen");
@@ -406,6 +513,13 @@ public class BaseGraph implements Graph, Closeable {
         return edge;
     }
 
+    /**
+     * @return empty edge flags with the size of the flags of an edge of this graph
+     */
+    public IntsRef createEdgeFlags() {
+        return store.createEdgeFlags();
+    }
+
     @Override
     public EdgeExplorer createEdgeExplorer(EdgeFilter filter) {
         return new EdgeIteratorImpl(this, filter);
@@ -615,6 +729,8 @@ public class BaseGraph implements Graph, Closeable {
         private boolean withTurnCosts = false;
         private long bytes = 100;
         private int segmentSize = -1;
+        private boolean withCSRAdjacency = false;
+        private boolean withKVDictionary = false;
 
         public Builder(EncodingManager em) {
             this(em.getBytesForFlags());
@@ -653,8 +769,25 @@ public class BaseGraph implements Graph, Closeable {
             return this;
         }
 
+        /**
+         * Builds a read-only adjacency array when the graph gets frozen to speed up the edge explorer. This needs
+         * additional memory of roughly 4 bytes per node and 8 bytes per edge.
+         */
+        public Builder withCSRAdjacency(boolean withCSRAdjacency) {
+            this.withCSRAdjacency = withCSRAdjacency;
+            return this;
+        }
+
+        /**
+         * Stores every distinct String of the edge key-values only once, see {@link KVStorage}.
+         */
+        public Builder withKVDictionary(boolean withKVDictionary) {
+            this.withKVDictionary = withKVDictionary;
+            return this;
+        }
+
         public BaseGraph build() {
-            return new BaseGraph(directory, withElevation, withTurnCosts, segmentSize, bytesForFlags);
+            return new BaseGraph(directory, withElevation, withTurnCosts, segmentSize, bytesForFlags, withCSRAdjacency, withKVDictionary);
         }
 
         public BaseGraph create() {
@@ -667,6 +800,10 @@ public class BaseGraph implements Graph, Closeable {
     protected static class EdgeIteratorImpl extends EdgeIteratorStateImpl implements EdgeExplorer, EdgeIterator {
         final EdgeFilter filter;
         int nextEdgeId;
+        // only used if the base graph has a CSR adjacency, the pointers address its (edge key, adjacent node) entries
+        DataAccess csr;
+        long csrPointer;
+        long csrEnd;
 
         public EdgeIteratorImpl(BaseGraph baseGraph, EdgeFilter filter) {
             super(baseGraph);
@@ -677,14 +814,22 @@ public class BaseGraph implements Graph, Closeable {
 
         @Override
         public EdgeIterator setBaseNode(int baseNode) {
-            nextEdgeId = edgeId = store.getEdgeRef(store.toNodePointer(baseNode));
+            csr = baseGraph.csrAdjacency;
+            if (csr == null) {
+                nextEdgeId = edgeId = store.getEdgeRef(store.toNodePointer(baseNode));
+            } else {
+                csrPointer = baseGraph.csrEntriesStart + 8L * csr.getInt(4L * baseNode);
+                csrEnd = baseGraph.csrEntriesStart + 8L * csr.getInt(4L * baseNode + 4);
+                // the entries are read in goToNext, nextEdgeId is not used
+                nextEdgeId = edgeId = EdgeIterator.NO_EDGE;
+            }
             this.baseNode = baseNode;
             return this;
         }
 
         @Override
         public final boolean next() {
-            while (EdgeIterator.Edge.isValid(nextEdgeId)) {
+            while (hasNextEdge()) {
                 goToNext();
                 if (filter.accept(this))
                     return true;
@@ -692,7 +837,20 @@ public class BaseGraph implements Graph, Closeable {
             return false;
         }
 
+        boolean hasNextEdge() {
+            return csr == null ? EdgeIterator.Edge.isValid(nextEdgeId) : csrPointer < csrEnd;
+        }
+
         void goToNext() {
+            if (csr != null) {
+                int edgeKey = csr.getInt(csrPointer);
+                edgeId = GHUtility.getEdgeFromEdgeKey(edgeKey);
+                edgePointer = store.toEdgePointer(edgeId);
+                adjNode = csr.getInt(csrPointer + 4);
+                reverse = (edgeKey & 1) == 1;
+                csrPointer += 8;
+                return;
+            }
             edgePointer = store.toEdgePointer(nextEdgeId);
             edgeId = nextEdgeId;
             int nodeA = store.getNodeA(edgePointer);
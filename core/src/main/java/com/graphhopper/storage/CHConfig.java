@@ -12,9 +12,13 @@ import static com.graphhopper.config.Profile.validateProfileName;
  */
 public class CHConfig {
     /**
-     * will be used to store and identify the CH graph data on disk
+     * will be used to identify the CH graph
      */
     private final String chGraphName;
+    /**
+     * will be used to store the CH graph data on disk, usually the same as chGraphName
+     */
+    private final String fileName;
     private final Weighting weighting;
     private final boolean edgeBased;
 
@@ -27,8 +31,13 @@ public class CHConfig {
     }
 
     public CHConfig(String chGraphName, Weighting weighting, boolean edgeBased) {
+        this(chGraphName, weighting, edgeBased, chGraphName);
+    }
+
+    public CHConfig(String chGraphName, Weighting weighting, boolean edgeBased, String fileName) {
         validateProfileName(chGraphName);
         this.chGraphName = chGraphName;
+        this.fileName = fileName;
         this.weighting = weighting;
         this.edgeBased = edgeBased;
     }
@@ -46,7 +55,7 @@ public class CHConfig {
     }
 
     public String toFileName() {
-        return chGraphName;
+        return fileName;
     }
 
     public String toString() {
@@ -70,7 +70,7 @@ public class CHStorage {
     private Consumer<LowWeightShortcut> lowShortcutWeightConsumer;
 
     public static CHStorage fromGraph(BaseGraph baseGraph, CHConfig chConfig) {
-        String name = chConfig.getName();
+        String name = chConfig.toFileName();
         boolean edgeBased = chConfig.isEdgeBased();
         if (!baseGraph.isFrozen())
             throw new IllegalStateException("graph must be frozen before we can create ch graphs");
@@ -53,6 +53,19 @@ public interface Directory {
      */
     void remove(String name);
 
+    /**
+     * Closes the specified object and removes it from the directory, but keeps its backing file so it can be loaded
+     * again later.
+     */
+    void close(String name);
+
+    /**
+     * Removes the specified object from the directory and deletes its backing file, but does not close it. Use this
+     * instead of {@link #remove(String)} when other threads might still read the object, its memory is released by
+     * the garbage collector once it is no longer referenced.
+     */
+    void detach(String name);
+
     /**
      * @return the default type of a newly created DataAccess object
      */
@@ -0,0 +1,81 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.storage;
+
+import com.graphhopper.search.KVStorage;
+import com.graphhopper.util.EdgeIteratorState;
+
+import java.util.Arrays;
+
+/**
+ * Reads the values of a few keys from the key-values of many edges, e.g. for all edges of a path when creating the
+ * instructions or path details. The consecutive edges of an OSM way usually share their key-value entry, so the values
+ * of all keys are read in one pass and only when the entry changes. In contrast to
+ * {@link EdgeIteratorState#getValue(String)} this avoids decoding the same Strings for every edge.
+ * <p>
+ * This class is not thread-safe, use one instance per request.
+ */
+public class EdgeKVCache {
+    private final String[] keys;
+    private final int[] keyIndices;
+    private final Object[] fwdValues;
+    private final Object[] bwdValues;
+    private KVStorage storage;
+    private long entryPointer = -1;
+
+    public EdgeKVCache(String... keys) {
+        this.keys = keys;
+        this.keyIndices = new int[keys.length];
+        this.fwdValues = new Object[keys.length];
+        this.bwdValues = new Object[keys.length];
+    }
+
+    /**
+     * @return the index of the specified key that has to be used for {@link #getValue(EdgeIteratorState, int)}
+     */
+    public int indexOf(String key) {
+        int index = Arrays.asList(keys).indexOf(key);
+        if (index < 0)
+            throw new IllegalArgumentException("Unknown key " + key + ", available: " + Arrays.toString(keys));
+        return index;
+    }
+
+    /**
+     * @return the same value as edge.getValue(key) for the key with the specified index
+     */
+    public Object getValue(EdgeIteratorState edge, int index) {
+        if (!(edge instanceof BaseGraph.EdgeIteratorStateImpl))
+            // e.g. virtual edges, which keep their key-values in memory anyway
+            return edge.getValue(keys[index]);
+
+        BaseGraph.EdgeIteratorStateImpl edgeState = (BaseGraph.EdgeIteratorStateImpl) edge;
+        KVStorage edgeStorage = edgeState.baseGraph.edgeKVStorage;
+        if (edgeStorage != storage) {
+            storage = edgeStorage;
+            for (int i = 0; i < keys.length; i++)
+                keyIndices[i] = storage.getKeyIndex(keys[i]);
+            entryPointer = -1;
+        }
+        long pointer = Integer.toUnsignedLong(edgeState.store.getKeyValuesRef(edgeState.edgePointer));
+        if (pointer != entryPointer) {
+            storage.getValues(pointer, keyIndices, fwdValues, bwdValues);
+            entryPointer = pointer;
+        }
+        return edgeState.reverse ? bwdValues[index] : fwdValues[index];
+    }
+}
@@ -20,7 +20,6 @@ package com.graphhopper.storage;
 
 import com.graphhopper.routing.util.EdgeFilter;
 import com.graphhopper.routing.weighting.Weighting;
-import com.graphhopper.util.EdgeIterator;
 import com.graphhopper.util.EdgeIteratorState;
 
 public class RoutingCHEdgeIteratorImpl extends RoutingCHEdgeIteratorStateImpl implements RoutingCHEdgeExplorer, RoutingCHEdgeIterator {
@@ -83,7 +82,7 @@ public class RoutingCHEdgeIteratorImpl extends RoutingCHEdgeIteratorStateImpl im
         }
 
         // similar to baseIterator.next(), but we apply our own filter and set edgeId
-        while (EdgeIterator.Edge.isValid(baseIterator.nextEdgeId)) {
+        while (baseIterator.hasNextEdge()) {
             baseIterator.goToNext();
             // we update edgeId even when iterating base edges. is it faster to do this also for base/adjNode?
             edgeId = baseIterator.edgeId;
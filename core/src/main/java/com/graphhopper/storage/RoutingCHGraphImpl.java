@@ -82,6 +82,10 @@ public class RoutingCHGraphImpl implements RoutingCHGraph {
         return baseGraph;
     }
 
+    public CHStorage getCHStorage() {
+        return chStorage;
+    }
+
     @Override
     public Weighting getWeighting() {
         return weighting;
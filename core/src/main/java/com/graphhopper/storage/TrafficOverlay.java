@@ -0,0 +1,117 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.storage;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.IntDoubleMap;
+import com.carrotsearch.hppc.cursors.IntDoubleCursor;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Stores a speed factor for every edge of the graph, e.g. to take live traffic into account. The factors are stored
+ * off-heap with one byte per edge, in percent, so the supported range is 0 to {@link #MAX_SPEED_FACTOR} with a
+ * precision of 0.01. A factor of 0 blocks the edge.
+ * <p>
+ * The factors are never modified in place. Every update creates a new {@link Snapshot} that atomically replaces the
+ * current one, so requests that are already running keep using a consistent set of speed factors.
+ */
+public class TrafficOverlay {
+    public static final double MAX_SPEED_FACTOR = 2.55;
+    private static final byte DEFAULT_PERCENT = 100;
+    private final int edges;
+    private volatile Snapshot snapshot;
+
+    public TrafficOverlay(int edges) {
+        if (edges < 0)
+            throw new IllegalArgumentException("edges must not be negative: " + edges);
+        this.edges = edges;
+        ByteBuffer percent = ByteBuffer.allocateDirect(edges);
+        for (int edge = 0; edge < edges; edge++)
+            percent.put(edge, DEFAULT_PERCENT);
+        snapshot = new Snapshot(percent, 0, 1);
+    }
+
+    public int getEdges() {
+        return edges;
+    }
+
+    /**
+     * @return the current speed factors. The returned snapshot does not change when the overlay is updated.
+     */
+    public Snapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Replaces all speed factors at once. Edges that are not contained in the given map get the speed factor 1.
+     *
+     * @return the edges whose speed factor changed compared to the previous snapshot
+     */
+    public synchronized IntArrayList setSpeedFactors(IntDoubleMap speedFactors) {
+        ByteBuffer percent = ByteBuffer.allocateDirect(edges);
+        for (int edge = 0; edge < edges; edge++)
+            percent.put(edge, DEFAULT_PERCENT);
+        double maxSpeedFactor = 1;
+        for (IntDoubleCursor c : speedFactors) {
+            if (c.key < 0 || c.key >= edges)
+                throw new IllegalArgumentException("Edge " + c.key + " does not exist, edges: " + edges);
+            if (!(c.value >= 0 && c.value <= MAX_SPEED_FACTOR))
+                throw new IllegalArgumentException("Speed factor of edge " + c.key + " must be in [0, " + MAX_SPEED_FACTOR + "], but was " + c.value);
+            percent.put(c.key, (byte) Math.round(c.value * 100));
+            maxSpeedFactor = Math.max(maxSpeedFactor, c.value);
+        }
+        Snapshot previous = snapshot;
+        IntArrayList changedEdges = new IntArrayList();
+        for (int edge = 0; edge < edges; edge++)
+            if (percent.get(edge) != previous.percent.get(edge))
+                changedEdges.add(edge);
+        snapshot = new Snapshot(percent, previous.version + 1, maxSpeedFactor);
+        return changedEdges;
+    }
+
+    public static final class Snapshot {
+        private final ByteBuffer percent;
+        private final int version;
+        private final double maxSpeedFactor;
+
+        private Snapshot(ByteBuffer percent, int version, double maxSpeedFactor) {
+            this.percent = percent;
+            this.version = version;
+            this.maxSpeedFactor = maxSpeedFactor;
+        }
+
+        public double getSpeedFactor(int edge) {
+            return Byte.toUnsignedInt(percent.get(edge)) / 100.0;
+        }
+
+        /**
+         * @return the largest speed factor of all edges, but at least 1
+         */
+        public double getMaxSpeedFactor() {
+            return maxSpeedFactor;
+        }
+
+        /**
+         * @return a number that is incremented with every update of the overlay
+         */
+        public int getVersion() {
+            return version;
+        }
+    }
+}
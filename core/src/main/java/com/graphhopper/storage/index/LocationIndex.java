@@ -19,6 +19,10 @@ package com.graphhopper.storage.index;
 
 import com.graphhopper.routing.util.EdgeFilter;
 import com.graphhopper.util.shapes.BBox;
+import com.graphhopper.util.shapes.GHPoint;
+
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Provides a way to map real world data "lat,lon" to internal ids/indices of a memory efficient graph
@@ -46,6 +50,20 @@ public interface LocationIndex {
      */
     Snap findClosest(double lat, double lon, EdgeFilter edgeFilter);
 
+    /**
+     * Returns the same Snaps as calling {@link #findClosest} for every point. Implementations can share work between
+     * points that are close to each other and use multiple threads, so the edgeFilter has to be thread-safe if threads
+     * is larger than one.
+     *
+     * @return the Snaps in the order of the specified points
+     */
+    default List<Snap> findClosestBatch(List<GHPoint> points, EdgeFilter edgeFilter, int threads) {
+        List<Snap> snaps = new ArrayList<>(points.size());
+        for (GHPoint point : points)
+            snaps.add(findClosest(point.lat, point.lon, edgeFilter));
+        return snaps;
+    }
+
     /**
      * This method explores the LocationIndex with the specified Visitor. It visits only the stored edges (and only once)
      * and limited by the queryBBox. Also (a few) more edges slightly outside of queryBBox could be
@@ -17,7 +17,9 @@
  */
 package com.graphhopper.storage.index;
 
+import com.carrotsearch.hppc.IntArrayList;
 import com.carrotsearch.hppc.IntHashSet;
+import com.carrotsearch.hppc.sorting.IndirectSort;
 import com.graphhopper.routing.util.AllEdgesIterator;
 import com.graphhopper.routing.util.EdgeFilter;
 import com.graphhopper.storage.Directory;
@@ -25,10 +27,13 @@ import com.graphhopper.storage.Graph;
 import com.graphhopper.storage.NodeAccess;
 import com.graphhopper.util.*;
 import com.graphhopper.util.shapes.BBox;
+import com.graphhopper.util.shapes.GHPoint;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 import static com.graphhopper.util.DistancePlaneProjection.DIST_PLANE;
 
@@ -308,6 +313,113 @@ public class LocationIndexTree implements LocationIndex {
         return closestMatch;
     }
 
+    /**
+     * Snaps all points like {@link #findClosest} would do, but the points are sorted by their tile first. All points of
+     * a tile have the same neighborhood, so the edges of the neighborhood are fetched, filtered and their geometry is
+     * read only once per tile instead of once per point. The tiles are split into chunks that are processed
+     * concurrently if threads is larger than one.
+     */
+    @Override
+    public List<Snap> findClosestBatch(List<GHPoint> points, EdgeFilter edgeFilter, int threads) {
+        if (isClosed())
+            throw new IllegalStateException("You need to create a new LocationIndex instance as it is already closed");
+        if (threads < 1)
+            throw new IllegalArgumentException("threads must be positive, but was: " + threads);
+
+        long[] tiles = new long[points.size()];
+        for (int i = 0; i < points.size(); i++) {
+            int x = indexStructureInfo.getKeyAlgo().x(points.get(i).lon);
+            int y = indexStructureInfo.getKeyAlgo().y(points.get(i).lat);
+            tiles[i] = ((long) y << 32) | (x & 0xFFFF_FFFFL);
+        }
+        int[] order = IndirectSort.mergesort(0, points.size(), (a, b) -> Long.compare(tiles[a], tiles[b]));
+
+        // use more chunks than threads so that a few crowded tiles do not keep a single thread busy
+        int chunkSize = Math.max(1, points.size() / (4 * threads));
+        List<Runnable> chunks = new ArrayList<>();
+        Snap[] snaps = new Snap[points.size()];
+        int chunkStart = 0;
+        for (int i = 1; i <= points.size(); i++) {
+            if (i < points.size() && (tiles[order[i]] == tiles[order[i - 1]] || i - chunkStart < chunkSize))
+                continue;
+            int from = chunkStart, to = i;
+            chunks.add(() -> {
+                int tileStart = from;
+                for (int j = from + 1; j <= to; j++) {
+                    if (j == to || tiles[order[j]] != tiles[order[tileStart]]) {
+                        findClosestInTile(points, order, tileStart, j, edgeFilter, snaps);
+                        tileStart = j;
+                    }
+                }
+            });
+            chunkStart = i;
+        }
+        GHUtility.runConcurrently(chunks.stream(), threads);
+        return Arrays.asList(snaps);
+    }
+
+    /**
+     * Does the same as findClosest for the points order[from] to order[to - 1], which all are in the same tile.
+     */
+    private void findClosestInTile(List<GHPoint> points, int[] order, int from, int to, EdgeFilter edgeFilter, Snap[] snaps) {
+        IntArrayList remaining = new IntArrayList(to - from);
+        for (int i = from; i < to; i++) {
+            GHPoint point = points.get(order[i]);
+            snaps[order[i]] = new Snap(point.lat, point.lon);
+            remaining.add(order[i]);
+        }
+        GHPoint tilePoint = points.get(order[from]);
+        IntHashSet seenEdges = new IntHashSet();
+        IntArrayList edgeIds = new IntArrayList();
+        for (int iteration = 0; iteration < maxRegionSearch && !remaining.isEmpty(); iteration++) {
+            edgeIds.clear();
+            lineIntIndex.findEdgeIdsInNeighborhood(tilePoint.lat, tilePoint.lon, iteration, edgeId -> {
+                if (seenEdges.add(edgeId))
+                    edgeIds.add(edgeId);
+            });
+            for (int e = 0; e < edgeIds.size(); e++) {
+                EdgeIteratorState edgeIteratorState = graph.getEdgeIteratorStateForKey(edgeIds.get(e) * 2);
+                if (!edgeFilter.accept(edgeIteratorState))
+                    continue;
+                PointList pointList = edgeIteratorState.fetchWayGeometry(FetchMode.PILLAR_AND_ADJ);
+                for (int r = 0; r < remaining.size(); r++) {
+                    Snap closestMatch = snaps[remaining.get(r)];
+                    traverseEdge(closestMatch.getQueryPoint().lat, closestMatch.getQueryPoint().lon, edgeIteratorState, pointList,
+                            (node, normedDist, wayIndex, pos) -> {
+                                if (normedDist < closestMatch.getQueryDistance()) {
+                                    closestMatch.setQueryDistance(normedDist);
+                                    closestMatch.setClosestNode(node);
+                                    closestMatch.setClosestEdge(edgeIteratorState.detach(false));
+                                    closestMatch.setWayIndex(wayIndex);
+                                    closestMatch.setSnappedPosition(pos);
+                                }
+                            });
+                }
+            }
+            int kept = 0;
+            for (int r = 0; r < remaining.size(); r++) {
+                Snap closestMatch = snaps[remaining.get(r)];
+                if (closestMatch.isValid()) {
+                    // same stop criterion as in findClosest
+                    double rMin = calculateRMin(closestMatch.getQueryPoint().lat, closestMatch.getQueryPoint().lon, iteration);
+                    if (DIST_PLANE.calcDenormalizedDist(closestMatch.getQueryDistance()) < rMin)
+                        continue;
+                }
+                remaining.set(kept++, remaining.get(r));
+            }
+            remaining.elementsCount = kept;
+        }
+
+        for (int i = from; i < to; i++) {
+            Snap closestMatch = snaps[order[i]];
+            if (closestMatch.isValid()) {
+                closestMatch.calcSnappedPoint(DIST_PLANE);
+                closestMatch.setQueryDistance(DIST_PLANE.calcDist(closestMatch.getSnappedPoint().lat, closestMatch.getSnappedPoint().lon,
+                        closestMatch.getQueryPoint().lat, closestMatch.getQueryPoint().lon));
+            }
+        }
+    }
+
     @Override
     public void query(TileFilter tileFilter, Visitor function) {
         lineIntIndex.query(tileFilter, function);
@@ -318,6 +430,13 @@ public class LocationIndexTree implements LocationIndex {
     }
 
     public void traverseEdge(double queryLat, double queryLon, EdgeIteratorState currEdge, EdgeCheck edgeCheck) {
+        traverseEdge(queryLat, queryLon, currEdge, currEdge.fetchWayGeometry(FetchMode.PILLAR_AND_ADJ), edgeCheck);
+    }
+
+    /**
+     * @param pointList the geometry of currEdge as returned by fetchWayGeometry(FetchMode.PILLAR_AND_ADJ)
+     */
+    private void traverseEdge(double queryLat, double queryLon, EdgeIteratorState currEdge, PointList pointList, EdgeCheck edgeCheck) {
         int baseNode = currEdge.getBaseNode();
         double baseLat = nodeAccess.getLat(baseNode);
         double baseLon = nodeAccess.getLon(baseNode);
@@ -328,7 +447,6 @@ public class LocationIndexTree implements LocationIndex {
         double adjLon = nodeAccess.getLon(adjNode);
         double adjDist = DIST_PLANE.calcNormalizedDist(queryLat, queryLon, adjLat, adjLon);
 
-        PointList pointList = currEdge.fetchWayGeometry(FetchMode.PILLAR_AND_ADJ);
         final int len = pointList.size();
 
         int closestTowerNode;
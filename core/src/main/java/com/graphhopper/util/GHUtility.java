@@ -315,6 +315,19 @@ public class GHUtility {
         return adjNode;
     }
 
+    /**
+     * Copies the given number of bytes from the beginning of one DataAccess to the beginning of another one. The
+     * target DataAccess must already have sufficient capacity.
+     */
+    public static void copyBytes(DataAccess from, DataAccess to, long bytes) {
+        byte[] buffer = new byte[Math.min(from.getSegmentSize(), to.getSegmentSize())];
+        for (long pointer = 0; pointer < bytes; pointer += buffer.length) {
+            int length = (int) Math.min(buffer.length, bytes - pointer);
+            from.getBytes(pointer, buffer, length);
+            to.setBytes(pointer, buffer, length);
+        }
+    }
+
     public static void checkDAVersion(String name, int expectedVersion, int version) {
         if (version != expectedVersion) {
             throw new IllegalStateException("Unexpected version for '" + name + "'. Got: " + version + ", " +
@@ -529,12 +542,22 @@ public class GHUtility {
 
     public static void runConcurrently(Stream<Runnable> runnables, int threads) {
         ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            runConcurrently(runnables, pool);
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Runs the given runnables on the given pool, which is not shut down afterwards and can be shared by different
+     * callers to limit the number of threads they use in total.
+     */
+    public static void runConcurrently(Stream<Runnable> runnables, ForkJoinPool pool) {
         try {
             pool.submit(() -> runnables.parallel().forEach(Runnable::run)).get();
         } catch (InterruptedException | ExecutionException e) {
             throw new RuntimeException(e);
-        } finally {
-            pool.shutdown();
         }
     }
 
@@ -602,6 +625,34 @@ public class GHUtility {
         return strictViolations;
     }
 
+    /**
+     * Like {@link #comparePaths} but for algorithms that do not create a {@link Path}, like one-to-many searches. The
+     * weight must be infinite if the reference path was not found.
+     *
+     * @return a strict violation if the distance or time differs, which is possible if there are multiple shortest paths
+     */
+    public static List<String> compareWeights(Path refPath, double weight, double distance, long time, String message) {
+        List<String> strictViolations = new ArrayList<>();
+        if (!refPath.isFound()) {
+            if (weight != Double.POSITIVE_INFINITY)
+                fail("found a path that does not exist, weight: " + weight + ", " + message);
+            return strictViolations;
+        }
+        if (Math.abs(refPath.getWeight() - weight) > 1.e-2)
+            fail("wrong weight, expected: " + refPath.getWeight() + ", given: " + weight + ", " + message);
+        if (Math.abs(distance - refPath.getDistance()) > 1.e-1)
+            strictViolations.add("wrong distance, expected: " + refPath.getDistance() + ", given: " + distance + ", " + message);
+        if (Math.abs(time - refPath.getTime()) > 50)
+            strictViolations.add("wrong time, expected: " + refPath.getTime() + ", given: " + time + ", " + message);
+        return strictViolations;
+    }
+
+    public static List<String> compareWeights(Path refPath, Path path, String message) {
+        return path.isFound()
+                ? compareWeights(refPath, path.getWeight(), path.getDistance(), path.getTime(), message)
+                : compareWeights(refPath, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Long.MAX_VALUE, message);
+    }
+
     /**
      * Sometimes the graph can contain edges like this:
      * A--C
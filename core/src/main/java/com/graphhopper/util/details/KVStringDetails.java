@@ -17,6 +17,7 @@
  */
 package com.graphhopper.util.details;
 
+import com.graphhopper.storage.EdgeKVCache;
 import com.graphhopper.util.EdgeIteratorState;
 
 /**
@@ -26,16 +27,27 @@ import com.graphhopper.util.EdgeIteratorState;
  */
 public class KVStringDetails extends AbstractPathDetailsBuilder {
 
+    private final EdgeKVCache kvCache;
+    private final int kvIndex;
     private String curString;
     private boolean initial = true;
 
     public KVStringDetails(String name) {
+        this(name, new EdgeKVCache(name));
+    }
+
+    /**
+     * @param kvCache the cache must contain the key name. It can be shared with other details of the same path.
+     */
+    public KVStringDetails(String name, EdgeKVCache kvCache) {
         super(name);
+        this.kvCache = kvCache;
+        this.kvIndex = kvCache.indexOf(name);
     }
 
     @Override
     public boolean isEdgeDifferentToLastEdge(EdgeIteratorState edge) {
-        String value = (String) edge.getValue(getName());
+        String value = (String) kvCache.getValue(edge, kvIndex);
         if (initial) {
             curString = value;
             initial = false;
@@ -20,6 +20,7 @@ package com.graphhopper.util.details;
 import com.graphhopper.routing.Path;
 import com.graphhopper.routing.ev.*;
 import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.EdgeKVCache;
 import com.graphhopper.storage.Graph;
 
 import java.util.ArrayList;
@@ -44,19 +45,19 @@ public class PathDetailsBuilderFactory {
         if (requestedPathDetails.contains(LEG_WEIGHT))
             builders.add(new ConstantDetailsBuilder(LEG_WEIGHT, path.getWeight()));
 
+        List<String> kvKeys = new ArrayList<>();
         for (String key : requestedPathDetails) {
             if (key.endsWith("_conditional"))
-                builders.add(new KVStringDetails(key));
+                kvKeys.add(key);
         }
-
-        if (requestedPathDetails.contains(MOTORWAY_JUNCTION))
-            builders.add(new KVStringDetails(MOTORWAY_JUNCTION));
-        if (requestedPathDetails.contains(STREET_NAME))
-            builders.add(new KVStringDetails(STREET_NAME));
-        if (requestedPathDetails.contains(STREET_REF))
-            builders.add(new KVStringDetails(STREET_REF));
-        if (requestedPathDetails.contains(STREET_DESTINATION))
-            builders.add(new KVStringDetails(STREET_DESTINATION));
+        for (String key : List.of(MOTORWAY_JUNCTION, STREET_NAME, STREET_REF, STREET_DESTINATION)) {
+            if (requestedPathDetails.contains(key))
+                kvKeys.add(key);
+        }
+        // all key-value details share one cache, so every key-value entry of the path is read only once
+        EdgeKVCache kvCache = new EdgeKVCache(kvKeys.toArray(new String[0]));
+        for (String key : kvKeys)
+            builders.add(new KVStringDetails(key, kvCache));
 
         if (requestedPathDetails.contains(AVERAGE_SPEED))
             builders.add(new AverageSpeedDetails(weighting));
@@ -17,6 +17,7 @@
  */
 package com.graphhopper;
 
+import com.carrotsearch.hppc.IntDoubleHashMap;
 import com.graphhopper.config.CHProfile;
 import com.graphhopper.config.LMProfile;
 import com.graphhopper.config.Profile;
@@ -30,6 +31,7 @@ import com.graphhopper.routing.util.DefaultSnapFilter;
 import com.graphhopper.routing.util.EdgeFilter;
 import com.graphhopper.routing.util.countryrules.CountryRuleFactory;
 import com.graphhopper.routing.util.parsers.OSMRoadEnvironmentParser;
+import com.graphhopper.routing.weighting.TrafficWeighting;
 import com.graphhopper.routing.weighting.Weighting;
 import com.graphhopper.storage.IntsRef;
 import com.graphhopper.storage.index.LocationIndexTree;
@@ -1704,6 +1706,159 @@ public class GraphHopperTest {
         assertEquals(3587, response.getBest().getDistance(), 1);
     }
 
+    @Test
+    public void testCustomModelWithCCH() {
+        GraphHopper hopper = new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setOSMFile(MONACO).
+                setEncodedValuesString("car_access, car_average_speed").
+                setProfiles(TestProfiles.accessAndSpeed("car", "car")).
+                setCCHEnabled(true).
+                setStoreOnFlush(true);
+        hopper.getCHPreparationHandler().setCHProfiles(new CHProfile("car"));
+        hopper.setMinNetworkSize(0);
+        hopper.importOrLoad();
+
+        GHRequest req = new GHRequest(43.727687, 7.418737, 43.74958, 7.436566).setProfile("car");
+        GHResponse chRsp = hopper.route(req);
+        assertFalse(chRsp.hasErrors(), chRsp.getErrors().toString());
+
+        // block the fastest route using a custom model
+        PointList points = chRsp.getBest().getPoints();
+        CustomModel customModel = new CustomModel().addToPriority(If("in_blocked_area", MULTIPLY, "0"));
+        customModel.getAreas().getFeatures().add(createCircle("blocked_area", points.getLat(points.size() / 2), points.getLon(points.size() / 2), 10));
+        req.setCustomModel(customModel);
+        GHResponse flexRsp = hopper.route(new GHRequest(req.getPoints()).setProfile("car").setCustomModel(customModel).
+                putHint(CH.DISABLE, true));
+        assertFalse(flexRsp.hasErrors(), flexRsp.getErrors().toString());
+        assertTrue(chRsp.getBest().getDistance() < flexRsp.getBest().getDistance());
+        GHResponse cchRsp = hopper.route(req);
+        assertFalse(cchRsp.hasErrors(), cchRsp.getErrors().toString());
+        assertEquals(flexRsp.getBest().getDistance(), cchRsp.getBest().getDistance(), 1);
+        assertEquals(flexRsp.getBest().getRouteWeight(), cchRsp.getBest().getRouteWeight(), 1.e-2);
+        assertTrue(cchRsp.getHints().getInt("visited_nodes.sum", 0) < flexRsp.getHints().getInt("visited_nodes.sum", 0));
+
+        // the CCH does not support these parameters, so the flexible algorithm is used instead
+        GHResponse headingRsp = hopper.route(new GHRequest(req.getPoints()).setProfile("car").setCustomModel(customModel).
+                setHeadings(List.of(Double.NaN, Double.NaN)));
+        assertFalse(headingRsp.hasErrors(), headingRsp.getErrors().toString());
+        assertEquals(flexRsp.getBest().getDistance(), headingRsp.getBest().getDistance(), 1);
+        GHResponse passThroughRsp = hopper.route(new GHRequest(req.getPoints()).setProfile("car").setCustomModel(customModel).
+                putHint(Routing.PASS_THROUGH, true));
+        assertFalse(passThroughRsp.hasErrors(), passThroughRsp.getErrors().toString());
+        assertEquals(flexRsp.getBest().getDistance(), passThroughRsp.getBest().getDistance(), 1);
+        GHResponse roundTripRsp = hopper.route(new GHRequest(List.of(req.getPoints().get(0))).setProfile("car").
+                setCustomModel(customModel).setAlgorithm(ROUND_TRIP).
+                putHint(RoundTrip.DISTANCE, 2000));
+        assertFalse(roundTripRsp.hasErrors(), roundTripRsp.getErrors().toString());
+        hopper.close();
+
+        // the CCH topology is loaded from disk
+        hopper = new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setEncodedValuesString("car_access, car_average_speed").
+                setProfiles(TestProfiles.accessAndSpeed("car", "car")).
+                setCCHEnabled(true);
+        hopper.getCHPreparationHandler().setCHProfiles(new CHProfile("car"));
+        hopper.importOrLoad();
+        cchRsp = hopper.route(req);
+        assertFalse(cchRsp.hasErrors(), cchRsp.getErrors().toString());
+        assertEquals(flexRsp.getBest().getDistance(), cchRsp.getBest().getDistance(), 1);
+        hopper.close();
+    }
+
+    @Test
+    public void testLiveTraffic() {
+        GraphHopper hopper = new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setOSMFile(MONACO).
+                setEncodedValuesString("car_access, car_average_speed").
+                setProfiles(TestProfiles.accessAndSpeed("car", "car")).
+                setCCHEnabled(true).
+                setTrafficEnabled(true);
+        hopper.getCHPreparationHandler().setCHProfiles(new CHProfile("car"));
+        hopper.setMinNetworkSize(0);
+        hopper.importOrLoad();
+
+        GHRequest req = new GHRequest(43.727687, 7.418737, 43.74958, 7.436566).setProfile("car").
+                setPathDetails(List.of("edge_id"));
+        GHResponse rsp = hopper.route(req);
+        assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+        double distance = rsp.getBest().getDistance();
+        long time = rsp.getBest().getTime();
+        List<PathDetail> edgeIds = rsp.getBest().getPathDetails().get("edge_id");
+        int blockedEdge = (int) edgeIds.get(edgeIds.size() / 2).getValue();
+
+        // slowing down all edges of the route increases the travel time
+        IntDoubleHashMap speedFactors = new IntDoubleHashMap();
+        for (PathDetail detail : edgeIds)
+            speedFactors.put((int) detail.getValue(), 0.5);
+        assertEquals(speedFactors.size(), hopper.setTrafficSpeedFactors(speedFactors));
+        // the CH graph used by the matrix and PHAST is the one with the live traffic, too
+        assertInstanceOf(TrafficWeighting.class, hopper.getCHGraphs().get("car").getWeighting());
+        rsp = hopper.route(req);
+        assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+        assertTrue(rsp.getBest().getTime() > time, rsp.getBest().getTime() + " vs. " + time);
+
+        // blocking an edge of the route leads to a detour
+        speedFactors.clear();
+        speedFactors.put(blockedEdge, 0);
+        hopper.setTrafficSpeedFactors(speedFactors);
+        rsp = hopper.route(req);
+        assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+        assertTrue(rsp.getBest().getDistance() > distance, rsp.getBest().getDistance() + " vs. " + distance);
+        assertTrue(rsp.getBest().getPathDetails().get("edge_id").stream().noneMatch(d -> (int) d.getValue() == blockedEdge));
+
+        // without traffic we get the original route again
+        hopper.setTrafficSpeedFactors(new IntDoubleHashMap());
+        rsp = hopper.route(req);
+        assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+        assertEquals(distance, rsp.getBest().getDistance(), 1.e-3);
+        assertEquals(time, rsp.getBest().getTime());
+        hopper.close();
+    }
+
+    @Test
+    public void testCompactStorage() {
+        GHRequest req = new GHRequest(43.727687, 7.418737, 43.74958, 7.436566).setProfile("car");
+        GraphHopper hopper = new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setOSMFile(MONACO).
+                setEncodedValuesString("car_access, car_average_speed").
+                setProfiles(TestProfiles.accessAndSpeed("car", "car"));
+        hopper.importOrLoad();
+        GHResponse expected = hopper.route(req);
+        assertFalse(expected.hasErrors(), expected.getErrors().toString());
+        hopper.close();
+        Helper.removeDir(new File(GH_LOCATION));
+
+        hopper = new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setOSMFile(MONACO).
+                setEncodedValuesString("car_access, car_average_speed").
+                setProfiles(TestProfiles.accessAndSpeed("car", "car")).
+                setCompactStorage(true).
+                setStoreOnFlush(true);
+        hopper.importOrLoad();
+        GHResponse rsp = hopper.route(req);
+        assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+        assertEquals(expected.getBest().getPoints(), rsp.getBest().getPoints());
+        assertEquals(expected.getBest().getInstructions().toString(), rsp.getBest().getInstructions().toString());
+        hopper.close();
+
+        // the compacted storage is loaded from disk
+        hopper = new GraphHopper().
+                setGraphHopperLocation(GH_LOCATION).
+                setEncodedValuesString("car_access, car_average_speed").
+                setProfiles(TestProfiles.accessAndSpeed("car", "car"));
+        hopper.importOrLoad();
+        rsp = hopper.route(req);
+        assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+        assertEquals(expected.getBest().getPoints(), rsp.getBest().getPoints());
+        assertEquals(expected.getBest().getInstructions().toString(), rsp.getBest().getInstructions().toString());
+        hopper.close();
+    }
+
     @Test
     public void testCreateWeightingHintsMerging() {
         GraphHopper hopper = new GraphHopper().
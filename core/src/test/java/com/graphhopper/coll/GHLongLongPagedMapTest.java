@@ -0,0 +1,118 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.coll;
+
+import com.graphhopper.storage.MMapDirectory;
+import com.graphhopper.storage.RAMDirectory;
+import com.graphhopper.util.Helper;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class GHLongLongPagedMapTest {
+
+    @Test
+    public void testThrowException_IfPutting_NoNumber() {
+        GHLongLongPagedMap instance = new GHLongLongPagedMap(new RAMDirectory(), "map", 4, -1);
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class, () -> instance.put(1, -1));
+        assertTrue(ex.getMessage().contains("Value cannot be the 'empty value' -1"));
+        assertThrows(IllegalArgumentException.class, () -> instance.put(1, 1L << 31));
+    }
+
+    @Test
+    public void testEmptyValueIfMissing() {
+        GHLongLongPagedMap instance = new GHLongLongPagedMap(new RAMDirectory(), "map", 4, -1);
+        long key = 9485854858458484L;
+        assertEquals(-1, instance.put(key, 21));
+        assertEquals(21, instance.get(key));
+        assertEquals(-1, instance.get(404));
+        assertEquals(-1, instance.get(key + 1));
+        assertEquals(-1, instance.get(-key));
+        assertEquals(-1, instance.put(-key, -5));
+        assertEquals(-5, instance.get(-key));
+        assertEquals(2, instance.getSize());
+    }
+
+    @Test
+    public void testFullPage() {
+        GHLongLongPagedMap instance = new GHLongLongPagedMap(new RAMDirectory(), "map", 5, -1);
+        // fill one page in descending order, so every value needs to be moved
+        for (int key = 511; key >= 0; key--)
+            assertEquals(-1, instance.put(key, -key - 3));
+        for (int key = 0; key < 512; key++)
+            assertEquals(-key - 3, instance.get(key));
+        assertEquals(-1, instance.get(512));
+        assertEquals(512, instance.getSize());
+
+        assertEquals(-3, instance.put(0, 7));
+        assertEquals(7, instance.get(0));
+        assertEquals(-4, instance.get(1));
+        assertEquals(512, instance.getSize());
+
+        instance.clear();
+        assertEquals(0, instance.getSize());
+        assertEquals(-1, instance.get(0));
+        assertEquals(-1, instance.put(0, 3));
+        assertEquals(3, instance.get(0));
+    }
+
+    @Test
+    public void testRandom() {
+        Random random = new Random(123);
+        for (int bytesPerValue = 1; bytesPerValue <= 8; bytesPerValue++) {
+            GHLongLongPagedMap instance = new GHLongLongPagedMap(new RAMDirectory(), "map", bytesPerValue, Long.MIN_VALUE);
+            Map<Long, Long> map = new HashMap<>();
+            for (int i = 0; i < 50_000; i++) {
+                long key = random.nextInt(10) == 0 ? random.nextLong() : random.nextInt(100_000);
+                long value = random.nextLong() >> (64 - 8 * bytesPerValue);
+                if (value == Long.MIN_VALUE)
+                    continue;
+                Long old = map.put(key, value);
+                assertEquals(old == null ? Long.MIN_VALUE : old, instance.put(key, value));
+            }
+            assertEquals(map.size(), instance.getSize());
+            for (Map.Entry<Long, Long> e : map.entrySet())
+                assertEquals(e.getValue(), instance.get(e.getKey()));
+            for (int i = 0; i < 10_000; i++) {
+                long key = random.nextInt(200_000);
+                assertEquals(map.getOrDefault(key, Long.MIN_VALUE), instance.get(key));
+            }
+        }
+    }
+
+    @Test
+    public void testMMap() {
+        String location = "./target/tmp/paged-map";
+        Helper.removeDir(new File(location));
+        MMapDirectory dir = new MMapDirectory(location);
+        dir.create();
+        GHLongLongPagedMap instance = new GHLongLongPagedMap(dir, "map", 5, -1);
+        for (long key = 0; key < 100_000; key += 3)
+            instance.put(key, key * 2);
+        for (long key = 0; key < 100_000; key++)
+            assertEquals(key % 3 == 0 ? key * 2 : -1, instance.get(key));
+        instance.clear();
+        dir.close();
+        Helper.removeDir(new File(location));
+    }
+}
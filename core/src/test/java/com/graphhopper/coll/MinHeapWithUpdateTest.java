@@ -57,7 +57,7 @@ public class MinHeapWithUpdateTest implements BinaryHeapTestInterface {
 
     @Override
     public float peekVal() {
-        return heap.peekValue();
+        return (float) heap.peekValue();
     }
 
     @Override
@@ -130,5 +130,20 @@ public class MinHeapWithUpdateTest implements BinaryHeapTestInterface {
         assertFalse(contains(2));
     }
 
-
-}
\ No newline at end of file
+    @Test
+    void precision() {
+        // these values are equal as floats
+        double a = 50_000.0001, b = 50_000.0002, c = 50_000.0003;
+        assertEquals((float) a, (float) c);
+        create(3);
+        heap.push(2, c);
+        heap.push(0, b);
+        heap.push(1, a);
+        assertEquals(a, heap.peekValue());
+        assertEquals(1, heap.poll());
+        heap.update(2, 50_000.00005);
+        assertEquals(2, heap.poll());
+        assertEquals(0, heap.poll());
+        assertTrue(heap.isEmpty());
+    }
+}
@@ -0,0 +1,93 @@
+package com.graphhopper.isochrone.algorithm;
+
+import com.graphhopper.routing.ev.DecimalEncodedValue;
+import com.graphhopper.routing.ev.DecimalEncodedValueImpl;
+import com.graphhopper.routing.ev.TurnCost;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.SpeedWeighting;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.util.GHUtility;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+public class ShortestPathTreeBatchTest {
+
+    private static Stream<Arguments> params() {
+        return LongStream.rangeClosed(1, 3).boxed().flatMap(seed -> Stream.of(
+                Arguments.of(TraversalMode.NODE_BASED, 1, false, false, seed),
+                Arguments.of(TraversalMode.NODE_BASED, 4, true, false, seed),
+                Arguments.of(TraversalMode.NODE_BASED, 3, false, true, seed),
+                Arguments.of(TraversalMode.EDGE_BASED, 1, true, false, seed),
+                Arguments.of(TraversalMode.EDGE_BASED, 4, false, false, seed),
+                Arguments.of(TraversalMode.EDGE_BASED, 3, true, true, seed)
+        ));
+    }
+
+    @ParameterizedTest
+    @MethodSource("params")
+    public void sameResultAsShortestPathTree(TraversalMode traversalMode, int threads, boolean reverseFlow, boolean sharedPool, long seed) {
+        Random rnd = new Random(seed);
+        DecimalEncodedValue speedEnc = new DecimalEncodedValueImpl("speed", 5, 5, true);
+        DecimalEncodedValue turnCostEnc = TurnCost.create("car", 10);
+        EncodingManager em = EncodingManager.start().add(speedEnc).addTurnCostEncodedValue(turnCostEnc).build();
+        BaseGraph graph = new BaseGraph.Builder(em).withTurnCosts(true).create();
+        GHUtility.buildRandomGraph(graph, rnd, 100, 2.5, true, speedEnc, null, 0.9, 0.8);
+        Weighting weighting = new SpeedWeighting(speedEnc);
+        if (traversalMode.isEdgeBased()) {
+            GHUtility.addRandomTurnCosts(graph, seed, null, turnCostEnc, 10, graph.getTurnCostStorage());
+            weighting = new SpeedWeighting(speedEnc, turnCostEnc, graph.getTurnCostStorage(), 40);
+        }
+        graph.freeze();
+
+        int[] origins = new int[20];
+        for (int i = 0; i < origins.length; i++)
+            origins[i] = rnd.nextInt(graph.getNodes());
+        origins[3] = -1;
+        double timeLimit = 10_000 * (1 + rnd.nextInt(5));
+
+        Map<Integer, List<String>> batchResults = new HashMap<>();
+        ShortestPathTreeBatch batch = new ShortestPathTreeBatch(graph, weighting, reverseFlow, traversalMode).setTimeLimit(timeLimit);
+        ForkJoinPool pool = sharedPool ? new ForkJoinPool(threads) : null;
+        if (sharedPool)
+            batch.setPool(pool);
+        else
+            batch.setThreads(threads);
+        batch.search(origins, (originIndex, tree) -> {
+            List<String> entries = new ArrayList<>();
+            for (int i = 0; i < tree.size(); i++)
+                entries.add(tree.getNode(i) + ":" + Math.round(tree.getWeight(i) * 1000));
+            Collections.sort(entries);
+            synchronized (batchResults) {
+                batchResults.put(originIndex, entries);
+            }
+        });
+        if (sharedPool) {
+            // the pool belongs to the caller and can be used for the next batch
+            assertFalse(pool.isShutdown());
+            pool.shutdown();
+        }
+
+        assertEquals(origins.length - 1, batchResults.size());
+        for (int i = 0; i < origins.length; i++) {
+            if (origins[i] < 0)
+                continue;
+            ShortestPathTree spt = new ShortestPathTree(graph, weighting, reverseFlow, traversalMode);
+            spt.setTimeLimit(timeLimit);
+            List<String> entries = new ArrayList<>();
+            spt.search(origins[i], l -> entries.add(l.node + ":" + Math.round(l.weight * 1000)));
+            Collections.sort(entries);
+            assertEquals(entries, batchResults.get(i), "seed: " + seed + ", origin: " + origins[i]);
+        }
+    }
+}
@@ -17,14 +17,17 @@
  */
 package com.graphhopper.reader.dem;
 
+import com.graphhopper.util.GHUtility;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
 
+import java.io.File;
 import java.io.IOException;
+import java.util.stream.IntStream;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.*;
 
 /**
  * @author Peter Karich
@@ -99,6 +102,37 @@ public class SRTMProviderTest {
         assertEquals(161, instance.getEle(55.8943144, -3), 1e-1);
     }
 
+    @Test
+    public void testGetHeightWithSmallCache() {
+        instance = new SRTMProvider("./files/");
+        instance.setCacheSize(1);
+        // the tiles are evicted and loaded again from their DataAccess files
+        for (int i = 0; i < 2; i++) {
+            assertEquals(466, instance.getEle(49.968651, 11.574869), 1e-1);
+            assertEquals(161, instance.getEle(55.8943144, -3), 1e-1);
+            assertEquals(0, instance.getEle(55.4711873, 19.2501641), 1e-1);
+        }
+        assertTrue(new File("./files/dem" + instance.calcIntKey(49.968651, 11.574869)).exists());
+        instance.release();
+        assertFalse(new File("./files/dem" + instance.calcIntKey(49.968651, 11.574869)).exists());
+        assertFalse(new File("./files/dem" + instance.calcIntKey(55.8943144, -3)).exists());
+    }
+
+    @Test
+    public void testGetHeightConcurrently() {
+        instance = new SRTMProvider("./files/");
+        instance.setCacheSize(1);
+        assertTrue(instance.isThreadSafe());
+        // concurrent reads while the tiles are loaded and evicted again
+        GHUtility.runConcurrently(IntStream.range(0, 4).mapToObj(t -> () -> {
+            for (int i = 0; i < 100; i++) {
+                assertEquals(466, instance.getEle(49.968651, 11.574869), 1e-1);
+                assertEquals(161, instance.getEle(55.8943144, -3), 1e-1);
+                assertEquals(0, instance.getEle(55.4711873, 19.2501641), 1e-1);
+            }
+        }), 4);
+    }
+
     @Disabled
     @Test
     public void testGetEle() {
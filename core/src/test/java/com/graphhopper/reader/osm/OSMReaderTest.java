@@ -21,6 +21,8 @@ import com.graphhopper.GHRequest;
 import com.graphhopper.GHResponse;
 import com.graphhopper.GraphHopper;
 import com.graphhopper.GraphHopperTest;
+import com.graphhopper.config.CHProfile;
+import com.graphhopper.config.LMProfile;
 import com.graphhopper.reader.ReaderElement;
 import com.graphhopper.reader.ReaderRelation;
 import com.graphhopper.reader.ReaderWay;
@@ -43,9 +45,13 @@ import com.graphhopper.util.details.PathDetail;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
@@ -701,6 +707,27 @@ public class OSMReaderTest {
                 edge.fetchWayGeometry(FetchMode.ALL));
     }
 
+    @Test
+    public void testReadEleConcurrently() {
+        GraphHopper hopper = new GraphHopperFacade("test-osm5.xml");
+        hopper.setElevationProvider(new SRTMProvider(GraphHopperTest.DIR));
+        hopper.getReaderConfig().setElevationThreads(4);
+        hopper.importOrLoad();
+
+        Graph graph = hopper.getBaseGraph();
+        int n10 = AbstractGraphStorageTester.getIdOf(graph, 49.501);
+        int n30 = AbstractGraphStorageTester.getIdOf(graph, 49.5011);
+        int n50 = AbstractGraphStorageTester.getIdOf(graph, 49.5001);
+
+        EdgeIteratorState edge = GHUtility.getEdge(graph, n50, n30);
+        assertEquals(Helper.createPointList3D(49.5001, 11.501, 426, 49.5002, 11.5015, 441, 49.5011, 11.502, 410.0),
+                edge.fetchWayGeometry(FetchMode.ALL));
+
+        edge = GHUtility.getEdge(graph, n10, n50);
+        assertEquals(Helper.createPointList3D(49.501, 11.5001, 383.0, 49.5001, 11.501, 426.0),
+                edge.fetchWayGeometry(FetchMode.ALL));
+    }
+
     /**
      * Tests the combination of different turn cost flags by different encoders.
      */
@@ -994,6 +1021,170 @@ public class OSMReaderTest {
         return new AreaIndex<>(readCountries());
     }
 
+    @ParameterizedTest
+    @ValueSource(strings = {"test-osm.xml", "test-osm3.xml", "test-barriers.xml", "test-restrictions.xml"})
+    public void testConcurrentTagParsing(String file) {
+        GraphHopper hopper = new GraphHopperFacade(file).importOrLoad();
+        List<String> expected = getEdges(hopper.getBaseGraph());
+        hopper.close();
+        Helper.removeDir(new File(dir));
+
+        hopper = new GraphHopperFacade(file);
+        hopper.getReaderConfig().setTagParserThreads(4);
+        hopper.importOrLoad();
+        assertEquals(expected, getEdges(hopper.getBaseGraph()));
+        hopper.close();
+    }
+
+    @Test
+    public void testApplyOSMChanges() throws IOException {
+        GraphHopper hopper = new GraphHopperFacade(file1);
+        hopper.setEncodedValuesString("osm_way_id, foot_access, foot_priority, foot_average_speed, car_access, car_average_speed, bike_access, bike_priority, bike_average_speed");
+        hopper.getCHPreparationHandler().setCHProfiles(new CHProfile("car"));
+        hopper.getLMPreparationHandler().setLMProfiles(new LMProfile("foot"));
+        hopper.importOrLoad();
+        GHRequest request = new GHRequest(52, 9, 49, 10).setProfile("car");
+        assertFalse(hopper.route(request).hasErrors());
+        BaseGraph graph = hopper.getBaseGraph();
+        IntEncodedValue osmWayIdEnc = hopper.getEncodingManager().getIntEncodedValue(OSMWayID.KEY);
+        List<String> unchanged = new ArrayList<>();
+        AllEdgesIterator iter = graph.getAllEdges();
+        while (iter.next())
+            if (iter.get(osmWayIdEnc) == 10)
+                unchanged.add(iter.getEdge() + ", " + Arrays.toString(iter.getFlags().ints) + ", " + iter.getKeyValues());
+
+        File oscFile = new File(dir, "changes.osc");
+        Files.writeString(oscFile.toPath(), """
+                <?xml version='1.0' encoding='UTF-8'?>
+                <osmChange version="0.6">
+                    <modify>
+                        <way id="11" version="85763">
+                            <nd ref="20"/>
+                            <nd ref="40"/>
+                            <nd ref="50"/>
+                            <tag k="name" v="new street"/>
+                            <tag k="highway" v="footway"/>
+                        </way>
+                        <way id="12" version="1">
+                            <nd ref="20"/>
+                            <nd ref="50"/>
+                            <tag k="highway" v="primary"/>
+                        </way>
+                    </modify>
+                </osmChange>
+                """);
+        assertEquals(1, hopper.applyOSMChanges(oscFile));
+
+        List<String> actual = new ArrayList<>();
+        int changedEdges = 0;
+        iter = graph.getAllEdges();
+        while (iter.next()) {
+            if (iter.get(osmWayIdEnc) == 10) {
+                actual.add(iter.getEdge() + ", " + Arrays.toString(iter.getFlags().ints) + ", " + iter.getKeyValues());
+            } else {
+                assertEquals(11, iter.get(osmWayIdEnc));
+                assertEquals("new street", iter.getName());
+                assertFalse(iter.get(carAccessEnc));
+                assertFalse(iter.getReverse(carAccessEnc));
+                assertTrue(iter.get(footAccessEnc));
+                changedEdges++;
+            }
+        }
+        assertEquals(1, changedEdges);
+        assertEquals(unchanged, actual);
+        // the end point is no longer reachable by car
+        assertTrue(hopper.route(request).hasErrors());
+        GHRequest footRequest = new GHRequest(52, 9, 49, 10).setProfile("foot");
+        footRequest.putHint(Parameters.CH.DISABLE, true);
+        assertFalse(hopper.route(footRequest).hasErrors());
+
+        // the CH and LM data was prepared with new file names and the old data was removed
+        assertEquals("car.1", hopper.getProperties().get("graph.profiles.ch.car.file"));
+        assertTrue(graph.getDirectory().getDAs().containsKey("nodes_ch_car.1"));
+        assertFalse(graph.getDirectory().getDAs().containsKey("nodes_ch_car"));
+        // the foot weights did not change, so the LM data is kept
+        assertEquals("", hopper.getProperties().get("graph.profiles.lm.foot.file"));
+        assertTrue(graph.getDirectory().getDAs().containsKey("landmarks_foot"));
+
+        // applying the same changes again does not change anything
+        assertEquals(0, hopper.applyOSMChanges(oscFile));
+
+        // with the original tags the end point is connected again and no longer marked as subnetwork
+        assertEquals(1, hopper.applyOSMChanges(writeChangeFile("service")));
+        assertFalse(hopper.route(request).hasErrors());
+        assertEquals("car", hopper.getProperties().get("graph.profiles.ch.car.file"));
+        assertFalse(graph.getDirectory().getDAs().containsKey("nodes_ch_car.1"));
+        hopper.close();
+    }
+
+    @Test
+    public void testApplyOSMChangesWithCCH() throws IOException {
+        GraphHopper hopper = createCCHHopper().importOrLoad();
+        GHRequest request = new GHRequest(52, 9, 49, 10).setProfile("car");
+        assertFalse(hopper.route(request).hasErrors());
+
+        // the node-based CH graph is customized via the CCH instead of being contracted again
+        assertEquals(1, hopper.applyOSMChanges(writeChangeFile("footway")));
+        assertTrue(hopper.route(request).hasErrors());
+        assertEquals("true", hopper.getProperties().get("graph.profiles.ch.car.customized"));
+        assertFalse(hopper.getBaseGraph().getDirectory().getDAs().containsKey("nodes_ch_car"));
+        hopper.close();
+
+        // after loading the graph again the CH graph is still customized and not the outdated contracted one
+        hopper = createCCHHopper().importOrLoad();
+        assertTrue(hopper.route(request).hasErrors());
+
+        assertEquals(1, hopper.applyOSMChanges(writeChangeFile("service")));
+        assertFalse(hopper.route(request).hasErrors());
+        hopper.close();
+    }
+
+    private GraphHopper createCCHHopper() {
+        GraphHopper hopper = new GraphHopper().
+                setOSMFile(getClass().getResource(file1).getFile()).
+                setGraphHopperLocation(dir).
+                setEncodedValuesString("osm_way_id, car_access, car_average_speed").
+                setProfiles(TestProfiles.accessAndSpeed("car")).
+                setCCHEnabled(true);
+        hopper.getCHPreparationHandler().setCHProfiles(new CHProfile("car"));
+        return hopper;
+    }
+
+    private File writeChangeFile(String highway) throws IOException {
+        File oscFile = new File(dir, "changes_" + highway + ".osc");
+        Files.writeString(oscFile.toPath(), """
+                <?xml version='1.0' encoding='UTF-8'?>
+                <osmChange version="0.6">
+                    <modify>
+                        <way id="11" version="85763">
+                            <nd ref="20"/>
+                            <nd ref="40"/>
+                            <nd ref="50"/>
+                            <tag k="highway" v="%s"/>
+                        </way>
+                    </modify>
+                </osmChange>
+                """.formatted(highway));
+        return oscFile;
+    }
+
+    @Test
+    public void testApplyOSMChangesRequiresOSMWayId() {
+        GraphHopper hopper = new GraphHopperFacade(file1).importOrLoad();
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, () -> hopper.applyOSMChanges(new File(dir, "changes.osc")));
+        assertTrue(e.getMessage().contains("osm_way_id"), e.getMessage());
+        hopper.close();
+    }
+
+    private static List<String> getEdges(BaseGraph graph) {
+        List<String> edges = new ArrayList<>();
+        AllEdgesIterator iter = graph.getAllEdges();
+        while (iter.next())
+            edges.add(iter.getBaseNode() + "-" + iter.getAdjNode() + ", " + Arrays.toString(iter.getFlags().ints) + ", "
+                    + iter.getDistance() + ", " + iter.fetchWayGeometry(FetchMode.ALL) + ", " + iter.getKeyValues());
+        return edges;
+    }
+
     class GraphHopperFacade extends GraphHopper {
         public GraphHopperFacade(String osmFile) {
             this(osmFile, "");
@@ -21,6 +21,7 @@ import com.graphhopper.reader.ReaderElement;
 import com.graphhopper.reader.ReaderWay;
 import org.junit.jupiter.api.Test;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -50,6 +51,44 @@ public class ReaderElementTest {
         assertFalse(instance.hasTag("test", "xy"));
     }
 
+    @Test
+    public void testElementWithoutTags() {
+        ReaderElement instance = new ReaderWay(1);
+        assertFalse(instance.hasTags());
+        assertTrue(instance.getTags().isEmpty());
+        instance.removeTag("highway");
+        instance.clearTags();
+        instance.setTags(null);
+        assertFalse(instance.hasTags());
+
+        instance.setTag("highway", "primary");
+        instance.setTag("surface", "asphalt");
+        assertEquals("primary", instance.getTag("highway"));
+        assertEquals(2, instance.getTags().size());
+        instance.removeTag("highway");
+        assertNull(instance.getTag("highway"));
+        assertEquals(1, instance.getTags().size());
+        instance.clearTags();
+        assertFalse(instance.hasTags());
+        instance.setTag("highway", "secondary");
+        assertEquals("secondary", instance.getTag("highway"));
+
+        // the map is created when it is requested, so it can be modified directly
+        ReaderElement another = new ReaderWay(3);
+        another.getTags().put("highway", "primary");
+        assertTrue(another.hasTags());
+        assertEquals("primary", another.getTag("highway"));
+
+        // nothing leaked into the shared map
+        assertTrue(Collections.emptyMap().isEmpty());
+        ReaderElement other = new ReaderWay(2);
+        assertFalse(other.hasTags());
+        assertNull(other.getTag("highway"));
+        other.setTag("name", "x");
+        assertFalse(instance.hasTag("name"));
+        assertEquals(1, other.getTags().size());
+    }
+
     @Test
     public void testInvalidIDs() {
         Exception exception = assertThrows(IllegalArgumentException.class, () -> {
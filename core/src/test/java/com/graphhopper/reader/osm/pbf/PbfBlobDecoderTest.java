@@ -0,0 +1,146 @@
+// This software is released into the Public Domain.  See copying.txt for details.
+package com.graphhopper.reader.osm.pbf;
+
+import com.google.protobuf.ByteString;
+import com.graphhopper.reader.ReaderElement;
+import com.graphhopper.reader.ReaderNode;
+import com.graphhopper.reader.osm.SkipOptions;
+import org.junit.jupiter.api.Test;
+import org.openstreetmap.osmosis.osmbinary.Fileformat;
+import org.openstreetmap.osmosis.osmbinary.Osmformat;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PbfBlobDecoderTest {
+
+    @Test
+    public void testSkipNodeBlocks() throws IOException {
+        int skippedBlocks = 0;
+        int ways = 0;
+        int relations = 0;
+        PbfStreamSplitter splitter = new PbfStreamSplitter(new DataInputStream(new BufferedInputStream(
+                new FileInputStream("../core/files/andorra.osm.pbf"))));
+        while (splitter.hasNext()) {
+            PbfRawBlob blob = splitter.next();
+            List<ReaderElement> all = decode(blob, SkipOptions.none());
+            List<ReaderElement> withoutNodes = decode(blob, new SkipOptions(true, false, false));
+            List<String> expected = new ArrayList<>();
+            for (ReaderElement element : all)
+                if (element.getType() != ReaderElement.Type.NODE)
+                    expected.add(element.toString());
+            List<String> actual = new ArrayList<>();
+            for (ReaderElement element : withoutNodes)
+                actual.add(element.toString());
+            assertEquals(expected, actual);
+            if (!all.isEmpty() && all.stream().allMatch(e -> e.getType() == ReaderElement.Type.NODE))
+                skippedBlocks++;
+            ways += (int) all.stream().filter(e -> e.getType() == ReaderElement.Type.WAY).count();
+            relations += (int) all.stream().filter(e -> e.getType() == ReaderElement.Type.RELATION).count();
+        }
+        splitter.release();
+        assertTrue(skippedBlocks > 0);
+        assertTrue(ways > 0);
+        assertTrue(relations > 0);
+    }
+
+    @Test
+    public void testReuseBuffersOfThread() {
+        // the buffer of the thread grows for the larger blob and is re-used for the smaller blobs. every blob must
+        // only see its own data, no matter if it is compressed or not
+        byte[] small = createNodesBlob(3, 0, true);
+        byte[] large = createNodesBlob(5000, 1000, true);
+        byte[] smallRaw = createNodesBlob(2, 100, false);
+        byte[] largeRaw = createNodesBlob(6000, 10_000, false);
+        assertTrue(large.length > small.length);
+
+        assertNodes(3, 0, decode("OSMData", small));
+        assertNodes(5000, 1000, decode("OSMData", large));
+        assertNodes(3, 0, decode("OSMData", small));
+        assertNodes(2, 100, decode("OSMData", smallRaw));
+        assertNodes(6000, 10_000, decode("OSMData", largeRaw));
+        assertNodes(5000, 1000, decode("OSMData", large));
+        assertNodes(3, 0, decode("OSMData", small));
+    }
+
+    private static void assertNodes(int count, long firstId, List<ReaderElement> elements) {
+        assertEquals(count, elements.size());
+        for (int i = 0; i < count; i++) {
+            ReaderNode node = (ReaderNode) elements.get(i);
+            assertEquals(firstId + i, node.getId());
+            assertEquals(0.001 * i, node.getLat(), 1.e-7);
+            assertEquals(0.002 * i, node.getLon(), 1.e-7);
+            if (i % 2 == 0) {
+                assertEquals("stop", node.getTag("highway"));
+                assertEquals(1, node.getTags().size());
+            } else {
+                assertFalse(node.hasTags());
+            }
+        }
+    }
+
+    /**
+     * Creates a blob with dense nodes. Every second node has a highway=stop tag.
+     */
+    private static byte[] createNodesBlob(int count, long firstId, boolean compressed) {
+        Osmformat.DenseNodes.Builder nodes = Osmformat.DenseNodes.newBuilder();
+        for (int i = 0; i < count; i++) {
+            // ids and coordinates are delta encoded, the default granularity is 100 nanodegrees
+            nodes.addId(i == 0 ? firstId : 1);
+            nodes.addLat(i == 0 ? 0 : 10_000);
+            nodes.addLon(i == 0 ? 0 : 20_000);
+            if (i % 2 == 0)
+                nodes.addKeysVals(1).addKeysVals(2);
+            nodes.addKeysVals(0);
+        }
+        byte[] block = Osmformat.PrimitiveBlock.newBuilder()
+                .setStringtable(Osmformat.StringTable.newBuilder()
+                        .addS(ByteString.EMPTY)
+                        .addS(ByteString.copyFromUtf8("highway"))
+                        .addS(ByteString.copyFromUtf8("stop")))
+                .addPrimitivegroup(Osmformat.PrimitiveGroup.newBuilder().setDense(nodes))
+                .build().toByteArray();
+        Fileformat.Blob.Builder blob = Fileformat.Blob.newBuilder();
+        if (compressed) {
+            Deflater deflater = new Deflater();
+            deflater.setInput(block);
+            deflater.finish();
+            byte[] buffer = new byte[block.length + 100];
+            int size = deflater.deflate(buffer);
+            assertTrue(deflater.finished());
+            deflater.end();
+            blob.setRawSize(block.length).setZlibData(ByteString.copyFrom(buffer, 0, size));
+        } else {
+            blob.setRaw(ByteString.copyFrom(block));
+        }
+        return blob.build().toByteArray();
+    }
+
+    private static List<ReaderElement> decode(PbfRawBlob blob, SkipOptions skipOptions) {
+        return decode(blob.getType(), blob.getData(), skipOptions);
+    }
+
+    private static List<ReaderElement> decode(String type, byte[] data) {
+        return decode(type, data, SkipOptions.none());
+    }
+
+    private static List<ReaderElement> decode(String type, byte[] data, SkipOptions skipOptions) {
+        List<ReaderElement> result = new ArrayList<>();
+        new PbfBlobDecoder(type, data, new PbfBlobDecoderListener() {
+            @Override
+            public void error(Exception ex) {
+                throw new RuntimeException(ex);
+            }
+
+            @Override
+            public void complete(List<ReaderElement> decodedEntities) {
+                result.addAll(decodedEntities);
+            }
+        }, skipOptions).run();
+        return result;
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.ch;
+
+import com.graphhopper.routing.Dijkstra;
+import com.graphhopper.routing.Path;
+import com.graphhopper.routing.RoutingAlgorithm;
+import com.graphhopper.routing.ev.DecimalEncodedValue;
+import com.graphhopper.routing.ev.DecimalEncodedValueImpl;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.TraversalMode;
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.IntDoubleHashMap;
+import com.graphhopper.routing.weighting.AbstractAdjustedWeighting;
+import com.graphhopper.routing.weighting.SpeedWeighting;
+import com.graphhopper.routing.weighting.TrafficWeighting;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.*;
+import com.graphhopper.util.EdgeIteratorState;
+import com.graphhopper.util.GHUtility;
+import com.graphhopper.util.PMap;
+import org.junit.jupiter.api.RepeatedTest;
+import org.junit.jupiter.api.RepetitionInfo;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CCHCustomizerTest {
+
+    @Test
+    void simpleGraph() {
+        DecimalEncodedValue speedEnc = new DecimalEncodedValueImpl("speed", 5, 5, true);
+        DecimalEncodedValue otherSpeedEnc = new DecimalEncodedValueImpl("other_speed", 5, 5, true);
+        EncodingManager em = EncodingManager.start().add(speedEnc).add(otherSpeedEnc).build();
+        BaseGraph graph = new BaseGraph.Builder(em).create();
+        // 0-1-2
+        // | | |
+        // 3-4-5
+        graph.edge(0, 1).setDistance(100).set(speedEnc, 10, 10).set(otherSpeedEnc, 10, 10);
+        graph.edge(1, 2).setDistance(100).set(speedEnc, 10, 10).set(otherSpeedEnc, 10, 10);
+        graph.edge(0, 3).setDistance(100).set(speedEnc, 10, 10).set(otherSpeedEnc, 10, 10);
+        graph.edge(1, 4).setDistance(100).set(speedEnc, 10, 10).set(otherSpeedEnc, 0, 0);
+        graph.edge(2, 5).setDistance(100).set(speedEnc, 10, 10).set(otherSpeedEnc, 10, 10);
+        graph.edge(3, 4).setDistance(100).set(speedEnc, 10, 10).set(otherSpeedEnc, 10, 10);
+        graph.edge(4, 5).setDistance(100).set(speedEnc, 10, 10).set(otherSpeedEnc, 10, 10);
+        graph.freeze();
+        CHStorage topology = PrepareCCH.fromGraph(graph).doWork();
+        CCHCustomizer customizer = new CCHCustomizer(graph, topology, 2);
+
+        Path path = calcPath(customizer.customize(new SpeedWeighting(speedEnc)), 0, 4);
+        assertEquals(200, path.getDistance(), 1.e-6);
+        // the same topology can be used for another weighting that blocks the edge 1-4
+        path = calcPath(customizer.customize(new SpeedWeighting(otherSpeedEnc)), 1, 4);
+        assertEquals(300, path.getDistance(), 1.e-6);
+        assertEquals(4, path.calcNodes().size());
+    }
+
+    @Test
+    void cache() {
+        DecimalEncodedValue speedEnc = new DecimalEncodedValueImpl("speed", 5, 5, true);
+        EncodingManager em = EncodingManager.start().add(speedEnc).build();
+        BaseGraph graph = new BaseGraph.Builder(em).create();
+        graph.edge(0, 1).setDistance(100).set(speedEnc, 10, 10);
+        graph.edge(1, 2).setDistance(100).set(speedEnc, 10, 10);
+        graph.freeze();
+        CCHCustomizer customizer = new CCHCustomizer(graph, PrepareCCH.fromGraph(graph).doWork(), 1);
+        Weighting weighting = new SpeedWeighting(speedEnc);
+        RoutingCHGraph a = customizer.customize("a", weighting);
+        assertSame(a, customizer.customize("a", weighting));
+        RoutingCHGraph b = customizer.customize("b", weighting);
+        assertNotSame(a, b);
+        // a was evicted from the cache
+        assertNotSame(a, customizer.customize("a", weighting));
+    }
+
+    @Test
+    void customizeOnlyOnce() throws Exception {
+        DecimalEncodedValue speedEnc = new DecimalEncodedValueImpl("speed", 5, 5, true);
+        EncodingManager em = EncodingManager.start().add(speedEnc).build();
+        BaseGraph graph = new BaseGraph.Builder(em).create();
+        graph.edge(0, 1).setDistance(100).set(speedEnc, 10, 10);
+        graph.edge(1, 2).setDistance(100).set(speedEnc, 10, 10);
+        graph.freeze();
+        CCHCustomizer customizer = new CCHCustomizer(graph, PrepareCCH.fromGraph(graph).doWork(), 2, 1);
+        Weighting weighting = new SpeedWeighting(speedEnc);
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch proceed = new CountDownLatch(1);
+        Weighting blockingWeighting = new AbstractAdjustedWeighting(weighting) {
+            @Override
+            public double calcEdgeWeight(EdgeIteratorState edgeState, boolean reverse) {
+                started.countDown();
+                try {
+                    proceed.await();
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                return super.calcEdgeWeight(edgeState, reverse);
+            }
+
+            @Override
+            public String getName() {
+                return "blocking";
+            }
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<RoutingCHGraph> first = executor.submit(() -> customizer.customize("a", blockingWeighting));
+            started.await();
+            // the second request for the same key waits for the running customization instead of starting another one
+            Future<RoutingCHGraph> second = executor.submit(() -> customizer.customize("a", blockingWeighting));
+            // while it is running we do not wait, neither for the same key nor when all customization slots are taken
+            assertNull(customizer.tryCustomize("a", weighting));
+            assertNull(customizer.tryCustomize("b", weighting));
+            proceed.countDown();
+            RoutingCHGraph a = first.get();
+            assertSame(a, second.get());
+            assertSame(a, customizer.tryCustomize("a", weighting));
+            assertNotNull(customizer.tryCustomize("b", weighting));
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @RepeatedTest(5)
+    void randomGraph(RepetitionInfo info) {
+        final long seed = info.getCurrentRepetition();
+        Random rnd = new Random(seed);
+        DecimalEncodedValue speedEnc = new DecimalEncodedValueImpl("speed", 5, 5, true);
+        DecimalEncodedValue otherSpeedEnc = new DecimalEncodedValueImpl("other_speed", 5, 5, true);
+        EncodingManager em = EncodingManager.start().add(speedEnc).add(otherSpeedEnc).build();
+        BaseGraph graph = new BaseGraph.Builder(em).create();
+        int numNodes = 500;
+        GHUtility.buildRandomGraph(graph, rnd, numNodes, 2.2, true, speedEnc, null, 0.8, 0.8);
+        // a second, independent speed for every edge
+        for (int edge = 0; edge < graph.getEdges(); edge++) {
+            if (rnd.nextDouble() < 0.1)
+                graph.getEdgeIteratorState(edge, Integer.MIN_VALUE).set(otherSpeedEnc, 0, rnd.nextInt(31));
+            else
+                graph.getEdgeIteratorState(edge, Integer.MIN_VALUE).set(otherSpeedEnc, rnd.nextInt(31), rnd.nextInt(31));
+        }
+        graph.freeze();
+        CCHCustomizer customizer = new CCHCustomizer(graph, PrepareCCH.fromGraph(graph).doWork(), 2);
+        for (DecimalEncodedValue enc : new DecimalEncodedValue[]{speedEnc, otherSpeedEnc}) {
+            Weighting weighting = new SpeedWeighting(enc);
+            RoutingCHGraph chGraph = customizer.customize(weighting);
+            for (int i = 0; i < 100; i++) {
+                int from = rnd.nextInt(numNodes);
+                int to = rnd.nextInt(numNodes);
+                Path refPath = new Dijkstra(graph, weighting, TraversalMode.NODE_BASED).calcPath(from, to);
+                Path path = calcPath(chGraph, from, to);
+                String msg = "seed: " + seed + ", " + enc.getName() + ", " + from + "->" + to;
+                GHUtility.compareWeights(refPath, path, msg);
+                if (!refPath.isFound())
+                    continue;
+                // the unpacked path must be consistent with its weight
+                double unpackedWeight = 0;
+                for (EdgeIteratorState edge : path.calcEdges())
+                    unpackedWeight += weighting.calcEdgeWeight(edge, false);
+                assertEquals(path.getWeight(), unpackedWeight, 1.e-1, msg);
+            }
+        }
+    }
+
+    @RepeatedTest(5)
+    void recustomize(RepetitionInfo info) {
+        final long seed = info.getCurrentRepetition();
+        Random rnd = new Random(seed);
+        DecimalEncodedValue speedEnc = new DecimalEncodedValueImpl("speed", 5, 5, true);
+        EncodingManager em = EncodingManager.start().add(speedEnc).build();
+        BaseGraph graph = new BaseGraph.Builder(em).create();
+        int numNodes = 500;
+        GHUtility.buildRandomGraph(graph, rnd, numNodes, 2.2, true, speedEnc, null, 0.8, 0.8);
+        graph.freeze();
+        CCHCustomizer customizer = new CCHCustomizer(graph, PrepareCCH.fromGraph(graph).doWork(), 2);
+        TrafficOverlay overlay = new TrafficOverlay(graph.getEdges());
+        RoutingCHGraph chGraph = customizer.customize(new TrafficWeighting(new SpeedWeighting(speedEnc), overlay.getSnapshot()));
+        CHStorage beforePrevious = null;
+        for (int round = 0; round < 5; round++) {
+            IntDoubleHashMap speedFactors = new IntDoubleHashMap();
+            for (int edge = 0; edge < graph.getEdges(); edge++)
+                if (rnd.nextDouble() < 0.05)
+                    speedFactors.put(edge, rnd.nextInt(5) * 0.25);
+            IntArrayList changedEdges = overlay.setSpeedFactors(speedFactors);
+            Weighting weighting = new TrafficWeighting(new SpeedWeighting(speedEnc), overlay.getSnapshot());
+            RoutingCHGraph previous = chGraph;
+            chGraph = customizer.recustomize(previous, weighting, changedEdges);
+            assertNotSame(previous, chGraph);
+            String msg = "seed: " + seed + ", round: " + round;
+            // the incremental update must yield the same shortcut weights as a full customization
+            CHStorage expected = ((RoutingCHGraphImpl) customizer.customize(weighting)).getCHStorage();
+            CHStorage actual = ((RoutingCHGraphImpl) chGraph).getCHStorage();
+            // the updates alternate between two storages
+            if (round > 0)
+                assertSame(beforePrevious, actual);
+            beforePrevious = ((RoutingCHGraphImpl) previous).getCHStorage();
+            for (int sc = 0; sc < customizer.getShortcuts(); sc++)
+                assertEquals(expected.getWeight(expected.toShortcutPointer(sc)), actual.getWeight(actual.toShortcutPointer(sc)), 1.e-1, msg + ", shortcut: " + sc);
+            for (int i = 0; i < 50; i++) {
+                int from = rnd.nextInt(numNodes);
+                int to = rnd.nextInt(numNodes);
+                Path refPath = new Dijkstra(graph, weighting, TraversalMode.NODE_BASED).calcPath(from, to);
+                GHUtility.compareWeights(refPath, calcPath(chGraph, from, to), msg + ", " + from + "->" + to);
+            }
+        }
+    }
+
+    private static Path calcPath(RoutingCHGraph chGraph, int from, int to) {
+        RoutingAlgorithm algo = new CHRoutingAlgorithmFactory(chGraph).createAlgo(new PMap());
+        return algo.calcPath(from, to);
+    }
+}
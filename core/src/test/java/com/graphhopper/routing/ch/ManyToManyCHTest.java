@@ -0,0 +1,135 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.ch;
+
+import com.graphhopper.routing.Dijkstra;
+import com.graphhopper.routing.Path;
+import com.graphhopper.routing.ev.DecimalEncodedValue;
+import com.graphhopper.routing.ev.DecimalEncodedValueImpl;
+import com.graphhopper.routing.ev.TurnCost;
+import com.graphhopper.routing.querygraph.QueryGraph;
+import com.graphhopper.routing.querygraph.QueryRoutingCHGraph;
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.SpeedWeighting;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.CHConfig;
+import com.graphhopper.storage.RoutingCHGraph;
+import com.graphhopper.storage.RoutingCHGraphImpl;
+import com.graphhopper.storage.index.LocationIndexTree;
+import com.graphhopper.storage.index.Snap;
+import com.graphhopper.util.GHUtility;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import static com.graphhopper.util.GHUtility.createRandomSnaps;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ManyToManyCHTest {
+
+    @Test
+    void simpleMatrix() {
+        DecimalEncodedValue speedEnc = new DecimalEncodedValueImpl("speed", 5, 5, true);
+        EncodingManager em = EncodingManager.start().add(speedEnc).build();
+        BaseGraph graph = new BaseGraph.Builder(em).create();
+        // 0-1-2-3
+        //   |   |
+        //   4---5
+        graph.edge(0, 1).setDistance(100).set(speedEnc, 10, 10);
+        graph.edge(1, 2).setDistance(100).set(speedEnc, 10, 10);
+        graph.edge(2, 3).setDistance(100).set(speedEnc, 10, 10);
+        graph.edge(1, 4).setDistance(100).set(speedEnc, 10, 10);
+        graph.edge(4, 5).setDistance(100).set(speedEnc, 10, 10);
+        graph.edge(5, 3).setDistance(100).set(speedEnc, 10, 0);
+        graph.freeze();
+        CHConfig chConfig = CHConfig.nodeBased("p", new SpeedWeighting(speedEnc));
+        PrepareContractionHierarchies.Result res = PrepareContractionHierarchies.fromGraph(graph, chConfig).doWork();
+        RoutingCHGraph chGraph = RoutingCHGraphImpl.fromGraph(graph, res.getCHStorage(), res.getCHConfig());
+
+        ManyToManyCH matrix = new ManyToManyCH(chGraph).calcMatrix(new int[]{0, 5, -1}, new int[]{3, 0, 5});
+        assertEquals(300, matrix.getDistances()[0][0], 1.e-6);
+        assertEquals(0, matrix.getDistances()[0][1], 1.e-6);
+        assertEquals(300, matrix.getDistances()[0][2], 1.e-6);
+        // 5->3 is allowed, but 3->5 is not
+        assertEquals(100, matrix.getDistances()[1][0], 1.e-6);
+        assertEquals(300, matrix.getDistances()[1][1], 1.e-6);
+        assertEquals(0, matrix.getTimes()[1][2]);
+        assertEquals(30_000, matrix.getTimes()[0][0]);
+        // the ignored source has no entries
+        assertEquals(Double.POSITIVE_INFINITY, matrix.getWeights()[2][0]);
+        assertEquals(Long.MAX_VALUE, matrix.getTimes()[2][0]);
+    }
+
+    private static Stream<Arguments> randomGraphParams() {
+        return Stream.of(TraversalMode.NODE_BASED, TraversalMode.EDGE_BASED)
+                .flatMap(traversalMode -> LongStream.rangeClosed(1, 5).mapToObj(seed -> Arguments.of(traversalMode, seed)));
+    }
+
+    @ParameterizedTest
+    @MethodSource("randomGraphParams")
+    void randomGraph(TraversalMode traversalMode, long seed) {
+        Random rnd = new Random(seed);
+        DecimalEncodedValue speedEnc = new DecimalEncodedValueImpl("speed", 5, 5, true);
+        DecimalEncodedValue turnCostEnc = TurnCost.create("car", 10);
+        EncodingManager em = EncodingManager.start().add(speedEnc).addTurnCostEncodedValue(turnCostEnc).build();
+        BaseGraph graph = new BaseGraph.Builder(em).withTurnCosts(true).create();
+        GHUtility.buildRandomGraph(graph, rnd, 50, 2.5, true, speedEnc, null, 0.9, 0);
+        if (traversalMode.isEdgeBased())
+            GHUtility.addRandomTurnCosts(graph, seed, null, turnCostEnc, 10, graph.getTurnCostStorage());
+        LocationIndexTree locationIndex = new LocationIndexTree(graph, graph.getDirectory());
+        locationIndex.prepareIndex();
+        graph.freeze();
+        CHConfig chConfig = traversalMode.isEdgeBased()
+                ? CHConfig.edgeBased("p", new SpeedWeighting(speedEnc, turnCostEnc, graph.getTurnCostStorage(), 40))
+                : CHConfig.nodeBased("p", new SpeedWeighting(speedEnc));
+        PrepareContractionHierarchies.Result res = PrepareContractionHierarchies.fromGraph(graph, chConfig).doWork();
+        RoutingCHGraph chGraph = RoutingCHGraphImpl.fromGraph(graph, res.getCHStorage(), res.getCHConfig());
+
+        List<Snap> snaps = createRandomSnaps(graph.getBounds(), locationIndex, rnd, 10, false, EdgeFilter.ALL_EDGES);
+        QueryGraph queryGraph = QueryGraph.create(graph, snaps);
+        Weighting weighting = queryGraph.wrapWeighting(chConfig.getWeighting());
+        int[] sources = new int[15];
+        int[] targets = new int[12];
+        for (int i = 0; i < sources.length; i++)
+            sources[i] = rnd.nextInt(queryGraph.getNodes());
+        for (int i = 0; i < targets.length; i++)
+            targets[i] = rnd.nextInt(queryGraph.getNodes());
+
+        ManyToManyCH matrix = new ManyToManyCH(new QueryRoutingCHGraph(chGraph, queryGraph)).calcMatrix(sources, targets);
+        List<String> strictViolations = new ArrayList<>();
+        for (int i = 0; i < sources.length; i++) {
+            for (int j = 0; j < targets.length; j++) {
+                Path refPath = new Dijkstra(queryGraph, weighting, traversalMode).calcPath(sources[i], targets[j]);
+                strictViolations.addAll(GHUtility.compareWeights(refPath, matrix.getWeights()[i][j], matrix.getDistances()[i][j],
+                        matrix.getTimes()[i][j], "seed: " + seed + ", " + sources[i] + "->" + targets[j]));
+            }
+        }
+        assertTrue(strictViolations.size() <= 0.05 * sources.length * targets.length, "too many strict violations: " + strictViolations);
+    }
+}
@@ -44,6 +44,32 @@ class NodeBasedWitnessPathSearcherTest {
         assertEquals(2, algo.getSettledNodes());
     }
 
+    @Test
+    void ignoredNodes() {
+        //  /- 3 -\
+        // 0 - 1 - 2
+        //  \- 4 -/
+        CHPreparationGraph p = CHPreparationGraph.nodeBased(5, 10);
+        p.addEdge(0, 1, 0, 10, 10);
+        p.addEdge(1, 2, 1, 10, 10);
+        p.addEdge(0, 3, 2, 9, 9);
+        p.addEdge(3, 2, 3, 9, 9);
+        p.addEdge(0, 4, 4, 8, 8);
+        p.addEdge(4, 2, 5, 8, 8);
+        p.prepareForContraction();
+        NodeBasedWitnessPathSearcher algo = new NodeBasedWitnessPathSearcher(p);
+        boolean[] ignoredNodes = new boolean[5];
+        ignoredNodes[4] = true;
+        algo.init(0, 1, ignoredNodes);
+        assertEquals(18, algo.findUpperBound(2, 100, Integer.MAX_VALUE));
+        ignoredNodes[3] = true;
+        algo.init(0, 1, ignoredNodes);
+        assertEquals(Double.POSITIVE_INFINITY, algo.findUpperBound(2, 100, Integer.MAX_VALUE));
+        // the flags are not kept for the next search
+        algo.init(0, 1);
+        assertEquals(16, algo.findUpperBound(2, 100, Integer.MAX_VALUE));
+    }
+
     @Test
     void acceptedWeight() {
         //  /-----------\
@@ -0,0 +1,144 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.ch;
+
+import com.graphhopper.routing.Dijkstra;
+import com.graphhopper.routing.Path;
+import com.graphhopper.routing.ev.DecimalEncodedValue;
+import com.graphhopper.routing.ev.DecimalEncodedValueImpl;
+import com.graphhopper.routing.querygraph.QueryGraph;
+import com.graphhopper.routing.querygraph.QueryRoutingCHGraph;
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.SpeedWeighting;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.CHConfig;
+import com.graphhopper.storage.RoutingCHGraph;
+import com.graphhopper.storage.RoutingCHGraphImpl;
+import com.graphhopper.storage.index.LocationIndexTree;
+import com.graphhopper.storage.index.Snap;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.GHUtility;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
+
+import static com.graphhopper.util.GHUtility.createRandomSnaps;
+import static org.junit.jupiter.api.Assertions.*;
+
+class PhastCHTest {
+
+    @Test
+    void simpleGraph() {
+        DecimalEncodedValue speedEnc = new DecimalEncodedValueImpl("speed", 5, 5, true);
+        EncodingManager em = EncodingManager.start().add(speedEnc).build();
+        BaseGraph graph = new BaseGraph.Builder(em).create();
+        // 0-1-2-3
+        //   |   |
+        //   4---5
+        graph.edge(0, 1).setDistance(100).set(speedEnc, 10, 10);
+        graph.edge(1, 2).setDistance(100).set(speedEnc, 10, 10);
+        graph.edge(2, 3).setDistance(100).set(speedEnc, 10, 10);
+        graph.edge(1, 4).setDistance(100).set(speedEnc, 10, 10);
+        graph.edge(4, 5).setDistance(100).set(speedEnc, 10, 10);
+        graph.edge(5, 3).setDistance(100).set(speedEnc, 10, 0);
+        graph.freeze();
+        CHConfig chConfig = CHConfig.nodeBased("p", new SpeedWeighting(speedEnc));
+        PrepareContractionHierarchies.Result res = PrepareContractionHierarchies.fromGraph(graph, chConfig).doWork();
+        RoutingCHGraph chGraph = RoutingCHGraphImpl.fromGraph(graph, res.getCHStorage(), res.getCHConfig());
+
+        PhastCH phast = new PhastCH(chGraph, false).calcOneToAll(3);
+        assertEquals(0, phast.getDistance(3), 1.e-6);
+        assertEquals(EdgeIterator.NO_EDGE, phast.getEdge(3));
+        assertEquals(-1, phast.getParentNode(3));
+        assertEquals(200, phast.getDistance(1), 1.e-6);
+        // 3->5 is not allowed
+        assertEquals(400, phast.getDistance(5), 1.e-6);
+        assertEquals(40_000, phast.getTime(5));
+        assertEquals(4, phast.getParentNode(5));
+
+        // in the reverse flow 5->3 is allowed
+        phast = new PhastCH(chGraph, true).calcOneToAll(3);
+        assertEquals(100, phast.getDistance(5), 1.e-6);
+        assertEquals(3, phast.getParentNode(5));
+        assertEquals(300, phast.getDistance(0), 1.e-6);
+        assertEquals(1, phast.getParentNode(0));
+    }
+
+    @Test
+    void edgeBasedNotSupported() {
+        DecimalEncodedValue speedEnc = new DecimalEncodedValueImpl("speed", 5, 5, true);
+        EncodingManager em = EncodingManager.start().add(speedEnc).build();
+        BaseGraph graph = new BaseGraph.Builder(em).withTurnCosts(true).create();
+        graph.edge(0, 1).setDistance(100).set(speedEnc, 10, 10);
+        graph.freeze();
+        CHConfig chConfig = CHConfig.edgeBased("p", new SpeedWeighting(speedEnc));
+        PrepareContractionHierarchies.Result res = PrepareContractionHierarchies.fromGraph(graph, chConfig).doWork();
+        RoutingCHGraph chGraph = RoutingCHGraphImpl.fromGraph(graph, res.getCHStorage(), res.getCHConfig());
+        assertThrows(IllegalArgumentException.class, () -> new PhastCH(chGraph, false));
+    }
+
+    private static Stream<Arguments> randomGraphParams() {
+        return Stream.of(false, true)
+                .flatMap(reverseFlow -> LongStream.rangeClosed(1, 5).mapToObj(seed -> Arguments.of(reverseFlow, seed)));
+    }
+
+    @ParameterizedTest
+    @MethodSource("randomGraphParams")
+    void randomGraph(boolean reverseFlow, long seed) {
+        Random rnd = new Random(seed);
+        DecimalEncodedValue speedEnc = new DecimalEncodedValueImpl("speed", 5, 5, true);
+        EncodingManager em = EncodingManager.start().add(speedEnc).build();
+        BaseGraph graph = new BaseGraph.Builder(em).create();
+        GHUtility.buildRandomGraph(graph, rnd, 50, 2.5, true, speedEnc, null, 0.9, 0);
+        LocationIndexTree locationIndex = new LocationIndexTree(graph, graph.getDirectory());
+        locationIndex.prepareIndex();
+        graph.freeze();
+        CHConfig chConfig = CHConfig.nodeBased("p", new SpeedWeighting(speedEnc));
+        PrepareContractionHierarchies.Result res = PrepareContractionHierarchies.fromGraph(graph, chConfig).doWork();
+        RoutingCHGraph chGraph = RoutingCHGraphImpl.fromGraph(graph, res.getCHStorage(), res.getCHConfig());
+
+        List<Snap> snaps = createRandomSnaps(graph.getBounds(), locationIndex, rnd, 10, false, EdgeFilter.ALL_EDGES);
+        QueryGraph queryGraph = QueryGraph.create(graph, snaps);
+        Weighting weighting = queryGraph.wrapWeighting(chConfig.getWeighting());
+        PhastCH phast = new PhastCH(new QueryRoutingCHGraph(chGraph, queryGraph), reverseFlow);
+        List<String> strictViolations = new ArrayList<>();
+        int numOrigins = 10;
+        for (int i = 0; i < numOrigins; i++) {
+            int origin = rnd.nextInt(queryGraph.getNodes());
+            phast.calcOneToAll(origin);
+            for (int node = 0; node < queryGraph.getNodes(); node++) {
+                Path refPath = reverseFlow
+                        ? new Dijkstra(queryGraph, weighting, TraversalMode.NODE_BASED).calcPath(node, origin)
+                        : new Dijkstra(queryGraph, weighting, TraversalMode.NODE_BASED).calcPath(origin, node);
+                strictViolations.addAll(GHUtility.compareWeights(refPath, phast.getWeight(node), phast.getDistance(node),
+                        phast.getTime(node), "seed: " + seed + ", origin: " + origin + ", node: " + node));
+            }
+        }
+        assertTrue(strictViolations.size() <= 0.05 * numOrigins * queryGraph.getNodes(), "too many strict violations: " + strictViolations);
+    }
+}
@@ -31,8 +31,11 @@ import com.graphhopper.storage.*;
 import com.graphhopper.storage.index.Snap;
 import com.graphhopper.util.*;
 import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.RepeatedTest;
+import org.junit.jupiter.api.RepetitionInfo;
 import org.junit.jupiter.api.Test;
 
+import java.util.Arrays;
 import java.util.Random;
 
 import static com.graphhopper.util.GHUtility.updateDistancesFor;
@@ -576,6 +579,42 @@ public class PrepareContractionHierarchiesTest {
         }
     }
 
+    @RepeatedTest(3)
+    public void testConcurrentContraction(RepetitionInfo info) {
+        int numNodes = 5_000;
+        int numQueries = 100;
+        final long seed = info.getCurrentRepetition();
+        Random rnd = new Random(seed);
+        GHUtility.buildRandomGraph(g, rnd, numNodes, 1.3, true, speedEnc, 60d, 0.9, 0.8);
+        g.freeze();
+
+        PrepareContractionHierarchies.Result sequentialRes = createPrepareContractionHierarchies(g).doWork();
+        PrepareContractionHierarchies.Result concurrentRes = createPrepareContractionHierarchies(g, CHConfig.nodeBased("concurrent", weighting))
+                .setParams(new PMap().putObject(CHParameters.CONTRACTION_THREADS, 4))
+                .doWork();
+        RoutingCHGraph concurrentCH = RoutingCHGraphImpl.fromGraph(g, concurrentRes.getCHStorage(), concurrentRes.getCHConfig());
+
+        // every node gets its own level, just like for the sequential contraction
+        CHStorage chStore = concurrentRes.getCHStorage();
+        int[] levels = new int[numNodes];
+        for (int node = 0; node < numNodes; node++)
+            levels[node] = chStore.getLevel(chStore.toNodePointer(node));
+        Arrays.sort(levels);
+        for (int i = 0; i < numNodes; i++)
+            assertEquals(i, levels[i], "seed: " + seed);
+        // contracting independent node sets deviates from the order given by the node priorities a bit
+        assertTrue(concurrentRes.getShortcuts() < 1.2 * sequentialRes.getShortcuts(),
+                "seed: " + seed + ", shortcuts: " + concurrentRes.getShortcuts() + " vs. " + sequentialRes.getShortcuts());
+
+        for (int i = 0; i < numQueries; ++i) {
+            Dijkstra dijkstra = new Dijkstra(g, weighting, TraversalMode.NODE_BASED);
+            RoutingAlgorithm chAlgo = new CHRoutingAlgorithmFactory(concurrentCH).createAlgo(new PMap());
+            int from = rnd.nextInt(numNodes);
+            int to = rnd.nextInt(numNodes);
+            GHUtility.compareWeights(dijkstra.calcPath(from, to), chAlgo.calcPath(from, to), "seed: " + seed + ", " + from + "->" + to);
+        }
+    }
+
     private void checkPath(BaseGraph g, CHConfig c, int expShortcuts, double expDistance, IntIndexedContainer expNodes, int[] nodeOrdering) {
         PrepareContractionHierarchies prepare = createPrepareContractionHierarchies(g, c);
         useNodeOrdering(prepare, nodeOrdering);
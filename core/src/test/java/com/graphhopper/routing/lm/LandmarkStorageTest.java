@@ -17,6 +17,7 @@
  */
 package com.graphhopper.routing.lm;
 
+import com.carrotsearch.hppc.IntArrayList;
 import com.graphhopper.routing.RoutingAlgorithmTest;
 import com.graphhopper.routing.ev.BooleanEncodedValue;
 import com.graphhopper.routing.ev.DecimalEncodedValue;
@@ -30,13 +31,17 @@ import com.graphhopper.routing.weighting.Weighting;
 import com.graphhopper.storage.BaseGraph;
 import com.graphhopper.storage.Directory;
 import com.graphhopper.storage.RAMDirectory;
+import com.graphhopper.util.GHUtility;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.RepeatedTest;
+import org.junit.jupiter.api.RepetitionInfo;
 import org.junit.jupiter.api.Test;
 
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Random;
 
 import static java.util.Collections.emptyList;
 import static org.junit.jupiter.api.Assertions.*;
@@ -240,4 +245,87 @@ public class LandmarkStorageTest {
         storage.createLandmarks();
         assertEquals(3, storage.getSubnetworksWithLandmarks());
     }
+
+    @Test
+    public void testUpdateLandmarks() {
+        // 0 - 1 - 2 - 3 - 4   6 - 7
+        //  \----- 5 -----/ \---/
+        graph.edge(0, 1).setDistance(100).set(speedEnc, 60, 60);
+        graph.edge(1, 2).setDistance(100).set(speedEnc, 60, 60);
+        graph.edge(2, 3).setDistance(100).set(speedEnc, 60, 60);
+        graph.edge(3, 4).setDistance(100).set(speedEnc, 60, 60);
+        graph.edge(0, 5).setDistance(300).set(speedEnc, 60, 60);
+        graph.edge(5, 4).setDistance(300).set(speedEnc, 60, 60);
+        graph.edge(6, 7).setDistance(100).set(speedEnc, 60, 60);
+        graph.edge(4, 6).setDistance(100).set(speedEnc, 0, 0);
+        Weighting weighting = new SpeedWeighting(speedEnc);
+        subnetworkRemoval(weighting, 1);
+        LandmarkStorage previous = new LandmarkStorage(graph, encodingManager, new RAMDirectory(), new LMConfig("car", weighting), 2);
+        previous.setMinimumNodes(2);
+        previous.createLandmarks();
+        assertEquals(3, previous.getSubnetworksWithLandmarks());
+
+        // slowing down an edge keeps all landmark weights valid, so they are just copied
+        graph.getEdgeIteratorState(1, 2).set(speedEnc, 30, 30);
+        LandmarkStorage updated = new LandmarkStorage(graph, encodingManager, new RAMDirectory(), new LMConfig("car", weighting, "car.1"), 2);
+        assertTrue(updated.updateLandmarks(previous, IntArrayList.from(1)));
+        assertWeights(previous, updated, 0);
+
+        // speeding up the edges via node 5 leads to shorter routes, so the landmark weights are calculated again
+        graph.getEdgeIteratorState(4, 5).set(speedEnc, 150, 150);
+        graph.getEdgeIteratorState(5, 4).set(speedEnc, 150, 150);
+        previous = updated;
+        updated = new LandmarkStorage(graph, encodingManager, new RAMDirectory(), new LMConfig("car", weighting), 2);
+        assertTrue(updated.updateLandmarks(previous, IntArrayList.from(4, 5)));
+        LandmarkStorage expected = new LandmarkStorage(graph, encodingManager, new RAMDirectory(), new LMConfig("car", weighting), 2);
+        expected.setMinimumNodes(2);
+        expected.setMaximumWeight(previous.getFactor() * LandmarkStorage.PRECISION);
+        expected.createLandmarks();
+        assertEquals(expected.getSubnetworksWithLandmarks(), updated.getSubnetworksWithLandmarks());
+        for (int sn = 1; sn < expected.getSubnetworksWithLandmarks(); sn++)
+            assertArrayEquals(expected.getLandmarks(sn), updated.getLandmarks(sn));
+        // the copied weights can differ by the rounding of the stored weights
+        assertWeights(expected, updated, 1);
+
+        // connecting two subnetworks requires new landmarks
+        graph.getEdgeIteratorState(7, 6).set(speedEnc, 60, 60);
+        updated = new LandmarkStorage(graph, encodingManager, new RAMDirectory(), new LMConfig("car", weighting, "car.1"), 2);
+        assertFalse(updated.updateLandmarks(previous, IntArrayList.from(7)));
+    }
+
+    private void assertWeights(LandmarkStorage expected, LandmarkStorage actual, int delta) {
+        for (int node = 0; node < graph.getNodes(); node++) {
+            for (int lmIdx = 0; lmIdx < expected.getLandmarkCount(); lmIdx++) {
+                assertEquals(expected.getFromWeight(lmIdx, node), actual.getFromWeight(lmIdx, node), delta, "node: " + node + ", landmark: " + lmIdx);
+                assertEquals(expected.getToWeight(lmIdx, node), actual.getToWeight(lmIdx, node), delta, "node: " + node + ", landmark: " + lmIdx);
+            }
+        }
+    }
+
+    @RepeatedTest(5)
+    public void testConcurrentLandmarkWeights(RepetitionInfo info) {
+        final long seed = info.getCurrentRepetition();
+        GHUtility.buildRandomGraph(graph, new Random(seed), 500, 2.2, true, speedEnc, null, 0.8, 0.8);
+        Weighting weighting = new SpeedWeighting(speedEnc);
+        subnetworkRemoval(weighting, 1);
+
+        LandmarkStorage sequential = new LandmarkStorage(graph, encodingManager, new RAMDirectory(), new LMConfig("car", weighting), 8);
+        sequential.setMinimumNodes(2);
+        sequential.createLandmarks();
+
+        LandmarkStorage concurrent = new LandmarkStorage(graph, encodingManager, new RAMDirectory(), new LMConfig("car", weighting), 8);
+        concurrent.setMinimumNodes(2);
+        concurrent.setLandmarkThreads(4);
+        concurrent.createLandmarks();
+
+        assertEquals(sequential.getSubnetworksWithLandmarks(), concurrent.getSubnetworksWithLandmarks(), "seed: " + seed);
+        for (int sn = 1; sn < sequential.getSubnetworksWithLandmarks(); sn++)
+            assertArrayEquals(sequential.getLandmarks(sn), concurrent.getLandmarks(sn), "seed: " + seed);
+        for (int node = 0; node < graph.getNodes(); node++) {
+            for (int lmIdx = 0; lmIdx < 8; lmIdx++) {
+                assertEquals(sequential.getFromWeight(lmIdx, node), concurrent.getFromWeight(lmIdx, node), "seed: " + seed);
+                assertEquals(sequential.getToWeight(lmIdx, node), concurrent.getToWeight(lmIdx, node), "seed: " + seed);
+            }
+        }
+    }
 }
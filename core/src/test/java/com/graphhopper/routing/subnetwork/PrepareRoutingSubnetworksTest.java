@@ -217,6 +217,26 @@ public class PrepareRoutingSubnetworksTest {
         assertEquals(IntArrayList.from(4, 5, 6, 7, 8), getSubnetworkEdges(g, subnetworkEnc));
     }
 
+    @Test
+    public void testPrepareSubnetworks_reconnected() {
+        DecimalEncodedValue speedEnc = new DecimalEncodedValueImpl("speed", 5, 5, true);
+        BooleanEncodedValue subnetworkEnc = Subnetwork.create("car");
+        EncodingManager em = EncodingManager.start().add(speedEnc).add(subnetworkEnc).build();
+        BaseGraph g = createSubnetworkTestStorage(em, speedEnc, null);
+        PrepareRoutingSubnetworks instance = new PrepareRoutingSubnetworks(g, Collections.singletonList(createJob(subnetworkEnc, speedEnc)));
+        instance.setMinNetworkSize(4);
+        assertEquals(3, instance.doWork());
+        assertEquals(IntArrayList.from(7, 8, 9), instance.getChangedEdges().get(0));
+
+        // once edge 3-4 is accessible the upper network is connected to the rest and its edges lose their flag
+        g.getEdgeIteratorState(0, 4).set(speedEnc, 10, 10);
+        instance = new PrepareRoutingSubnetworks(g, Collections.singletonList(createJob(subnetworkEnc, speedEnc)));
+        instance.setMinNetworkSize(4);
+        assertEquals(0, instance.doWork());
+        assertEquals(IntArrayList.from(), getSubnetworkEdges(g, subnetworkEnc));
+        assertEquals(IntArrayList.from(7, 8, 9), instance.getChangedEdges().get(0));
+    }
+
     // Previous two-pass implementation failed on 1 -> 2 -> 0
     @Test
     public void testNodeOrderingRegression() {
@@ -0,0 +1,71 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.routing.weighting;
+
+import com.carrotsearch.hppc.IntDoubleHashMap;
+import com.graphhopper.routing.ev.DecimalEncodedValue;
+import com.graphhopper.routing.ev.VehicleSpeed;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.weighting.custom.CustomModelParser;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.TrafficOverlay;
+import com.graphhopper.util.CustomModel;
+import com.graphhopper.util.EdgeIteratorState;
+import org.junit.jupiter.api.Test;
+
+import static com.graphhopper.json.Statement.If;
+import static com.graphhopper.json.Statement.Op.LIMIT;
+import static com.graphhopper.routing.weighting.TurnCostProvider.NO_TURN_COST_PROVIDER;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class TrafficWeightingTest {
+
+    @Test
+    void onlyTimeIsScaled() {
+        DecimalEncodedValue speedEnc = VehicleSpeed.create("car", 5, 5, false);
+        EncodingManager em = new EncodingManager.Builder().add(speedEnc).build();
+        BaseGraph graph = new BaseGraph.Builder(em).create();
+        // 50km/h -> 72s per km
+        EdgeIteratorState slow = graph.edge(0, 1).setDistance(1000).set(speedEnc, 50);
+        EdgeIteratorState fast = graph.edge(1, 2).setDistance(1000).set(speedEnc, 50);
+        EdgeIteratorState closed = graph.edge(2, 3).setDistance(1000).set(speedEnc, 50);
+        EdgeIteratorState unchanged = graph.edge(3, 4).setDistance(1000).set(speedEnc, 50);
+
+        CustomModel customModel = new CustomModel().setDistanceInfluence(30d);
+        customModel.addToSpeed(If("true", LIMIT, speedEnc.getName()));
+        Weighting weighting = CustomModelParser.createWeighting(em, NO_TURN_COST_PROVIDER, customModel);
+        assertEquals(72 + 30, weighting.calcEdgeWeight(slow, false), 1.e-6);
+
+        TrafficOverlay overlay = new TrafficOverlay(graph.getEdges());
+        IntDoubleHashMap speedFactors = new IntDoubleHashMap();
+        speedFactors.put(slow.getEdge(), 0.5);
+        speedFactors.put(fast.getEdge(), 1.2);
+        speedFactors.put(closed.getEdge(), 0);
+        overlay.setSpeedFactors(speedFactors);
+        TrafficWeighting trafficWeighting = new TrafficWeighting(weighting, overlay.getSnapshot());
+
+        // the distance influence does not change with the speed
+        assertEquals(144 + 30, trafficWeighting.calcEdgeWeight(slow, false), 1.e-6);
+        assertEquals(144_000, trafficWeighting.calcEdgeMillis(slow, false));
+        assertEquals(60 + 30, trafficWeighting.calcEdgeWeight(fast, false), 1.e-6);
+        assertEquals(60_000, trafficWeighting.calcEdgeMillis(fast, false));
+        assertEquals(Double.POSITIVE_INFINITY, trafficWeighting.calcEdgeWeight(closed, false));
+        assertEquals(72 + 30, trafficWeighting.calcEdgeWeight(unchanged, false), 1.e-6);
+        assertEquals(weighting.calcMinWeightPerDistance() / 1.2, trafficWeighting.calcMinWeightPerDistance(), 1.e-6);
+    }
+}
@@ -85,6 +85,32 @@ public class KVStorageTest {
         assertEquals("BOTH2", index.get(aPointer, "keyD", true));
     }
 
+    @Test
+    public void compaction() {
+        KVStorage index = create();
+        long aPointer = index.add(createMap("name", "a", "ref", 5));
+        long unusedPointer = index.add(createMap("name", "unused"));
+        long bPointer = index.add(createMap("name", "b"));
+        assertTrue(unusedPointer > aPointer && bPointer > unusedPointer);
+
+        // we move b first and a twice, the unused entry is dropped
+        KVStorage.Compaction compaction = index.startCompaction();
+        long newBPointer = compaction.move(bPointer);
+        long newAPointer = compaction.move(aPointer);
+        assertEquals(newAPointer, compaction.move(aPointer));
+        assertEquals(0, compaction.move(0));
+        compaction.finish();
+        assertTrue(newBPointer < newAPointer);
+        assertEquals(createMap("name", "b"), index.getAll(newBPointer));
+        assertEquals(createMap("name", "a", "ref", 5), index.getAll(newAPointer));
+        assertEquals("a", index.get(newAPointer, "name", false));
+
+        // new entries are appended after the compacted ones
+        long cPointer = index.add(createMap("name", "c"));
+        assertEquals(createMap("name", "c"), index.getAll(cPointer));
+        assertEquals(createMap("name", "a", "ref", 5), index.getAll(newAPointer));
+    }
+
     @Test
     public void putEmpty() {
         KVStorage index = create();
@@ -264,6 +290,90 @@ public class KVStorageTest {
         Helper.removeDir(new File(location));
     }
 
+    @Test
+    public void testDictionary() {
+        KVStorage index = new KVStorage(new RAMDirectory(), true, true).create(1000);
+        long pointerA = index.add(createMap("name", "main street", "ref", "B1", "maxspeed", 50));
+        long pointerB = index.add(createMap("name", "main street", "ref", ""));
+        long pointerC = index.add(createMap("name", "other street", "bytes", new byte[]{1, 2}));
+        // count, key index and string id
+        assertEquals(pointerA + 1 + 3 + 3 + 2 + 4, pointerB);
+        assertEquals(pointerB + 1 + 3 + 3, pointerC);
+
+        assertEquals("main street", index.get(pointerA, "name", false));
+        assertEquals("B1", index.get(pointerA, "ref", true));
+        assertEquals(50, index.get(pointerA, "maxspeed", false));
+        assertEquals("main street", index.get(pointerB, "name", false));
+        assertEquals("", index.get(pointerB, "ref", false));
+        assertEquals("other street", index.get(pointerC, "name", false));
+        assertArrayEquals(new byte[]{1, 2}, (byte[]) index.get(pointerC, "bytes", false));
+        assertNull(index.get(pointerC, "ref", false));
+        assertEquals("{name=main street, ref=B1, maxspeed=50}", index.getAll(pointerA).toString());
+        assertEquals("other street", index.getMap(pointerC).get("name"));
+    }
+
+    @Test
+    public void testDictionaryManyStrings() {
+        KVStorage index = new KVStorage(new RAMDirectory(), true, true).create(1000);
+        LongArrayList pointers = new LongArrayList();
+        // the ids need up to three bytes
+        for (int i = 0; i < 20_000; i++)
+            pointers.add(index.add(createMap("name", "street " + i, "ref", "ref " + (i % 100))));
+        for (int i = 0; i < 20_000; i++) {
+            assertEquals("street " + i, index.get(pointers.get(i), "name", false));
+            assertEquals("ref " + (i % 100), index.get(pointers.get(i), "ref", false));
+        }
+
+        KVStorage.Compaction compaction = index.startCompaction();
+        long newPointer = compaction.move(pointers.get(19_999));
+        compaction.finish();
+        assertEquals("{name=street 19999, ref=ref 99}", index.getAll(newPointer).toString());
+    }
+
+    @Test
+    public void testDictionaryFlush() {
+        Helper.removeDir(new File(location));
+
+        KVStorage index = new KVStorage(new RAMDirectory(location, true).create(), true, true).create(1000);
+        long pointerA = index.add(createMap("name", "test", "ref", "A1"));
+        index.flush();
+        index.close();
+
+        // the dictionary setting of the stored data is used
+        index = new KVStorage(new RAMDirectory(location, true), true, false);
+        assertTrue(index.loadExisting());
+        assertEquals("test", index.get(pointerA, "name", false));
+        assertEquals("A1", index.get(pointerA, "ref", false));
+        // adding existing and new strings after loading
+        long pointerB = index.add(createMap("name", "test", "ref", "A2"));
+        assertEquals("{name=test, ref=A2}", index.getAll(pointerB).toString());
+        assertEquals("{name=test, ref=A1}", index.getAll(pointerA).toString());
+        index.close();
+
+        Helper.removeDir(new File(location));
+    }
+
+    @Test
+    public void testGetValues() {
+        KVStorage index = create();
+        Map<String, KValue> map = new LinkedHashMap<>();
+        map.put("name", new KValue("main street"));
+        map.put("ref", new KValue("B1", "B2"));
+        map.put("maxspeed", new KValue(null, 30));
+        long pointer = index.add(map);
+
+        int[] keyIndices = {index.getKeyIndex("maxspeed"), index.getKeyIndex("unknown"), index.getKeyIndex("ref"), index.getKeyIndex("name")};
+        assertEquals(-1, keyIndices[1]);
+        Object[] fwd = new Object[4], bwd = new Object[4];
+        index.getValues(pointer, keyIndices, fwd, bwd);
+        assertEquals("[null, null, B1, main street]", Arrays.toString(fwd));
+        assertEquals("[30, null, B2, main street]", Arrays.toString(bwd));
+
+        index.getValues(0, keyIndices, fwd, bwd);
+        assertEquals("[null, null, null, null]", Arrays.toString(fwd));
+        assertEquals("[null, null, null, null]", Arrays.toString(bwd));
+    }
+
     @Test
     public void testEmptyKey() {
         KVStorage index = create();
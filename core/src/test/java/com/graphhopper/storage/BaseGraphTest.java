@@ -27,8 +27,7 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
 
-import java.util.LinkedHashMap;
-import java.util.Map;
+import java.util.*;
 
 import static com.graphhopper.util.EdgeIteratorState.REVERSE_STATE;
 import static com.graphhopper.util.FetchMode.*;
@@ -112,6 +111,31 @@ public class BaseGraphTest extends AbstractGraphStorageTester {
         checkGraph(graph);
     }
 
+    @Test
+    public void testEdgeKVCache() {
+        graph = createGHStorage();
+        Map<String, KValue> map = new LinkedHashMap<>();
+        map.put(STREET_NAME, new KValue("main street"));
+        map.put("keyA", new KValue("FORWARD", "BACKWARD"));
+        EdgeIteratorState edge01 = graph.edge(0, 1).setKeyValues(map);
+        // same entry as the previous edge
+        EdgeIteratorState edge12 = graph.edge(1, 2).setKeyValues(map);
+        EdgeIteratorState edge23 = graph.edge(2, 3).setKeyValues(Map.of("keyA", new KValue(null, "BACKWARD2")));
+        EdgeIteratorState edge34 = graph.edge(3, 4);
+
+        EdgeKVCache cache = new EdgeKVCache(STREET_NAME, "keyA", "unknown");
+        assertEquals(1, cache.indexOf("keyA"));
+        assertThrows(IllegalArgumentException.class, () -> cache.indexOf("keyB"));
+        for (EdgeIteratorState edge : List.of(edge01, edge12, edge23, edge34, edge12.detach(true), edge23.detach(true), edge01)) {
+            assertEquals(edge.getValue(STREET_NAME), cache.getValue(edge, 0));
+            assertEquals(edge.getValue("keyA"), cache.getValue(edge, 1));
+            assertNull(cache.getValue(edge, 2));
+        }
+        assertEquals("BACKWARD", cache.getValue(edge12.detach(true), 1));
+        assertEquals("BACKWARD2", cache.getValue(edge23.detach(true), 1));
+        assertNull(cache.getValue(edge23, 1));
+    }
+
     @Test
     public void testSave_and_Freeze() {
         graph = newGHStorage(new RAMDirectory(defaultGraphLoc, true), true).create(defaultSize);
@@ -127,6 +151,48 @@ public class BaseGraphTest extends AbstractGraphStorageTester {
         assertTrue(graph.isFrozen());
     }
 
+    @Test
+    public void testCSRAdjacency() {
+        graph = new BaseGraph.Builder(encodingManager).setDir(new RAMDirectory(defaultGraphLoc, true))
+                .setSegmentSize(128).withCSRAdjacency(true).create();
+        GHUtility.buildRandomGraph(graph, new Random(42), 100, 2.5, true, null, null, 0.8, 0.8);
+        int edge = graph.edge(7, 8).getEdge();
+        Map<Integer, List<String>> expected = getAdjacency(graph);
+        EdgeExplorer explorer = graph.createEdgeExplorer();
+        assertFalse(graph.hasCSRAdjacency());
+
+        graph.freeze();
+        assertTrue(graph.hasCSRAdjacency());
+        assertEquals(expected, getAdjacency(graph));
+        // the explorer was created before the graph was frozen
+        EdgeIterator iter = explorer.setBaseNode(8);
+        assertTrue(iter.next());
+        assertEquals(edge, iter.getEdge());
+        assertEquals(7, iter.getAdjNode());
+
+        graph.flush();
+        graph.close();
+        graph = new BaseGraph.Builder(encodingManager).setDir(new RAMDirectory(defaultGraphLoc, true))
+                .withCSRAdjacency(true).build();
+        assertTrue(graph.loadExisting());
+        assertTrue(graph.hasCSRAdjacency());
+        assertEquals(expected, getAdjacency(graph));
+    }
+
+    private static Map<Integer, List<String>> getAdjacency(BaseGraph graph) {
+        Map<Integer, List<String>> result = new HashMap<>();
+        EdgeExplorer explorer = graph.createEdgeExplorer();
+        for (int node = 0; node < graph.getNodes(); node++) {
+            List<String> edges = new ArrayList<>();
+            EdgeIterator iter = explorer.setBaseNode(node);
+            while (iter.next())
+                edges.add(iter.getEdge() + ":" + iter.getBaseNode() + "-" + iter.getAdjNode() + ":" + iter.get(REVERSE_STATE)
+                        + ":" + iter.getDistance() + ":" + iter.detach(true).getAdjNode());
+            result.put(node, edges);
+        }
+        return result;
+    }
+
     protected void checkGraph(Graph g) {
         NodeAccess na = g.getNodeAccess();
         assertTrue(na.is3D());
@@ -179,6 +245,46 @@ public class BaseGraphTest extends AbstractGraphStorageTester {
         assertThrows(Exception.class, () -> graph.loadExisting());
     }
 
+    @Test
+    public void testCompactGeometryAndKeyValues() {
+        BaseGraph graph = createGHStorage();
+        EdgeIteratorState edge0 = graph.edge(0, 1).setWayGeometry(Helper.createPointList(1, 1, 2, 2)).
+                setKeyValues(Map.of(STREET_NAME, new KValue("a")));
+        // shrinking the geometry leaves unused space
+        edge0.setWayGeometry(Helper.createPointList(1.5, 1.5));
+        graph.edge(1, 2).setWayGeometry(Helper.createPointList(3, 3)).setKeyValues(Map.of(STREET_NAME, new KValue("b")));
+        graph.edge(2, 3).setKeyValues(Map.of(STREET_NAME, new KValue("b")));
+        graph.edge(3, 4).setWayGeometry(Helper.createPointList(4, 4, 5, 5, 6, 6));
+        graph.copyEdge(3, true);
+        long maxGeoRef = graph.getMaxGeoRef();
+        // the edges are reversed, so their geometries and key-values are no longer stored in edge order
+        graph.sortEdges(edge -> graph.getEdges() - 1 - edge);
+        graph.compactGeometryAndKeyValues();
+        assertTrue(graph.getMaxGeoRef() < maxGeoRef, graph.getMaxGeoRef() + " vs. " + maxGeoRef);
+
+        EdgeIteratorState edge = graph.getEdgeIteratorState(4, 1);
+        assertEquals(Helper.createPointList(1.5, 1.5), edge.fetchWayGeometry(FetchMode.PILLAR_ONLY));
+        assertEquals("a", edge.getName());
+        edge = graph.getEdgeIteratorState(3, 2);
+        assertEquals(Helper.createPointList(3, 3), edge.fetchWayGeometry(FetchMode.PILLAR_ONLY));
+        assertEquals("b", edge.getName());
+        edge = graph.getEdgeIteratorState(2, 3);
+        assertTrue(edge.fetchWayGeometry(FetchMode.PILLAR_ONLY).isEmpty());
+        assertEquals("b", edge.getName());
+        assertEquals(Helper.createPointList(4, 4, 5, 5, 6, 6), graph.getEdgeIteratorState(1, 4).fetchWayGeometry(FetchMode.PILLAR_ONLY));
+        assertEquals(Helper.createPointList(4, 4, 5, 5, 6, 6), graph.getEdgeIteratorState(0, 4).fetchWayGeometry(FetchMode.PILLAR_ONLY));
+        // the copy still shares the geometry with the original edge
+        IntArrayList copies = new IntArrayList();
+        graph.forEdgeAndCopiesOfEdge(graph.createEdgeExplorer(), 3, 1, copies::add);
+        assertEquals(IntArrayList.from(0, 1), copies);
+
+        // the compacted graph can be extended
+        graph.edge(5, 6).setWayGeometry(Helper.createPointList(7, 7)).setKeyValues(Map.of(STREET_NAME, new KValue("c")));
+        assertEquals(Helper.createPointList(7, 7), graph.getEdgeIteratorState(5, 6).fetchWayGeometry(FetchMode.PILLAR_ONLY));
+        assertEquals("c", graph.getEdgeIteratorState(5, 6).getName());
+        assertEquals("a", graph.getEdgeIteratorState(4, 1).getName());
+    }
+
     @Test
     public void testIdentical() {
         BaseGraph store = new BaseGraph.Builder(encodingManager).set3D(true).build();
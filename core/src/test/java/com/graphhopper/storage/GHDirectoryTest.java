@@ -5,6 +5,7 @@ import org.junit.jupiter.api.Test;
 import java.util.LinkedHashMap;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class GHDirectoryTest {
 
@@ -33,4 +34,18 @@ class GHDirectoryTest {
         assertEquals(DAType.MMAP, dir.getDefaultType("nodes_ch_car", false));
     }
 
+    @Test
+    public void testOffHeap() {
+        GHDirectory dir = new GHDirectory("", DAType.RAM_STORE);
+        LinkedHashMap<String, String> map = new LinkedHashMap<>();
+        map.put("edges", "OFF_HEAP");
+        map.put("nodes", "OFF_HEAP_STORE");
+        dir.configure(map);
+        assertEquals(DAType.OFF_HEAP, dir.getDefaultType("edges", true));
+        assertEquals(DAType.OFF_HEAP_STORE, dir.getDefaultType("nodes", true));
+        assertTrue(dir.create("edges") instanceof OffHeapDataAccess);
+        assertEquals(DAType.OFF_HEAP_STORE, dir.create("nodes").getType());
+        dir.close();
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,27 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.storage;
+
+public class GraphStorageViaOffHeapTest extends AbstractGraphStorageTester {
+    @Override
+    public BaseGraph createGHStorage(String location, boolean is3D) {
+        BaseGraph gs = new BaseGraph.Builder(encodingManager).set3D(is3D).setDir(new GHDirectory(location, DAType.OFF_HEAP_STORE)).setSegmentSize(defaultSize / 2).build();
+        gs.create(defaultSize);
+        return gs;
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.storage;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.IntDoubleHashMap;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TrafficOverlayTest {
+
+    @Test
+    void setSpeedFactors() {
+        TrafficOverlay overlay = new TrafficOverlay(10);
+        TrafficOverlay.Snapshot first = overlay.getSnapshot();
+        for (int edge = 0; edge < 10; edge++)
+            assertEquals(1, first.getSpeedFactor(edge));
+        assertEquals(1, first.getMaxSpeedFactor());
+
+        IntDoubleHashMap speedFactors = new IntDoubleHashMap();
+        speedFactors.put(3, 0.5);
+        speedFactors.put(5, 0);
+        speedFactors.put(7, 1.2);
+        speedFactors.put(8, 1);
+        assertEquals(IntArrayList.from(3, 5, 7), overlay.setSpeedFactors(speedFactors));
+        TrafficOverlay.Snapshot second = overlay.getSnapshot();
+        assertEquals(0.5, second.getSpeedFactor(3));
+        assertEquals(0, second.getSpeedFactor(5));
+        assertEquals(1.2, second.getSpeedFactor(7));
+        assertEquals(1, second.getSpeedFactor(8));
+        assertEquals(1.2, second.getMaxSpeedFactor());
+        assertEquals(first.getVersion() + 1, second.getVersion());
+        // the previous snapshot is not modified
+        assertEquals(1, first.getSpeedFactor(3));
+
+        // edges that are no longer contained are reset
+        speedFactors.clear();
+        speedFactors.put(3, 0.5);
+        assertEquals(IntArrayList.from(5, 7), overlay.setSpeedFactors(speedFactors));
+        assertEquals(1, overlay.getSnapshot().getSpeedFactor(5));
+        assertEquals(0.5, overlay.getSnapshot().getSpeedFactor(3));
+    }
+
+    @Test
+    void invalidSpeedFactors() {
+        TrafficOverlay overlay = new TrafficOverlay(10);
+        IntDoubleHashMap speedFactors = new IntDoubleHashMap();
+        speedFactors.put(10, 0.5);
+        assertThrows(IllegalArgumentException.class, () -> overlay.setSpeedFactors(speedFactors));
+        speedFactors.clear();
+        speedFactors.put(1, -0.1);
+        assertThrows(IllegalArgumentException.class, () -> overlay.setSpeedFactors(speedFactors));
+        speedFactors.clear();
+        speedFactors.put(1, 3);
+        assertThrows(IllegalArgumentException.class, () -> overlay.setSpeedFactors(speedFactors));
+        assertEquals(0, overlay.getSnapshot().getVersion());
+    }
+}
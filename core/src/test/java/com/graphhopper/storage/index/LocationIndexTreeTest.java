@@ -501,6 +501,40 @@ public class LocationIndexTreeTest {
         g.close();
     }
 
+    @ParameterizedTest
+    @ValueSource(ints = {1, 3})
+    public void testFindClosestBatch(int threads) {
+        BaseGraph g = createSampleGraph(encodingManager, speedEnc);
+        // points in the same tile share the edges, but the edge filter must still be applied
+        EdgeFilter filter = edge -> edge.getEdge() % 3 != 0;
+        for (int resolution : new int[]{500, 50_000, 500_000}) {
+            LocationIndexTree idx = (LocationIndexTree) createIndexNoPrepare(g, resolution).prepareIndex();
+            Random rand = new Random(resolution);
+            List<GHPoint> points = new ArrayList<>();
+            for (int i = 0; i < 500; i++)
+                points.add(new GHPoint(rand.nextDouble() * 6 - 0.5, rand.nextDouble() * 6 - 0.5));
+            // duplicate points
+            points.add(points.get(0));
+            points.add(points.get(0));
+            List<Snap> snaps = idx.findClosestBatch(points, filter, threads);
+            assertEquals(points.size(), snaps.size());
+            for (int i = 0; i < points.size(); i++) {
+                Snap expected = idx.findClosest(points.get(i).lat, points.get(i).lon, filter);
+                Snap snap = snaps.get(i);
+                assertEquals(points.get(i), snap.getQueryPoint());
+                assertEquals(expected.isValid(), snap.isValid());
+                if (!expected.isValid())
+                    continue;
+                assertEquals(expected.getClosestEdge().getEdgeKey(), snap.getClosestEdge().getEdgeKey(), "point " + i);
+                assertEquals(expected.getClosestNode(), snap.getClosestNode());
+                assertEquals(expected.getWayIndex(), snap.getWayIndex());
+                assertEquals(expected.getSnappedPosition(), snap.getSnappedPosition());
+                assertEquals(expected.getQueryDistance(), snap.getQueryDistance(), 1.e-6);
+            }
+        }
+        g.close();
+    }
+
     @Test
     public void testNoErrorOnEdgeCase_lastIndex() {
         final EncodingManager encodingManager = new EncodingManager.Builder().build();
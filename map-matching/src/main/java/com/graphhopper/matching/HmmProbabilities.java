@@ -62,4 +62,15 @@ public class HmmProbabilities {
         return Distributions.logExponentialDistribution(beta, transitionMetric);
     }
 
+    /**
+     * Returns the length [m] of the longest route between two consecutive map matching candidates whose transition
+     * log probability is still at least minTransitionLogProbability.
+     *
+     * @param linearDistance Linear distance [m] between two consecutive GPS
+     *                       measurements.
+     */
+    public double maxRouteLength(double linearDistance, double minTransitionLogProbability) {
+        return linearDistance + beta * (Math.log(1.0 / beta) - minTransitionLogProbability);
+    }
+
 }
@@ -19,19 +19,15 @@ package com.graphhopper.matching;
 
 import com.carrotsearch.hppc.IntHashSet;
 import com.graphhopper.GraphHopper;
+import com.graphhopper.coll.MinHeapWithUpdate;
 import com.graphhopper.config.Profile;
-import com.graphhopper.routing.AStarBidirection;
-import com.graphhopper.routing.DijkstraBidirectionRef;
 import com.graphhopper.routing.Path;
 import com.graphhopper.routing.ev.BooleanEncodedValue;
 import com.graphhopper.routing.ev.Subnetwork;
-import com.graphhopper.routing.lm.LMApproximator;
-import com.graphhopper.routing.lm.LandmarkStorage;
 import com.graphhopper.routing.querygraph.QueryGraph;
 import com.graphhopper.routing.querygraph.VirtualEdgeIteratorState;
 import com.graphhopper.routing.util.DefaultSnapFilter;
 import com.graphhopper.routing.util.EdgeFilter;
-import com.graphhopper.routing.util.TraversalMode;
 import com.graphhopper.routing.weighting.Weighting;
 import com.graphhopper.storage.BaseGraph;
 import com.graphhopper.storage.Graph;
@@ -71,6 +67,13 @@ public class MapMatching {
     private final LocationIndexTree locationIndex;
     private double measurementErrorSigma = 10.0;
     private double transitionProbabilityBeta = 2.0;
+    // transitions that are less likely are treated as impossible, so the route search does not need to explore them
+    static final double MIN_TRANSITION_LOG_PROBABILITY = -500;
+    /**
+     * The maximum number of visited nodes of the search without distance limit, which is only used if no candidate of
+     * the next observation is reachable within the distance limit. Unlimited by default, like max_visited_nodes.
+     */
+    public static final String FALLBACK_MAX_VISITED_NODES = "fallback_max_visited_nodes";
     private final DistanceCalc distanceCalc = new DistancePlaneProjection();
     private QueryGraph queryGraph;
 
@@ -104,26 +107,21 @@ public class MapMatching {
             throw new IllegalArgumentException("Could not find profile '" + profileStr + "', choose one of: " + profileNames);
         }
 
-        boolean disableLM = hints.getBool(Parameters.Landmark.DISABLE, false);
-        boolean disableCH = hints.getBool(Parameters.CH.DISABLE, false);
-
-        // see map-matching/#177: both ch.disable and lm.disable can be used to force Dijkstra which is the better
-        // (=faster) choice when the observations are close to each other
-        boolean useDijkstra = disableLM || disableCH;
-
-        LandmarkStorage landmarks;
-        if (!useDijkstra && graphHopper.getLandmarks().get(profile.getName()) != null) {
-            // using LM because u-turn prevention does not work properly with (node-based) CH
-            landmarks = graphHopper.getLandmarks().get(profile.getName());
-        } else {
-            landmarks = null;
-        }
+        // CH and LM are not used: the candidates of consecutive observations are close to each other, so a single
+        // one-to-many Dijkstra for all candidates of the next observation is faster, see map-matching/#177. The
+        // lm.disable and ch.disable hints can still be used to request Dijkstra, but not to request LM or CH.
+        for (String disable : List.of(Parameters.Landmark.DISABLE, Parameters.CH.DISABLE))
+            if (hints.has(disable) && !hints.getBool(disable, true))
+                throw new IllegalArgumentException("Map matching does not use LM or CH, so " + disable + "=false is not supported");
         Weighting weighting = graphHopper.createWeighting(profile, hints);
         BooleanEncodedValue inSubnetworkEnc = graphHopper.getEncodingManager().getBooleanEncodedValue(Subnetwork.key(profileStr));
         DefaultSnapFilter snapFilter = new DefaultSnapFilter(weighting, inSubnetworkEnc);
         int maxVisitedNodes = hints.getInt(Parameters.Routing.MAX_VISITED_NODES, Integer.MAX_VALUE);
+        int fallbackMaxVisitedNodes = hints.getInt(FALLBACK_MAX_VISITED_NODES, maxVisitedNodes);
 
         Router router = new Router() {
+            private long visitedNodes;
+
             @Override
             public EdgeFilter getSnapFilter() {
                 return snapFilter;
@@ -131,38 +129,31 @@ public class MapMatching {
 
             @Override
             public List<Path> calcPaths(QueryGraph queryGraph, int fromNode, int fromOutEdge, int[] toNodes, int[] toInEdges) {
-                assert (toNodes.length == toInEdges.length);
-                List<Path> result = new ArrayList<>();
-                for (int i = 0; i < toNodes.length; i++) {
-                    result.add(calcOnePath(queryGraph, fromNode, toNodes[i], fromOutEdge, toInEdges[i]));
-                }
-                return result;
+                return calcPaths(queryGraph, fromNode, fromOutEdge, toNodes, toInEdges, Double.POSITIVE_INFINITY);
             }
 
-            private Path calcOnePath(QueryGraph queryGraph, int fromNode, int toNode, int fromOutEdge, int toInEdge) {
-                Weighting queryGraphWeighting = queryGraph.wrapWeighting(weighting);
-                if (landmarks != null) {
-                    AStarBidirection aStarBidirection = new AStarBidirection(queryGraph, queryGraphWeighting, TraversalMode.EDGE_BASED) {
-                        @Override
-                        protected void initCollections(int size) {
-                            super.initCollections(50);
-                        }
-                    };
-                    int activeLM = Math.min(8, landmarks.getLandmarkCount());
-                    LMApproximator lmApproximator = LMApproximator.forLandmarks(queryGraph, queryGraphWeighting, landmarks, activeLM);
-                    aStarBidirection.setApproximation(lmApproximator);
-                    aStarBidirection.setMaxVisitedNodes(maxVisitedNodes);
-                    return aStarBidirection.calcPath(fromNode, toNode, fromOutEdge, toInEdge);
-                } else {
-                    DijkstraBidirectionRef dijkstraBidirectionRef = new DijkstraBidirectionRef(queryGraph, queryGraphWeighting, TraversalMode.EDGE_BASED) {
-                        @Override
-                        protected void initCollections(int size) {
-                            super.initCollections(50);
-                        }
-                    };
-                    dijkstraBidirectionRef.setMaxVisitedNodes(maxVisitedNodes);
-                    return dijkstraBidirectionRef.calcPath(fromNode, toNode, fromOutEdge, toInEdge);
-                }
+            @Override
+            public List<Path> calcPaths(QueryGraph queryGraph, int fromNode, int fromOutEdge, int[] toNodes, int[] toInEdges, double maxDistance) {
+                List<Path> paths = calcPaths(queryGraph, fromNode, fromOutEdge, toNodes, toInEdges, maxDistance, maxVisitedNodes);
+                if (Double.isFinite(maxDistance) && paths.stream().noneMatch(Path::isFound))
+                    // e.g. a one-way road can require a long detour. such a transition is very unlikely, but it is
+                    // still better than a broken sequence. if the detour is too long the sequence is broken anyway.
+                    return calcPaths(queryGraph, fromNode, fromOutEdge, toNodes, toInEdges, Double.POSITIVE_INFINITY, fallbackMaxVisitedNodes);
+                return paths;
+            }
+
+            private List<Path> calcPaths(QueryGraph queryGraph, int fromNode, int fromOutEdge, int[] toNodes, int[] toInEdges, double maxDistance, int maxVisitedNodes) {
+                OneToManyDijkstra dijkstra = new OneToManyDijkstra(queryGraph, queryGraph.wrapWeighting(weighting));
+                // the search replaces one search per target node, so it may visit as many nodes as all of them together
+                dijkstra.setMaxVisitedNodes((int) Math.min(Integer.MAX_VALUE, (long) maxVisitedNodes * Math.max(1, toNodes.length)));
+                List<Path> paths = dijkstra.calcPaths(fromNode, fromOutEdge, toNodes, toInEdges, maxDistance);
+                visitedNodes += dijkstra.getVisitedNodes();
+                return paths;
+            }
+
+            @Override
+            public long getVisitedNodes() {
+                return visitedNodes;
             }
 
             @Override
@@ -335,126 +326,155 @@ public class MapMatching {
         final List<ObservationWithCandidateStates> timeSteps = new ArrayList<>();
         for (int i = 0; i < filteredObservations.size(); i++) {
             Observation observation = filteredObservations.get(i);
-            Collection<Snap> splits = splitsPerObservation.get(i);
-            List<State> candidates = new ArrayList<>();
-            for (Snap split : splits) {
-                if (queryGraph.isVirtualNode(split.getClosestNode())) {
-                    List<VirtualEdgeIteratorState> virtualEdges = new ArrayList<>();
-                    EdgeIterator iter = queryGraph.createEdgeExplorer().setBaseNode(split.getClosestNode());
-                    while (iter.next()) {
-                        if (!queryGraph.isVirtualEdge(iter.getEdge())) {
-                            throw new RuntimeException("Virtual nodes must only have virtual edges "
-                                    + "to adjacent nodes.");
-                        }
-                        virtualEdges.add((VirtualEdgeIteratorState) queryGraph.getEdgeIteratorState(iter.getEdge(), iter.getAdjNode()));
-                    }
-                    if (virtualEdges.size() != 2) {
-                        throw new RuntimeException("Each virtual node must have exactly 2 "
-                                + "virtual edges (reverse virtual edges are not returned by the "
-                                + "EdgeIterator");
-                    }
-
-                    // Create a directed candidate for each of the two possible directions through
-                    // the virtual node. We need to add candidates for both directions because
-                    // we don't know yet which is the correct one. This will be figured
-                    // out by the Viterbi algorithm.
-                    candidates.add(new State(observation, split, virtualEdges.get(0), virtualEdges.get(1)));
-                    candidates.add(new State(observation, split, virtualEdges.get(1), virtualEdges.get(0)));
-                } else {
-                    // Create an undirected candidate for the real node.
-                    candidates.add(new State(observation, split));
-                }
-            }
-
+            List<State> candidates = createStates(queryGraph, observation, splitsPerObservation.get(i));
             timeSteps.add(new ObservationWithCandidateStates(observation, candidates));
         }
         return timeSteps;
     }
 
-    static class Label {
-        int timeStep;
-        State state;
-        Label back;
-        boolean isDeleted;
-        double minusLogProbability;
+    /**
+     * Creates the candidates of one observation in the order of the specified Snaps. The Snaps must be part of the
+     * specified query graph.
+     */
+    static List<State> createStates(QueryGraph queryGraph, Observation observation, Collection<Snap> splits) {
+        List<State> candidates = new ArrayList<>();
+        for (Snap split : splits) {
+            if (queryGraph.isVirtualNode(split.getClosestNode())) {
+                List<VirtualEdgeIteratorState> virtualEdges = new ArrayList<>();
+                EdgeIterator iter = queryGraph.createEdgeExplorer().setBaseNode(split.getClosestNode());
+                while (iter.next()) {
+                    if (!queryGraph.isVirtualEdge(iter.getEdge())) {
+                        throw new RuntimeException("Virtual nodes must only have virtual edges "
+                                + "to adjacent nodes.");
+                    }
+                    virtualEdges.add((VirtualEdgeIteratorState) queryGraph.getEdgeIteratorState(iter.getEdge(), iter.getAdjNode()));
+                }
+                if (virtualEdges.size() != 2) {
+                    throw new RuntimeException("Each virtual node must have exactly 2 "
+                            + "virtual edges (reverse virtual edges are not returned by the "
+                            + "EdgeIterator");
+                }
+
+                // Create a directed candidate for each of the two possible directions through
+                // the virtual node. We need to add candidates for both directions because
+                // we don't know yet which is the correct one. This will be figured
+                // out by the Viterbi algorithm.
+                candidates.add(new State(observation, split, virtualEdges.get(0), virtualEdges.get(1)));
+                candidates.add(new State(observation, split, virtualEdges.get(1), virtualEdges.get(0)));
+            } else {
+                // Create an undirected candidate for the real node.
+                candidates.add(new State(observation, split));
+            }
+        }
+        return candidates;
     }
 
+    /**
+     * Finds the most likely sequence of candidates. The candidates of all time steps form a lattice with consecutive
+     * indices per time step, and the lattice is searched best-first, so the transitions are only calculated for
+     * candidates that can still be part of the most likely sequence. Only the probability and the predecessor of every
+     * candidate are stored in arrays, which keeps the memory usage low even for long tracks. The paths are calculated
+     * again for the transitions of the most likely sequence only.
+     */
     private List<SequenceState<State, Observation, Path>> computeViterbiSequence(List<ObservationWithCandidateStates> timeSteps) {
         if (timeSteps.isEmpty()) {
             return Collections.emptyList();
         }
 
         final HmmProbabilities probabilities = new HmmProbabilities(measurementErrorSigma, transitionProbabilityBeta);
-        final Map<State, Label> labels = new HashMap<>();
-        Map<Transition<State>, Path> roadPaths = new HashMap<>();
-
-        PriorityQueue<Label> q = new PriorityQueue<>(Comparator.comparing(qe -> qe.minusLogProbability));
-        for (State candidate : timeSteps.get(0).candidates) {
+        int[] firstCandidates = new int[timeSteps.size() + 1];
+        for (int t = 0; t < timeSteps.size(); t++)
+            firstCandidates[t + 1] = firstCandidates[t] + timeSteps.get(t).candidates.size();
+        int candidates = firstCandidates[timeSteps.size()];
+        int[] timeStepOfCandidate = new int[candidates];
+        for (int t = 0; t < timeSteps.size(); t++)
+            Arrays.fill(timeStepOfCandidate, firstCandidates[t], firstCandidates[t + 1], t);
+        double[] minusLogProbabilities = new double[candidates];
+        Arrays.fill(minusLogProbabilities, Double.POSITIVE_INFINITY);
+        int[] parents = new int[candidates];
+        Arrays.fill(parents, -1);
+
+        // the cumulative probabilities of long tracks need double precision
+        MinHeapWithUpdate heap = new MinHeapWithUpdate(candidates);
+        for (int i = 0; i < timeSteps.get(0).candidates.size(); i++) {
             // distance from observation to road in meters
-            final double distance = candidate.getSnap().getQueryDistance();
-            Label label = new Label();
-            label.state = candidate;
-            label.minusLogProbability = probabilities.emissionLogProbability(distance) * -1.0;
-            q.add(label);
-            labels.put(candidate, label);
+            final double distance = timeSteps.get(0).candidates.get(i).getSnap().getQueryDistance();
+            minusLogProbabilities[i] = probabilities.emissionLogProbability(distance) * -1.0;
+            heap.push(i, minusLogProbabilities[i]);
         }
-        Label qe = null;
-        while (!q.isEmpty()) {
-            qe = q.poll();
-            if (qe.isDeleted)
-                continue;
-            if (qe.timeStep == timeSteps.size() - 1)
+        int current = -1;
+        while (!heap.isEmpty()) {
+            current = heap.poll();
+            int timeStepIndex = timeStepOfCandidate[current];
+            if (timeStepIndex == timeSteps.size() - 1)
                 break;
-            State from = qe.state;
-            ObservationWithCandidateStates timeStep = timeSteps.get(qe.timeStep);
-            ObservationWithCandidateStates nextTimeStep = timeSteps.get(qe.timeStep + 1);
-            final double linearDistance = distanceCalc.calcDist(timeStep.observation.getPoint().lat, timeStep.observation.getPoint().lon,
-                    nextTimeStep.observation.getPoint().lat, nextTimeStep.observation.getPoint().lon)
-                    + nextTimeStep.observation.getAccumulatedLinearDistanceToPrevious();
-            int fromNode = from.getSnap().getClosestNode();
-            int fromOutEdge = from.isOnDirectedEdge() ? from.getOutgoingVirtualEdge().getEdge() : EdgeIterator.ANY_EDGE;
-            int[] toNodes = nextTimeStep.candidates.stream().mapToInt(c -> c.getSnap().getClosestNode()).toArray();
-            int[] toInEdges = nextTimeStep.candidates.stream().mapToInt(to -> to.isOnDirectedEdge() ? to.getIncomingVirtualEdge().getEdge() : EdgeIterator.ANY_EDGE).toArray();
-            List<Path> paths = router.calcPaths(queryGraph, fromNode, fromOutEdge, toNodes, toInEdges);
+            State from = timeSteps.get(timeStepIndex).candidates.get(current - firstCandidates[timeStepIndex]);
+            ObservationWithCandidateStates nextTimeStep = timeSteps.get(timeStepIndex + 1);
+            final double linearDistance = calcLinearDistance(timeSteps.get(timeStepIndex), nextTimeStep);
+            List<Path> paths = calcTransitionPaths(probabilities, from, nextTimeStep, linearDistance);
             for (int i = 0; i < nextTimeStep.candidates.size(); i++) {
                 State to = nextTimeStep.candidates.get(i);
                 Path path = paths.get(i);
                 if (path.isFound()) {
                     double transitionLogProbability = probabilities.transitionLogProbability(path.getDistance(), linearDistance);
-                    Transition<State> transition = new Transition<>(from, to);
-                    roadPaths.put(transition, path);
-                    double minusLogProbability = qe.minusLogProbability - probabilities.emissionLogProbability(to.getSnap().getQueryDistance()) - transitionLogProbability;
-                    Label label1 = labels.get(to);
-                    if (label1 == null || minusLogProbability < label1.minusLogProbability) {
-                        q.stream().filter(oldQe -> !oldQe.isDeleted && oldQe.state == to).findFirst().ifPresent(oldQe -> oldQe.isDeleted = true);
-                        Label label = new Label();
-                        label.state = to;
-                        label.timeStep = qe.timeStep + 1;
-                        label.back = qe;
-                        label.minusLogProbability = minusLogProbability;
-                        q.add(label);
-                        labels.put(to, label);
+                    double minusLogProbability = minusLogProbabilities[current] - probabilities.emissionLogProbability(to.getSnap().getQueryDistance()) - transitionLogProbability;
+                    int next = firstCandidates[timeStepIndex + 1] + i;
+                    if (minusLogProbability < minusLogProbabilities[next]) {
+                        minusLogProbabilities[next] = minusLogProbability;
+                        parents[next] = current;
+                        if (heap.contains(next))
+                            heap.update(next, minusLogProbability);
+                        else
+                            heap.push(next, minusLogProbability);
                     }
                 }
             }
         }
-        if (qe == null) {
+        if (current < 0) {
             throw new IllegalArgumentException("Sequence is broken for submitted track at initial time step.");
         }
-        if (qe.timeStep != timeSteps.size() - 1) {
+        if (timeStepOfCandidate[current] != timeSteps.size() - 1) {
+            int timeStepIndex = timeStepOfCandidate[current];
             throw new IllegalArgumentException("Sequence is broken for submitted track at time step "
-                    + qe.timeStep + ". observation:" + qe.state.getEntry());
+                    + timeStepIndex + ". observation:" + timeSteps.get(timeStepIndex).observation);
         }
         ArrayList<SequenceState<State, Observation, Path>> result = new ArrayList<>();
-        while (qe != null) {
-            final SequenceState<State, Observation, Path> ss = new SequenceState<>(qe.state, qe.state.getEntry(), qe.back == null ? null : roadPaths.get(new Transition<>(qe.back.state, qe.state)));
-            result.add(ss);
-            qe = qe.back;
+        State state = timeSteps.get(timeSteps.size() - 1).candidates.get(current - firstCandidates[timeSteps.size() - 1]);
+        while (current >= 0) {
+            int parent = parents[current];
+            State parentState = null;
+            Path path = null;
+            if (parent >= 0) {
+                int timeStepIndex = timeStepOfCandidate[parent];
+                parentState = timeSteps.get(timeStepIndex).candidates.get(parent - firstCandidates[timeStepIndex]);
+                // repeat the search of the transition exactly, so we get the same path that was used for the probability
+                ObservationWithCandidateStates timeStep = timeSteps.get(timeStepIndex + 1);
+                double linearDistance = calcLinearDistance(timeSteps.get(timeStepIndex), timeStep);
+                path = calcTransitionPaths(probabilities, parentState, timeStep, linearDistance).get(current - firstCandidates[timeStepIndex + 1]);
+            }
+            result.add(new SequenceState<>(state, state.getEntry(), path));
+            current = parent;
+            state = parentState;
         }
         Collections.reverse(result);
         return result;
     }
 
+    private List<Path> calcTransitionPaths(HmmProbabilities probabilities, State from, ObservationWithCandidateStates nextTimeStep, double linearDistance) {
+        int fromNode = from.getSnap().getClosestNode();
+        int fromOutEdge = from.isOnDirectedEdge() ? from.getOutgoingVirtualEdge().getEdge() : EdgeIterator.ANY_EDGE;
+        int[] toNodes = nextTimeStep.candidates.stream().mapToInt(c -> c.getSnap().getClosestNode()).toArray();
+        int[] toInEdges = nextTimeStep.candidates.stream().mapToInt(to -> to.isOnDirectedEdge() ? to.getIncomingVirtualEdge().getEdge() : EdgeIterator.ANY_EDGE).toArray();
+        double maxRouteLength = probabilities.maxRouteLength(linearDistance, MIN_TRANSITION_LOG_PROBABILITY);
+        return router.calcPaths(queryGraph, fromNode, fromOutEdge, toNodes, toInEdges, maxRouteLength);
+    }
+
+    private double calcLinearDistance(ObservationWithCandidateStates timeStep, ObservationWithCandidateStates nextTimeStep) {
+        return distanceCalc.calcDist(timeStep.observation.getPoint().lat, timeStep.observation.getPoint().lon,
+                nextTimeStep.observation.getPoint().lat, nextTimeStep.observation.getPoint().lon)
+                + nextTimeStep.observation.getAccumulatedLinearDistanceToPrevious();
+    }
+
     private List<EdgeMatch> prepareEdgeMatches(List<SequenceState<State, Observation, Path>> seq) {
         // This creates a list of directed edges (EdgeIteratorState instances turned the right way),
         // each associated with 0 or more of the observations.
@@ -480,7 +500,7 @@ public class MapMatching {
             // transition (except before the first state)
             if (transitionAndState.transitionDescriptor != null) {
                 for (EdgeIteratorState edge : transitionAndState.transitionDescriptor.calcEdges()) {
-                    EdgeIteratorState newDirectedRealEdge = resolveToRealEdge(edge);
+                    EdgeIteratorState newDirectedRealEdge = resolveToRealEdge(graph, queryGraph, edge);
                     if (currentDirectedRealEdge != null) {
                         if (!equalEdges(currentDirectedRealEdge, newDirectedRealEdge)) {
                             EdgeMatch edgeMatch = new EdgeMatch(currentDirectedRealEdge, states);
@@ -493,7 +513,7 @@ public class MapMatching {
             }
             // state
             if (transitionAndState.state.isOnDirectedEdge()) { // as opposed to on a node
-                EdgeIteratorState newDirectedRealEdge = resolveToRealEdge(transitionAndState.state.getOutgoingVirtualEdge());
+                EdgeIteratorState newDirectedRealEdge = resolveToRealEdge(graph, queryGraph, transitionAndState.state.getOutgoingVirtualEdge());
                 if (currentDirectedRealEdge != null) {
                     if (!equalEdges(currentDirectedRealEdge, newDirectedRealEdge)) {
                         EdgeMatch edgeMatch = new EdgeMatch(currentDirectedRealEdge, states);
@@ -527,13 +547,13 @@ public class MapMatching {
         }
     }
 
-    private boolean equalEdges(EdgeIteratorState edge1, EdgeIteratorState edge2) {
+    static boolean equalEdges(EdgeIteratorState edge1, EdgeIteratorState edge2) {
         return edge1.getEdge() == edge2.getEdge()
                 && edge1.getBaseNode() == edge2.getBaseNode()
                 && edge1.getAdjNode() == edge2.getAdjNode();
     }
 
-    private EdgeIteratorState resolveToRealEdge(EdgeIteratorState edgeIteratorState) {
+    static EdgeIteratorState resolveToRealEdge(BaseGraph graph, QueryGraph queryGraph, EdgeIteratorState edgeIteratorState) {
         if (queryGraph.isVirtualNode(edgeIteratorState.getBaseNode()) || queryGraph.isVirtualNode(edgeIteratorState.getAdjNode())) {
             return graph.getEdgeIteratorStateForKey(((VirtualEdgeIteratorState) edgeIteratorState).getOriginalEdgeKey());
         } else {
@@ -569,6 +589,15 @@ public class MapMatching {
 
         List<Path> calcPaths(QueryGraph queryGraph, int fromNode, int fromOutEdge, int[] toNodes, int[] toInEdges);
 
+        /**
+         * Like {@link #calcPaths(QueryGraph, int, int, int[], int[])}, but paths that are longer than maxDistance [m]
+         * do not need to be found. If none of the targets can be reached within maxDistance the paths should be
+         * calculated without this limit, but with a limited search effort.
+         */
+        default List<Path> calcPaths(QueryGraph queryGraph, int fromNode, int fromOutEdge, int[] toNodes, int[] toInEdges, double maxDistance) {
+            return calcPaths(queryGraph, fromNode, fromOutEdge, toNodes, toInEdges);
+        }
+
         Weighting getWeighting();
 
         default long getVisitedNodes() {
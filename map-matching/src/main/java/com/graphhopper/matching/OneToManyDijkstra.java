@@ -0,0 +1,146 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.matching;
+
+import com.carrotsearch.hppc.IntHashSet;
+import com.carrotsearch.hppc.IntObjectMap;
+import com.graphhopper.coll.GHIntObjectHashMap;
+import com.graphhopper.routing.AbstractRoutingAlgorithm;
+import com.graphhopper.routing.Path;
+import com.graphhopper.routing.PathExtractor;
+import com.graphhopper.routing.SPTEntry;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.Graph;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.GHUtility;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import static com.graphhopper.util.EdgeIterator.ANY_EDGE;
+
+/**
+ * An edge-based Dijkstra that calculates the paths from one start to many targets with a single search. The candidates
+ * of the next observation are close to each other, so one search that stops as soon as all of them are settled is a
+ * lot cheaper than one bidirectional search per candidate. Paths that are longer than the specified maximum distance
+ * are not explored.
+ * <p>
+ * The distance limit is approximate: like in every Dijkstra only the lightest path is kept per edge, even if a heavier
+ * path to the same edge is shorter. If the lighter path can only be continued to a target by exceeding the maximum
+ * distance, the target is reported as not found although the shorter prefix would have reached it within the limit.
+ * For map matching this is fine, because the transitions to such targets are very unlikely anyway.
+ */
+class OneToManyDijkstra extends AbstractRoutingAlgorithm {
+    private final IntObjectMap<DistanceEntry> bestEntries = new GHIntObjectHashMap<>(50);
+    private final PriorityQueue<DistanceEntry> heap = new PriorityQueue<>(50);
+    private int visitedNodes;
+
+    OneToManyDijkstra(Graph graph, Weighting weighting) {
+        super(graph, weighting, TraversalMode.EDGE_BASED);
+    }
+
+    @Override
+    public Path calcPath(int from, int to) {
+        return calcPaths(from, ANY_EDGE, new int[]{to}, new int[]{ANY_EDGE}, Double.POSITIVE_INFINITY).get(0);
+    }
+
+    /**
+     * @param fromOutEdge the edge all paths have to start with or ANY_EDGE
+     * @param toInEdges   the edge the path to the target with the same index has to end with or ANY_EDGE
+     * @param maxDistance paths longer than this distance [m] are not explored. Targets that can only be reached via a
+     *                    heavier but shorter prefix are missed, see above.
+     * @return the paths to the targets in the order of toNodes. Paths that were not found are marked as not found.
+     */
+    List<Path> calcPaths(int from, int fromOutEdge, int[] toNodes, int[] toInEdges, double maxDistance) {
+        if (toNodes.length != toInEdges.length)
+            throw new IllegalArgumentException("toNodes and toInEdges must have the same length, " + toNodes.length + " vs. " + toInEdges.length);
+        checkAlreadyRun();
+        setupFinishTime();
+        IntHashSet targetNodes = new IntHashSet(toNodes.length);
+        targetNodes.addAll(toNodes);
+        SPTEntry[] targetEntries = new SPTEntry[toNodes.length];
+        int remainingTargets = toNodes.length;
+        heap.add(new DistanceEntry(EdgeIterator.NO_EDGE, from, 0, 0, null));
+        while (!heap.isEmpty() && remainingTargets > 0) {
+            DistanceEntry curr = heap.poll();
+            if (curr.isDeleted())
+                continue;
+            visitedNodes++;
+            if (isMaxVisitedNodesExceeded() || isTimeoutExceeded())
+                break;
+
+            if (targetNodes.contains(curr.adjNode)) {
+                for (int i = 0; i < toNodes.length; i++) {
+                    if (targetEntries[i] != null || toNodes[i] != curr.adjNode)
+                        continue;
+                    // like for the bidirectional algorithms the empty path is only a solution if no edge is restricted
+                    boolean accepted = toInEdges[i] == ANY_EDGE
+                            ? curr.parent != null || fromOutEdge == ANY_EDGE
+                            : curr.edge == toInEdges[i];
+                    if (accepted) {
+                        targetEntries[i] = curr;
+                        remainingTargets--;
+                    }
+                }
+            }
+
+            EdgeIterator iter = edgeExplorer.setBaseNode(curr.adjNode);
+            while (iter.next()) {
+                if (curr.parent == null && fromOutEdge != ANY_EDGE && iter.getEdge() != fromOutEdge)
+                    continue;
+                double weight = GHUtility.calcWeightWithTurnWeight(weighting, iter, false, curr.edge) + curr.weight;
+                if (Double.isInfinite(weight))
+                    continue;
+                double distance = curr.distance + iter.getDistance();
+                if (distance > maxDistance)
+                    continue;
+                int traversalId = traversalMode.createTraversalId(iter, false);
+                DistanceEntry entry = bestEntries.get(traversalId);
+                if (entry != null) {
+                    if (entry.weight <= weight)
+                        continue;
+                    entry.setDeleted();
+                }
+                entry = new DistanceEntry(iter.getEdge(), iter.getAdjNode(), weight, distance, curr);
+                bestEntries.put(traversalId, entry);
+                heap.add(entry);
+            }
+        }
+
+        List<Path> paths = new ArrayList<>(toNodes.length);
+        for (SPTEntry targetEntry : targetEntries)
+            paths.add(targetEntry == null ? createEmptyPath() : PathExtractor.extractPath(graph, weighting, targetEntry));
+        return paths;
+    }
+
+    @Override
+    public int getVisitedNodes() {
+        return visitedNodes;
+    }
+
+    private static class DistanceEntry extends SPTEntry {
+        final double distance;
+
+        DistanceEntry(int edge, int adjNode, double weight, double distance, DistanceEntry parent) {
+            super(edge, adjNode, weight, parent);
+            this.distance = distance;
+        }
+    }
+}
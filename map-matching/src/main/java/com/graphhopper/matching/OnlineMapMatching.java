@@ -0,0 +1,376 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.matching;
+
+import com.graphhopper.routing.Path;
+import com.graphhopper.routing.querygraph.QueryGraph;
+import com.graphhopper.routing.querygraph.VirtualEdgeIteratorState;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.storage.index.LocationIndexTree;
+import com.graphhopper.storage.index.Snap;
+import com.graphhopper.util.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Matches observations to the road network as they arrive, e.g. the live positions of a vehicle. Unlike
+ * {@link MapMatching} this does not need the complete track: every call of {@link #add(Observation)} extends the
+ * Viterbi lattice by one time step and returns the EdgeMatches that are final, because the most likely paths of all
+ * current candidates share them. If the paths do not converge within {@link #setMaxLag(int) maxLag} time steps the
+ * path of the currently most likely candidate is finalized. The transitions of every time step are calculated on a
+ * query graph that only contains the candidates of this and the previous observation, so memory and latency do not
+ * grow with the length of the track.
+ * <p>
+ * Call {@link #finish()} after the last observation to get the remaining EdgeMatches. An instance matches a single
+ * track and is not thread-safe.
+ */
+public class OnlineMapMatching {
+    private final BaseGraph graph;
+    private final MapMatching.Router router;
+    private final MapMatching candidateFinder;
+    private final DistanceCalc distanceCalc = new DistancePlaneProjection();
+    private double measurementErrorSigma = 10.0;
+    private double transitionProbabilityBeta = 2.0;
+    private int maxLag = 50;
+
+    // the state of the observation filter, see MapMatching.filterObservations
+    private Observation prevObservation;
+    private Observation prevKeptObservation;
+    private double accumulatedDistance;
+
+    // the labels of the candidates of the last kept observation, the older labels are only referenced via Label.back
+    private List<Label> labels;
+    private List<Snap> prevSnaps;
+    private int timeStep = -1;
+    private Label lastFinalized;
+
+    // the last EdgeMatch stays open, because the next finalized states can still be on the same edge
+    private EdgeIteratorState currentEdge;
+    private List<State> currentStates = new ArrayList<>();
+    private boolean finished;
+
+    public OnlineMapMatching(BaseGraph graph, LocationIndexTree locationIndex, MapMatching.Router router) {
+        this.graph = graph;
+        this.router = router;
+        this.candidateFinder = new MapMatching(graph, locationIndex, router);
+    }
+
+    /**
+     * @see MapMatching#setTransitionProbabilityBeta(double)
+     */
+    public OnlineMapMatching setTransitionProbabilityBeta(double transitionProbabilityBeta) {
+        this.transitionProbabilityBeta = transitionProbabilityBeta;
+        return this;
+    }
+
+    /**
+     * @see MapMatching#setMeasurementErrorSigma(double)
+     */
+    public OnlineMapMatching setMeasurementErrorSigma(double measurementErrorSigma) {
+        this.measurementErrorSigma = measurementErrorSigma;
+        candidateFinder.setMeasurementErrorSigma(measurementErrorSigma);
+        return this;
+    }
+
+    /**
+     * The maximum number of time steps that are kept in the Viterbi lattice before the most likely path is finalized.
+     * A larger value gives the same result as {@link MapMatching} more often but needs more memory and delays the
+     * EdgeMatches if the paths do not converge.
+     */
+    public OnlineMapMatching setMaxLag(int maxLag) {
+        if (maxLag < 0)
+            throw new IllegalArgumentException("maxLag must not be negative, but was: " + maxLag);
+        this.maxLag = maxLag;
+        return this;
+    }
+
+    /**
+     * Adds the next observation of the track.
+     *
+     * @return the EdgeMatches that became final, in the order of the track
+     */
+    public List<EdgeMatch> add(Observation observation) {
+        if (finished)
+            throw new IllegalStateException("Cannot add observations after finish() was called");
+        List<EdgeMatch> result = new ArrayList<>();
+        if (prevObservation == null) {
+            observation.setAccumulatedLinearDistanceToPrevious(0);
+            addTimeStep(observation, result);
+        } else if (calcDist(prevKeptObservation, observation) > 2 * measurementErrorSigma) {
+            accumulatedDistance += calcDist(prevObservation, observation) - calcDist(prevKeptObservation, observation);
+            observation.setAccumulatedLinearDistanceToPrevious(accumulatedDistance);
+            addTimeStep(observation, result);
+        } else {
+            accumulatedDistance += calcDist(prevObservation, observation);
+        }
+        prevObservation = observation;
+        return result;
+    }
+
+    /**
+     * Finalizes the most likely path of the whole track. Like in {@link MapMatching} the last observation is always
+     * used even if it is close to the previous one.
+     *
+     * @return the remaining EdgeMatches
+     */
+    public List<EdgeMatch> finish() {
+        if (finished)
+            throw new IllegalStateException("finish() was already called");
+        finished = true;
+        List<EdgeMatch> result = new ArrayList<>();
+        if (prevObservation != null && prevObservation != prevKeptObservation) {
+            accumulatedDistance -= calcDist(prevKeptObservation, prevObservation);
+            prevObservation.setAccumulatedLinearDistanceToPrevious(accumulatedDistance);
+            addTimeStep(prevObservation, result);
+        }
+        if (labels != null) {
+            Label best = Collections.min(labels, Comparator.comparingDouble(l -> l.minusLogProbability));
+            if (best != lastFinalized)
+                emit(best, result);
+        }
+        if (currentEdge != null)
+            result.add(new EdgeMatch(currentEdge, currentStates));
+        labels = null;
+        prevSnaps = null;
+        return result;
+    }
+
+    private void addTimeStep(Observation observation, List<EdgeMatch> result) {
+        List<Snap> snaps = candidateFinder.findCandidateSnaps(observation.getPoint().lat, observation.getPoint().lon);
+        HmmProbabilities probabilities = new HmmProbabilities(measurementErrorSigma, transitionProbabilityBeta);
+        List<Label> newLabels = new ArrayList<>();
+        if (labels == null) {
+            List<Snap> copies = copySnaps(snaps);
+            QueryGraph queryGraph = QueryGraph.create(graph, copies);
+            for (int i = 0; i < copies.size(); i++) {
+                for (State state : MapMatching.createStates(queryGraph, observation, Collections.singletonList(copies.get(i)))) {
+                    double minusLogProbability = -probabilities.emissionLogProbability(state.getSnap().getQueryDistance());
+                    newLabels.add(new Label(timeStep + 1, i, state, minusLogProbability, null, Collections.emptyList(),
+                            resolveStateEdge(queryGraph, state)));
+                }
+            }
+            if (newLabels.isEmpty())
+                throw new IllegalArgumentException("Sequence is broken for submitted track at initial time step.");
+        } else {
+            List<Snap> fromSnaps = copySnaps(prevSnaps);
+            List<Snap> toSnaps = copySnaps(snaps);
+            List<Snap> allSnaps = new ArrayList<>(fromSnaps);
+            allSnaps.addAll(toSnaps);
+            QueryGraph queryGraph = QueryGraph.create(graph, allSnaps);
+
+            List<State> toStates = new ArrayList<>();
+            List<Integer> toSnapIndices = new ArrayList<>();
+            for (int i = 0; i < toSnaps.size(); i++) {
+                for (State state : MapMatching.createStates(queryGraph, observation, Collections.singletonList(toSnaps.get(i)))) {
+                    toStates.add(state);
+                    toSnapIndices.add(i);
+                }
+            }
+            int[] toNodes = toStates.stream().mapToInt(to -> to.getSnap().getClosestNode()).toArray();
+            int[] toInEdges = toStates.stream().mapToInt(to -> to.isOnDirectedEdge() ? to.getIncomingVirtualEdge().getEdge() : EdgeIterator.ANY_EDGE).toArray();
+            double linearDistance = calcDist(prevKeptObservation, observation) + observation.getAccumulatedLinearDistanceToPrevious();
+            double maxRouteLength = probabilities.maxRouteLength(linearDistance, MapMatching.MIN_TRANSITION_LOG_PROBABILITY);
+
+            double[] bestMinusLogProbabilities = new double[toStates.size()];
+            Label[] bestBacks = new Label[toStates.size()];
+            Path[] bestPaths = new Path[toStates.size()];
+            Arrays.fill(bestMinusLogProbabilities, Double.POSITIVE_INFINITY);
+            for (int i = 0; i < fromSnaps.size(); i++) {
+                for (State from : MapMatching.createStates(queryGraph, prevKeptObservation, Collections.singletonList(fromSnaps.get(i)))) {
+                    Label fromLabel = findLabel(i, directionKey(from));
+                    if (fromLabel == null)
+                        continue;
+                    int fromOutEdge = from.isOnDirectedEdge() ? from.getOutgoingVirtualEdge().getEdge() : EdgeIterator.ANY_EDGE;
+                    List<Path> paths = router.calcPaths(queryGraph, from.getSnap().getClosestNode(), fromOutEdge, toNodes, toInEdges, maxRouteLength);
+                    for (int j = 0; j < toStates.size(); j++) {
+                        Path path = paths.get(j);
+                        if (!path.isFound())
+                            continue;
+                        double minusLogProbability = fromLabel.minusLogProbability
+                                - probabilities.emissionLogProbability(toStates.get(j).getSnap().getQueryDistance())
+                                - probabilities.transitionLogProbability(path.getDistance(), linearDistance);
+                        if (minusLogProbability < bestMinusLogProbabilities[j]) {
+                            bestMinusLogProbabilities[j] = minusLogProbability;
+                            bestBacks[j] = fromLabel;
+                            bestPaths[j] = path;
+                        }
+                    }
+                }
+            }
+            for (int j = 0; j < toStates.size(); j++) {
+                if (bestBacks[j] == null)
+                    continue;
+                List<EdgeIteratorState> transitionEdges = new ArrayList<>();
+                for (EdgeIteratorState edge : bestPaths[j].calcEdges())
+                    transitionEdges.add(MapMatching.resolveToRealEdge(graph, queryGraph, edge));
+                newLabels.add(new Label(timeStep + 1, toSnapIndices.get(j), toStates.get(j), bestMinusLogProbabilities[j],
+                        bestBacks[j], transitionEdges, resolveStateEdge(queryGraph, toStates.get(j))));
+            }
+            if (newLabels.isEmpty())
+                throw new IllegalArgumentException("Sequence is broken for submitted track at time step "
+                        + timeStep + ". observation:" + prevKeptObservation);
+        }
+        labels = newLabels;
+        prevSnaps = snaps;
+        prevKeptObservation = observation;
+        accumulatedDistance = 0;
+        timeStep++;
+        finalizeConvergedPath(result);
+    }
+
+    private EdgeIteratorState resolveStateEdge(QueryGraph queryGraph, State state) {
+        return state.isOnDirectedEdge() ? MapMatching.resolveToRealEdge(graph, queryGraph, state.getOutgoingVirtualEdge()) : null;
+    }
+
+    private Label findLabel(int snapIndex, int directionKey) {
+        for (Label label : labels)
+            if (label.snapIndex == snapIndex && label.directionKey == directionKey)
+                return label;
+        return null;
+    }
+
+    /**
+     * Identifies the direction of a candidate independent of the query graph: the two directed candidates of a Snap
+     * leave the virtual node in opposite directions of the same original edge.
+     */
+    private static int directionKey(State state) {
+        return state.isOnDirectedEdge() ? ((VirtualEdgeIteratorState) state.getOutgoingVirtualEdge()).getOriginalEdgeKey() : -1;
+    }
+
+    private void finalizeConvergedPath(List<EdgeMatch> result) {
+        Label ancestor = findCommonAncestor();
+        int lastFinalizedTimeStep = lastFinalized == null ? -1 : lastFinalized.timeStep;
+        if (timeStep - Math.max(lastFinalizedTimeStep, ancestor == null ? -1 : ancestor.timeStep) > maxLag) {
+            // the paths did not converge within the window, so we keep the most likely one
+            Label best = Collections.min(labels, Comparator.comparingDouble(l -> l.minusLogProbability));
+            while (best.timeStep > timeStep - maxLag)
+                best = best.back;
+            Label newAncestor = best;
+            labels.removeIf(label -> !descendsFrom(label, newAncestor));
+            ancestor = newAncestor;
+        }
+        if (ancestor != null && ancestor != lastFinalized)
+            emit(ancestor, result);
+    }
+
+    /**
+     * @return the latest label that is on the paths of all current labels or null if there is none
+     */
+    private Label findCommonAncestor() {
+        List<Label> frontier = new ArrayList<>(labels);
+        while (true) {
+            Label first = frontier.get(0);
+            if (frontier.stream().allMatch(label -> label == first))
+                return first;
+            List<Label> backs = new ArrayList<>(frontier.size());
+            for (Label label : frontier) {
+                if (label.back == null)
+                    return null;
+                if (!backs.contains(label.back))
+                    backs.add(label.back);
+            }
+            frontier = backs;
+        }
+    }
+
+    private static boolean descendsFrom(Label label, Label ancestor) {
+        while (label != null && label.timeStep > ancestor.timeStep)
+            label = label.back;
+        return label == ancestor;
+    }
+
+    /**
+     * Creates the EdgeMatches of the path from the last finalized label to the specified label and releases this part
+     * of the lattice.
+     */
+    private void emit(Label label, List<EdgeMatch> result) {
+        List<Label> path = new ArrayList<>();
+        for (Label l = label; l != lastFinalized; l = l.back)
+            path.add(l);
+        Collections.reverse(path);
+        for (Label l : path) {
+            for (EdgeIteratorState edge : l.transitionEdges)
+                addEdge(edge, result);
+            if (l.stateEdge != null)
+                addEdge(l.stateEdge, result);
+            currentStates.add(l.state);
+        }
+        label.back = null;
+        label.transitionEdges = Collections.emptyList();
+        lastFinalized = label;
+    }
+
+    private void addEdge(EdgeIteratorState edge, List<EdgeMatch> result) {
+        if (currentEdge != null && !MapMatching.equalEdges(currentEdge, edge)) {
+            result.add(new EdgeMatch(currentEdge, currentStates));
+            currentStates = new ArrayList<>();
+        }
+        currentEdge = edge;
+    }
+
+    private double calcDist(Observation a, Observation b) {
+        return distanceCalc.calcDist(a.getPoint().lat, a.getPoint().lon, b.getPoint().lat, b.getPoint().lon);
+    }
+
+    /**
+     * QueryGraph.create modifies the Snaps, but the candidates of an observation are used for two query graphs.
+     */
+    private static List<Snap> copySnaps(List<Snap> snaps) {
+        List<Snap> copies = new ArrayList<>(snaps.size());
+        for (Snap snap : snaps) {
+            Snap copy = new Snap(snap.getQueryPoint().lat, snap.getQueryPoint().lon);
+            copy.setClosestNode(snap.getClosestNode());
+            copy.setClosestEdge(snap.getClosestEdge());
+            copy.setWayIndex(snap.getWayIndex());
+            copy.setSnappedPosition(snap.getSnappedPosition());
+            copy.setSnappedPoint(snap.getSnappedPoint());
+            copy.setQueryDistance(snap.getQueryDistance());
+            copies.add(copy);
+        }
+        return copies;
+    }
+
+    private static class Label {
+        final int timeStep;
+        final int snapIndex;
+        final int directionKey;
+        final State state;
+        final double minusLogProbability;
+        // the real edge of the state or null if the state is on a node
+        final EdgeIteratorState stateEdge;
+        Label back;
+        // the real edges of the path from back to this label
+        List<EdgeIteratorState> transitionEdges;
+
+        Label(int timeStep, int snapIndex, State state, double minusLogProbability, Label back,
+              List<EdgeIteratorState> transitionEdges, EdgeIteratorState stateEdge) {
+            this.timeStep = timeStep;
+            this.snapIndex = snapIndex;
+            this.directionKey = directionKey(state);
+            this.state = state;
+            this.minusLogProbability = minusLogProbability;
+            this.back = back;
+            this.transitionEdges = transitionEdges;
+            this.stateEdge = stateEdge;
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.matching;
+
+import com.carrotsearch.hppc.IntArrayList;
+import com.graphhopper.routing.DijkstraBidirectionRef;
+import com.graphhopper.routing.Path;
+import com.graphhopper.routing.ev.DecimalEncodedValue;
+import com.graphhopper.routing.ev.DecimalEncodedValueImpl;
+import com.graphhopper.routing.ev.TurnCost;
+import com.graphhopper.routing.util.EncodingManager;
+import com.graphhopper.routing.util.TraversalMode;
+import com.graphhopper.routing.weighting.SpeedWeighting;
+import com.graphhopper.routing.weighting.Weighting;
+import com.graphhopper.storage.BaseGraph;
+import com.graphhopper.util.EdgeExplorer;
+import com.graphhopper.util.EdgeIterator;
+import com.graphhopper.util.GHUtility;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.RepeatedTest;
+import org.junit.jupiter.api.RepetitionInfo;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static com.graphhopper.util.EdgeIterator.ANY_EDGE;
+import static org.junit.jupiter.api.Assertions.*;
+
+class OneToManyDijkstraTest {
+    private DecimalEncodedValue speedEnc;
+    private DecimalEncodedValue turnCostEnc;
+    private BaseGraph graph;
+
+    @BeforeEach
+    void setup() {
+        speedEnc = new DecimalEncodedValueImpl("speed", 5, 5, true);
+        turnCostEnc = TurnCost.create("car", 10);
+        EncodingManager em = EncodingManager.start().add(speedEnc).addTurnCostEncodedValue(turnCostEnc).build();
+        graph = new BaseGraph.Builder(em).withTurnCosts(true).create();
+    }
+
+    private Weighting createWeighting() {
+        return new SpeedWeighting(speedEnc, turnCostEnc, graph.getTurnCostStorage(), 40);
+    }
+
+    @RepeatedTest(10)
+    void randomGraph(RepetitionInfo info) {
+        final long seed = info.getCurrentRepetition();
+        Random rnd = new Random(seed);
+        GHUtility.buildRandomGraph(graph, rnd, 100, 2.2, true, speedEnc, null, 0.8, 0.8);
+        GHUtility.addRandomTurnCosts(graph, seed, null, turnCostEnc, 10, graph.getTurnCostStorage());
+        graph.freeze();
+        Weighting weighting = createWeighting();
+        for (int i = 0; i < 20; i++) {
+            int from = rnd.nextInt(graph.getNodes());
+            int fromOutEdge = getAdjEdge(rnd, from);
+            int[] toNodes = new int[1 + rnd.nextInt(5)];
+            int[] toInEdges = new int[toNodes.length];
+            for (int j = 0; j < toNodes.length; j++) {
+                toNodes[j] = rnd.nextInt(graph.getNodes());
+                toInEdges[j] = getAdjEdge(rnd, toNodes[j]);
+            }
+            List<Path> paths = new OneToManyDijkstra(graph, weighting).calcPaths(from, fromOutEdge, toNodes, toInEdges, Double.POSITIVE_INFINITY);
+            assertEquals(toNodes.length, paths.size());
+            for (int j = 0; j < toNodes.length; j++) {
+                Path refPath = new DijkstraBidirectionRef(graph, weighting, TraversalMode.EDGE_BASED)
+                        .calcPath(from, toNodes[j], fromOutEdge, toInEdges[j]);
+                String msg = "seed: " + seed + ", from: " + from + ", fromOutEdge: " + fromOutEdge + ", to: " + toNodes[j] + ", toInEdge: " + toInEdges[j];
+                GHUtility.compareWeights(refPath, paths.get(j), msg);
+            }
+        }
+    }
+
+    @Test
+    void edgeRestrictions() {
+        // 0-1-2-3
+        //   |   |
+        //   4---5
+        graph.edge(0, 1).setDistance(100).set(speedEnc, 10, 10);
+        graph.edge(1, 2).setDistance(100).set(speedEnc, 10, 10);
+        graph.edge(2, 3).setDistance(100).set(speedEnc, 10, 10);
+        graph.edge(1, 4).setDistance(100).set(speedEnc, 10, 10);
+        graph.edge(4, 5).setDistance(100).set(speedEnc, 10, 10);
+        graph.edge(5, 3).setDistance(100).set(speedEnc, 10, 10);
+        graph.freeze();
+        Weighting weighting = createWeighting();
+
+        List<Path> paths = new OneToManyDijkstra(graph, weighting).calcPaths(1, ANY_EDGE, new int[]{3, 3, 1}, new int[]{ANY_EDGE, 5, ANY_EDGE}, Double.POSITIVE_INFINITY);
+        assertEquals(IntArrayList.from(1, 2, 3), paths.get(0).calcNodes());
+        // arriving at node 3 via edge 3->5 forces the longer way
+        assertEquals(IntArrayList.from(1, 4, 5, 3), paths.get(1).calcNodes());
+        // the empty path is fine if nothing is restricted
+        assertEquals(IntArrayList.from(1), paths.get(2).calcNodes());
+
+        // leaving node 1 via edge 1->4 also forces the longer way, and the start node is no longer reached by the
+        // empty path. going around the loop is cheaper than a u-turn at node 4
+        paths = new OneToManyDijkstra(graph, weighting).calcPaths(1, 3, new int[]{3, 1}, new int[]{ANY_EDGE, ANY_EDGE}, Double.POSITIVE_INFINITY);
+        assertEquals(IntArrayList.from(1, 4, 5, 3), paths.get(0).calcNodes());
+        assertEquals(IntArrayList.from(1, 4, 5, 3, 2, 1), paths.get(1).calcNodes());
+
+        // the restrictions cannot be fulfilled: edge 0 does not end at node 3
+        paths = new OneToManyDijkstra(graph, weighting).calcPaths(1, ANY_EDGE, new int[]{3}, new int[]{0}, Double.POSITIVE_INFINITY);
+        assertFalse(paths.get(0).isFound());
+    }
+
+    @Test
+    void maxDistance() {
+        // 0-1-2-3
+        graph.edge(0, 1).setDistance(100).set(speedEnc, 10, 10);
+        graph.edge(1, 2).setDistance(100).set(speedEnc, 10, 10);
+        graph.edge(2, 3).setDistance(100).set(speedEnc, 10, 10);
+        graph.freeze();
+        Weighting weighting = createWeighting();
+
+        List<Path> paths = new OneToManyDijkstra(graph, weighting).calcPaths(0, ANY_EDGE, new int[]{1, 2, 3}, new int[]{ANY_EDGE, ANY_EDGE, ANY_EDGE}, 250);
+        assertTrue(paths.get(0).isFound());
+        assertTrue(paths.get(1).isFound());
+        assertEquals(200, paths.get(1).getDistance(), 1.e-6);
+        assertFalse(paths.get(2).isFound());
+
+        // the limit is inclusive
+        OneToManyDijkstra dijkstra = new OneToManyDijkstra(graph, weighting);
+        paths = dijkstra.calcPaths(0, ANY_EDGE, new int[]{3}, new int[]{ANY_EDGE}, 300);
+        assertTrue(paths.get(0).isFound());
+        assertEquals(4, dijkstra.getVisitedNodes());
+    }
+
+    private int getAdjEdge(Random rnd, int node) {
+        if (rnd.nextDouble() < 0.3)
+            return ANY_EDGE;
+        EdgeExplorer explorer = graph.createEdgeExplorer();
+        EdgeIterator iter = explorer.setBaseNode(node);
+        while (iter.next()) {
+            if (rnd.nextBoolean())
+                return iter.getEdge();
+        }
+        return ANY_EDGE;
+    }
+}
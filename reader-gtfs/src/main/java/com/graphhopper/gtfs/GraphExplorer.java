@@ -73,28 +73,17 @@ public final class GraphExplorer {
         };
     }
 
-    private Iterable<PtGraph.PtEdge> realtimeEdgesAround(int node) {
-        return () -> realtimeFeed.getAdditionalEdgesFrom(node).stream().iterator();
-    }
-
-    private Iterable<PtGraph.PtEdge> backRealtimeEdgesAround(int node) {
-        return () -> realtimeFeed.getAdditionalEdgesTo(node).stream()
-                .map(e -> new PtGraph.PtEdge(e.getId(), e.getAdjNode(), e.getBaseNode(), e.getAttrs()))
-                .iterator();
-    }
-
-
     public Iterable<MultiModalEdge> ptEdgeStream(int ptNode, long currentTime) {
         return () -> Spliterators.iterator(new Spliterators.AbstractSpliterator<MultiModalEdge>(0, 0) {
-            final Iterator<PtGraph.PtEdge> edgeIterator = reverse ?
-                    Iterators.concat(ptNode < ptGraph.getNodeCount() ? ptGraph.backEdgesAround(ptNode).iterator() : Collections.<PtGraph.PtEdge>emptyIterator(), backRealtimeEdgesAround(ptNode).iterator()) :
-                    Iterators.concat(ptNode < ptGraph.getNodeCount() ? ptGraph.edgesAround(ptNode).iterator() : Collections.<PtGraph.PtEdge>emptyIterator(), realtimeEdgesAround(ptNode).iterator());
+            // only the edges that are returned are detached, the others are skipped without reading all their attributes
+            final PtGraph.PtEdgeExplorer edgeIterator = ptGraph.createEdgeExplorer(reverse)
+                    .setBaseNode(ptNode, reverse ? realtimeFeed.getAdditionalEdgesTo(ptNode) : realtimeFeed.getAdditionalEdgesFrom(ptNode));
+            boolean exhausted = false;
 
             @Override
             public boolean tryAdvance(Consumer<? super MultiModalEdge> action) {
-                while (edgeIterator.hasNext()) {
-                    PtGraph.PtEdge edge = edgeIterator.next();
-                    GtfsStorage.EdgeType edgeType = edge.getType();
+                while (!exhausted && edgeIterator.next()) {
+                    GtfsStorage.EdgeType edgeType = edgeIterator.getType();
 
                     // Optimization (around 20% in Swiss network):
                     // Only use the (single) least-wait-time edge to enter the
@@ -107,14 +96,15 @@ public final class GraphExplorer {
                         if (streetOnly) {
                             return false;
                         } else {
-                            action.accept(new MultiModalEdge(findEnterEdge(edge))); // fully consumes edgeIterator
+                            action.accept(new MultiModalEdge(findEnterEdge())); // the remaining edges are skipped
+                            exhausted = true;
                             return true;
                         }
                     }
                     if (streetOnly && edgeType != (reverse ? GtfsStorage.EdgeType.EXIT_PT : GtfsStorage.EdgeType.ENTER_PT)) {
                         continue;
                     }
-                    if (!(ignoreValidities || isValidOn(edge, currentTime))) {
+                    if (!(ignoreValidities || isValidOn(edgeIterator, currentTime))) {
                         continue;
                     }
                     if (edgeType == GtfsStorage.EdgeType.WAIT_ARRIVAL && !reverse) {
@@ -126,24 +116,22 @@ public final class GraphExplorer {
                     if (edgeType == GtfsStorage.EdgeType.EXIT_PT && !reverse && ptOnly) {
                         continue;
                     }
-                    if ((edgeType == GtfsStorage.EdgeType.ENTER_PT || edgeType == GtfsStorage.EdgeType.EXIT_PT || edgeType == GtfsStorage.EdgeType.TRANSFER) && (blockedRouteTypes & (1 << edge.getAttrs().route_type)) != 0) {
+                    if ((edgeType == GtfsStorage.EdgeType.ENTER_PT || edgeType == GtfsStorage.EdgeType.EXIT_PT || edgeType == GtfsStorage.EdgeType.TRANSFER) && (blockedRouteTypes & (1 << edgeIterator.getRouteType())) != 0) {
                         continue;
                     }
-                    action.accept(new MultiModalEdge(edge));
+                    action.accept(new MultiModalEdge(edgeIterator.detach()));
                     return true;
                 }
                 return false;
             }
 
-            private PtGraph.PtEdge findEnterEdge(PtGraph.PtEdge first) {
-                long firstTT = calcTravelTimeMillis(first, currentTime);
-                while (edgeIterator.hasNext()) {
-                    PtGraph.PtEdge result = edgeIterator.next();
-                    long nextTT = calcTravelTimeMillis(result, currentTime);
+            private PtGraph.PtEdge findEnterEdge() {
+                long firstTT = calcTravelTimeMillis(edgeIterator.getType(), edgeIterator.getTime(), edgeIterator.getFeedIdWithTimezone(), currentTime);
+                PtGraph.PtEdge first = edgeIterator.detach();
+                while (edgeIterator.next()) {
+                    long nextTT = calcTravelTimeMillis(edgeIterator.getType(), edgeIterator.getTime(), edgeIterator.getFeedIdWithTimezone(), currentTime);
                     if (nextTT < firstTT) {
-                        edgeIterator.forEachRemaining(ptEdge -> {
-                        });
-                        return result;
+                        return edgeIterator.detach();
                     }
                 }
                 return first;
@@ -178,11 +166,11 @@ public final class GraphExplorer {
                 if (reverse) {
                     return 0;
                 } else {
-                    return waitingTime(edge.ptEdge, earliestStartTime);
+                    return waitingTime(edge.ptEdge.getTime(), edge.ptEdge.getAttrs().feedIdWithTimezone, earliestStartTime);
                 }
             case LEAVE_TIME_EXPANDED_NETWORK:
                 if (reverse) {
-                    return -waitingTime(edge.ptEdge, earliestStartTime);
+                    return -waitingTime(edge.ptEdge.getTime(), edge.ptEdge.getAttrs().feedIdWithTimezone, earliestStartTime);
                 } else {
                     return 0;
                 }
@@ -191,22 +179,22 @@ public final class GraphExplorer {
         }
     }
 
-    long calcTravelTimeMillis(PtGraph.PtEdge edge, long earliestStartTime) {
-        switch (edge.getType()) {
+    private long calcTravelTimeMillis(GtfsStorage.EdgeType edgeType, int time, GtfsStorage.FeedIdWithTimezone feedIdWithTimezone, long earliestStartTime) {
+        switch (edgeType) {
             case ENTER_TIME_EXPANDED_NETWORK:
                 if (reverse) {
                     return 0;
                 } else {
-                    return waitingTime(edge, earliestStartTime);
+                    return waitingTime(time, feedIdWithTimezone, earliestStartTime);
                 }
             case LEAVE_TIME_EXPANDED_NETWORK:
                 if (reverse) {
-                    return -waitingTime(edge, earliestStartTime);
+                    return -waitingTime(time, feedIdWithTimezone, earliestStartTime);
                 } else {
                     return 0;
                 }
             default:
-                return edge.getTime();
+                return time;
         }
     }
 
@@ -222,8 +210,8 @@ public final class GraphExplorer {
         return realtimeFeed.getDelayForAlightEdge(edge.ptEdge, Instant.ofEpochMilli(currentTime));
     }
 
-    private long waitingTime(PtGraph.PtEdge edge, long earliestStartTime) {
-        long l = edge.getTime() * 1000L - millisOnTravelDay(edge, earliestStartTime);
+    private long waitingTime(int time, GtfsStorage.FeedIdWithTimezone feedIdWithTimezone, long earliestStartTime) {
+        long l = time * 1000L - millisOnTravelDay(feedIdWithTimezone.zoneId, earliestStartTime);
         if (!reverse) {
             if (l < 0) l = l + 24 * 60 * 60 * 1000;
         } else {
@@ -232,14 +220,13 @@ public final class GraphExplorer {
         return l;
     }
 
-    private long millisOnTravelDay(PtGraph.PtEdge edge, long instant) {
-        final ZoneId zoneId = edge.getAttrs().feedIdWithTimezone.zoneId;
+    private long millisOnTravelDay(ZoneId zoneId, long instant) {
         return Instant.ofEpochMilli(instant).atZone(zoneId).toLocalTime().toNanoOfDay() / 1000000L;
     }
 
-    private boolean isValidOn(PtGraph.PtEdge edge, long instant) {
+    private boolean isValidOn(PtGraph.PtEdgeExplorer edge, long instant) {
         if (edge.getType() == GtfsStorage.EdgeType.BOARD || edge.getType() == GtfsStorage.EdgeType.ALIGHT) {
-            final GtfsStorage.Validity validity = edge.getAttrs().validity;
+            final GtfsStorage.Validity validity = edge.getValidity();
             final int trafficDay = (int) ChronoUnit.DAYS.between(validity.start, Instant.ofEpochMilli(instant).atZone(validity.zoneId).toLocalDate());
             return trafficDay >= 0 && validity.validity.get(trafficDay);
         } else {
@@ -17,6 +17,9 @@
  */
 package com.graphhopper.gtfs;
 
+import com.carrotsearch.hppc.LongObjectMap;
+import com.graphhopper.coll.GHLongObjectHashMap;
+
 import java.time.Instant;
 import java.util.*;
 import java.util.function.Consumer;
@@ -37,7 +40,8 @@ public class MultiCriteriaLabelSetting {
     private final Comparator<Label> queueComparator;
     private final List<Label> targetLabels;
     private long startTime;
-    private final Map<Label.NodeId, List<Label>> fromMap;
+    // the labels of every node, keyed by streetNode and ptNode packed into a single long
+    private final LongObjectMap<List<Label>> fromMap;
     private final PriorityQueue<Label> fromHeap;
     private final long maxProfileDuration;
     private final boolean reverse;
@@ -60,7 +64,7 @@ public class MultiCriteriaLabelSetting {
 
         queueComparator = new LabelComparator();
         fromHeap = new PriorityQueue<>(queueComparator);
-        fromMap = new HashMap<>();
+        fromMap = new GHLongObjectHashMap<>();
     }
 
     public Iterable<Label> calcLabels(Label.NodeId from, Instant startTime) {
@@ -87,7 +91,7 @@ public class MultiCriteriaLabelSetting {
             Label label = new Label(startTime, null, from, 0, null, 0, 0L, 0, false, null);
             ArrayList<Label> labels = new ArrayList<>(1);
             labels.add(label);
-            fromMap.put(from, labels);
+            fromMap.put(nodeKey(from), labels);
             fromHeap.add(label);
         }
 
@@ -186,7 +190,12 @@ public class MultiCriteriaLabelSetting {
             filter = label -> true;
         }
         if (isNotDominatedByAnyOf(me, targetLabels, filter)) {
-            List<Label> sptEntries = fromMap.computeIfAbsent(me.node, k -> new ArrayList<>(1));
+            long key = nodeKey(me.node);
+            List<Label> sptEntries = fromMap.get(key);
+            if (sptEntries == null) {
+                sptEntries = new ArrayList<>(1);
+                fromMap.put(key, sptEntries);
+            }
             if (isNotDominatedByAnyOf(me, sptEntries, filter)) {
                 removeDominated(me, sptEntries, filter);
                 sptEntries.add(me);
@@ -195,6 +204,10 @@ public class MultiCriteriaLabelSetting {
         }
     }
 
+    private static long nodeKey(Label.NodeId node) {
+        return ((long) node.streetNode << 32) | (node.ptNode & 0xFFFFFFFFL);
+    }
+
     boolean rprc(Label me, Label they) {
         return they.departureTime != null && (they.departureTime <= me.departureTime || they.departureTime <= startTime - maxProfileDuration);
     }
@@ -25,7 +25,6 @@ import com.graphhopper.util.EdgeIterator;
 
 import java.io.*;
 import java.util.*;
-import java.util.function.Consumer;
 
 import static com.graphhopper.gtfs.GtfsStorage.EdgeType.BOARD;
 
@@ -43,7 +42,17 @@ public class PtGraph implements GtfsReader.PtGraphOut {
     private final int edgeEntryBytes;
     private int edgeCount;
 
+    // edge attributes: the type and the time are followed by fields that depend on the type
     private final DataAccess attrs;
+    private final static int A_TYPE = 0, A_TIME = 4;
+    // BOARD and ALIGHT (only BOARD stores the transfers), HOP only stores the stop sequence
+    private final static int A_STOP_SEQUENCE = 8, A_TRIP_DESCRIPTOR = 12, A_VALIDITY = 16, A_TRANSFERS = 20;
+    // ENTER_PT and TRANSFER
+    private final static int A_ROUTE_TYPE = 8, A_PLATFORM_DESCRIPTOR = 12;
+    // EXIT_PT
+    private final static int A_EXIT_PLATFORM_DESCRIPTOR = 8;
+    // ENTER_TIME_EXPANDED_NETWORK and LEAVE_TIME_EXPANDED_NETWORK
+    private final static int A_FEED_ID = 8;
     private final static GtfsStorage.EdgeType[] edgeTypeValues = GtfsStorage.EdgeType.values();
 
     public PtGraph(Directory dir, int firstNode) {
@@ -407,75 +416,73 @@ public class PtGraph implements GtfsReader.PtGraphOut {
     }
 
     public Iterable<PtEdge> edgesAround(int baseNode) {
-        Spliterators.AbstractSpliterator<PtEdge> spliterator = new Spliterators.AbstractSpliterator<PtEdge>(0, 0) {
-            int edgeId = getEdgeRefOut(toNodePointer(baseNode));
+        return () -> iterator(createEdgeExplorer(false).setBaseNode(baseNode, Collections.emptyList()));
+    }
 
-            @Override
-            public boolean tryAdvance(Consumer<? super PtEdge> action) {
-                if (edgeId < 0)
-                    return false;
+    /**
+     * Creates a cursor over the edges of a node that reads the edge attributes lazily from the storage. Unlike
+     * {@link #edgesAround(int)} and {@link #backEdgesAround(int)} it does not allocate anything per edge, so it should be
+     * used where many edges are visited, but only few of them are kept, like in the transit routing algorithms.
+     *
+     * @param reverse if true the incoming edges of a node are iterated and base and adjacent node are swapped
+     */
+    public PtEdgeExplorer createEdgeExplorer(boolean reverse) {
+        return new PtEdgeExplorer(reverse);
+    }
 
-                long edgePointer = toEdgePointer(edgeId);
+    private static Iterator<PtEdge> iterator(PtEdgeExplorer explorer) {
+        return new Iterator<PtEdge>() {
+            boolean hasNext = explorer.next();
 
-                int nodeA = getNodeA(edgePointer);
-                int nodeB = getNodeB(edgePointer);
-                PtEdgeAttributes attrs = pullAttrs(edgeId);
-                action.accept(new PtEdge(edgeId, nodeA, nodeB, attrs));
-                edgeId = getLinkA(edgePointer);
-                return true;
+            @Override
+            public boolean hasNext() {
+                return hasNext;
             }
 
+            @Override
+            public PtEdge next() {
+                if (!hasNext)
+                    throw new NoSuchElementException();
+                PtEdge edge = explorer.detach();
+                hasNext = explorer.next();
+                return edge;
+            }
         };
-        return () -> Spliterators.iterator(spliterator);
     }
 
-
     private PtEdgeAttributes pullAttrs(int edgeId) {
         long attrPointer = getAttrPointer(toEdgePointer(edgeId));
-        GtfsStorage.EdgeType type = edgeTypeValues[attrs.getInt(attrPointer)];
-        attrPointer += 4;
-        int time = attrs.getInt(attrPointer);
-        attrPointer += 4;
+        GtfsStorage.EdgeType type = edgeTypeValues[attrs.getInt(attrPointer + A_TYPE)];
+        int time = attrs.getInt(attrPointer + A_TIME);
         switch (type) {
             case BOARD: {
-                int stop_sequence = attrs.getInt(attrPointer);
-                attrPointer += 4;
-                int tripDescriptor = attrs.getInt(attrPointer);
-                attrPointer += 4;
-                int validity = attrs.getInt(attrPointer);
-                attrPointer += 4;
-                int transfers = attrs.getInt(attrPointer);
-                attrPointer += 4;
+                int stop_sequence = attrs.getInt(attrPointer + A_STOP_SEQUENCE);
+                int tripDescriptor = attrs.getInt(attrPointer + A_TRIP_DESCRIPTOR);
+                int validity = attrs.getInt(attrPointer + A_VALIDITY);
+                int transfers = attrs.getInt(attrPointer + A_TRANSFERS);
                 return new PtEdgeAttributes(BOARD, time, validityList.get(validity), -1, null,
                         transfers, stop_sequence, tripDescriptorList.get(tripDescriptor), null);
             }
             case ALIGHT: {
-                int stop_sequence = attrs.getInt(attrPointer);
-                attrPointer += 4;
-                int tripDescriptor = attrs.getInt(attrPointer);
-                attrPointer += 4;
-                int validity = attrs.getInt(attrPointer);
-                attrPointer += 4;
+                int stop_sequence = attrs.getInt(attrPointer + A_STOP_SEQUENCE);
+                int tripDescriptor = attrs.getInt(attrPointer + A_TRIP_DESCRIPTOR);
+                int validity = attrs.getInt(attrPointer + A_VALIDITY);
                 return new PtEdgeAttributes(GtfsStorage.EdgeType.ALIGHT, time, validityList.get(validity), -1, null,
                         0, stop_sequence, tripDescriptorList.get(tripDescriptor), null);
             }
             case ENTER_PT: {
-                int routeType = attrs.getInt(attrPointer);
-                attrPointer += 4;
-                int platformDescriptor = attrs.getInt(attrPointer);
-                attrPointer += 4;
+                int routeType = attrs.getInt(attrPointer + A_ROUTE_TYPE);
+                int platformDescriptor = attrs.getInt(attrPointer + A_PLATFORM_DESCRIPTOR);
                 return new PtEdgeAttributes(GtfsStorage.EdgeType.ENTER_PT, time, null, routeType, null,
                         0, -1, null, platformDescriptorList.get(platformDescriptor));
             }
             case EXIT_PT: {
-                int platformDescriptor = attrs.getInt(attrPointer);
-                attrPointer += 4;
+                int platformDescriptor = attrs.getInt(attrPointer + A_EXIT_PLATFORM_DESCRIPTOR);
                 return new PtEdgeAttributes(GtfsStorage.EdgeType.EXIT_PT, time, null, -1, null,
                         0, -1, null, platformDescriptorList.get(platformDescriptor));
             }
             case HOP: {
-                int stop_sequence = attrs.getInt(attrPointer);
-                attrPointer += 4;
+                int stop_sequence = attrs.getInt(attrPointer + A_STOP_SEQUENCE);
                 return new PtEdgeAttributes(GtfsStorage.EdgeType.HOP, time, null, -1, null,
                         0, stop_sequence, null, null);
             }
@@ -484,14 +491,12 @@ public class PtGraph implements GtfsReader.PtGraphOut {
                         0, -1, null, null);
             }
             case ENTER_TIME_EXPANDED_NETWORK: {
-                int feedId = attrs.getInt(attrPointer);
-                attrPointer += 4;
+                int feedId = attrs.getInt(attrPointer + A_FEED_ID);
                 return new PtEdgeAttributes(GtfsStorage.EdgeType.ENTER_TIME_EXPANDED_NETWORK, time, null, -1, feedIdWithTimezoneList.get(feedId),
                         0, -1, null, null);
             }
             case LEAVE_TIME_EXPANDED_NETWORK: {
-                int feedId = attrs.getInt(attrPointer);
-                attrPointer += 4;
+                int feedId = attrs.getInt(attrPointer + A_FEED_ID);
                 return new PtEdgeAttributes(GtfsStorage.EdgeType.LEAVE_TIME_EXPANDED_NETWORK, time, null, -1, feedIdWithTimezoneList.get(feedId),
                         0, -1, null, null);
             }
@@ -508,10 +513,8 @@ public class PtGraph implements GtfsReader.PtGraphOut {
                         0, -1, null, null);
             }
             case TRANSFER: {
-                int routeType = attrs.getInt(attrPointer);
-                attrPointer += 4;
-                int platformDescriptor = attrs.getInt(attrPointer);
-                attrPointer += 4;
+                int routeType = attrs.getInt(attrPointer + A_ROUTE_TYPE);
+                int platformDescriptor = attrs.getInt(attrPointer + A_PLATFORM_DESCRIPTOR);
                 return new PtEdgeAttributes(GtfsStorage.EdgeType.TRANSFER, time, null, routeType, null,
                         0, -1, null, platformDescriptorList.get(platformDescriptor));
             }
@@ -528,25 +531,135 @@ public class PtGraph implements GtfsReader.PtGraphOut {
     }
 
     public Iterable<PtEdge> backEdgesAround(int adjNode) {
-        Spliterators.AbstractSpliterator<PtEdge> spliterator = new Spliterators.AbstractSpliterator<PtEdge>(0, 0) {
-            int edgeId = getEdgeRefIn(toNodePointer(adjNode));
+        return () -> iterator(createEdgeExplorer(true).setBaseNode(adjNode, Collections.emptyList()));
+    }
+
+    /**
+     * Iterates the edges of a node in the storage followed by the given additional edges, e.g. the ones of a realtime
+     * feed. The attributes are only read when they are requested and {@link #detach()} creates a {@link PtEdge} for the
+     * edges that need to be kept.
+     */
+    public class PtEdgeExplorer {
+        private final boolean reverse;
+        private int nextEdgeId;
+        private Iterator<PtEdge> additionalEdges;
+        // the current edge is either an additional edge or the edge with this id in the storage
+        private PtEdge additionalEdge;
+        private int edgeId;
+        private int baseNode, adjNode;
+        private long attrPointer;
+        private GtfsStorage.EdgeType type;
+
+        private PtEdgeExplorer(boolean reverse) {
+            this.reverse = reverse;
+        }
 
-            @Override
-            public boolean tryAdvance(Consumer<? super PtEdge> action) {
-                if (edgeId < 0)
-                    return false;
+        /**
+         * @param additionalEdges edges that are iterated after the edges in the storage. They must be oriented like
+         *                        the edges in the storage, i.e. they are swapped as well for the reverse direction.
+         */
+        public PtEdgeExplorer setBaseNode(int baseNode, Collection<PtEdge> additionalEdges) {
+            if (baseNode < nodeCount) {
+                long nodePointer = toNodePointer(baseNode);
+                nextEdgeId = reverse ? getEdgeRefIn(nodePointer) : getEdgeRefOut(nodePointer);
+            } else {
+                nextEdgeId = -1;
+            }
+            this.additionalEdges = additionalEdges.iterator();
+            this.additionalEdge = null;
+            this.edgeId = -1;
+            this.type = null;
+            return this;
+        }
 
+        public boolean next() {
+            if (nextEdgeId >= 0) {
+                edgeId = nextEdgeId;
                 long edgePointer = toEdgePointer(edgeId);
-
                 int nodeA = getNodeA(edgePointer);
                 int nodeB = getNodeB(edgePointer);
-                action.accept(new PtEdge(edgeId, nodeB, nodeA, pullAttrs(edgeId)));
-                edgeId = getLinkB(edgePointer);
-
+                baseNode = reverse ? nodeB : nodeA;
+                adjNode = reverse ? nodeA : nodeB;
+                nextEdgeId = reverse ? getLinkB(edgePointer) : getLinkA(edgePointer);
+                attrPointer = getAttrPointer(edgePointer);
+                type = edgeTypeValues[attrs.getInt(attrPointer + A_TYPE)];
                 return true;
             }
-        };
-        return () -> Spliterators.iterator(spliterator);
+            if (additionalEdges.hasNext()) {
+                additionalEdge = additionalEdges.next();
+                edgeId = additionalEdge.getId();
+                baseNode = reverse ? additionalEdge.getAdjNode() : additionalEdge.getBaseNode();
+                adjNode = reverse ? additionalEdge.getBaseNode() : additionalEdge.getAdjNode();
+                type = additionalEdge.getType();
+                return true;
+            }
+            return false;
+        }
+
+        public int getId() {
+            return edgeId;
+        }
+
+        public int getBaseNode() {
+            return baseNode;
+        }
+
+        public int getAdjNode() {
+            return adjNode;
+        }
+
+        public GtfsStorage.EdgeType getType() {
+            return type;
+        }
+
+        public int getTime() {
+            return additionalEdge != null ? additionalEdge.getTime() : attrs.getInt(attrPointer + A_TIME);
+        }
+
+        /**
+         * @return the route type of ENTER_PT and TRANSFER edges and -1 for EXIT_PT edges
+         */
+        public int getRouteType() {
+            if (additionalEdge != null)
+                return additionalEdge.getAttrs().route_type;
+            switch (type) {
+                case ENTER_PT:
+                case TRANSFER:
+                    return attrs.getInt(attrPointer + A_ROUTE_TYPE);
+                case EXIT_PT:
+                    return -1;
+                default:
+                    throw new RuntimeException("Edge type " + type + " doesn't encode route type.");
+            }
+        }
+
+        /**
+         * @return the validity of BOARD and ALIGHT edges and null otherwise
+         */
+        public GtfsStorage.Validity getValidity() {
+            if (additionalEdge != null)
+                return additionalEdge.getAttrs().validity;
+            return type == BOARD || type == GtfsStorage.EdgeType.ALIGHT ? validityList.get(attrs.getInt(attrPointer + A_VALIDITY)) : null;
+        }
+
+        /**
+         * @return the feed of ENTER_TIME_EXPANDED_NETWORK and LEAVE_TIME_EXPANDED_NETWORK edges and null otherwise
+         */
+        public GtfsStorage.FeedIdWithTimezone getFeedIdWithTimezone() {
+            if (additionalEdge != null)
+                return additionalEdge.getAttrs().feedIdWithTimezone;
+            return type == GtfsStorage.EdgeType.ENTER_TIME_EXPANDED_NETWORK || type == GtfsStorage.EdgeType.LEAVE_TIME_EXPANDED_NETWORK
+                    ? feedIdWithTimezoneList.get(attrs.getInt(attrPointer + A_FEED_ID)) : null;
+        }
+
+        /**
+         * @return a new PtEdge with all attributes of the current edge
+         */
+        public PtEdge detach() {
+            if (additionalEdge != null)
+                return reverse ? new PtEdge(edgeId, baseNode, adjNode, additionalEdge.getAttrs()) : additionalEdge;
+            return new PtEdge(edgeId, baseNode, adjNode, pullAttrs(edgeId));
+        }
     }
 
     public static class PtEdge {
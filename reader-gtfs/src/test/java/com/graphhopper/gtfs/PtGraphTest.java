@@ -0,0 +1,210 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.gtfs;
+
+import com.conveyal.gtfs.GTFSFeed;
+import com.google.transit.realtime.GtfsRealtime;
+import com.graphhopper.GraphHopperConfig;
+import com.graphhopper.routing.TestProfiles;
+import com.graphhopper.util.Helper;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.time.*;
+import java.util.*;
+
+import static com.google.transit.realtime.GtfsRealtime.TripUpdate.StopTimeUpdate.ScheduleRelationship.SCHEDULED;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Compares the lazy {@link PtGraph.PtEdgeExplorer} with the attributes that {@link PtGraph#edge(int)} reads at once.
+ */
+public class PtGraphTest {
+
+    private static final String GRAPH_LOC = "target/PtGraphTest";
+    private static final ZoneId zoneId = ZoneId.of("America/Los_Angeles");
+    private static GraphHopperGtfs graphHopperGtfs;
+    private static RealtimeFeed realtimeFeed;
+
+    @BeforeAll
+    public static void init() {
+        GraphHopperConfig ghConfig = new GraphHopperConfig();
+        ghConfig.putObject("gtfs.file", "files/sample-feed");
+        ghConfig.putObject("graph.location", GRAPH_LOC);
+        ghConfig.putObject("import.osm.ignored_highways", "");
+        ghConfig.putObject("graph.encoded_values", "foot_access, foot_priority, foot_average_speed, car_access, car_average_speed");
+        ghConfig.setProfiles(List.of(
+                TestProfiles.accessSpeedAndPriority("foot"),
+                TestProfiles.accessAndSpeed("car")));
+        Helper.removeDir(new File(GRAPH_LOC));
+        graphHopperGtfs = new GraphHopperGtfs(ghConfig);
+        graphHopperGtfs.init(ghConfig);
+        graphHopperGtfs.importOrLoad();
+
+        // the 6:00 departure of CITY2 is an hour late, which adds realtime edges for the delayed trip
+        GtfsRealtime.FeedMessage.Builder feedMessageBuilder = GtfsRealtime.FeedMessage.newBuilder();
+        feedMessageBuilder.setHeader(GtfsRealtime.FeedHeader.newBuilder()
+                .setGtfsRealtimeVersion("1")
+                .setTimestamp(ZonedDateTime.of(LocalDate.of(2007, 1, 1), LocalTime.of(0, 0), zoneId).toEpochSecond()));
+        feedMessageBuilder.addEntityBuilder()
+                .setId("1")
+                .getTripUpdateBuilder()
+                .setTrip(GtfsRealtime.TripDescriptor.newBuilder().setTripId("CITY2").setStartTime("06:00:00"))
+                .addStopTimeUpdateBuilder()
+                .setScheduleRelationship(SCHEDULED)
+                .setStopSequence(3)
+                .setArrival(GtfsRealtime.TripUpdate.StopTimeEvent.newBuilder().setDelay(3600).build());
+        GtfsStorage gtfsStorage = graphHopperGtfs.getGtfsStorage();
+        Map<String, Transfers> transfers = new HashMap<>();
+        for (Map.Entry<String, GTFSFeed> entry : gtfsStorage.getGtfsFeeds().entrySet())
+            transfers.put(entry.getKey(), new Transfers(entry.getValue()));
+        realtimeFeed = RealtimeFeed.fromProtobuf(gtfsStorage, transfers, Map.of("gtfs_0", feedMessageBuilder.build()));
+    }
+
+    @AfterAll
+    public static void close() {
+        graphHopperGtfs.close();
+    }
+
+    @Test
+    public void explorerMatchesAttributes() {
+        PtGraph ptGraph = graphHopperGtfs.getPtGraph();
+        int edges = 0, additionalEdges = 0;
+        Set<GtfsStorage.EdgeType> types = EnumSet.noneOf(GtfsStorage.EdgeType.class);
+        // the realtime feed adds nodes after the ones of the storage
+        for (int node = 0; node < ptGraph.getNodeCount() + 100; node++) {
+            for (boolean reverse : new boolean[]{false, true}) {
+                Collection<PtGraph.PtEdge> additional = reverse ? realtimeFeed.getAdditionalEdgesTo(node) : realtimeFeed.getAdditionalEdgesFrom(node);
+                List<PtGraph.PtEdge> expected = expectedEdges(ptGraph, node, reverse, additional);
+                PtGraph.PtEdgeExplorer explorer = ptGraph.createEdgeExplorer(reverse).setBaseNode(node, additional);
+                for (PtGraph.PtEdge e : expected) {
+                    String msg = "node: " + node + ", reverse: " + reverse + ", edge: " + e.getId();
+                    assertTrue(explorer.next(), msg);
+                    assertEquals(e.getId(), explorer.getId(), msg);
+                    assertEquals(e.getBaseNode(), explorer.getBaseNode(), msg);
+                    assertEquals(e.getAdjNode(), explorer.getAdjNode(), msg);
+                    assertEquals(e.getType(), explorer.getType(), msg);
+                    assertEquals(e.getTime(), explorer.getTime(), msg);
+                    if (e.getType() == GtfsStorage.EdgeType.ENTER_PT || e.getType() == GtfsStorage.EdgeType.EXIT_PT || e.getType() == GtfsStorage.EdgeType.TRANSFER)
+                        assertEquals(e.getAttrs().route_type, explorer.getRouteType(), msg);
+                    assertEquals(e.getAttrs().validity, explorer.getValidity(), msg);
+                    assertEquals(e.getAttrs().feedIdWithTimezone, explorer.getFeedIdWithTimezone(), msg);
+                    assertEdgeEquals(e, explorer.detach(), msg);
+                    types.add(e.getType());
+                }
+                assertFalse(explorer.next(), "node: " + node + ", reverse: " + reverse);
+                edges += expected.size();
+                additionalEdges += additional.size();
+            }
+        }
+        // every edge of the storage is found once in each direction, but loops are only linked to their base node
+        int loops = 0;
+        for (int edge = 0; edge < ptGraph.getEdgeCount(); edge++) {
+            long edgePointer = ptGraph.toEdgePointer(edge);
+            if (ptGraph.getNodeA(edgePointer) == ptGraph.getNodeB(edgePointer))
+                loops++;
+        }
+        assertEquals(2 * ptGraph.getEdgeCount() - loops, edges - additionalEdges);
+        assertTrue(additionalEdges > 0);
+        assertEquals(EnumSet.complementOf(EnumSet.of(GtfsStorage.EdgeType.HIGHWAY)), types);
+    }
+
+    @Test
+    public void enterEdgeHasTheLeastWaitingTime() {
+        PtGraph ptGraph = graphHopperGtfs.getPtGraph();
+        GraphExplorer graphExplorer = new GraphExplorer(graphHopperGtfs.getBaseGraph(), ptGraph, null, graphHopperGtfs.getGtfsStorage(),
+                realtimeFeed, false, false, false, 5.0, true, 0);
+        int stations = 0;
+        for (LocalTime time : List.of(LocalTime.of(0, 0), LocalTime.of(6, 44), LocalTime.of(12, 5), LocalTime.of(23, 59))) {
+            long currentTime = LocalDate.of(2007, 1, 1).atTime(time).atZone(zoneId).toInstant().toEpochMilli();
+            for (int node = 0; node < ptGraph.getNodeCount(); node++) {
+                List<PtGraph.PtEdge> edges = expectedEdges(ptGraph, node, false, realtimeFeed.getAdditionalEdgesFrom(node));
+                List<Integer> expected = new ArrayList<>();
+                for (int i = 0; i < edges.size(); i++) {
+                    PtGraph.PtEdge e = edges.get(i);
+                    if (e.getType() == GtfsStorage.EdgeType.ENTER_TIME_EXPANDED_NETWORK) {
+                        // the first edge that is faster than the first enter edge replaces all the remaining edges
+                        long firstTT = travelTime(graphExplorer, e, currentTime);
+                        PtGraph.PtEdge enterEdge = e;
+                        for (PtGraph.PtEdge next : edges.subList(i + 1, edges.size())) {
+                            if (travelTime(graphExplorer, next, currentTime) < firstTT) {
+                                enterEdge = next;
+                                break;
+                            }
+                        }
+                        expected.add(enterEdge.getId());
+                        stations++;
+                        break;
+                    }
+                    if (e.getType() != GtfsStorage.EdgeType.WAIT_ARRIVAL)
+                        expected.add(e.getId());
+                }
+                List<Integer> actual = new ArrayList<>();
+                for (GraphExplorer.MultiModalEdge e : graphExplorer.ptEdgeStream(node, currentTime))
+                    actual.add(e.getId());
+                assertEquals(expected, actual, "node: " + node + ", time: " + time);
+            }
+        }
+        assertTrue(stations > 0);
+    }
+
+    private static long travelTime(GraphExplorer graphExplorer, PtGraph.PtEdge edge, long currentTime) {
+        // the time of all other edges is compared in seconds, like in GraphExplorer
+        if (edge.getType() == GtfsStorage.EdgeType.ENTER_TIME_EXPANDED_NETWORK || edge.getType() == GtfsStorage.EdgeType.LEAVE_TIME_EXPANDED_NETWORK)
+            return graphExplorer.calcTravelTimeMillis(graphExplorer.new MultiModalEdge(edge), currentTime);
+        return edge.getTime();
+    }
+
+    /**
+     * Follows the links of the storage and reads the attributes with {@link PtGraph#edge(int)}.
+     */
+    private static List<PtGraph.PtEdge> expectedEdges(PtGraph ptGraph, int node, boolean reverse, Collection<PtGraph.PtEdge> additionalEdges) {
+        List<PtGraph.PtEdge> result = new ArrayList<>();
+        if (node < ptGraph.getNodeCount()) {
+            long nodePointer = ptGraph.toNodePointer(node);
+            int edgeId = reverse ? ptGraph.getEdgeRefIn(nodePointer) : ptGraph.getEdgeRefOut(nodePointer);
+            while (edgeId >= 0) {
+                result.add(ptGraph.edge(edgeId));
+                long edgePointer = ptGraph.toEdgePointer(edgeId);
+                edgeId = reverse ? ptGraph.getLinkB(edgePointer) : ptGraph.getLinkA(edgePointer);
+            }
+        }
+        result.addAll(additionalEdges);
+        if (reverse)
+            result.replaceAll(e -> new PtGraph.PtEdge(e.getId(), e.getAdjNode(), e.getBaseNode(), e.getAttrs()));
+        return result;
+    }
+
+    private static void assertEdgeEquals(PtGraph.PtEdge expected, PtGraph.PtEdge actual, String msg) {
+        assertEquals(expected.getId(), actual.getId(), msg);
+        assertEquals(expected.getBaseNode(), actual.getBaseNode(), msg);
+        assertEquals(expected.getAdjNode(), actual.getAdjNode(), msg);
+        PtEdgeAttributes e = expected.getAttrs(), a = actual.getAttrs();
+        assertEquals(e.type, a.type, msg);
+        assertEquals(e.time, a.time, msg);
+        assertEquals(e.validity, a.validity, msg);
+        assertEquals(e.route_type, a.route_type, msg);
+        assertEquals(e.feedIdWithTimezone, a.feedIdWithTimezone, msg);
+        assertEquals(e.transfers, a.transfers, msg);
+        assertEquals(e.stop_sequence, a.stop_sequence, msg);
+        assertEquals(e.tripDescriptor, a.tripDescriptor, msg);
+        assertEquals(e.platformDescriptor, a.platformDescriptor, msg);
+    }
+}
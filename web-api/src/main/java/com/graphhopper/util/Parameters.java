@@ -56,6 +56,10 @@ public class Parameters {
          * round trip algorithm (not yet for CH)
          */
         public static final String ROUND_TRIP = "round_trip";
+        /**
+         * one to all search on a node-based CH preparation (currently only used for the shortest path tree)
+         */
+        public static final String PHAST = "phast";
 
         /**
          * All public properties for alternative routing.
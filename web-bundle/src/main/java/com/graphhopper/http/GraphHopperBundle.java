@@ -39,12 +39,17 @@ import io.dropwizard.client.HttpClientBuilder;
 import io.dropwizard.core.ConfiguredBundle;
 import io.dropwizard.core.setup.Bootstrap;
 import io.dropwizard.core.setup.Environment;
+import io.dropwizard.lifecycle.ExecutorServiceManager;
+import io.dropwizard.util.Duration;
 import jakarta.inject.Inject;
 import jakarta.inject.Singleton;
 import org.apache.hc.client5.http.classic.HttpClient;
 import org.glassfish.hk2.api.Factory;
 import org.glassfish.hk2.utilities.binding.AbstractBinder;
 
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+
 public class GraphHopperBundle implements ConfiguredBundle<GraphHopperBundleConfiguration> {
 
     static class TranslationMapFactory implements Factory<TranslationMap> {
@@ -275,11 +280,21 @@ public class GraphHopperBundle implements ConfiguredBundle<GraphHopperBundleConf
         final GraphHopperManaged graphHopperManaged = new GraphHopperManaged(configuration.getGraphHopperConfiguration());
         environment.lifecycle().manage(graphHopperManaged);
         final GraphHopper graphHopper = graphHopperManaged.getGraphHopper();
+        // all batch requests share the same threads, so concurrent requests cannot start more threads than configured
+        final ForkJoinPool matchBatchPool = new ForkJoinPool(configuration.getGraphHopperConfiguration().getInt("routing.match_batch.threads", Runtime.getRuntime().availableProcessors()));
+        environment.lifecycle().manage(new ExecutorServiceManager(matchBatchPool, Duration.seconds(5), "match-batch"));
+        final ForkJoinPool sptBatchPool = new ForkJoinPool(configuration.getGraphHopperConfiguration().getInt("routing.spt_batch.threads", Runtime.getRuntime().availableProcessors()));
+        environment.lifecycle().manage(new ExecutorServiceManager(sptBatchPool, Duration.seconds(5), "spt-batch"));
+        // every running spt batch keeps one full-graph tree per thread, so the number of these batches is limited too
+        final Semaphore sptBatchPermits = new Semaphore(configuration.getGraphHopperConfiguration().getInt("routing.spt_batch.max_concurrent_requests", 2), true);
         environment.jersey().register(new AbstractBinder() {
             @Override
             protected void configure() {
                 bind(configuration.getGraphHopperConfiguration()).to(GraphHopperConfig.class);
                 bind(graphHopper).to(GraphHopper.class);
+                bind(matchBatchPool).to(ForkJoinPool.class).named("matchBatchPool");
+                bind(sptBatchPool).to(ForkJoinPool.class).named("sptBatchPool");
+                bind(sptBatchPermits).to(Semaphore.class).named("sptBatchPermits");
 
                 bind(new JTSTriangulator(graphHopper.getRouterConfig())).to(Triangulator.class);
                 bindFactory(MapMatchingRouterFactoryFactory.class).to(MapMatchingResource.MapMatchingRouterFactory.class);
@@ -326,6 +341,7 @@ public class GraphHopperBundle implements ConfiguredBundle<GraphHopperBundleConf
             environment.jersey().register(PtRedirectFilter.class);
         }
         environment.jersey().register(SPTResource.class);
+        environment.jersey().register(MatrixResource.class);
         environment.jersey().register(I18NResource.class);
         environment.jersey().register(InfoResource.class);
         environment.healthChecks().register("graphhopper", new GraphHopperHealthCheck(graphHopper));
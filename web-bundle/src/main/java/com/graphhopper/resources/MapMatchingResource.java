@@ -17,6 +17,7 @@
  */
 package com.graphhopper.resources;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
@@ -34,17 +35,27 @@ import com.graphhopper.jackson.ResponsePathSerializer;
 import com.graphhopper.matching.*;
 import com.graphhopper.storage.index.LocationIndexTree;
 import com.graphhopper.util.*;
+import com.graphhopper.util.shapes.GHPoint;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import jakarta.inject.Inject;
+import jakarta.inject.Named;
 import jakarta.validation.constraints.NotNull;
 import jakarta.ws.rs.*;
 import jakarta.ws.rs.core.Context;
 import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.StreamingOutput;
 import jakarta.ws.rs.core.UriInfo;
+import java.io.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
 
 import static com.graphhopper.resources.RouteResource.removeLegacyParameters;
 import static com.graphhopper.util.Parameters.Details.PATH_DETAILS;
@@ -62,7 +73,13 @@ public class MapMatchingResource {
         public MapMatching.Router createMapMatchingRouter(PMap hints);
     }
 
+    public static class BatchTrace {
+        public JsonNode id;
+        public List<GHPoint> points;
+    }
+
     private static final Logger logger = LoggerFactory.getLogger(MapMatchingResource.class);
+    private static final String NDJSON = "application/x-ndjson";
 
     private final GraphHopperConfig config;
     private final GraphHopper graphHopper;
@@ -71,15 +88,19 @@ public class MapMatchingResource {
     private final MapMatchingRouterFactory mapMatchingRouterFactory;
     private final ObjectMapper objectMapper = Jackson.newObjectMapper();
     private final String osmDate;
+    private final ForkJoinPool batchPool;
+    private final int maxBatchTraces;
 
     @Inject
-    public MapMatchingResource(GraphHopperConfig config, GraphHopper graphHopper, ProfileResolver profileResolver, TranslationMap trMap, MapMatchingRouterFactory mapMatchingRouterFactory) {
+    public MapMatchingResource(GraphHopperConfig config, GraphHopper graphHopper, ProfileResolver profileResolver, TranslationMap trMap, MapMatchingRouterFactory mapMatchingRouterFactory, @Named("matchBatchPool") ForkJoinPool batchPool) {
         this.config = config;
         this.graphHopper = graphHopper;
         this.profileResolver = profileResolver;
         this.trMap = trMap;
         this.mapMatchingRouterFactory = mapMatchingRouterFactory;
         this.osmDate = graphHopper.getProperties().getAll().get("datareader.data.date");
+        this.batchPool = batchPool;
+        this.maxBatchTraces = config.getInt("routing.match_batch.max_traces", 10_000);
     }
 
     @POST
@@ -114,17 +135,8 @@ public class MapMatchingResource {
 
         StopWatch sw = new StopWatch().start();
 
-        PMap hints = new PMap();
-        RouteResource.initHints(hints, uriInfo.getQueryParameters());
-
-        // resolve profile and remove legacy vehicle/weighting parameters
-        // we need to explicitly disable CH here because map matching does not use it
-        PMap profileResolverHints = new PMap(hints);
-        profileResolverHints.putObject("profile", profile);
-        profileResolverHints.putObject(Parameters.CH.DISABLE, true);
-        profile = profileResolver.resolveProfile(profileResolverHints);
-        hints.putObject("profile", profile);
-        removeLegacyParameters(hints);
+        PMap hints = createHints(uriInfo, profile);
+        profile = hints.getString("profile", "");
 
         MapMatching matching = new MapMatching(graphHopper.getBaseGraph(), (LocationIndexTree) graphHopper.getLocationIndex(), mapMatchingRouterFactory.createMapMatchingRouter(hints));
         matching.setMeasurementErrorSigma(gpsAccuracy);
@@ -193,6 +205,130 @@ public class MapMatchingResource {
         }
     }
 
+    /**
+     * Matches many traces with a single request. Every line of the request body is a JSON object with the id and the
+     * points of one trace, e.g. {"id": "trip-1", "points": [[lon, lat], ...]}. The traces are matched concurrently and
+     * every line of the response contains the result of one trace, so the order of the lines can differ from the
+     * request. A trace that cannot be matched results in a line with its id and the error message. The request lines
+     * are read one after the other and only a few traces per thread are read ahead, so the request body is never kept
+     * in memory. Traces beyond routing.match_batch.max_traces are not read and the last line contains an error message.
+     */
+    @POST
+    @jakarta.ws.rs.Path("batch")
+    @Consumes(NDJSON)
+    @Produces({NDJSON, MediaType.APPLICATION_JSON})
+    public Response matchBatch(
+            InputStream body,
+            @Context UriInfo uriInfo,
+            @QueryParam("profile") String profile,
+            @QueryParam("gps_accuracy") @DefaultValue("10") double gpsAccuracy) {
+        StopWatch sw = new StopWatch().start();
+        PMap hints = createHints(uriInfo, profile);
+        // the MapMatching instances are not thread-safe, so a worker takes one out of this queue for every trace and
+        // puts it back afterwards. this way there are never more instances than threads of the shared pool.
+        Queue<MapMatching> matchings = new ConcurrentLinkedQueue<>();
+        // creating the first instance right away rejects invalid hints before the response starts
+        matchings.add(createMapMatching(hints, gpsAccuracy));
+        StreamingOutput out = output -> {
+            AtomicInteger traces = new AtomicInteger();
+            // limits the traces that were read, but not matched yet
+            int window = 2 * batchPool.getParallelism();
+            Semaphore inFlight = new Semaphore(window);
+            AtomicReference<IOException> writeError = new AtomicReference<>();
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(body, Helper.UTF_CS));
+                 Writer writer = new BufferedWriter(new OutputStreamWriter(output, Helper.UTF_CS))) {
+                int readTraces = 0;
+                boolean tooManyTraces = false;
+                String line;
+                while ((line = reader.readLine()) != null && writeError.get() == null) {
+                    if (line.isBlank())
+                        continue;
+                    if (readTraces++ == maxBatchTraces) {
+                        tooManyTraces = true;
+                        break;
+                    }
+                    inFlight.acquireUninterruptibly();
+                    String trace = line;
+                    batchPool.execute(() -> {
+                        try {
+                            MapMatching matching = matchings.poll();
+                            if (matching == null)
+                                matching = createMapMatching(hints, gpsAccuracy);
+                            String result = matchTrace(trace, matching);
+                            matchings.add(matching);
+                            writeLine(writer, result);
+                            traces.incrementAndGet();
+                        } catch (IOException ex) {
+                            writeError.compareAndSet(null, ex);
+                        } finally {
+                            inFlight.release();
+                        }
+                    });
+                }
+                // wait until all traces are written
+                inFlight.acquireUninterruptibly(window);
+                if (writeError.get() != null)
+                    throw writeError.get();
+                if (tooManyTraces)
+                    writeLine(writer, objectMapper.createObjectNode().put("message", "The maximum number of traces per request is " + maxBatchTraces).toString());
+            }
+            logger.info("batch took: " + sw.stop().getSeconds() + ", traces: " + traces.get() + ", profile: " + hints.getString("profile", ""));
+        };
+        return Response.ok(out).type(NDJSON).build();
+    }
+
+    private MapMatching createMapMatching(PMap hints, double gpsAccuracy) {
+        MapMatching matching = new MapMatching(graphHopper.getBaseGraph(), (LocationIndexTree) graphHopper.getLocationIndex(), mapMatchingRouterFactory.createMapMatchingRouter(hints));
+        matching.setMeasurementErrorSigma(gpsAccuracy);
+        return matching;
+    }
+
+    private static void writeLine(Writer writer, String line) throws IOException {
+        synchronized (writer) {
+            writer.write(line);
+            writer.write('\n');
+        }
+    }
+
+    private String matchTrace(String line, MapMatching matching) {
+        ObjectNode result = objectMapper.createObjectNode();
+        try {
+            BatchTrace trace = objectMapper.readValue(line, BatchTrace.class);
+            result.set("id", trace.id);
+            if (trace.points == null || trace.points.isEmpty())
+                throw new IllegalArgumentException("At least one point has to be specified");
+            List<Observation> observations = trace.points.stream().map(Observation::new).collect(Collectors.toList());
+            MatchResult matchResult = matching.match(observations);
+            result.put("distance", matchResult.getMatchLength());
+            result.put("time", matchResult.getMatchMillis());
+            result.put("original_distance", matchResult.getGpxEntriesLength());
+            ArrayNode traversalKeys = result.putArray("traversal_keys");
+            for (EdgeMatch em : matchResult.getEdgeMatches())
+                traversalKeys.add(em.getEdgeState().getEdgeKey());
+        } catch (JsonProcessingException | IllegalArgumentException ex) {
+            result.put("message", ex.getMessage());
+        } catch (RuntimeException ex) {
+            // an unexpected error must not abort the other traces of the batch
+            logger.error("Could not match trace " + result.get("id"), ex);
+            result.put("message", "Internal server error");
+        }
+        return result.toString();
+    }
+
+    private PMap createHints(UriInfo uriInfo, String profile) {
+        PMap hints = new PMap();
+        RouteResource.initHints(hints, uriInfo.getQueryParameters());
+
+        // resolve profile and remove legacy vehicle/weighting parameters
+        // we need to explicitly disable CH here because map matching does not use it
+        PMap profileResolverHints = new PMap(hints);
+        profileResolverHints.putObject("profile", profile);
+        profileResolverHints.putObject(Parameters.CH.DISABLE, true);
+        hints.putObject("profile", profileResolver.resolveProfile(profileResolverHints));
+        removeLegacyParameters(hints);
+        return hints;
+    }
+
     public static JsonNode convertToTree(MatchResult result, boolean elevation, boolean pointsEncoded, double pointsEncodedMultiplier) {
         ObjectNode root = JsonNodeFactory.instance.objectNode();
         ObjectNode diary = root.putObject("diary");
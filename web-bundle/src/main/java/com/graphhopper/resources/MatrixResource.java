@@ -0,0 +1,308 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.resources;
+
+import com.fasterxml.jackson.annotation.JsonAnySetter;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.graphhopper.GraphHopper;
+import com.graphhopper.GraphHopperConfig;
+import com.graphhopper.http.ProfileResolver;
+import com.graphhopper.jackson.MultiException;
+import com.graphhopper.routing.ch.ManyToManyCH;
+import com.graphhopper.routing.ev.*;
+import com.graphhopper.routing.querygraph.QueryGraph;
+import com.graphhopper.routing.querygraph.QueryRoutingCHGraph;
+import com.graphhopper.routing.util.DefaultSnapFilter;
+import com.graphhopper.routing.util.EdgeFilter;
+import com.graphhopper.routing.util.SnapPreventionEdgeFilter;
+import com.graphhopper.storage.RoutingCHGraph;
+import com.graphhopper.storage.index.LocationIndex;
+import com.graphhopper.storage.index.Snap;
+import com.graphhopper.util.PMap;
+import com.graphhopper.util.StopWatch;
+import com.graphhopper.util.exceptions.ConnectionNotFoundException;
+import com.graphhopper.util.exceptions.PointNotFoundException;
+import com.graphhopper.util.shapes.GHPoint;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import jakarta.inject.Inject;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.validation.constraints.NotNull;
+import jakarta.ws.rs.Consumes;
+import jakarta.ws.rs.POST;
+import jakarta.ws.rs.Path;
+import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
+import jakarta.ws.rs.core.StreamingOutput;
+import java.io.IOException;
+import java.util.*;
+
+import static com.graphhopper.resources.RouteResource.removeLegacyParameters;
+
+/**
+ * This resource calculates the weights, times and distances between many locations at once. It requires a CH
+ * preparation for the requested profile and uses a bucket-based many-to-many search, see {@link ManyToManyCH}. The
+ * request and response format is the one expected by the GraphHopperMatrixWeb client.
+ */
+@Path("matrix")
+public class MatrixResource {
+
+    private static final Logger logger = LoggerFactory.getLogger(MatrixResource.class);
+    private static final JsonFactory jsonFactory = new JsonFactory();
+
+    public static class Request {
+        public String profile;
+        public List<GHPoint> points;
+        public List<GHPoint> fromPoints;
+        public List<GHPoint> toPoints;
+        public List<String> snapPreventions;
+        public List<String> outArrays = List.of("times");
+        public boolean failFast = true;
+        private final PMap hints = new PMap();
+
+        @JsonAnySetter
+        public void putHint(String fieldName, Object value) {
+            hints.putObject(fieldName, value);
+        }
+
+        public PMap getHints() {
+            return hints;
+        }
+    }
+
+    private final GraphHopper graphHopper;
+    private final ProfileResolver profileResolver;
+    private final List<String> snapPreventionsDefault;
+    private final int maxLocations;
+
+    @Inject
+    public MatrixResource(GraphHopperConfig config, GraphHopper graphHopper, ProfileResolver profileResolver) {
+        this.graphHopper = graphHopper;
+        this.profileResolver = profileResolver;
+        this.snapPreventionsDefault = Arrays.stream(config.getString("routing.snap_preventions_default", "")
+                .split(",")).map(String::trim).filter(s -> !s.isEmpty()).toList();
+        this.maxLocations = config.getInt("routing.matrix.max_locations", 1_000);
+    }
+
+    @POST
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces(MediaType.APPLICATION_JSON)
+    public Response doPost(@NotNull Request request, @Context HttpServletRequest httpReq) {
+        StopWatch sw = new StopWatch().start();
+        final List<GHPoint> fromPoints;
+        final List<GHPoint> toPoints;
+        if (request.points != null) {
+            if (request.fromPoints != null || request.toPoints != null)
+                throw new IllegalArgumentException("Either specify points or from_points and to_points, but not both");
+            fromPoints = request.points;
+            toPoints = request.points;
+        } else {
+            if (request.fromPoints == null || request.toPoints == null)
+                throw new IllegalArgumentException("Either points or from_points and to_points have to be specified");
+            fromPoints = request.fromPoints;
+            toPoints = request.toPoints;
+        }
+        if (fromPoints.isEmpty() || toPoints.isEmpty())
+            throw new IllegalArgumentException("At least one from and one to point have to be specified");
+        if (fromPoints.size() > maxLocations || toPoints.size() > maxLocations)
+            throw new IllegalArgumentException("Too many locations, the maximum is " + maxLocations + " for from_points and to_points, but was "
+                    + fromPoints.size() + " and " + toPoints.size());
+        boolean withWeights = request.outArrays.contains("weights");
+        boolean withTimes = request.outArrays.contains("times");
+        boolean withDistances = request.outArrays.contains("distances");
+        if (!withWeights && !withTimes && !withDistances)
+            throw new IllegalArgumentException("out_arrays must contain at least one of weights, times or distances, but was: " + request.outArrays);
+
+        PMap profileResolverHints = new PMap(request.getHints());
+        profileResolverHints.putObject("profile", request.profile);
+        String profileName = profileResolver.resolveProfile(profileResolverHints);
+        removeLegacyParameters(request.getHints());
+        RoutingCHGraph chGraph = graphHopper.getCHGraphs().get(profileName);
+        if (chGraph == null)
+            throw new IllegalArgumentException("The matrix requires a CH preparation, but there is none for the requested profile: '" + profileName + "'" +
+                    ", available CH profiles: " + graphHopper.getCHGraphs().keySet());
+
+        BooleanEncodedValue inSubnetworkEnc = graphHopper.getEncodingManager().getBooleanEncodedValue(Subnetwork.key(profileName));
+        EdgeFilter snapFilter = new DefaultSnapFilter(chGraph.getWeighting(), inSubnetworkEnc);
+        List<String> snapPreventions = request.snapPreventions == null ? snapPreventionsDefault : request.snapPreventions;
+        EdgeFilter strictSnapFilter = snapPreventions.isEmpty() ? snapFilter : new SnapPreventionEdgeFilter(snapFilter,
+                graphHopper.getEncodingManager().getEnumEncodedValue(RoadClass.KEY, RoadClass.class),
+                graphHopper.getEncodingManager().getEnumEncodedValue(RoadEnvironment.KEY, RoadEnvironment.class), snapPreventions);
+
+        List<Snap> snaps = new ArrayList<>();
+        List<Integer> invalidFromPoints = new ArrayList<>();
+        List<Integer> invalidToPoints = new ArrayList<>();
+        List<Snap> fromSnaps = lookup(fromPoints, snapFilter, strictSnapFilter, invalidFromPoints, snaps);
+        List<Snap> toSnaps = request.points != null ? fromSnaps : lookup(toPoints, snapFilter, strictSnapFilter, invalidToPoints, snaps);
+        if (request.points != null)
+            invalidToPoints = invalidFromPoints;
+        if (request.failFast && (!invalidFromPoints.isEmpty() || !invalidToPoints.isEmpty())) {
+            List<Throwable> errors = new ArrayList<>();
+            for (int index : invalidFromPoints)
+                errors.add(new PointNotFoundException("Cannot find from_point " + index + ": " + fromPoints.get(index), index));
+            if (request.points == null)
+                for (int index : invalidToPoints)
+                    errors.add(new PointNotFoundException("Cannot find to_point " + index + ": " + toPoints.get(index), index));
+            throw new MultiException(errors);
+        }
+
+        QueryGraph queryGraph = QueryGraph.create(graphHopper.getBaseGraph(), snaps);
+        ManyToManyCH manyToMany = new ManyToManyCH(new QueryRoutingCHGraph(chGraph, queryGraph))
+                .calcMatrix(toNodes(fromSnaps), toNodes(toSnaps));
+
+        List<int[]> disconnectedPairs = new ArrayList<>();
+        for (int i = 0; i < fromSnaps.size(); i++) {
+            if (fromSnaps.get(i) == null)
+                continue;
+            for (int j = 0; j < toSnaps.size(); j++) {
+                if (toSnaps.get(j) != null && Double.isInfinite(manyToMany.getWeights()[i][j]))
+                    disconnectedPairs.add(new int[]{i, j});
+            }
+        }
+        if (request.failFast && !disconnectedPairs.isEmpty()) {
+            List<Throwable> errors = new ArrayList<>();
+            for (int[] pair : disconnectedPairs)
+                errors.add(new ConnectionNotFoundException("Connection between locations not found",
+                        Map.of("from_index", pair[0], "to_index", pair[1])));
+            throw new MultiException(errors);
+        }
+
+        double took = sw.stop().getMillisDouble();
+        logger.info(httpReq.getRemoteAddr() + " " + httpReq.getLocale() + " " + httpReq.getHeader("User-Agent") + " "
+                + fromPoints.size() + "x" + toPoints.size() + ", took: " + String.format("%.1f", took) + " ms, profile: " + profileName
+                + ", visited nodes: " + manyToMany.getVisitedNodes());
+
+        final List<Integer> finalInvalidToPoints = invalidToPoints;
+        StreamingOutput out = output -> {
+            try (JsonGenerator json = jsonFactory.createGenerator(output)) {
+                json.writeStartObject();
+                if (withWeights) {
+                    json.writeArrayFieldStart("weights");
+                    for (double[] row : manyToMany.getWeights()) {
+                        json.writeStartArray();
+                        for (double weight : row) {
+                            if (Double.isInfinite(weight))
+                                json.writeNull();
+                            else
+                                json.writeNumber(Math.round(weight * 1000) / 1000.0);
+                        }
+                        json.writeEndArray();
+                    }
+                    json.writeEndArray();
+                }
+                if (withTimes) {
+                    json.writeArrayFieldStart("times");
+                    for (long[] row : manyToMany.getTimes()) {
+                        json.writeStartArray();
+                        for (long time : row) {
+                            if (time == Long.MAX_VALUE)
+                                json.writeNull();
+                            else
+                                json.writeNumber(Math.round(time / 1000.0));
+                        }
+                        json.writeEndArray();
+                    }
+                    json.writeEndArray();
+                }
+                if (withDistances) {
+                    json.writeArrayFieldStart("distances");
+                    for (double[] row : manyToMany.getDistances()) {
+                        json.writeStartArray();
+                        for (double distance : row) {
+                            if (Double.isInfinite(distance))
+                                json.writeNull();
+                            else
+                                json.writeNumber(Math.round(distance));
+                        }
+                        json.writeEndArray();
+                    }
+                    json.writeEndArray();
+                }
+                if (!request.failFast && (!disconnectedPairs.isEmpty() || !invalidFromPoints.isEmpty() || !finalInvalidToPoints.isEmpty())) {
+                    json.writeArrayFieldStart("hints");
+                    if (!disconnectedPairs.isEmpty()) {
+                        json.writeStartObject();
+                        json.writeStringField("message", "There are disconnected points");
+                        json.writeArrayFieldStart("point_pairs");
+                        for (int[] pair : disconnectedPairs)
+                            json.writeArray(pair, 0, 2);
+                        json.writeEndArray();
+                        json.writeEndObject();
+                    }
+                    if (!invalidFromPoints.isEmpty() || !finalInvalidToPoints.isEmpty()) {
+                        json.writeStartObject();
+                        json.writeStringField("message", "Cannot find some of the points");
+                        writeIntArray(json, "invalid_from_points", invalidFromPoints);
+                        writeIntArray(json, "invalid_to_points", finalInvalidToPoints);
+                        json.writeEndObject();
+                    }
+                    json.writeEndArray();
+                }
+                json.writeObjectFieldStart("info");
+                json.writeNumberField("took", Math.round(took));
+                json.writeEndObject();
+                json.writeEndObject();
+            }
+        };
+        return Response.ok(out).header("X-GH-Took", "" + Math.round(took)).type(MediaType.APPLICATION_JSON).build();
+    }
+
+    /**
+     * Snaps the given points and adds all valid snaps to allSnaps. The returned list contains null for every point that
+     * could not be snapped and its index is added to invalidPoints.
+     */
+    private List<Snap> lookup(List<GHPoint> points, EdgeFilter snapFilter, EdgeFilter strictSnapFilter, List<Integer> invalidPoints, List<Snap> allSnaps) {
+        LocationIndex locationIndex = graphHopper.getLocationIndex();
+        // the request thread does the lookup, but points in the same tile share the edge lookups
+        List<Snap> strictSnaps = locationIndex.findClosestBatch(points, strictSnapFilter, 1);
+        List<Snap> result = new ArrayList<>(points.size());
+        for (int i = 0; i < points.size(); i++) {
+            GHPoint point = points.get(i);
+            Snap snap = strictSnaps.get(i);
+            if (!snap.isValid() && strictSnapFilter != snapFilter)
+                snap = locationIndex.findClosest(point.lat, point.lon, snapFilter);
+            if (snap.isValid()) {
+                result.add(snap);
+                allSnaps.add(snap);
+            } else {
+                result.add(null);
+                invalidPoints.add(i);
+            }
+        }
+        return result;
+    }
+
+    private static int[] toNodes(List<Snap> snaps) {
+        // the closest nodes are only valid after the query graph was created
+        int[] nodes = new int[snaps.size()];
+        for (int i = 0; i < snaps.size(); i++)
+            nodes[i] = snaps.get(i) == null ? -1 : snaps.get(i).getClosestNode();
+        return nodes;
+    }
+
+    private static void writeIntArray(JsonGenerator json, String fieldName, List<Integer> values) throws IOException {
+        json.writeArrayFieldStart(fieldName);
+        for (int value : values)
+            json.writeNumber(value);
+        json.writeEndArray();
+    }
+}
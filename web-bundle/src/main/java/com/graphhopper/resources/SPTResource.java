@@ -1,37 +1,50 @@
 package com.graphhopper.resources;
 
+import com.fasterxml.jackson.annotation.JsonAnySetter;
 import com.graphhopper.GraphHopper;
+import com.graphhopper.GraphHopperConfig;
 import com.graphhopper.config.Profile;
 import com.graphhopper.http.GHPointParam;
 import com.graphhopper.http.ProfileResolver;
 import com.graphhopper.isochrone.algorithm.ShortestPathTree;
+import com.graphhopper.isochrone.algorithm.ShortestPathTreeBatch;
+import com.graphhopper.jackson.MultiException;
 import com.graphhopper.routing.ev.*;
+import com.graphhopper.routing.ch.PhastCH;
 import com.graphhopper.routing.querygraph.QueryGraph;
+import com.graphhopper.routing.querygraph.QueryRoutingCHGraph;
 import com.graphhopper.routing.util.DefaultSnapFilter;
 import com.graphhopper.routing.util.EncodingManager;
 import com.graphhopper.routing.util.TraversalMode;
 import com.graphhopper.routing.weighting.Weighting;
 import com.graphhopper.storage.BaseGraph;
 import com.graphhopper.storage.NodeAccess;
+import com.graphhopper.storage.RoutingCHGraph;
 import com.graphhopper.storage.index.LocationIndex;
 import com.graphhopper.storage.index.Snap;
 import com.graphhopper.util.*;
+import com.graphhopper.util.exceptions.PointNotFoundException;
 import com.graphhopper.util.shapes.GHPoint;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import jakarta.inject.Inject;
+import jakarta.inject.Named;
 import jakarta.validation.constraints.NotNull;
 import jakarta.ws.rs.*;
 import jakarta.ws.rs.core.Context;
+import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.core.StreamingOutput;
 import jakarta.ws.rs.core.UriInfo;
+
 import java.io.BufferedWriter;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
 import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
 
 import static com.graphhopper.resources.RouteResource.removeLegacyParameters;
 import static com.graphhopper.routing.util.TraversalMode.EDGE_BASED;
@@ -46,6 +59,9 @@ public class SPTResource {
 
     private static final Logger logger = LoggerFactory.getLogger(SPTResource.class);
 
+    private static final List<String> BATCH_COLUMNS = Arrays.asList("origin", "node_id", "prev_node_id", "edge_id", "prev_edge_id",
+            "distance", "prev_distance", "time", "prev_time", "longitude", "prev_longitude", "latitude", "prev_latitude");
+
     public static class IsoLabelWithCoordinates {
         public int nodeId = -1;
         public int edgeId, prevEdgeId, prevNodeId = -1;
@@ -54,15 +70,41 @@ public class SPTResource {
         public GHPoint coordinate, prevCoordinate;
     }
 
+    public static class BatchRequest {
+        public String profile;
+        public List<GHPoint> points;
+        public boolean reverseFlow = false;
+        public List<String> columns = Arrays.asList("origin", "longitude", "latitude", "time", "distance");
+        public long timeLimit = 600;
+        public long distanceLimit = -1;
+        private final PMap hints = new PMap();
+
+        @JsonAnySetter
+        public void putHint(String fieldName, Object value) {
+            hints.putObject(fieldName, value);
+        }
+
+        public PMap getHints() {
+            return hints;
+        }
+    }
+
     private final GraphHopper graphHopper;
     private final ProfileResolver profileResolver;
     private final EncodingManager encodingManager;
+    private final ForkJoinPool batchPool;
+    private final Semaphore batchPermits;
+    private final int batchMaxPoints;
 
     @Inject
-    public SPTResource(GraphHopper graphHopper, ProfileResolver profileResolver, EncodingManager encodingManager) {
+    public SPTResource(GraphHopperConfig config, GraphHopper graphHopper, ProfileResolver profileResolver, EncodingManager encodingManager,
+                       @Named("sptBatchPool") ForkJoinPool batchPool, @Named("sptBatchPermits") Semaphore batchPermits) {
         this.graphHopper = graphHopper;
         this.profileResolver = profileResolver;
         this.encodingManager = encodingManager;
+        this.batchPool = batchPool;
+        this.batchPermits = batchPermits;
+        this.batchMaxPoints = config.getInt("routing.spt_batch.max_points", 1_000);
     }
 
     // Annotating this as application/json because errors come out as json, and
@@ -80,6 +122,7 @@ public class SPTResource {
         StopWatch sw = new StopWatch().start();
         PMap hintsMap = new PMap();
         RouteResource.initHints(hintsMap, uriInfo.getQueryParameters());
+        boolean usePhast = Parameters.Algorithms.PHAST.equals(hintsMap.getString(Parameters.Routing.ALGORITHM, ""));
         hintsMap.putObject(Parameters.CH.DISABLE, true);
         hintsMap.putObject(Parameters.Landmark.DISABLE, true);
 
@@ -91,9 +134,18 @@ public class SPTResource {
         Profile profile = graphHopper.getProfile(profileName);
         if (profile == null)
             throw new IllegalArgumentException("The requested profile '" + profileName + "' does not exist");
+        RoutingCHGraph chGraph = null;
+        if (usePhast) {
+            chGraph = graphHopper.getCHGraphs().get(profileName);
+            if (chGraph == null)
+                throw new IllegalArgumentException("The algorithm '" + Parameters.Algorithms.PHAST + "' requires a CH preparation, but there is none for the requested profile: '" + profileName + "'" +
+                        ", available CH profiles: " + graphHopper.getCHGraphs().keySet());
+            if (chGraph.isEdgeBased())
+                throw new IllegalArgumentException("The algorithm '" + Parameters.Algorithms.PHAST + "' does not support profiles with turn costs");
+        }
         LocationIndex locationIndex = graphHopper.getLocationIndex();
         BaseGraph graph = graphHopper.getBaseGraph();
-        Weighting weighting = graphHopper.createWeighting(profile, hintsMap);
+        Weighting weighting = usePhast ? chGraph.getWeighting() : graphHopper.createWeighting(profile, hintsMap);
         BooleanEncodedValue inSubnetworkEnc = graphHopper.getEncodingManager().getBooleanEncodedValue(Subnetwork.key(profileName));
         Snap snap = locationIndex.findClosest(point.get().lat, point.get().lon, new DefaultSnapFilter(weighting, inSubnetworkEnc));
         if (!snap.isValid())
@@ -102,12 +154,18 @@ public class SPTResource {
         NodeAccess nodeAccess = queryGraph.getNodeAccess();
         TraversalMode traversalMode = profile.hasTurnCosts() ? EDGE_BASED : NODE_BASED;
         ShortestPathTree shortestPathTree = new ShortestPathTree(queryGraph, queryGraph.wrapWeighting(weighting), reverseFlow, traversalMode);
+        PhastCH phast = usePhast ? new PhastCH(new QueryRoutingCHGraph(chGraph, queryGraph), reverseFlow) : null;
 
+        final double distanceLimit;
+        final double timeLimit;
         if (distanceInMeter.orElseThrow(() -> new IllegalArgumentException("query param distance_limit is not a number.")) > 0) {
-            shortestPathTree.setDistanceLimit(distanceInMeter.getAsLong());
+            distanceLimit = distanceInMeter.getAsLong();
+            timeLimit = Double.POSITIVE_INFINITY;
+            shortestPathTree.setDistanceLimit(distanceLimit);
         } else {
-            double limit = timeLimitInSeconds.orElseThrow(() -> new IllegalArgumentException("query param time_limit is not a number.")) * 1000d;
-            shortestPathTree.setTimeLimit(limit);
+            distanceLimit = Double.POSITIVE_INFINITY;
+            timeLimit = timeLimitInSeconds.orElseThrow(() -> new IllegalArgumentException("query param time_limit is not a number.")) * 1000d;
+            shortestPathTree.setTimeLimit(timeLimit);
         }
 
         final String COL_SEP = ",", LINE_SEP = "\n";
@@ -136,99 +194,252 @@ public class SPTResource {
                 }
                 sb.append(LINE_SEP);
                 writer.write(sb.toString());
-                shortestPathTree.search(snap.getClosestNode(), l -> {
-                    IsoLabelWithCoordinates label = isoLabelWithCoordinates(nodeAccess, l);
-                    sb.setLength(0);
-                    for (int colIndex = 0; colIndex < columns.size(); colIndex++) {
-                        String col = columns.get(colIndex);
-                        if (colIndex > 0)
-                            sb.append(COL_SEP);
-
-                        switch (col) {
-                            case "node_id":
-                                sb.append(label.nodeId);
-                                continue;
-                            case "prev_node_id":
-                                sb.append(label.prevNodeId);
-                                continue;
-                            case "edge_id":
-                                sb.append(label.edgeId);
-                                continue;
-                            case "prev_edge_id":
-                                sb.append(label.prevEdgeId);
-                                continue;
-                            case "distance":
-                                sb.append(label.distance);
-                                continue;
-                            case "prev_distance":
-                                sb.append(label.prevCoordinate == null ? 0 : label.prevDistance);
-                                continue;
-                            case "time":
-                                sb.append(label.timeMillis);
-                                continue;
-                            case "prev_time":
-                                sb.append(label.prevCoordinate == null ? 0 : label.prevTimeMillis);
-                                continue;
-                            case "longitude":
-                                sb.append(Helper.round6(label.coordinate.lon));
-                                continue;
-                            case "prev_longitude":
-                                sb.append(label.prevCoordinate == null ? null : Helper.round6(label.prevCoordinate.lon));
-                                continue;
-                            case "latitude":
-                                sb.append(Helper.round6(label.coordinate.lat));
-                                continue;
-                            case "prev_latitude":
-                                sb.append(label.prevCoordinate == null ? null : Helper.round6(label.prevCoordinate.lat));
-                                continue;
-                        }
-
-                        if (!EdgeIterator.Edge.isValid(label.edgeId))
+                if (usePhast) {
+                    phast.calcOneToAll(snap.getClosestNode());
+                    for (int node = 0; node < phast.getNodes(); node++) {
+                        if (Double.isInfinite(phast.getWeight(node)) || phast.getTime(node) > timeLimit || phast.getDistance(node) > distanceLimit)
                             continue;
+                        writeRow(writer, sb, columns, isoLabelWithCoordinates(nodeAccess, phast, node), queryGraph, pathDetails, reverseFlow);
+                    }
+                    logger.info("took: " + sw.stop().getSeconds() + ", visited nodes:" + phast.getVisitedNodes() + ", " + uriInfo.getQueryParameters());
+                } else {
+                    shortestPathTree.search(snap.getClosestNode(), l ->
+                            writeRow(writer, sb, columns, isoLabelWithCoordinates(nodeAccess, l), queryGraph, pathDetails, reverseFlow));
+                    logger.info("took: " + sw.stop().getSeconds() + ", visited nodes:" + shortestPathTree.getVisitedNodes() + ", " + uriInfo.getQueryParameters());
+                }
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        };
+        // Give media type explicitly since we are annotating CSV and JSON, because error messages are JSON.
+        return Response.ok(out).type("text/csv").build();
+    }
 
-                        EdgeIteratorState edge = queryGraph.getEdgeIteratorState(label.edgeId, label.nodeId);
-                        if (edge == null)
-                            continue;
+    private static void writeRow(Writer writer, StringBuilder sb, List<String> columns, IsoLabelWithCoordinates label,
+                                 QueryGraph queryGraph, Map<String, EncodedValue> pathDetails, boolean reverseFlow) {
+        final String COL_SEP = ",", LINE_SEP = "\n";
+        sb.setLength(0);
+        for (int colIndex = 0; colIndex < columns.size(); colIndex++) {
+            String col = columns.get(colIndex);
+            if (colIndex > 0)
+                sb.append(COL_SEP);
 
-                        if (col.equals(STREET_NAME)) {
-                            sb.append(edge.getName().replaceAll(",", ""));
-                            continue;
-                        }
+            switch (col) {
+                case "node_id":
+                    sb.append(label.nodeId);
+                    continue;
+                case "prev_node_id":
+                    sb.append(label.prevNodeId);
+                    continue;
+                case "edge_id":
+                    sb.append(label.edgeId);
+                    continue;
+                case "prev_edge_id":
+                    sb.append(label.prevEdgeId);
+                    continue;
+                case "distance":
+                    sb.append(label.distance);
+                    continue;
+                case "prev_distance":
+                    sb.append(label.prevCoordinate == null ? 0 : label.prevDistance);
+                    continue;
+                case "time":
+                    sb.append(label.timeMillis);
+                    continue;
+                case "prev_time":
+                    sb.append(label.prevCoordinate == null ? 0 : label.prevTimeMillis);
+                    continue;
+                case "longitude":
+                    sb.append(Helper.round6(label.coordinate.lon));
+                    continue;
+                case "prev_longitude":
+                    sb.append(label.prevCoordinate == null ? null : Helper.round6(label.prevCoordinate.lon));
+                    continue;
+                case "latitude":
+                    sb.append(Helper.round6(label.coordinate.lat));
+                    continue;
+                case "prev_latitude":
+                    sb.append(label.prevCoordinate == null ? null : Helper.round6(label.prevCoordinate.lat));
+                    continue;
+            }
 
-                        EncodedValue ev = pathDetails.get(col);
-                        if (ev instanceof DecimalEncodedValue) {
-                            DecimalEncodedValue dev = (DecimalEncodedValue) ev;
-                            sb.append(reverseFlow ? edge.getReverse(dev) : edge.get(dev));
-                        } else if (ev instanceof EnumEncodedValue) {
-                            EnumEncodedValue eev = (EnumEncodedValue) ev;
-                            sb.append(reverseFlow ? edge.getReverse(eev) : edge.get(eev));
-                        } else if (ev instanceof BooleanEncodedValue) {
-                            BooleanEncodedValue eev = (BooleanEncodedValue) ev;
-                            sb.append(reverseFlow ? edge.getReverse(eev) : edge.get(eev));
-                        } else if (ev instanceof IntEncodedValue) {
-                            IntEncodedValue eev = (IntEncodedValue) ev;
-                            sb.append(reverseFlow ? edge.getReverse(eev) : edge.get(eev));
-                        } else {
-                            throw new IllegalArgumentException("Unknown property " + col);
-                        }
-                    }
-                    sb.append(LINE_SEP);
-                    try {
-                        writer.write(sb.toString());
-                    } catch (IOException ex) {
-                        throw new RuntimeException(ex);
-                    }
-                });
+            if (!EdgeIterator.Edge.isValid(label.edgeId))
+                continue;
+
+            EdgeIteratorState edge = queryGraph.getEdgeIteratorState(label.edgeId, label.nodeId);
+            if (edge == null)
+                continue;
+
+            if (col.equals(STREET_NAME)) {
+                sb.append(edge.getName().replaceAll(",", ""));
+                continue;
+            }
+
+            EncodedValue ev = pathDetails.get(col);
+            if (ev instanceof DecimalEncodedValue) {
+                DecimalEncodedValue dev = (DecimalEncodedValue) ev;
+                sb.append(reverseFlow ? edge.getReverse(dev) : edge.get(dev));
+            } else if (ev instanceof EnumEncodedValue) {
+                EnumEncodedValue eev = (EnumEncodedValue) ev;
+                sb.append(reverseFlow ? edge.getReverse(eev) : edge.get(eev));
+            } else if (ev instanceof BooleanEncodedValue) {
+                BooleanEncodedValue eev = (BooleanEncodedValue) ev;
+                sb.append(reverseFlow ? edge.getReverse(eev) : edge.get(eev));
+            } else if (ev instanceof IntEncodedValue) {
+                IntEncodedValue eev = (IntEncodedValue) ev;
+                sb.append(reverseFlow ? edge.getReverse(eev) : edge.get(eev));
+            } else {
+                throw new IllegalArgumentException("Unknown property " + col);
+            }
+        }
+        sb.append(LINE_SEP);
+        try {
+            writer.write(sb.toString());
+        } catch (IOException ex) {
+            throw new RuntimeException(ex);
+        }
+    }
+
+    /**
+     * Calculates the shortest path trees of many points at once. The trees are calculated concurrently, so the rows of
+     * different points can be mixed in the response, use the 'origin' column to identify the point a row belongs to.
+     */
+    @POST
+    @Path("batch")
+    @Consumes(MediaType.APPLICATION_JSON)
+    @Produces({"text/csv", "application/json"})
+    public Response doPostBatch(@NotNull BatchRequest request) {
+        StopWatch sw = new StopWatch().start();
+        if (request.points == null || request.points.isEmpty())
+            throw new IllegalArgumentException("At least one point has to be specified");
+        if (request.points.size() > batchMaxPoints)
+            throw new IllegalArgumentException("Too many points, the maximum is " + batchMaxPoints + ", but was " + request.points.size());
+        if (request.columns.isEmpty())
+            throw new IllegalArgumentException("Either omit the columns parameter or specify at least one column");
+        for (String col : request.columns)
+            if (!BATCH_COLUMNS.contains(col))
+                throw new IllegalArgumentException("Unknown column '" + col + "', supported columns are: " + BATCH_COLUMNS);
+
+        PMap hintsMap = new PMap(request.getHints());
+        hintsMap.putObject(Parameters.CH.DISABLE, true);
+        hintsMap.putObject(Parameters.Landmark.DISABLE, true);
+        PMap profileResolverHints = new PMap(hintsMap);
+        profileResolverHints.putObject("profile", request.profile);
+        String profileName = profileResolver.resolveProfile(profileResolverHints);
+        removeLegacyParameters(hintsMap);
+
+        Profile profile = graphHopper.getProfile(profileName);
+        if (profile == null)
+            throw new IllegalArgumentException("The requested profile '" + profileName + "' does not exist");
+        LocationIndex locationIndex = graphHopper.getLocationIndex();
+        Weighting weighting = graphHopper.createWeighting(profile, hintsMap);
+        BooleanEncodedValue inSubnetworkEnc = graphHopper.getEncodingManager().getBooleanEncodedValue(Subnetwork.key(profileName));
+        DefaultSnapFilter snapFilter = new DefaultSnapFilter(weighting, inSubnetworkEnc);
+        List<Snap> snaps = locationIndex.findClosestBatch(request.points, snapFilter, batchPool.getParallelism());
+        List<Throwable> errors = new ArrayList<>();
+        for (int i = 0; i < snaps.size(); i++) {
+            if (!snaps.get(i).isValid())
+                errors.add(new PointNotFoundException("Cannot find point " + i + ": " + request.points.get(i), i));
+        }
+        if (!errors.isEmpty())
+            throw new MultiException(errors);
+        // a single query graph for all points, so all trees can share it
+        QueryGraph queryGraph = QueryGraph.create(graphHopper.getBaseGraph(), snaps);
+        NodeAccess nodeAccess = queryGraph.getNodeAccess();
+        int[] origins = snaps.stream().mapToInt(Snap::getClosestNode).toArray();
+        TraversalMode traversalMode = profile.hasTurnCosts() ? EDGE_BASED : NODE_BASED;
+        ShortestPathTreeBatch sptBatch = new ShortestPathTreeBatch(queryGraph, queryGraph.wrapWeighting(weighting), request.reverseFlow, traversalMode)
+                .setPool(batchPool);
+        if (request.distanceLimit > 0)
+            sptBatch.setDistanceLimit(request.distanceLimit);
+        else
+            sptBatch.setTimeLimit(request.timeLimit * 1000d);
 
-                logger.info("took: " + sw.stop().getSeconds() + ", visited nodes:" + shortestPathTree.getVisitedNodes() + ", " + uriInfo.getQueryParameters());
+        final String COL_SEP = ",", LINE_SEP = "\n";
+        List<String> columns = request.columns;
+        StreamingOutput out = output -> {
+            try (Writer writer = new BufferedWriter(new OutputStreamWriter(output, Helper.UTF_CS))) {
+                writer.write(String.join(COL_SEP, columns) + LINE_SEP);
+                // wait until fewer batches are running than allowed. the permit is taken only while streaming, so it
+                // is always released, even if this response is never written
+                batchPermits.acquireUninterruptibly();
+                try {
+                    sptBatch.search(origins, (originIndex, tree) -> {
+                        StringBuilder sb = new StringBuilder();
+                        for (int i = 0; i < tree.size(); i++) {
+                            for (int colIndex = 0; colIndex < columns.size(); colIndex++) {
+                                if (colIndex > 0)
+                                    sb.append(COL_SEP);
+                                appendBatchColumn(sb, columns.get(colIndex), originIndex, tree, i, nodeAccess);
+                            }
+                            sb.append(LINE_SEP);
+                        }
+                        try {
+                            synchronized (writer) {
+                                writer.write(sb.toString());
+                            }
+                        } catch (IOException ex) {
+                            throw new RuntimeException(ex);
+                        }
+                    });
+                } finally {
+                    batchPermits.release();
+                }
+                logger.info("batch took: " + sw.stop().getSeconds() + ", points: " + origins.length + ", profile: " + profileName);
             } catch (IOException e) {
                 throw new RuntimeException(e);
             }
         };
-        // Give media type explicitly since we are annotating CSV and JSON, because error messages are JSON.
         return Response.ok(out).type("text/csv").build();
     }
 
+    private static void appendBatchColumn(StringBuilder sb, String col, int originIndex, ShortestPathTreeBatch.Tree tree, int index, NodeAccess na) {
+        int prevNode = tree.getParentNode(index);
+        switch (col) {
+            case "origin":
+                sb.append(originIndex);
+                break;
+            case "node_id":
+                sb.append(tree.getNode(index));
+                break;
+            case "prev_node_id":
+                sb.append(prevNode);
+                break;
+            case "edge_id":
+                sb.append(tree.getEdge(index));
+                break;
+            case "prev_edge_id":
+                sb.append(tree.getParentEdge(index));
+                break;
+            case "distance":
+                sb.append(Math.round(tree.getDistance(index)));
+                break;
+            case "prev_distance":
+                sb.append(Math.round(tree.getParentDistance(index)));
+                break;
+            case "time":
+                sb.append(tree.getTime(index));
+                break;
+            case "prev_time":
+                sb.append(tree.getParentTime(index));
+                break;
+            case "longitude":
+                sb.append(Helper.round6(na.getLon(tree.getNode(index))));
+                break;
+            case "prev_longitude":
+                sb.append(prevNode < 0 ? null : Helper.round6(na.getLon(prevNode)));
+                break;
+            case "latitude":
+                sb.append(Helper.round6(na.getLat(tree.getNode(index))));
+                break;
+            case "prev_latitude":
+                sb.append(prevNode < 0 ? null : Helper.round6(na.getLat(prevNode)));
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown column " + col);
+        }
+    }
+
     private IsoLabelWithCoordinates isoLabelWithCoordinates(NodeAccess na, ShortestPathTree.IsoLabel label) {
         double lat = na.getLat(label.node);
         double lon = na.getLon(label.node);
@@ -251,4 +462,22 @@ public class SPTResource {
         }
         return isoLabelWC;
     }
+
+    private IsoLabelWithCoordinates isoLabelWithCoordinates(NodeAccess na, PhastCH phast, int node) {
+        IsoLabelWithCoordinates isoLabelWC = new IsoLabelWithCoordinates();
+        isoLabelWC.nodeId = node;
+        isoLabelWC.coordinate = new GHPoint(na.getLat(node), na.getLon(node));
+        isoLabelWC.timeMillis = Math.round(phast.getTime(node));
+        isoLabelWC.distance = (int) Math.round(phast.getDistance(node));
+        isoLabelWC.edgeId = phast.getEdge(node);
+        int prevNodeId = phast.getParentNode(node);
+        if (prevNodeId >= 0) {
+            isoLabelWC.prevNodeId = prevNodeId;
+            isoLabelWC.prevEdgeId = phast.getEdge(prevNodeId);
+            isoLabelWC.prevCoordinate = new GHPoint(na.getLat(prevNodeId), na.getLon(prevNodeId));
+            isoLabelWC.prevDistance = (int) Math.round(phast.getDistance(prevNodeId));
+            isoLabelWC.prevTimeMillis = Math.round(phast.getTime(prevNodeId));
+        }
+        return isoLabelWC;
+    }
 }
@@ -18,25 +18,32 @@
 package com.graphhopper.application;
 
 import com.fasterxml.jackson.dataformat.xml.XmlMapper;
+import com.graphhopper.GHRequest;
 import com.graphhopper.GraphHopper;
+import com.graphhopper.ResponsePath;
 import com.graphhopper.config.LMProfile;
 import com.graphhopper.gpx.GpxConversions;
 import com.graphhopper.jackson.Gpx;
 import com.graphhopper.matching.EdgeMatch;
 import com.graphhopper.matching.MapMatching;
 import com.graphhopper.matching.MatchResult;
+import com.graphhopper.matching.Observation;
+import com.graphhopper.matching.OnlineMapMatching;
 import com.graphhopper.matching.State;
 import com.graphhopper.routing.TestProfiles;
+import com.graphhopper.storage.index.LocationIndexTree;
 import com.graphhopper.storage.index.Snap;
-import com.graphhopper.util.Helper;
-import com.graphhopper.util.PMap;
+import com.graphhopper.util.*;
+import com.graphhopper.util.shapes.GHPoint;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 import static com.graphhopper.application.MapMatchingTest.fetchStreets;
 import static org.junit.jupiter.api.Assertions.*;
@@ -127,6 +134,95 @@ public class MapMatching2Test {
         assertEquals(0, mr.getMatchMillis(), 50);
     }
 
+    @Test
+    public void testOnlineMatching() throws IOException {
+        GraphHopper hopper = new GraphHopper();
+        hopper.setOSMFile("../map-matching/files/map-issue13.osm.gz");
+        hopper.setGraphHopperLocation(GH_LOCATION);
+        hopper.setEncodedValuesString("car_access, car_average_speed");
+        hopper.setProfiles(TestProfiles.accessAndSpeed("my_profile", "car"));
+        hopper.importOrLoad();
+
+        PMap hints = new PMap().putObject("profile", "my_profile");
+        Gpx gpx = xmlMapper.readValue(getClass().getResourceAsStream("/issue-13.gpx"), Gpx.class);
+        MapMatching mapMatching = MapMatching.fromGraphHopper(hopper, hints);
+        MatchResult mr = mapMatching.match(GpxConversions.getEntries(gpx.trk.get(0)));
+        int observations = mr.getEdgeMatches().stream().mapToInt(em -> em.getStates().size()).sum();
+
+        for (int maxLag : new int[]{0, 3, 50}) {
+            OnlineMapMatching onlineMatching = new OnlineMapMatching(hopper.getBaseGraph(), (LocationIndexTree) hopper.getLocationIndex(),
+                    MapMatching.routerFromGraphHopper(hopper, hints)).setMaxLag(maxLag);
+            List<EdgeMatch> edgeMatches = new ArrayList<>();
+            for (Observation observation : GpxConversions.getEntries(gpx.trk.get(0)))
+                edgeMatches.addAll(onlineMatching.add(observation));
+            // the edge matches are returned before the track is finished
+            assertTrue(edgeMatches.size() > 1, "maxLag: " + maxLag);
+            edgeMatches.addAll(onlineMatching.finish());
+            assertThrows(IllegalStateException.class, onlineMatching::finish);
+
+            assertEquals(observations, edgeMatches.stream().mapToInt(em -> em.getStates().size()).sum());
+            for (EdgeMatch em : edgeMatches)
+                validateEdgeMatch(em);
+            for (int i = 1; i < edgeMatches.size(); i++)
+                assertEquals(edgeMatches.get(i - 1).getEdgeState().getAdjNode(), edgeMatches.get(i).getEdgeState().getBaseNode());
+            if (maxLag == 50)
+                assertEquals(toEdges(mr.getEdgeMatches()), toEdges(edgeMatches));
+        }
+    }
+
+    @Test
+    public void testLongTrack() {
+        GraphHopper hopper = new GraphHopper();
+        hopper.setOSMFile("../core/files/andorra.osm.pbf");
+        hopper.setGraphHopperLocation(GH_LOCATION);
+        hopper.setEncodedValuesString("car_access, car_average_speed");
+        hopper.setProfiles(TestProfiles.accessAndSpeed("my_profile", "car"));
+        hopper.importOrLoad();
+
+        // drive through Andorra and back again and record an observation every two meters
+        ResponsePath there = hopper.route(new GHRequest(42.462, 1.491, 42.566, 1.598).setProfile("my_profile")).getBest();
+        ResponsePath back = hopper.route(new GHRequest(42.566, 1.598, 42.462, 1.491).setProfile("my_profile")).getBest();
+        List<Observation> observations = new ArrayList<>();
+        for (ResponsePath path : Arrays.asList(there, back, there)) {
+            PointList points = path.getPoints();
+            for (int i = 0; i < points.size() - 1; i++) {
+                double dist = DistanceCalcEarth.DIST_EARTH.calcDist(points.getLat(i), points.getLon(i), points.getLat(i + 1), points.getLon(i + 1));
+                int steps = Math.max(1, (int) (dist / 2));
+                for (int step = 0; step < steps; step++) {
+                    double f = (double) step / steps;
+                    observations.add(new Observation(new GHPoint(points.getLat(i) + f * (points.getLat(i + 1) - points.getLat(i)),
+                            points.getLon(i) + f * (points.getLon(i + 1) - points.getLon(i)))));
+                }
+            }
+        }
+        assertTrue(observations.size() > 20_000, "observations: " + observations.size());
+
+        // a small sigma keeps more observations, so the sum of the negative log probabilities gets large
+        PMap hints = new PMap().putObject("profile", "my_profile");
+        MapMatching mapMatching = MapMatching.fromGraphHopper(hopper, hints);
+        mapMatching.setMeasurementErrorSigma(10);
+        MatchResult mr = mapMatching.match(observations);
+        double expectedLength = 2 * there.getDistance() + back.getDistance();
+        assertEquals(expectedLength, mr.getMatchLength(), 0.01 * expectedLength);
+
+        // without a lag limit the online matching finds the most likely sequence like the offline matching does, but
+        // it uses its own implementation of the Viterbi algorithm, which keeps the probabilities in doubles
+        OnlineMapMatching onlineMatching = new OnlineMapMatching(hopper.getBaseGraph(), (LocationIndexTree) hopper.getLocationIndex(),
+                MapMatching.routerFromGraphHopper(hopper, hints)).setMaxLag(Integer.MAX_VALUE).setMeasurementErrorSigma(10);
+        List<EdgeMatch> edgeMatches = new ArrayList<>();
+        for (Observation observation : observations)
+            edgeMatches.addAll(onlineMatching.add(observation));
+        edgeMatches.addAll(onlineMatching.finish());
+        assertEquals(toEdges(mr.getEdgeMatches()), toEdges(edgeMatches));
+    }
+
+    private static List<Integer> toEdges(List<EdgeMatch> edgeMatches) {
+        List<Integer> edges = new ArrayList<>();
+        for (EdgeMatch em : edgeMatches)
+            edges.add(em.getEdgeState().getEdge());
+        return edges;
+    }
+
     private void validateEdgeMatch(EdgeMatch edgeMatch) {
         for (State state : edgeMatch.getStates()) {
             if (state.getSnap().getSnappedPosition() == Snap.Position.TOWER) {
@@ -33,6 +33,7 @@ import com.graphhopper.util.*;
 import com.graphhopper.util.shapes.GHPoint;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtensionContext;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
@@ -85,8 +86,8 @@ public class MapMatchingTest {
         @Override
         public Stream<? extends Arguments> provideArguments(ExtensionContext context) {
             return Stream.of(
-                            new PMap().putObject(Parameters.Landmark.DISABLE, true),
-                            new PMap().putObject(Parameters.Landmark.DISABLE, false)
+                            new PMap(),
+                            new PMap().putObject(Parameters.Landmark.DISABLE, true)
 
                     )
                     .map(hints -> hints.putObject("profile", "my_profile"))
@@ -94,6 +95,14 @@ public class MapMatchingTest {
         }
     }
 
+    @Test
+    public void testLMAndCHCannotBeRequested() {
+        PMap lmHints = new PMap().putObject("profile", "my_profile").putObject(Parameters.Landmark.DISABLE, false);
+        assertThrows(IllegalArgumentException.class, () -> MapMatching.fromGraphHopper(graphHopper, lmHints));
+        PMap chHints = new PMap().putObject("profile", "my_profile").putObject(Parameters.CH.DISABLE, false);
+        assertThrows(IllegalArgumentException.class, () -> MapMatching.fromGraphHopper(graphHopper, chHints));
+    }
+
     /**
      * TODO: split this test up into smaller units with better names?
      */
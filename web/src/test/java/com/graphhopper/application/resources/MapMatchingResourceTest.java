@@ -17,9 +17,11 @@
  */
 package com.graphhopper.application.resources;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.graphhopper.application.GraphHopperApplication;
 import com.graphhopper.application.GraphHopperServerConfiguration;
+import com.graphhopper.jackson.Jackson;
 import com.graphhopper.jackson.ResponsePathDeserializerHelper;
 import com.graphhopper.routing.TestProfiles;
 import com.graphhopper.util.Helper;
@@ -37,6 +39,8 @@ import jakarta.ws.rs.client.Entity;
 import jakarta.ws.rs.core.Response;
 import java.io.File;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
 
 import static com.graphhopper.application.util.TestUtils.clientTarget;
 import static org.junit.jupiter.api.Assertions.*;
@@ -56,6 +60,7 @@ public class MapMatchingResourceTest {
                 putObject("datareader.file", "../map-matching/files/leipzig_germany.osm.pbf").
                 putObject("import.osm.ignored_highways", "").
                 putObject("graph.location", DIR).
+                putObject("routing.match_batch.max_traces", 3).
                 putObject("graph.encoded_values", "car_access, car_average_speed, bike_access, bike_priority, bike_average_speed").
                 setProfiles(Arrays.asList(
                         TestProfiles.accessAndSpeed("fast_car", "car"),
@@ -122,6 +127,45 @@ public class MapMatchingResourceTest {
         }
     }
 
+    @Test
+    public void testBatch() throws JsonProcessingException {
+        String body = "{\"id\": \"a\", \"points\": [[12.3607, 51.34365], [12.36418, 51.34443], [12.36379, 51.34538], [12.36082, 51.34471], [12.36188, 51.34278]]}\n"
+                + "\n"
+                + "{\"id\": 2, \"points\": []}\n";
+        String response = clientTarget(app, "/match/batch?profile=fast_car")
+                .request()
+                .post(Entity.entity(body, "application/x-ndjson"), String.class);
+        Map<String, JsonNode> results = new HashMap<>();
+        for (String line : response.split("\n")) {
+            JsonNode json = Jackson.newObjectMapper().readTree(line);
+            results.put(json.get("id").asText(), json);
+        }
+        assertEquals(2, results.size());
+
+        JsonNode json = results.get("a");
+        assertFalse(json.has("message"), json.toString());
+        assertTrue(json.get("distance").asDouble() > 700, json.toString());
+        assertTrue(json.get("time").asLong() > 0, json.toString());
+        assertFalse(json.get("traversal_keys").isEmpty(), json.toString());
+
+        assertEquals("At least one point has to be specified", results.get("2").get("message").asText());
+    }
+
+    @Test
+    public void testBatchMaxTraces() throws JsonProcessingException {
+        StringBuilder body = new StringBuilder();
+        for (int i = 0; i < 5; i++)
+            body.append("{\"id\": ").append(i).append(", \"points\": []}\n");
+        String response = clientTarget(app, "/match/batch?profile=fast_car")
+                .request()
+                .post(Entity.entity(body.toString(), "application/x-ndjson"), String.class);
+        String[] lines = response.split("\n");
+        assertEquals(4, lines.length);
+        for (int i = 0; i < 3; i++)
+            assertTrue(Jackson.newObjectMapper().readTree(lines[i]).has("id"), lines[i]);
+        assertEquals("The maximum number of traces per request is 3", Jackson.newObjectMapper().readTree(lines[3]).get("message").asText());
+    }
+
     private LineString readWktLineString(String wkt) {
         WKTReader wktReader = new WKTReader();
         LineString expectedGeometry = null;
@@ -0,0 +1,121 @@
+/*
+ *  Licensed to GraphHopper GmbH under one or more contributor
+ *  license agreements. See the NOTICE file distributed with this work for
+ *  additional information regarding copyright ownership.
+ *
+ *  GraphHopper GmbH licenses this file to you under the Apache License,
+ *  Version 2.0 (the "License"); you may not use this file except in
+ *  compliance with the License. You may obtain a copy of the License at
+ *
+ *       http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package com.graphhopper.application.resources;
+
+import com.graphhopper.GHRequest;
+import com.graphhopper.GHResponse;
+import com.graphhopper.api.GHMRequest;
+import com.graphhopper.api.GHMatrixSyncRequester;
+import com.graphhopper.api.GraphHopperMatrixWeb;
+import com.graphhopper.api.GraphHopperWeb;
+import com.graphhopper.api.MatrixResponse;
+import com.graphhopper.application.GraphHopperApplication;
+import com.graphhopper.application.GraphHopperServerConfiguration;
+import com.graphhopper.application.util.GraphHopperServerTestConfiguration;
+import com.graphhopper.config.CHProfile;
+import com.graphhopper.routing.TestProfiles;
+import com.graphhopper.util.Helper;
+import com.graphhopper.util.TurnCostsConfig;
+import com.graphhopper.util.shapes.GHPoint;
+import io.dropwizard.testing.junit5.DropwizardAppExtension;
+import io.dropwizard.testing.junit5.DropwizardExtensionsSupport;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.graphhopper.application.util.TestUtils.clientUrl;
+import static org.junit.jupiter.api.Assertions.*;
+
+@ExtendWith(DropwizardExtensionsSupport.class)
+public class MatrixResourceTest {
+    private static final String DIR = "./target/andorra-matrix-gh/";
+    private static final DropwizardAppExtension<GraphHopperServerConfiguration> app = new DropwizardAppExtension<>(GraphHopperApplication.class, createConfig());
+
+    private static GraphHopperServerConfiguration createConfig() {
+        GraphHopperServerConfiguration config = new GraphHopperServerTestConfiguration();
+        config.getGraphHopperConfiguration().
+                putObject("datareader.file", "../core/files/andorra.osm.pbf").
+                putObject("import.osm.ignored_highways", "").
+                putObject("graph.location", DIR).
+                putObject("graph.encoded_values", "car_access, car_average_speed").
+                setProfiles(List.of(
+                        TestProfiles.accessAndSpeed("car", "car"),
+                        TestProfiles.accessAndSpeed("car_with_turncosts", "car").setTurnCostsConfig(TurnCostsConfig.car())
+                )).
+                setCHProfiles(List.of(new CHProfile("car"), new CHProfile("car_with_turncosts")));
+        return config;
+    }
+
+    @BeforeAll
+    @AfterAll
+    public static void cleanUp() {
+        Helper.removeDir(new File(DIR));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"car", "car_with_turncosts"})
+    public void matrixMatchesRoutes(String profile) {
+        List<GHPoint> fromPoints = Arrays.asList(new GHPoint(42.510071, 1.548128), new GHPoint(42.531073, 1.573792));
+        List<GHPoint> toPoints = Arrays.asList(new GHPoint(42.557237, 1.528847), new GHPoint(42.512329, 1.521302), new GHPoint(42.510071, 1.548128));
+        GraphHopperMatrixWeb matrixWeb = new GraphHopperMatrixWeb(new GHMatrixSyncRequester(clientUrl(app, "/matrix")));
+        GHMRequest request = new GHMRequest().setProfile(profile).setFromPoints(fromPoints).setToPoints(toPoints).
+                setOutArrays(Arrays.asList("weights", "times", "distances"));
+        MatrixResponse rsp = matrixWeb.route(request);
+        assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+
+        GraphHopperWeb routeWeb = new GraphHopperWeb(clientUrl(app, "/route"));
+        for (int i = 0; i < fromPoints.size(); i++) {
+            for (int j = 0; j < toPoints.size(); j++) {
+                GHResponse routeRsp = routeWeb.route(new GHRequest(fromPoints.get(i), toPoints.get(j)).setProfile(profile).
+                        putHint("instructions", false).putHint("calc_points", false));
+                assertFalse(routeRsp.hasErrors(), routeRsp.getErrors().toString());
+                assertEquals(routeRsp.getBest().getDistance(), rsp.getDistance(i, j), 1, "distance " + i + "->" + j);
+                assertEquals(routeRsp.getBest().getTime(), rsp.getTime(i, j), 1000, "time " + i + "->" + j);
+                assertEquals(routeRsp.getBest().getRouteWeight(), rsp.getWeight(i, j), 1.e-2, "weight " + i + "->" + j);
+            }
+        }
+        assertEquals(0, rsp.getDistance(0, 2), 1.e-6);
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    public void pointNotFound(boolean failFast) {
+        GraphHopperMatrixWeb matrixWeb = new GraphHopperMatrixWeb(new GHMatrixSyncRequester(clientUrl(app, "/matrix")));
+        GHMRequest request = new GHMRequest().setProfile("car").
+                setPoints(Arrays.asList(new GHPoint(42.510071, 1.548128), new GHPoint(42.0, 1.0), new GHPoint(42.531073, 1.573792))).
+                setOutArrays(List.of("distances"));
+        request.setFailFast(failFast);
+        MatrixResponse rsp = matrixWeb.route(request);
+        if (failFast) {
+            assertTrue(rsp.hasErrors());
+            assertTrue(rsp.getErrors().toString().contains("Cannot find from_point 1"), rsp.getErrors().toString());
+        } else {
+            assertFalse(rsp.hasErrors(), rsp.getErrors().toString());
+            assertEquals(List.of(1), rsp.getInvalidFromPoints());
+            assertEquals(List.of(1), rsp.getInvalidToPoints());
+            assertTrue(rsp.getDistance(0, 2) > 0);
+            assertEquals(Double.MAX_VALUE, rsp.getDistance(0, 1));
+        }
+    }
+}
@@ -22,6 +22,7 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.graphhopper.application.GraphHopperApplication;
 import com.graphhopper.application.GraphHopperServerConfiguration;
 import com.graphhopper.application.util.GraphHopperServerTestConfiguration;
+import com.graphhopper.config.CHProfile;
 import com.graphhopper.routing.TestProfiles;
 import com.graphhopper.util.BodyAndStatus;
 import com.graphhopper.util.Helper;
@@ -33,9 +34,13 @@ import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 
+import jakarta.ws.rs.client.Entity;
 import java.io.File;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 
 import static com.graphhopper.application.resources.Util.getWithStatus;
 import static com.graphhopper.application.util.TestUtils.clientTarget;
@@ -57,7 +62,8 @@ public class SPTResourceTest {
                 setProfiles(List.of(
                         TestProfiles.accessAndSpeed("car_without_turncosts", "car"),
                         TestProfiles.accessAndSpeed("car_with_turncosts", "car").setTurnCostsConfig(TurnCostsConfig.car())
-                ));
+                )).
+                setCHProfiles(List.of(new CHProfile("car_without_turncosts"), new CHProfile("car_with_turncosts")));
         return config;
     }
 
@@ -117,6 +123,58 @@ public class SPTResourceTest {
         assertEquals(Double.POSITIVE_INFINITY, Double.parseDouble(row[2]), .1);
     }
 
+    @Test
+    public void requestSPTPhast() {
+        Map<Integer, Integer> dijkstraTimes = readTimes(clientTarget(app, "/spt?profile=car_without_turncosts&point=42.531073,1.573792&time_limit=300&columns=node_id,time").request().get(String.class));
+        Map<Integer, Integer> phastTimes = readTimes(clientTarget(app, "/spt?profile=car_without_turncosts&point=42.531073,1.573792&time_limit=300&columns=node_id,time&algorithm=phast").request().get(String.class));
+        assertTrue(dijkstraTimes.size() > 400, "size: " + dijkstraTimes.size());
+        // ties between shortest paths with different times can change which nodes are just within the limit
+        assertEquals(dijkstraTimes.size(), phastTimes.size(), 0.01 * dijkstraTimes.size());
+        int common = 0;
+        for (Map.Entry<Integer, Integer> e : dijkstraTimes.entrySet()) {
+            Integer phastTime = phastTimes.get(e.getKey());
+            if (phastTime == null)
+                continue;
+            common++;
+            assertEquals(e.getValue(), phastTime, 1000, "node " + e.getKey());
+        }
+        assertTrue(common > 0.99 * dijkstraTimes.size());
+
+        BodyAndStatus rsp = getWithStatus(clientTarget(app, "/spt?profile=car_with_turncosts&point=42.531073,1.573792&algorithm=phast"));
+        assertEquals(400, rsp.getStatus());
+        assertTrue(rsp.getBody().get("message").toString().contains("does not support profiles with turn costs"), rsp.getBody().toString());
+    }
+
+    private static Map<Integer, Integer> readTimes(String csv) {
+        String[] lines = csv.split("\n");
+        assertEquals("node_id,time", lines[0]);
+        Map<Integer, Integer> result = new HashMap<>();
+        for (int i = 1; i < lines.length; i++) {
+            String[] row = lines[i].split(",");
+            result.put(Integer.parseInt(row[0]), Integer.parseInt(row[1]));
+        }
+        return result;
+    }
+
+    @Test
+    public void requestSPTBatch() {
+        String singleCsv = clientTarget(app, "/spt?profile=car_with_turncosts&point=42.531073,1.573792&time_limit=300&columns=node_id,time,distance").request().get(String.class);
+        String body = "{\"profile\": \"car_with_turncosts\", \"points\": [[1.573792, 42.531073]], \"time_limit\": 300, \"columns\": [\"node_id\", \"time\", \"distance\"]}";
+        String batchCsv = clientTarget(app, "/spt/batch").request().post(Entity.json(body), String.class);
+        List<String> singleLines = Arrays.asList(singleCsv.split("\n"));
+        List<String> batchLines = Arrays.asList(batchCsv.split("\n"));
+        assertEquals("node_id,time,distance", batchLines.get(0));
+        assertEquals(singleLines.size(), batchLines.size());
+        assertEquals(new HashSet<>(singleLines), new HashSet<>(batchLines));
+
+        body = "{\"profile\": \"car_without_turncosts\", \"points\": [[1.573792, 42.531073], [1.548128, 42.510071]], \"time_limit\": 120}";
+        batchCsv = clientTarget(app, "/spt/batch").request().post(Entity.json(body), String.class);
+        batchLines = Arrays.asList(batchCsv.split("\n"));
+        assertEquals("origin,longitude,latitude,time,distance", batchLines.get(0));
+        assertTrue(batchLines.stream().anyMatch(l -> l.startsWith("0,")));
+        assertTrue(batchLines.stream().anyMatch(l -> l.startsWith("1,")));
+    }
+
     @Test
     public void missingPoint() {
         BodyAndStatus rsp = getWithStatus(clientTarget(app, "/spt"));